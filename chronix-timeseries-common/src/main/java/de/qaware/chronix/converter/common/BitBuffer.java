@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.converter.common;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A growing sequence of bits stored in a long[].
+ * The bit at position p is bit (p &amp; 63) of the word p / 64, hence values are written from the lowest bit on.
+ * It is used by the compressed lists to pack the encoded elements without padding.
+ *
+ * @author f.lautenschlager
+ */
+final class BitBuffer implements Serializable {
+
+    private static final long serialVersionUID = 6155632532117312429L;
+
+    private static final long[] EMPTY_WORDS = {};
+
+    private long[] words = EMPTY_WORDS;
+    private long length;
+
+    /**
+     * @return the number of written bits
+     */
+    long length() {
+        return length;
+    }
+
+    /**
+     * @return the number of words holding the bits
+     */
+    int capacity() {
+        return words.length;
+    }
+
+    /**
+     * Appends the lowest bits of the given value
+     *
+     * @param value the value
+     * @param bits  the number of bits to append, between 1 and 64
+     */
+    void write(long value, int bits) {
+        ensureCapacity(length + bits);
+
+        long masked = bits == 64 ? value : value & ((1L << bits) - 1);
+        int word = (int) (length >>> 6);
+        int offset = (int) (length & 63);
+        words[word] |= masked << offset;
+        if (offset + bits > 64) {
+            words[word + 1] |= masked >>> (64 - offset);
+        }
+        length += bits;
+    }
+
+    /**
+     * Reads bits starting at the given position.
+     * Bits after the written ones are read as zero, e.g. to peek at a prefix code.
+     *
+     * @param position the position of the first bit
+     * @param bits     the number of bits to read, between 1 and 64
+     * @return the bits as the lowest bits of the result
+     */
+    long read(long position, int bits) {
+        int word = (int) (position >>> 6);
+        int offset = (int) (position & 63);
+        if (word >= words.length) {
+            return 0;
+        }
+        long value = words[word] >>> offset;
+        if (offset + bits > 64 && word + 1 < words.length) {
+            value |= words[word + 1] << (64 - offset);
+        }
+        return bits == 64 ? value : value & ((1L << bits) - 1);
+    }
+
+    /**
+     * Removes all bits and frees the words
+     */
+    void clear() {
+        words = EMPTY_WORDS;
+        length = 0;
+    }
+
+    /**
+     * Frees the words that are not used by the written bits
+     */
+    void trimToSize() {
+        int used = (int) ((length + 63) >>> 6);
+        if (used < words.length) {
+            words = used == 0 ? EMPTY_WORDS : Arrays.copyOf(words, used);
+        }
+    }
+
+    /**
+     * @return the estimated heap bytes of this buffer, see {@link MemoryFootprint}
+     */
+    long estimatedRetainedBytes() {
+        return MemoryFootprint.objectBytes(MemoryFootprint.REFERENCE_BYTES + Long.BYTES)
+                + MemoryFootprint.arrayBytes(words.length, Long.BYTES);
+    }
+
+    /**
+     * @return a copy of this buffer
+     */
+    BitBuffer copy() {
+        BitBuffer copy = new BitBuffer();
+        copy.words = words.length == 0 ? EMPTY_WORDS : words.clone();
+        copy.length = length;
+        return copy;
+    }
+
+    private void ensureCapacity(long bits) {
+        long neededWords = (bits + 63) >>> 6;
+        if (neededWords > words.length) {
+            if (neededWords > ListUtil.MAX_ARRAY_SIZE) {
+                throw new OutOfMemoryError("Bit buffer can not hold " + bits + " bits");
+            }
+            int newCapacity = ListUtil.calculateNewCapacity(words.length, (int) neededWords);
+            words = Arrays.copyOf(words, Math.max(newCapacity, 4));
+        }
+    }
+}
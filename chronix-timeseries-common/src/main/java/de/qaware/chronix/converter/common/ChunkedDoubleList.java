@@ -0,0 +1,383 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.converter.common;
+
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+
+import static de.qaware.chronix.converter.common.ListUtil.arrayRangeCheck;
+import static de.qaware.chronix.converter.common.ListUtil.rangeCheck;
+import static de.qaware.chronix.converter.common.ListUtil.rangeCheckForAdd;
+import static de.qaware.chronix.converter.common.ListUtil.subListRangeCheck;
+
+/**
+ * A double list that stores its elements in chunks of a fixed size instead of one array.
+ * Appending elements never copies the existing elements, a new chunk is allocated if the last one is full.
+ * Hence a list with millions of elements does not need huge arrays and the peak memory is close to the live size.
+ * The random access costs a shift and a mask.
+ * <p>
+ * {@link #asReadOnlyBuffer()} needs the elements in one array and copies them, {@link #subList(int, int)} is a view.
+ * The sorts merge the elements into new chunks block by block, see {@link RunMerge}.
+ *
+ * @author f.lautenschlager
+ */
+public final class ChunkedDoubleList extends DoubleList {
+
+    private static final long serialVersionUID = 6403978219367145542L;
+
+    /**
+     * The default number of elements per chunk
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    private static final double[][] EMPTY_CHUNKS = {};
+
+    private final int chunkShift;
+    private final int chunkMask;
+
+    private double[][] chunks = EMPTY_CHUNKS;
+    private int size;
+
+    /**
+     * Constructs an empty list with the default chunk size.
+     */
+    public ChunkedDoubleList() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Constructs an empty list with the given chunk size.
+     *
+     * @param chunkSize the number of elements per chunk, has to be a power of two
+     * @throws IllegalArgumentException if the chunk size is not a positive power of two
+     */
+    public ChunkedDoubleList(int chunkSize) {
+        super(0);
+        if (chunkSize <= 0 || Integer.bitCount(chunkSize) != 1) {
+            throw new IllegalArgumentException("Chunk size has to be a positive power of two. Current value is: " + chunkSize);
+        }
+        this.chunkShift = Integer.numberOfTrailingZeros(chunkSize);
+        this.chunkMask = chunkSize - 1;
+    }
+
+    /**
+     * @return the number of elements per chunk
+     */
+    public int chunkSize() {
+        return chunkMask + 1;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int indexOf(double o) {
+        for (int i = 0; i < size; i++) {
+            if (o == elementAt(i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int lastIndexOf(double o) {
+        for (int i = size - 1; i >= 0; i--) {
+            if (o == elementAt(i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public DoubleList copy() {
+        ChunkedDoubleList copy = new ChunkedDoubleList(chunkSize());
+        copy.addAll(this);
+        return copy;
+    }
+
+    @Override
+    public double[] toArray() {
+        double[] array = new double[size];
+        copyTo(0, array, 0, size);
+        return array;
+    }
+
+    /**
+     * The elements are not stored in one array.
+     *
+     * @return null
+     */
+    @Override
+    double[] array() {
+        return null;
+    }
+
+    @Override
+    void copyTo(int srcIndex, double[] dest, int destIndex, int length) {
+        int copied = 0;
+        while (copied < length) {
+            int index = srcIndex + copied;
+            int offset = index & chunkMask;
+            int n = Math.min(length - copied, chunkSize() - offset);
+            System.arraycopy(chunks[index >>> chunkShift], offset, dest, destIndex + copied, n);
+            copied += n;
+        }
+    }
+
+    /**
+     * Copies the given elements into the chunks starting at the given index.
+     * The chunks have to exist.
+     */
+    private void copyFrom(double[] src, int srcIndex, int index, int length) {
+        int copied = 0;
+        while (copied < length) {
+            int destIndex = index + copied;
+            int offset = destIndex & chunkMask;
+            int n = Math.min(length - copied, chunkSize() - offset);
+            System.arraycopy(src, srcIndex + copied, chunks[destIndex >>> chunkShift], offset, n);
+            copied += n;
+        }
+    }
+
+    /**
+     * Returns a read-only buffer holding the elements of this list.
+     * As the elements are not stored in one array, they are copied.
+     *
+     * @return a read-only buffer holding the elements from the first to the last element
+     */
+    @Override
+    public DoubleBuffer asReadOnlyBuffer() {
+        return DoubleBuffer.wrap(toArray()).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns a read-only view of the elements between fromIndex (inclusive) and toIndex (exclusive).
+     * The view reads the elements from the chunks of this list without copying them.
+     * Hence the view is only valid until this list is modified.
+     *
+     * @param fromIndex the index of the first element (inclusive)
+     * @param toIndex   the index of the last element (exclusive)
+     * @return a read-only view of the given range
+     */
+    @Override
+    public DoubleList subList(int fromIndex, int toIndex) {
+        subListRangeCheck(fromIndex, toIndex, size);
+        return new DoubleSubList(this, fromIndex, toIndex - fromIndex);
+    }
+
+    @Override
+    ChunkedDoubleList newScratch(int capacity) {
+        return new ChunkedDoubleList(chunkSize());
+    }
+
+    @Override
+    public double get(int index) {
+        rangeCheck(index, size);
+        return elementAt(index);
+    }
+
+    @Override
+    double elementAt(int index) {
+        return chunks[index >>> chunkShift][index & chunkMask];
+    }
+
+    @Override
+    public double set(int index, double element) {
+        rangeCheck(index, size);
+
+        double[] chunk = chunks[index >>> chunkShift];
+        double oldValue = chunk[index & chunkMask];
+        chunk[index & chunkMask] = element;
+        return oldValue;
+    }
+
+    @Override
+    public boolean add(double e) {
+        ensureCapacity(size + 1);
+        chunks[size >>> chunkShift][size & chunkMask] = e;
+        size++;
+        return true;
+    }
+
+    /**
+     * Allocates the chunks for the given number of elements.
+     * The existing chunks are not copied, only the references to them.
+     */
+    @Override
+    public void ensureCapacity(int minCapacity) {
+        int neededChunks = (minCapacity + chunkMask) >>> chunkShift;
+        if (neededChunks > chunks.length) {
+            chunks = Arrays.copyOf(chunks, Math.max(neededChunks, chunks.length << 1));
+        }
+        for (int i = (size + chunkMask) >>> chunkShift; i < neededChunks; i++) {
+            if (chunks[i] == null) {
+                chunks[i] = new double[chunkSize()];
+            }
+        }
+    }
+
+    /**
+     * Frees the chunks after the last element. The last chunk keeps its size.
+     */
+    @Override
+    public void trimToSize() {
+        int usedChunks = (size + chunkMask) >>> chunkShift;
+        if (usedChunks < chunks.length) {
+            chunks = (usedChunks == 0) ? EMPTY_CHUNKS : Arrays.copyOf(chunks, usedChunks);
+        }
+    }
+
+    @Override
+    public long estimatedRetainedBytes() {
+        long bytes = MemoryFootprint.objectBytes(SHALLOW_FIELD_BYTES + MemoryFootprint.REFERENCE_BYTES + 3 * Integer.BYTES)
+                + MemoryFootprint.arrayBytes(chunks.length, MemoryFootprint.REFERENCE_BYTES);
+        long chunkBytes = MemoryFootprint.arrayBytes(chunkSize(), Double.BYTES);
+        for (double[] chunk : chunks) {
+            if (chunk != null) {
+                bytes += chunkBytes;
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public void add(int index, double element) {
+        rangeCheckForAdd(index, size);
+
+        ensureCapacity(size + 1);
+        size++;
+        for (int i = size - 1; i > index; i--) {
+            chunks[i >>> chunkShift][i & chunkMask] = elementAt(i - 1);
+        }
+        chunks[index >>> chunkShift][index & chunkMask] = element;
+    }
+
+    @Override
+    public double remove(int index) {
+        rangeCheck(index, size);
+
+        double oldValue = elementAt(index);
+        removeRange(index, index + 1);
+        return oldValue;
+    }
+
+    @Override
+    public boolean remove(double o) {
+        int index = indexOf(o);
+        if (index >= 0) {
+            removeRange(index, index + 1);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void clear() {
+        chunks = EMPTY_CHUNKS;
+        size = 0;
+    }
+
+    @Override
+    public boolean addAll(DoubleList c) {
+        int numNew = c.size();
+        ensureCapacity(size + numNew);
+
+        int copied = 0;
+        while (copied < numNew) {
+            int index = size + copied;
+            int offset = index & chunkMask;
+            int n = Math.min(numNew - copied, chunkSize() - offset);
+            c.copyTo(copied, chunks[index >>> chunkShift], offset, n);
+            copied += n;
+        }
+        size += numNew;
+        return numNew != 0;
+    }
+
+    @Override
+    public boolean addAll(double[] otherDoubles) {
+        return addAll(otherDoubles, 0, otherDoubles.length);
+    }
+
+    @Override
+    public boolean addAll(double[] otherDoubles, int fromIndex, int length) {
+        arrayRangeCheck(fromIndex, length, otherDoubles.length);
+        ensureCapacity(size + length);
+
+        copyFrom(otherDoubles, fromIndex, size, length);
+        size += length;
+        return length != 0;
+    }
+
+    @Override
+    public boolean addAll(int index, DoubleList c) {
+        rangeCheckForAdd(index, size);
+
+        double[] a = c.toArray();
+        int numNew = a.length;
+        ensureCapacity(size + numNew);
+
+        for (int i = size - 1; i >= index; i--) {
+            int dest = i + numNew;
+            chunks[dest >>> chunkShift][dest & chunkMask] = elementAt(i);
+        }
+        copyFrom(a, 0, index, numNew);
+        size += numNew;
+        return numNew != 0;
+    }
+
+    /**
+     * The elements are not stored in one array.
+     *
+     * @return null
+     */
+    @Override
+    double[] elementData() {
+        return null;
+    }
+
+    @Override
+    void setElements(double[] source) {
+        copyFrom(source, 0, 0, source.length);
+    }
+
+    /**
+     * Sorts this list ascending like {@link Arrays#sort(double[])}. The sorted blocks are merged into new chunks.
+     */
+    @Override
+    public void sort() {
+        RunMerge.sort(this);
+    }
+
+    @Override
+    public void removeRange(int fromIndex, int toIndex) {
+        int numRemoved = toIndex - fromIndex;
+        for (int i = toIndex; i < size; i++) {
+            int dest = i - numRemoved;
+            chunks[dest >>> chunkShift][dest & chunkMask] = elementAt(i);
+        }
+        size -= numRemoved;
+    }
+}
@@ -0,0 +1,559 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.converter.common;
+
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.Spliterators;
+
+import static de.qaware.chronix.converter.common.ListUtil.arrayRangeCheck;
+import static de.qaware.chronix.converter.common.ListUtil.rangeCheck;
+import static de.qaware.chronix.converter.common.ListUtil.rangeCheckForAdd;
+import static de.qaware.chronix.converter.common.ListUtil.subListRangeCheck;
+
+/**
+ * A double list that stores its elements XOR encoded like the Gorilla paper of Facebook, e.g. the values of a time series.
+ * The elements are encoded in blocks of {@link #BLOCK_SIZE} elements.
+ * A block header holds the first element and the position of the block in a bit stream.
+ * The other elements are stored as the XOR of their bits with the bits of the previous element:
+ * <ul>
+ * <li>1 bit if the element does not change,</li>
+ * <li>2 bits and the meaningful bits of the XOR if they fit into the window of the previous XOR,</li>
+ * <li>13 bits holding the leading zeros and the length of the meaningful bits followed by them otherwise.</li>
+ * </ul>
+ * Slowly changing values, e.g. gauges, only differ in a few bits and are stored with a few bits.
+ * The last block is not encoded until it is full. Hence appending an element is O(1) amortized
+ * and the last elements are read without decoding.
+ * The random access decodes the block of the element and keeps the last decoded block.
+ * Hence iterating the list decodes each block only once. Bulk reads like {@link #toArray()} decode the blocks
+ * sequentially into the destination array.
+ * <p>
+ * Modifications other than appending elements, like {@link #set(int, double)}, {@link #remove(int)} or the sorts,
+ * decode all elements and encode them again. Use the list for columns that are appended and read.
+ * Methods that need the elements in one array, like {@link #asReadOnlyBuffer()} or {@link #subList(int, int)}, decode them.
+ * The elements are encoded bitwise, hence -0.0 and NaN are kept.
+ *
+ * @author f.lautenschlager
+ */
+public final class CompressedDoubleList extends DoubleList {
+
+    private static final long serialVersionUID = -2183645530918472276L;
+
+    /**
+     * The number of elements per encoded block
+     */
+    public static final int BLOCK_SIZE = 128;
+
+    private static final int BLOCK_SHIFT = 7;
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+    //5 bits hold the leading zeros, hence more leading zeros are stored as meaningful bits
+    private static final int MAX_LEADING_ZEROS = 31;
+
+    private static final long[] EMPTY = {};
+    private static final double[] EMPTY_DOUBLES = {};
+
+    //The first element and the bit position of each encoded block
+    private long[] blockFirsts = EMPTY;
+    private long[] blockPositions = EMPTY;
+    private int blocks;
+    private BitBuffer bits = new BitBuffer();
+
+    //The last block that is not encoded yet
+    private double[] tail = EMPTY_DOUBLES;
+    private int size;
+
+    //The last decoded block, replaced as a whole to keep concurrent reads safe
+    private transient DecodedBlock decoded;
+
+    /**
+     * Constructs an empty list.
+     */
+    public CompressedDoubleList() {
+        super(0);
+    }
+
+    /**
+     * @return the number of encoded blocks
+     */
+    int blocks() {
+        return blocks;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int indexOf(double o) {
+        for (int i = 0; i < size; i++) {
+            if (Double.compare(o, elementAt(i)) == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int lastIndexOf(double o) {
+        for (int i = size - 1; i >= 0; i--) {
+            if (Double.compare(o, elementAt(i)) == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public DoubleList copy() {
+        CompressedDoubleList copy = new CompressedDoubleList();
+        copy.blockFirsts = Arrays.copyOf(blockFirsts, blocks);
+        copy.blockPositions = Arrays.copyOf(blockPositions, blocks);
+        copy.blocks = blocks;
+        copy.bits = bits.copy();
+        copy.tail = tail.length == 0 ? EMPTY_DOUBLES : tail.clone();
+        copy.size = size;
+        return copy;
+    }
+
+    @Override
+    public double[] toArray() {
+        double[] array = new double[size];
+        copyTo(0, array, 0, size);
+        return array;
+    }
+
+    /**
+     * The elements are not stored in one array.
+     *
+     * @return null
+     */
+    @Override
+    double[] array() {
+        return null;
+    }
+
+    @Override
+    void copyTo(int srcIndex, double[] dest, int destIndex, int length) {
+        double[] block = null;
+        int copied = 0;
+        while (copied < length) {
+            int index = srcIndex + copied;
+            int blockIndex = index >>> BLOCK_SHIFT;
+            int offset = index & BLOCK_MASK;
+            int n = Math.min(length - copied, BLOCK_SIZE - offset);
+
+            if (blockIndex == blocks) {
+                System.arraycopy(tail, offset, dest, destIndex + copied, n);
+            } else if (offset == 0 && n == BLOCK_SIZE) {
+                decode(blockIndex, dest, destIndex + copied);
+            } else {
+                if (block == null) {
+                    block = new double[BLOCK_SIZE];
+                }
+                decode(blockIndex, block, 0);
+                System.arraycopy(block, offset, dest, destIndex + copied, n);
+            }
+            copied += n;
+        }
+    }
+
+    /**
+     * Returns a read-only buffer holding the elements of this list.
+     * As the elements are encoded, they are decoded into a new array.
+     *
+     * @return a read-only buffer holding the elements from the first to the last element
+     */
+    @Override
+    public DoubleBuffer asReadOnlyBuffer() {
+        return DoubleBuffer.wrap(toArray()).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns a read-only list with the elements between fromIndex (inclusive) and toIndex (exclusive).
+     * As the elements are encoded, they are decoded into a new array.
+     *
+     * @param fromIndex the index of the first element (inclusive)
+     * @param toIndex   the index of the last element (exclusive)
+     * @return a read-only list with the elements of the given range
+     */
+    @Override
+    public DoubleList subList(int fromIndex, int toIndex) {
+        subListRangeCheck(fromIndex, toIndex, size);
+        int length = toIndex - fromIndex;
+        double[] elements = new double[length];
+        copyTo(fromIndex, elements, 0, length);
+        return new DoubleListView(elements, 0, length);
+    }
+
+    /**
+     * Returns a spliterator over the decoded elements.
+     *
+     * @return a spliterator over the elements from the first to the last element
+     */
+    @Override
+    public Spliterator.OfDouble spliterator() {
+        return Spliterators.spliterator(toArray(), Spliterator.ORDERED);
+    }
+
+    @Override
+    public double get(int index) {
+        rangeCheck(index, size);
+        return elementAt(index);
+    }
+
+    @Override
+    double elementAt(int index) {
+        int blockIndex = index >>> BLOCK_SHIFT;
+        if (blockIndex == blocks) {
+            return tail[index & BLOCK_MASK];
+        }
+        DecodedBlock block = decoded;
+        if (block == null || block.index != blockIndex) {
+            double[] elements = new double[BLOCK_SIZE];
+            decode(blockIndex, elements, 0);
+            block = new DecodedBlock(blockIndex, elements);
+            decoded = block;
+        }
+        return block.elements[index & BLOCK_MASK];
+    }
+
+    /**
+     * Sets the element. If the element is not in the last block, all elements are encoded again.
+     */
+    @Override
+    public double set(int index, double element) {
+        rangeCheck(index, size);
+
+        if (index >>> BLOCK_SHIFT == blocks) {
+            double oldValue = tail[index & BLOCK_MASK];
+            tail[index & BLOCK_MASK] = element;
+            return oldValue;
+        }
+        double[] elements = toArray();
+        double oldValue = elements[index];
+        elements[index] = element;
+        encodeAll(elements, size);
+        return oldValue;
+    }
+
+    @Override
+    public boolean add(double e) {
+        if (tailSize() == BLOCK_SIZE) {
+            encodeTail();
+        }
+        if (tail.length < BLOCK_SIZE) {
+            tail = Arrays.copyOf(tail, BLOCK_SIZE);
+        }
+        tail[tailSize()] = e;
+        size++;
+        return true;
+    }
+
+    /**
+     * @return the number of elements in the tail
+     */
+    private int tailSize() {
+        return size - (blocks << BLOCK_SHIFT);
+    }
+
+    /**
+     * Reserves the block headers for the given number of elements
+     */
+    @Override
+    public void ensureCapacity(int minCapacity) {
+        int neededBlocks = minCapacity >>> BLOCK_SHIFT;
+        if (neededBlocks > blockFirsts.length) {
+            blockFirsts = Arrays.copyOf(blockFirsts, neededBlocks);
+            blockPositions = Arrays.copyOf(blockPositions, neededBlocks);
+        }
+    }
+
+    /**
+     * Trims the block headers, the bit stream and the last block to the elements.
+     * The next append allocates the last block again.
+     */
+    @Override
+    public void trimToSize() {
+        if (blocks < blockFirsts.length) {
+            blockFirsts = (blocks == 0) ? EMPTY : Arrays.copyOf(blockFirsts, blocks);
+            blockPositions = (blocks == 0) ? EMPTY : Arrays.copyOf(blockPositions, blocks);
+        }
+        bits.trimToSize();
+        int tailSize = tailSize();
+        if (tailSize < tail.length) {
+            tail = (tailSize == 0) ? EMPTY_DOUBLES : Arrays.copyOf(tail, tailSize);
+        }
+        decoded = null;
+    }
+
+    @Override
+    public long estimatedRetainedBytes() {
+        long bytes = MemoryFootprint.objectBytes(SHALLOW_FIELD_BYTES + 5 * MemoryFootprint.REFERENCE_BYTES + 2 * Integer.BYTES)
+                + 2 * MemoryFootprint.arrayBytes(blockFirsts.length, Long.BYTES)
+                + bits.estimatedRetainedBytes()
+                + MemoryFootprint.arrayBytes(tail.length, Double.BYTES);
+        if (decoded != null) {
+            bytes += MemoryFootprint.objectBytes(MemoryFootprint.REFERENCE_BYTES + Integer.BYTES)
+                    + MemoryFootprint.arrayBytes(BLOCK_SIZE, Double.BYTES);
+        }
+        return bytes;
+    }
+
+    @Override
+    public void add(int index, double element) {
+        rangeCheckForAdd(index, size);
+        if (index == size) {
+            add(element);
+            return;
+        }
+
+        double[] elements = new double[size + 1];
+        copyTo(0, elements, 0, index);
+        elements[index] = element;
+        copyTo(index, elements, index + 1, size - index);
+        encodeAll(elements, elements.length);
+    }
+
+    @Override
+    public double remove(int index) {
+        rangeCheck(index, size);
+
+        double oldValue = elementAt(index);
+        removeRange(index, index + 1);
+        return oldValue;
+    }
+
+    @Override
+    public boolean remove(double o) {
+        int index = indexOf(o);
+        if (index >= 0) {
+            removeRange(index, index + 1);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void clear() {
+        blockFirsts = EMPTY;
+        blockPositions = EMPTY;
+        blocks = 0;
+        bits.clear();
+        tail = EMPTY_DOUBLES;
+        size = 0;
+        decoded = null;
+    }
+
+    @Override
+    public boolean addAll(DoubleList c) {
+        double[] elements = c.array();
+        if (elements != null) {
+            return addAll(elements, c.arrayOffset(), c.size());
+        }
+        return addAll(c.toArray());
+    }
+
+    @Override
+    public boolean addAll(double[] otherDoubles) {
+        return addAll(otherDoubles, 0, otherDoubles.length);
+    }
+
+    @Override
+    public boolean addAll(double[] otherDoubles, int fromIndex, int length) {
+        arrayRangeCheck(fromIndex, length, otherDoubles.length);
+
+        int copied = 0;
+        while (copied < length) {
+            if (tailSize() == BLOCK_SIZE) {
+                encodeTail();
+            }
+            int offset = tailSize();
+            if (tail.length < BLOCK_SIZE) {
+                tail = Arrays.copyOf(tail, BLOCK_SIZE);
+            }
+            int n = Math.min(length - copied, BLOCK_SIZE - offset);
+            System.arraycopy(otherDoubles, fromIndex + copied, tail, offset, n);
+            size += n;
+            copied += n;
+        }
+        return length != 0;
+    }
+
+    @Override
+    public boolean addAll(int index, DoubleList c) {
+        rangeCheckForAdd(index, size);
+        if (index == size) {
+            return addAll(c);
+        }
+
+        double[] a = c.toArray();
+        double[] elements = new double[size + a.length];
+        copyTo(0, elements, 0, index);
+        System.arraycopy(a, 0, elements, index, a.length);
+        copyTo(index, elements, index + a.length, size - index);
+        encodeAll(elements, elements.length);
+        return a.length != 0;
+    }
+
+    /**
+     * The elements are not stored in one array.
+     *
+     * @return null
+     */
+    @Override
+    double[] elementData() {
+        return null;
+    }
+
+    /**
+     * Replaces the first elements and encodes all elements again.
+     */
+    @Override
+    void setElements(double[] source) {
+        if (source.length == size) {
+            encodeAll(source, size);
+            return;
+        }
+        double[] elements = toArray();
+        System.arraycopy(source, 0, elements, 0, source.length);
+        encodeAll(elements, size);
+    }
+
+    @Override
+    public void removeRange(int fromIndex, int toIndex) {
+        int numRemoved = toIndex - fromIndex;
+        if (numRemoved == 0) {
+            return;
+        }
+        //removing the last elements of the tail needs no encoding
+        if (toIndex == size && fromIndex >>> BLOCK_SHIFT == blocks) {
+            size = fromIndex;
+            return;
+        }
+
+        double[] elements = new double[size - numRemoved];
+        copyTo(0, elements, 0, fromIndex);
+        copyTo(toIndex, elements, fromIndex, size - toIndex);
+        encodeAll(elements, elements.length);
+    }
+
+    /**
+     * Replaces the elements of this list with the given elements
+     */
+    private void encodeAll(double[] elements, int length) {
+        clear();
+        addAll(elements, 0, length);
+    }
+
+    /**
+     * Encodes the full tail as a new block.
+     * A control code is read from the lowest bit on: 0 (same value), 10 (previous window) or 11 (new window).
+     */
+    private void encodeTail() {
+        if (blocks == blockFirsts.length) {
+            int newCapacity = Math.max(4, blocks + (blocks >> 1));
+            blockFirsts = Arrays.copyOf(blockFirsts, newCapacity);
+            blockPositions = Arrays.copyOf(blockPositions, newCapacity);
+        }
+        long previous = Double.doubleToRawLongBits(tail[0]);
+        blockFirsts[blocks] = previous;
+        blockPositions[blocks] = bits.length();
+
+        //no window at the start of a block
+        int leading = -1;
+        int trailing = 0;
+        for (int i = 1; i < BLOCK_SIZE; i++) {
+            long current = Double.doubleToRawLongBits(tail[i]);
+            long xor = current ^ previous;
+
+            if (xor == 0) {
+                bits.write(0, 1);
+            } else {
+                int currentLeading = Math.min(Long.numberOfLeadingZeros(xor), MAX_LEADING_ZEROS);
+                int currentTrailing = Long.numberOfTrailingZeros(xor);
+
+                if (leading >= 0 && currentLeading >= leading && currentTrailing >= trailing) {
+                    bits.write(0b01, 2);
+                    bits.write(xor >>> trailing, 64 - leading - trailing);
+                } else {
+                    leading = currentLeading;
+                    trailing = currentTrailing;
+                    int meaningful = 64 - leading - trailing;
+                    bits.write(0b11 | (leading << 2) | ((meaningful - 1) << 7), 13);
+                    bits.write(xor >>> trailing, meaningful);
+                }
+            }
+            previous = current;
+        }
+        blocks++;
+    }
+
+    /**
+     * Decodes the block sequentially into the given array
+     *
+     * @param blockIndex the index of the block
+     * @param dest       the destination array
+     * @param destIndex  the index of the first element of the block in the destination array
+     */
+    private void decode(int blockIndex, double[] dest, int destIndex) {
+        long position = blockPositions[blockIndex];
+        long value = blockFirsts[blockIndex];
+        dest[destIndex] = Double.longBitsToDouble(value);
+
+        int trailing = 0;
+        int meaningful = 0;
+        for (int i = 1; i < BLOCK_SIZE; i++) {
+            long control = bits.read(position, 2);
+            if ((control & 1) == 0) {
+                position += 1;
+            } else {
+                if (control == 0b11) {
+                    long header = bits.read(position + 2, 11);
+                    int leading = (int) (header & 0x1F);
+                    meaningful = (int) (header >>> 5) + 1;
+                    trailing = 64 - leading - meaningful;
+                    position += 13;
+                } else {
+                    position += 2;
+                }
+                value ^= bits.read(position, meaningful) << trailing;
+                position += meaningful;
+            }
+            dest[destIndex + i] = Double.longBitsToDouble(value);
+        }
+    }
+
+    /**
+     * A decoded block. It is immutable, hence concurrent readers see either the old or the new block.
+     */
+    private static final class DecodedBlock {
+        private final int index;
+        private final double[] elements;
+
+        private DecodedBlock(int index, double[] elements) {
+            this.index = index;
+            this.elements = elements;
+        }
+    }
+}
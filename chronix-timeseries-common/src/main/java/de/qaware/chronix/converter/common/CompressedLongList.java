@@ -0,0 +1,592 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.converter.common;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.Spliterators;
+
+import static de.qaware.chronix.converter.common.ListUtil.arrayRangeCheck;
+import static de.qaware.chronix.converter.common.ListUtil.rangeCheck;
+import static de.qaware.chronix.converter.common.ListUtil.rangeCheckForAdd;
+import static de.qaware.chronix.converter.common.ListUtil.subListRangeCheck;
+
+/**
+ * A long list that stores its elements delta-of-delta encoded, e.g. the timestamps of a time series.
+ * The elements are encoded in blocks of {@link #BLOCK_SIZE} elements.
+ * A block header holds the first element and the position of the block in a bit stream.
+ * The other elements are stored as the difference of their delta to the previous delta with a variable number of bits:
+ * <ul>
+ * <li>1 bit if the delta does not change, e.g. for scrape timestamps with a fixed interval,</li>
+ * <li>9, 12 or 16 bits for small changes (jitter),</li>
+ * <li>37 or 69 bits otherwise.</li>
+ * </ul>
+ * The last block is not encoded until it is full. Hence appending an element is O(1) amortized
+ * and the last elements are read without decoding.
+ * The random access decodes the block of the element and keeps the last decoded block.
+ * Hence iterating the list decodes each block only once.
+ * <p>
+ * Modifications other than appending elements, like {@link #set(int, long)}, {@link #remove(int)} or the sorts,
+ * decode all elements and encode them again. Use the list for columns that are appended and read.
+ * Methods that need the elements in one array, like {@link #asReadOnlyBuffer()} or {@link #subList(int, int)}, decode them.
+ *
+ * @author f.lautenschlager
+ */
+public final class CompressedLongList extends LongList {
+
+    private static final long serialVersionUID = 3874658018734462201L;
+
+    /**
+     * The number of elements per encoded block
+     */
+    public static final int BLOCK_SIZE = 128;
+
+    private static final int BLOCK_SHIFT = 7;
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+    private static final long[] EMPTY = {};
+
+    //The first element and the bit position of each encoded block
+    private long[] blockFirsts = EMPTY;
+    private long[] blockPositions = EMPTY;
+    private int blocks;
+    private BitBuffer bits = new BitBuffer();
+
+    //The last block that is not encoded yet
+    private long[] tail = EMPTY;
+    private int size;
+
+    //The last decoded block, replaced as a whole to keep concurrent reads safe
+    private transient DecodedBlock decoded;
+
+    /**
+     * Constructs an empty list.
+     */
+    public CompressedLongList() {
+        super(0);
+    }
+
+    /**
+     * @return the number of encoded blocks
+     */
+    int blocks() {
+        return blocks;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int indexOf(long o) {
+        for (int i = 0; i < size; i++) {
+            if (o == elementAt(i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int lastIndexOf(long o) {
+        for (int i = size - 1; i >= 0; i--) {
+            if (o == elementAt(i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public LongList copy() {
+        CompressedLongList copy = new CompressedLongList();
+        copy.blockFirsts = Arrays.copyOf(blockFirsts, blocks);
+        copy.blockPositions = Arrays.copyOf(blockPositions, blocks);
+        copy.blocks = blocks;
+        copy.bits = bits.copy();
+        copy.tail = tail.length == 0 ? EMPTY : tail.clone();
+        copy.size = size;
+        return copy;
+    }
+
+    @Override
+    public long[] toArray() {
+        long[] array = new long[size];
+        copyTo(0, array, 0, size);
+        return array;
+    }
+
+    /**
+     * The elements are not stored in one array.
+     *
+     * @return null
+     */
+    @Override
+    long[] array() {
+        return null;
+    }
+
+    @Override
+    void copyTo(int srcIndex, long[] dest, int destIndex, int length) {
+        long[] block = null;
+        int copied = 0;
+        while (copied < length) {
+            int index = srcIndex + copied;
+            int blockIndex = index >>> BLOCK_SHIFT;
+            int offset = index & BLOCK_MASK;
+            int n = Math.min(length - copied, BLOCK_SIZE - offset);
+
+            if (blockIndex == blocks) {
+                System.arraycopy(tail, offset, dest, destIndex + copied, n);
+            } else if (offset == 0 && n == BLOCK_SIZE) {
+                decode(blockIndex, dest, destIndex + copied);
+            } else {
+                if (block == null) {
+                    block = new long[BLOCK_SIZE];
+                }
+                decode(blockIndex, block, 0);
+                System.arraycopy(block, offset, dest, destIndex + copied, n);
+            }
+            copied += n;
+        }
+    }
+
+    /**
+     * Returns a read-only buffer holding the elements of this list.
+     * As the elements are encoded, they are decoded into a new array.
+     *
+     * @return a read-only buffer holding the elements from the first to the last element
+     */
+    @Override
+    public LongBuffer asReadOnlyBuffer() {
+        return LongBuffer.wrap(toArray()).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns a read-only list with the elements between fromIndex (inclusive) and toIndex (exclusive).
+     * As the elements are encoded, they are decoded into a new array.
+     *
+     * @param fromIndex the index of the first element (inclusive)
+     * @param toIndex   the index of the last element (exclusive)
+     * @return a read-only list with the elements of the given range
+     */
+    @Override
+    public LongList subList(int fromIndex, int toIndex) {
+        subListRangeCheck(fromIndex, toIndex, size);
+        int length = toIndex - fromIndex;
+        long[] elements = new long[length];
+        copyTo(fromIndex, elements, 0, length);
+        return new LongListView(elements, 0, length);
+    }
+
+    /**
+     * Returns a spliterator over the decoded elements.
+     *
+     * @return a spliterator over the elements from the first to the last element
+     */
+    @Override
+    public Spliterator.OfLong spliterator() {
+        return Spliterators.spliterator(toArray(), Spliterator.ORDERED);
+    }
+
+    @Override
+    public long get(int index) {
+        rangeCheck(index, size);
+        return elementAt(index);
+    }
+
+    @Override
+    long elementAt(int index) {
+        int blockIndex = index >>> BLOCK_SHIFT;
+        if (blockIndex == blocks) {
+            return tail[index & BLOCK_MASK];
+        }
+        DecodedBlock block = decoded;
+        if (block == null || block.index != blockIndex) {
+            long[] elements = new long[BLOCK_SIZE];
+            decode(blockIndex, elements, 0);
+            block = new DecodedBlock(blockIndex, elements);
+            decoded = block;
+        }
+        return block.elements[index & BLOCK_MASK];
+    }
+
+    /**
+     * Sets the element. If the element is not in the last block, all elements are encoded again.
+     */
+    @Override
+    public long set(int index, long element) {
+        rangeCheck(index, size);
+
+        if (index >>> BLOCK_SHIFT == blocks) {
+            long oldValue = tail[index & BLOCK_MASK];
+            tail[index & BLOCK_MASK] = element;
+            return oldValue;
+        }
+        long[] elements = toArray();
+        long oldValue = elements[index];
+        elements[index] = element;
+        encodeAll(elements, size);
+        return oldValue;
+    }
+
+    @Override
+    public boolean add(long e) {
+        if (tailSize() == BLOCK_SIZE) {
+            encodeTail();
+        }
+        if (tail.length < BLOCK_SIZE) {
+            tail = Arrays.copyOf(tail, BLOCK_SIZE);
+        }
+        tail[tailSize()] = e;
+        size++;
+        return true;
+    }
+
+    /**
+     * @return the number of elements in the tail
+     */
+    private int tailSize() {
+        return size - (blocks << BLOCK_SHIFT);
+    }
+
+    /**
+     * Reserves the block headers for the given number of elements
+     */
+    @Override
+    public void ensureCapacity(int minCapacity) {
+        int neededBlocks = minCapacity >>> BLOCK_SHIFT;
+        if (neededBlocks > blockFirsts.length) {
+            blockFirsts = Arrays.copyOf(blockFirsts, neededBlocks);
+            blockPositions = Arrays.copyOf(blockPositions, neededBlocks);
+        }
+    }
+
+    /**
+     * Trims the block headers, the bit stream and the last block to the elements.
+     * The next append allocates the last block again.
+     */
+    @Override
+    public void trimToSize() {
+        if (blocks < blockFirsts.length) {
+            blockFirsts = (blocks == 0) ? EMPTY : Arrays.copyOf(blockFirsts, blocks);
+            blockPositions = (blocks == 0) ? EMPTY : Arrays.copyOf(blockPositions, blocks);
+        }
+        bits.trimToSize();
+        int tailSize = tailSize();
+        if (tailSize < tail.length) {
+            tail = (tailSize == 0) ? EMPTY : Arrays.copyOf(tail, tailSize);
+        }
+        decoded = null;
+    }
+
+    @Override
+    public long estimatedRetainedBytes() {
+        long bytes = MemoryFootprint.objectBytes(SHALLOW_FIELD_BYTES + 5 * MemoryFootprint.REFERENCE_BYTES + 2 * Integer.BYTES)
+                + 2 * MemoryFootprint.arrayBytes(blockFirsts.length, Long.BYTES)
+                + bits.estimatedRetainedBytes()
+                + MemoryFootprint.arrayBytes(tail.length, Long.BYTES);
+        if (decoded != null) {
+            bytes += MemoryFootprint.objectBytes(MemoryFootprint.REFERENCE_BYTES + Integer.BYTES)
+                    + MemoryFootprint.arrayBytes(BLOCK_SIZE, Long.BYTES);
+        }
+        return bytes;
+    }
+
+    @Override
+    public void add(int index, long element) {
+        rangeCheckForAdd(index, size);
+        if (index == size) {
+            add(element);
+            return;
+        }
+
+        long[] elements = new long[size + 1];
+        copyTo(0, elements, 0, index);
+        elements[index] = element;
+        copyTo(index, elements, index + 1, size - index);
+        encodeAll(elements, elements.length);
+    }
+
+    @Override
+    public long remove(int index) {
+        rangeCheck(index, size);
+
+        long oldValue = elementAt(index);
+        removeRange(index, index + 1);
+        return oldValue;
+    }
+
+    @Override
+    public boolean remove(long o) {
+        int index = indexOf(o);
+        if (index >= 0) {
+            removeRange(index, index + 1);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void clear() {
+        blockFirsts = EMPTY;
+        blockPositions = EMPTY;
+        blocks = 0;
+        bits.clear();
+        tail = EMPTY;
+        size = 0;
+        decoded = null;
+    }
+
+    @Override
+    public boolean addAll(LongList c) {
+        long[] elements = c.array();
+        if (elements != null) {
+            return addAll(elements, c.arrayOffset(), c.size());
+        }
+        return addAll(c.toArray());
+    }
+
+    @Override
+    public boolean addAll(long[] otherLongs) {
+        return addAll(otherLongs, 0, otherLongs.length);
+    }
+
+    @Override
+    public boolean addAll(long[] otherLongs, int fromIndex, int length) {
+        arrayRangeCheck(fromIndex, length, otherLongs.length);
+
+        int copied = 0;
+        while (copied < length) {
+            if (tailSize() == BLOCK_SIZE) {
+                encodeTail();
+            }
+            int offset = tailSize();
+            if (tail.length < BLOCK_SIZE) {
+                tail = Arrays.copyOf(tail, BLOCK_SIZE);
+            }
+            int n = Math.min(length - copied, BLOCK_SIZE - offset);
+            System.arraycopy(otherLongs, fromIndex + copied, tail, offset, n);
+            size += n;
+            copied += n;
+        }
+        return length != 0;
+    }
+
+    @Override
+    public boolean addAll(int index, LongList c) {
+        rangeCheckForAdd(index, size);
+        if (index == size) {
+            return addAll(c);
+        }
+
+        long[] a = c.toArray();
+        long[] elements = new long[size + a.length];
+        copyTo(0, elements, 0, index);
+        System.arraycopy(a, 0, elements, index, a.length);
+        copyTo(index, elements, index + a.length, size - index);
+        encodeAll(elements, elements.length);
+        return a.length != 0;
+    }
+
+    /**
+     * Sorts this list ascending. The elements are decoded, sorted and encoded again.
+     */
+    @Override
+    public void sort() {
+        long[] elements = toArray();
+        Arrays.sort(elements);
+        encodeAll(elements, size);
+    }
+
+    /**
+     * Sorts this list ascending and applies the same permutation to the given values.
+     * The elements are decoded, sorted and encoded again.
+     *
+     * @param values the values belonging to the longs of this list
+     * @throws IllegalArgumentException if the values do not have the same size as this list
+     */
+    @Override
+    public void sort(DoubleList values) {
+        checkValues(values);
+
+        long[] keys = toArray();
+        double[] valueData = values.toArray();
+        DualArraySort.sort(keys, valueData, size);
+        encodeAll(keys, size);
+        values.setElements(valueData);
+    }
+
+    /**
+     * Merges the ascending runs of this list and applies the same permutation to the given values.
+     * The elements are decoded, merged and encoded again.
+     *
+     * @param values    the values belonging to the longs of this list
+     * @param runStarts the ascending start indices of the runs after the first run
+     * @param runCount  the number of given run starts
+     * @throws IllegalArgumentException if the values do not have the same size as this list
+     */
+    @Override
+    public void mergeRuns(DoubleList values, int[] runStarts, int runCount) {
+        checkValues(values);
+
+        long[] keys = toArray();
+        double[] valueData = values.toArray();
+        DualArraySort.mergeRuns(keys, valueData, runStarts, runCount, size);
+        encodeAll(keys, size);
+        values.setElements(valueData);
+    }
+
+    @Override
+    public void removeRange(int fromIndex, int toIndex) {
+        int numRemoved = toIndex - fromIndex;
+        if (numRemoved == 0) {
+            return;
+        }
+        //removing the last elements of the tail needs no encoding
+        if (toIndex == size && fromIndex >>> BLOCK_SHIFT == blocks) {
+            size = fromIndex;
+            return;
+        }
+
+        long[] elements = new long[size - numRemoved];
+        copyTo(0, elements, 0, fromIndex);
+        copyTo(toIndex, elements, fromIndex, size - toIndex);
+        encodeAll(elements, elements.length);
+    }
+
+    /**
+     * Replaces the elements of this list with the given elements
+     */
+    private void encodeAll(long[] elements, int length) {
+        clear();
+        addAll(elements, 0, length);
+    }
+
+    /**
+     * Encodes the full tail as a new block
+     */
+    private void encodeTail() {
+        if (blocks == blockFirsts.length) {
+            int newCapacity = Math.max(4, blocks + (blocks >> 1));
+            blockFirsts = Arrays.copyOf(blockFirsts, newCapacity);
+            blockPositions = Arrays.copyOf(blockPositions, newCapacity);
+        }
+        blockFirsts[blocks] = tail[0];
+        blockPositions[blocks] = bits.length();
+
+        long previous = tail[0];
+        long previousDelta = 0;
+        for (int i = 1; i < BLOCK_SIZE; i++) {
+            long delta = tail[i] - previous;
+            writeDeltaOfDelta(delta - previousDelta);
+            previous = tail[i];
+            previousDelta = delta;
+        }
+        blocks++;
+    }
+
+    /**
+     * Writes a prefix code followed by the zig-zag encoded delta of delta.
+     * The prefix is read from the lowest bit on: 0, 10, 110, 1110, 11110 or 11111.
+     */
+    private void writeDeltaOfDelta(long deltaOfDelta) {
+        //the zig-zag value is unsigned, hence the checks shift instead of compare
+        long zigZag = (deltaOfDelta << 1) ^ (deltaOfDelta >> 63);
+        if (zigZag == 0) {
+            bits.write(0, 1);
+        } else if (zigZag >>> 7 == 0) {
+            bits.write(0b01 | (zigZag << 2), 9);
+        } else if (zigZag >>> 9 == 0) {
+            bits.write(0b011 | (zigZag << 3), 12);
+        } else if (zigZag >>> 12 == 0) {
+            bits.write(0b0111 | (zigZag << 4), 16);
+        } else if (zigZag >>> 32 == 0) {
+            bits.write(0b01111 | (zigZag << 5), 37);
+        } else {
+            bits.write(0b11111, 5);
+            bits.write(zigZag, 64);
+        }
+    }
+
+    /**
+     * Decodes the block into the given array
+     *
+     * @param blockIndex the index of the block
+     * @param dest       the destination array
+     * @param destIndex  the index of the first element of the block in the destination array
+     */
+    private void decode(int blockIndex, long[] dest, int destIndex) {
+        long position = blockPositions[blockIndex];
+        long value = blockFirsts[blockIndex];
+        long delta = 0;
+        dest[destIndex] = value;
+
+        for (int i = 1; i < BLOCK_SIZE; i++) {
+            int prefix = Long.numberOfTrailingZeros(~bits.read(position, 5));
+            long zigZag;
+            switch (prefix) {
+                case 0:
+                    zigZag = 0;
+                    position += 1;
+                    break;
+                case 1:
+                    zigZag = bits.read(position + 2, 7);
+                    position += 9;
+                    break;
+                case 2:
+                    zigZag = bits.read(position + 3, 9);
+                    position += 12;
+                    break;
+                case 3:
+                    zigZag = bits.read(position + 4, 12);
+                    position += 16;
+                    break;
+                case 4:
+                    zigZag = bits.read(position + 5, 32);
+                    position += 37;
+                    break;
+                default:
+                    zigZag = bits.read(position + 5, 64);
+                    position += 69;
+                    break;
+            }
+            delta += (zigZag >>> 1) ^ -(zigZag & 1);
+            value += delta;
+            dest[destIndex + i] = value;
+        }
+    }
+
+    /**
+     * A decoded block. It is immutable, hence concurrent readers see either the old or the new block.
+     */
+    private static final class DecodedBlock {
+        private final int index;
+        private final long[] elements;
+
+        private DecodedBlock(int index, long[] elements) {
+            this.index = index;
+            this.elements = elements;
+        }
+    }
+}
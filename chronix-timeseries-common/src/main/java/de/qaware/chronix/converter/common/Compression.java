@@ -20,50 +20,340 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
-import java.util.zip.GZIPInputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.zip.GZIPOutputStream;
 
 /**
- * Class that provides a simple gzip compression and decompression
+ * Class that provides the compression and decompression of the serialized points.
+ * The bytes are compressed with gzip unless another {@link CompressionCodec} is given.
+ * Bytes compressed with another codec start with a header of three bytes: two magic bytes and the id of the codec.
+ * A gzip stream starts with its own magic bytes, hence it is written without a header.
+ * The decompression detects the codec, gzip streams written before the codecs existed are still read.
+ * <p>
+ * The built-in codecs reuse pooled deflaters and inflaters and the compression reuses a buffer per thread.
+ * To avoid further copies, the bytes can be compressed and decompressed into a given byte[] or {@link ByteBuffer}.
  *
  * @author f.lautenschlager
  */
 public final class Compression {
 
+    /**
+     * The gzip codec, the default
+     */
+    public static final CompressionCodec GZIP = new GzipCodec();
+
+    /**
+     * The deflate codec with the default level.
+     * Its output is like gzip without the gzip header and trailer. Use {@link #deflate(int)} for other levels.
+     */
+    public static final CompressionCodec DEFLATE = new DeflateCodec(-1);
+
+    /**
+     * The pure Java LZ4 codec. It compresses less than gzip but decompresses several times faster.
+     */
+    public static final CompressionCodec LZ4 = new Lz4Codec();
+
+    /**
+     * The number of header bytes in front of bytes not compressed with gzip
+     */
+    public static final int HEADER_LENGTH = 3;
+
     private static final Logger LOGGER = LoggerFactory.getLogger(Compression.class);
 
+    //The magic bytes of the header, a gzip stream starts with 0x1f 0x8b
+    private static final byte MAGIC_0 = (byte) 0xC0;
+    private static final byte MAGIC_1 = (byte) 0xDE;
+    private static final byte GZIP_MAGIC_0 = (byte) 0x1f;
+    private static final byte GZIP_MAGIC_1 = (byte) 0x8b;
+
+    private static final int MAX_CODECS = 256;
+    //the buffer of a thread is not kept if it would exceed 1 MB
+    private static final int MAX_SCRATCH_SIZE = 1 << 20;
+    private static final ThreadLocal<byte[]> SCRATCH = new ThreadLocal<>();
+    private static final AtomicReferenceArray<CompressionCodec> CODECS = new AtomicReferenceArray<>(MAX_CODECS);
+
+    static {
+        CODECS.set(GZIP.id(), GZIP);
+        CODECS.set(DEFLATE.id(), DEFLATE);
+        CODECS.set(LZ4.id(), LZ4);
+    }
+
     private Compression() {
         //avoid instances
     }
 
     /**
-     * Compresses the given byte[]
+     * Delivers the deflate codec with the given level.
+     * Lower levels compress faster, higher levels compress better.
+     *
+     * @param level the compression level between 0 (no compression) and 9 (best compression) or -1 for the default level
+     * @return the deflate codec
+     * @throws IllegalArgumentException if the level is not between -1 and 9
+     */
+    public static CompressionCodec deflate(int level) {
+        return new DeflateCodec(level);
+    }
+
+    /**
+     * Registers a custom codec. Afterwards bytes compressed with the codec are decompressed automatically.
+     * Registering the same codec twice has no effect.
+     *
+     * @param codec the codec
+     * @throws IllegalArgumentException if the id of the codec is not between 0 and 255 or used by another codec
+     */
+    public static void register(CompressionCodec codec) {
+        int id = codec.id();
+        if (id < 0 || id >= MAX_CODECS) {
+            throw new IllegalArgumentException("Codec id has to be between 0 and 255. Current value is: " + id);
+        }
+        if (!CODECS.compareAndSet(id, null, codec) && CODECS.get(id) != codec) {
+            throw new IllegalArgumentException("Codec id " + id + " is already used by codec " + CODECS.get(id).name());
+        }
+    }
+
+    /**
+     * Detects the codec the given bytes are compressed with
+     *
+     * @param compressed the compressed bytes
+     * @return the codec or null if the bytes are not compressed with a known codec
+     */
+    public static CompressionCodec codecOf(byte[] compressed) {
+        if (compressed == null) {
+            return null;
+        }
+        return codecOf(compressed, 0, compressed.length);
+    }
+
+    private static CompressionCodec codecOf(byte[] compressed, int offset, int length) {
+        if (isGzip(compressed, offset, length)) {
+            return GZIP;
+        }
+        if (!hasHeader(compressed, offset, length)) {
+            return null;
+        }
+        return CODECS.get(compressed[offset + 2] & 0xFF);
+    }
+
+    private static boolean isGzip(byte[] compressed, int offset, int length) {
+        return length >= 2 && compressed[offset] == GZIP_MAGIC_0 && compressed[offset + 1] == GZIP_MAGIC_1;
+    }
+
+    private static boolean hasHeader(byte[] compressed, int offset, int length) {
+        return length >= HEADER_LENGTH && compressed[offset] == MAGIC_0 && compressed[offset + 1] == MAGIC_1;
+    }
+
+    /**
+     * Delivers the codec to decompress the given bytes with.
+     * Gzip streams and unknown bytes are read with gzip like before the codecs existed.
+     */
+    private static CompressionCodec decompressionCodec(byte[] compressed, int offset, int length) {
+        CompressionCodec codec = codecOf(compressed, offset, length);
+        return codec != null ? codec : GZIP;
+    }
+
+    /**
+     * @return the number of header bytes in front of the bytes compressed with the given codec
+     */
+    private static int headerLength(CompressionCodec codec) {
+        return codec.id() == GzipCodec.ID ? 0 : HEADER_LENGTH;
+    }
+
+    /**
+     * @return the number of header bytes in front of the given compressed bytes
+     */
+    private static int headerLength(byte[] compressed, int offset, int length) {
+        return hasHeader(compressed, offset, length) && codecOf(compressed, offset, length) != null ? HEADER_LENGTH : 0;
+    }
+
+    /**
+     * Delivers the maximum number of bytes the built-in codecs compress the given number of bytes to, including the header.
+     * A destination of this size always holds the compressed bytes.
+     *
+     * @param length the number of bytes to compress
+     * @return the maximum number of compressed bytes
+     */
+    public static int maxCompressedLength(int length) {
+        return length + length / 255 + 64;
+    }
+
+    /**
+     * Compresses the given byte[] with gzip
      *
      * @param decompressed - the byte[] to compress
      * @return the byte[] compressed
      */
     public static byte[] compress(byte[] decompressed) {
+        return compress(decompressed, GZIP);
+    }
+
+    /**
+     * Compresses the given byte[] with the given codec
+     *
+     * @param decompressed - the byte[] to compress
+     * @param codec        - the codec, see {@link #GZIP}, {@link #LZ4} or {@link #deflate(int)}
+     * @return the byte[] compressed, starting with the header unless the codec is gzip
+     */
+    public static byte[] compress(byte[] decompressed, CompressionCodec codec) {
         if (decompressed == null) {
             return new byte[]{};
         }
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(decompressed.length);
-        OutputStream gzipOutputStream = null;
+        byte[] buffer = scratch(maxCompressedLength(decompressed.length));
         try {
-            gzipOutputStream = new GZIPOutputStream(byteArrayOutputStream);
-            gzipOutputStream.write(decompressed);
-            gzipOutputStream.flush();
-            byteArrayOutputStream.flush();
+            int length = compress(decompressed, 0, decompressed.length, buffer, 0, codec);
+            if (length >= 0) {
+                return Arrays.copyOf(buffer, length);
+            }
+            //custom codecs could exceed the maximum length
+            return compressToStream(decompressed, codec);
         } catch (IOException e) {
-            LOGGER.error("Exception occurred while compressing gzip stream.", e);
+            LOGGER.error("Exception occurred while compressing {} stream.", codec.name(), e);
             return null;
-        } finally {
-            IOUtils.closeQuietly(gzipOutputStream);
-            IOUtils.closeQuietly(byteArrayOutputStream);
         }
+    }
 
+    private static byte[] compressToStream(byte[] decompressed, CompressionCodec codec) throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(decompressed.length);
+        if (codec.id() != GzipCodec.ID) {
+            byteArrayOutputStream.write(MAGIC_0);
+            byteArrayOutputStream.write(MAGIC_1);
+            byteArrayOutputStream.write(codec.id());
+        }
+        codec.compress(decompressed, 0, decompressed.length, byteArrayOutputStream);
         return byteArrayOutputStream.toByteArray();
     }
 
+    /**
+     * Compresses the given bytes with the given codec into the given array
+     *
+     * @param src        the bytes to compress
+     * @param offset     the index of the first byte
+     * @param length     the number of bytes
+     * @param dest       the array the compressed bytes are written to, see {@link #maxCompressedLength(int)}
+     * @param destOffset the index of the first compressed byte in the array
+     * @param codec      the codec, see {@link #GZIP}, {@link #LZ4} or {@link #deflate(int)}
+     * @return the number of written bytes including the header or -1 if they do not fit into the array
+     * @throws IOException if the bytes can not be compressed
+     */
+    public static int compress(byte[] src, int offset, int length, byte[] dest, int destOffset, CompressionCodec codec) throws IOException {
+        ListUtil.arrayRangeCheck(offset, length, src.length);
+        int headerLength = headerLength(codec);
+        if (destOffset < 0 || destOffset > dest.length - headerLength) {
+            return -1;
+        }
+        if (headerLength > 0) {
+            dest[destOffset] = MAGIC_0;
+            dest[destOffset + 1] = MAGIC_1;
+            dest[destOffset + 2] = (byte) codec.id();
+        }
+        int compressedLength = codec.compress(src, offset, length, dest, destOffset + headerLength);
+        return compressedLength < 0 ? -1 : headerLength + compressedLength;
+    }
+
+    /**
+     * Compresses the given bytes with the given codec into the remaining bytes of the given buffer.
+     * The position of the buffer is moved behind the written bytes.
+     *
+     * @param src    the bytes to compress
+     * @param offset the index of the first byte
+     * @param length the number of bytes
+     * @param dest   the buffer the compressed bytes are written to
+     * @param codec  the codec, see {@link #GZIP}, {@link #LZ4} or {@link #deflate(int)}
+     * @return the number of written bytes including the header or -1 if they do not fit into the buffer
+     * @throws IOException if the bytes can not be compressed
+     */
+    public static int compress(byte[] src, int offset, int length, ByteBuffer dest, CompressionCodec codec) throws IOException {
+        if (isWholeArray(dest)) {
+            int written = compress(src, offset, length, dest.array(), dest.arrayOffset() + dest.position(), codec);
+            if (written >= 0) {
+                dest.position(dest.position() + written);
+            }
+            return written;
+        }
+        byte[] buffer = scratch(maxCompressedLength(length));
+        int written = compress(src, offset, length, buffer, 0, codec);
+        if (written < 0 || written > dest.remaining()) {
+            return -1;
+        }
+        dest.put(buffer, 0, written);
+        return written;
+    }
+
+    /**
+     * Decompresses the given bytes into the given array with the codec detected from the header
+     *
+     * @param compressed the compressed bytes
+     * @param offset     the index of the first compressed byte
+     * @param length     the number of compressed bytes
+     * @param dest       the array the decompressed bytes are written to
+     * @param destOffset the index of the first decompressed byte in the array
+     * @return the number of decompressed bytes or -1 if they do not fit into the array
+     * @throws IOException if the bytes are not compressed with a known codec
+     */
+    public static int decompress(byte[] compressed, int offset, int length, byte[] dest, int destOffset) throws IOException {
+        ListUtil.arrayRangeCheck(offset, length, compressed.length);
+        if (destOffset < 0 || destOffset > dest.length) {
+            return -1;
+        }
+        CompressionCodec codec = decompressionCodec(compressed, offset, length);
+        int headerLength = headerLength(compressed, offset, length);
+        return codec.decompress(compressed, offset + headerLength, length - headerLength, dest, destOffset);
+    }
+
+    /**
+     * Decompresses the given bytes into the remaining bytes of the given buffer with the codec detected from the header.
+     * The position of the buffer is moved behind the written bytes.
+     *
+     * @param compressed the compressed bytes
+     * @param offset     the index of the first compressed byte
+     * @param length     the number of compressed bytes
+     * @param dest       the buffer the decompressed bytes are written to
+     * @return the number of decompressed bytes or -1 if they do not fit into the buffer
+     * @throws IOException if the bytes are not compressed with a known codec
+     */
+    public static int decompress(byte[] compressed, int offset, int length, ByteBuffer dest) throws IOException {
+        if (isWholeArray(dest)) {
+            int written = decompress(compressed, offset, length, dest.array(), dest.arrayOffset() + dest.position());
+            if (written >= 0) {
+                dest.position(dest.position() + written);
+            }
+            return written;
+        }
+        byte[] buffer = scratch(dest.remaining());
+        int written = decompress(compressed, offset, length, buffer, 0);
+        if (written < 0 || written > dest.remaining()) {
+            return -1;
+        }
+        dest.put(buffer, 0, written);
+        return written;
+    }
+
+    /**
+     * @return true if the remaining bytes of the buffer end with its backing array, hence the codecs can write into the array
+     */
+    private static boolean isWholeArray(ByteBuffer buffer) {
+        return buffer.hasArray() && buffer.arrayOffset() + buffer.limit() == buffer.array().length;
+    }
+
+    /**
+     * Delivers the buffer of the current thread. A buffer larger than {@link #MAX_SCRATCH_SIZE} is not kept.
+     *
+     * @param minLength the minimal length of the buffer
+     * @return the buffer of the thread or a new one
+     */
+    private static byte[] scratch(int minLength) {
+        byte[] buffer = SCRATCH.get();
+        if (buffer != null && buffer.length >= minLength) {
+            return buffer;
+        }
+        buffer = new byte[minLength];
+        if (minLength <= MAX_SCRATCH_SIZE) {
+            SCRATCH.set(buffer);
+        }
+        return buffer;
+    }
+
     /**
      * Decompressed the given byte[]
      *
@@ -77,19 +367,47 @@ public final class Compression {
             return new byte[]{};
         }
         try {
-            InputStream decompressed = decompressToStream(compressed);
+            byte[] decompressed = decompressKnownLength(compressed);
             if (decompressed != null) {
-                return IOUtils.toByteArray(decompressed);
+                return decompressed;
+            }
+            try (InputStream decompressedStream = decompressToStream(compressed)) {
+                if (decompressedStream != null) {
+                    return IOUtils.toByteArray(decompressedStream);
+                }
             }
 
         } catch (IOException e) {
-            LOGGER.error("Exception occurred while decompressing gzip stream. Returning empty byte[].", e);
+            LOGGER.error("Exception occurred while decompressing stream. Returning empty byte[].", e);
         }
         return new byte[]{};
     }
 
     /**
-     * Decompresses the given byte[]
+     * Decompresses the bytes directly into an array of the decompressed length if the codec knows it
+     *
+     * @return the decompressed bytes or null if the length is unknown or wrong
+     */
+    private static byte[] decompressKnownLength(byte[] compressed) throws IOException {
+        CompressionCodec codec = codecOf(compressed);
+        if (codec == null) {
+            return null;
+        }
+        int headerLength = headerLength(compressed, 0, compressed.length);
+        int decompressedLength = codec.decompressedLength(compressed, headerLength, compressed.length - headerLength);
+        if (decompressedLength < 0) {
+            return null;
+        }
+        byte[] decompressed = new byte[decompressedLength];
+        int length = codec.decompress(compressed, headerLength, compressed.length - headerLength, decompressed, 0);
+        if (length < 0) {
+            return null;
+        }
+        return length == decompressedLength ? decompressed : Arrays.copyOf(decompressed, length);
+    }
+
+    /**
+     * Decompresses the given byte[] with the codec detected from its header
      *
      * @param compressed - the compressed bytes
      * @return an input stream on the decompressed bytes
@@ -99,10 +417,12 @@ public final class Compression {
             LOGGER.debug("Compressed bytes[] are null. Returning null.");
             return null;
         }
+        CompressionCodec codec = decompressionCodec(compressed, 0, compressed.length);
+        int offset = headerLength(compressed, 0, compressed.length);
         try {
-            return new GZIPInputStream(new ByteArrayInputStream(compressed));
+            return codec.decompress(compressed, offset, compressed.length - offset);
         } catch (IOException e) {
-            LOGGER.error("Exception occurred while decompressing gzip stream. Returning null.", e);
+            LOGGER.error("Exception occurred while decompressing {} stream. Returning null.", codec.name(), e);
         }
         return null;
     }
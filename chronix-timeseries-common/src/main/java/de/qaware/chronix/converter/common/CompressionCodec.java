@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.converter.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A compression codec for the serialized points, e.g. gzip, deflate or LZ4.
+ * {@link Compression} writes the id of the codec into a header in front of the compressed bytes.
+ * Hence the bytes are decompressed with the codec they were compressed with.
+ * Custom codecs are made known with {@link Compression#register(CompressionCodec)}.
+ * <p>
+ * The array based methods have default implementations on top of the streams.
+ * The built-in codecs override them to work on the arrays without intermediate streams and buffers.
+ *
+ * @author f.lautenschlager
+ */
+public interface CompressionCodec {
+
+    /**
+     * @return the id of the codec in the header, between 0 and 255 and unique for all codecs
+     */
+    int id();
+
+    /**
+     * @return the name of the codec, e.g. for logs
+     */
+    String name();
+
+    /**
+     * Compresses the given bytes
+     *
+     * @param data   the bytes to compress
+     * @param offset the index of the first byte
+     * @param length the number of bytes
+     * @param out    the stream the compressed bytes are written to, it is not closed
+     * @throws IOException if the bytes can not be compressed or written
+     */
+    void compress(byte[] data, int offset, int length, OutputStream out) throws IOException;
+
+    /**
+     * Decompresses the given bytes that were compressed by this codec
+     *
+     * @param compressed the compressed bytes without the header
+     * @param offset     the index of the first compressed byte
+     * @param length     the number of compressed bytes
+     * @return a stream on the decompressed bytes
+     * @throws IOException if the bytes are not compressed with this codec
+     */
+    InputStream decompress(byte[] compressed, int offset, int length) throws IOException;
+
+    /**
+     * Compresses the given bytes into the given array
+     *
+     * @param data       the bytes to compress
+     * @param offset     the index of the first byte
+     * @param length     the number of bytes
+     * @param dest       the array the compressed bytes are written to
+     * @param destOffset the index of the first compressed byte in the array
+     * @return the number of compressed bytes or -1 if they do not fit into the array
+     * @throws IOException if the bytes can not be compressed
+     */
+    default int compress(byte[] data, int offset, int length, byte[] dest, int destOffset) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        compress(data, offset, length, out);
+        if (out.size() > dest.length - destOffset) {
+            return -1;
+        }
+        System.arraycopy(out.toByteArray(), 0, dest, destOffset, out.size());
+        return out.size();
+    }
+
+    /**
+     * Decompresses the given bytes that were compressed by this codec into the given array
+     *
+     * @param compressed the compressed bytes without the header
+     * @param offset     the index of the first compressed byte
+     * @param length     the number of compressed bytes
+     * @param dest       the array the decompressed bytes are written to
+     * @param destOffset the index of the first decompressed byte in the array
+     * @return the number of decompressed bytes or -1 if they do not fit into the array
+     * @throws IOException if the bytes are not compressed with this codec
+     */
+    default int decompress(byte[] compressed, int offset, int length, byte[] dest, int destOffset) throws IOException {
+        try (InputStream in = decompress(compressed, offset, length)) {
+            int position = destOffset;
+            int read;
+            while (position < dest.length && (read = in.read(dest, position, dest.length - position)) != -1) {
+                position += read;
+            }
+            if (position == dest.length && in.read() != -1) {
+                return -1;
+            }
+            return position - destOffset;
+        }
+    }
+
+    /**
+     * Reads the number of decompressed bytes if the compressed bytes contain it
+     *
+     * @param compressed the compressed bytes without the header
+     * @param offset     the index of the first compressed byte
+     * @param length     the number of compressed bytes
+     * @return the number of decompressed bytes or -1 if it is unknown
+     */
+    default int decompressedLength(byte[] compressed, int offset, int length) {
+        return -1;
+    }
+}
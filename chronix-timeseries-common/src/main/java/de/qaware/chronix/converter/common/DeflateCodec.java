@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.converter.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The deflate codec with a configurable level. The bytes are written in the zlib format.
+ * All levels share the id as the level is not needed to decompress the bytes.
+ * The deflaters and inflaters are taken from the {@link ZlibPool}.
+ *
+ * @author f.lautenschlager
+ */
+final class DeflateCodec implements CompressionCodec {
+
+    static final int ID = 1;
+
+    private final int level;
+
+    /**
+     * @param level the compression level, see {@link Deflater#setLevel(int)}
+     * @throws IllegalArgumentException if the level is not between -1 and 9
+     */
+    DeflateCodec(int level) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Deflate level has to be between -1 and 9. Current value is: " + level);
+        }
+        this.level = level;
+    }
+
+    /**
+     * @return the compression level
+     */
+    int level() {
+        return level;
+    }
+
+    @Override
+    public int id() {
+        return ID;
+    }
+
+    @Override
+    public String name() {
+        return "deflate-" + level;
+    }
+
+    @Override
+    public void compress(byte[] data, int offset, int length, OutputStream out) throws IOException {
+        ListUtil.arrayRangeCheck(offset, length, data.length);
+
+        Deflater deflater = ZlibPool.deflater(level, false);
+        try {
+            deflater.setInput(data, offset, length);
+            ZlibPool.deflate(deflater, out);
+        } finally {
+            ZlibPool.release(deflater, level, false);
+        }
+    }
+
+    @Override
+    public int compress(byte[] data, int offset, int length, byte[] dest, int destOffset) {
+        ListUtil.arrayRangeCheck(offset, length, data.length);
+
+        Deflater deflater = ZlibPool.deflater(level, false);
+        try {
+            deflater.setInput(data, offset, length);
+            int end = ZlibPool.deflate(deflater, dest, destOffset, dest.length);
+            return end < 0 ? -1 : end - destOffset;
+        } finally {
+            ZlibPool.release(deflater, level, false);
+        }
+    }
+
+    @Override
+    public InputStream decompress(byte[] compressed, int offset, int length) throws IOException {
+        return new PooledInflaterInputStream(new ByteArrayInputStream(compressed, offset, length));
+    }
+
+    @Override
+    public int decompress(byte[] compressed, int offset, int length, byte[] dest, int destOffset) throws IOException {
+        ListUtil.arrayRangeCheck(offset, length, compressed.length);
+
+        Inflater inflater = ZlibPool.inflater(false);
+        try {
+            inflater.setInput(compressed, offset, length);
+            int end = ZlibPool.inflate(inflater, dest, destOffset);
+            return end < 0 ? -1 : end - destOffset;
+        } finally {
+            ZlibPool.release(inflater, false);
+        }
+    }
+
+    /**
+     * An inflater stream that hands its inflater back to the pool when it is closed
+     */
+    private static final class PooledInflaterInputStream extends InflaterInputStream {
+
+        private boolean released;
+
+        PooledInflaterInputStream(InputStream in) {
+            super(in, ZlibPool.inflater(false));
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            if (!released) {
+                released = true;
+                ZlibPool.release(inf, false);
+            }
+        }
+    }
+}
@@ -0,0 +1,443 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.converter.common;
+
+import java.io.Closeable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.file.Path;
+
+import static de.qaware.chronix.converter.common.ListUtil.arrayRangeCheck;
+import static de.qaware.chronix.converter.common.ListUtil.calculateNewCapacity;
+import static de.qaware.chronix.converter.common.ListUtil.rangeCheck;
+import static de.qaware.chronix.converter.common.ListUtil.rangeCheckForAdd;
+import static de.qaware.chronix.converter.common.ListUtil.subListRangeCheck;
+
+/**
+ * A long list that stores its elements off-heap, either in a direct buffer or in a buffer mapped from a file.
+ * Hence the elements do not put pressure on the garbage collector.
+ * The memory is freed with {@link #release()}, it is accounted in {@link OffHeapMemory}.
+ * A list holds at most 268435455 elements.
+ * <p>
+ * A {@link #copy()} is stored on the heap, a {@link #subList(int, int)} is a view on the off-heap elements.
+ * The sorts merge the elements block by block in off-heap scratch memory, see {@link RunMerge}.
+ * A serialized list is deserialized as a heap list.
+ *
+ * @author f.lautenschlager
+ */
+public final class DirectLongList extends LongList implements Closeable {
+
+    private static final long serialVersionUID = 2781496320527634171L;
+
+    private static final int DEFAULT_CAPACITY = 10;
+    private static final int ELEMENT_SHIFT = 3;
+    private static final int MAX_CAPACITY = OffHeapStorage.MAX_CAPACITY >>> ELEMENT_SHIFT;
+
+    private final transient OffHeapStorage storage;
+    private int size;
+
+    /**
+     * Constructs an empty list in a direct buffer with an initial capacity of ten.
+     */
+    public DirectLongList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty list in a direct buffer with the given initial capacity.
+     *
+     * @param initialCapacity the initial capacity of the list
+     * @throws IllegalArgumentException if the initial capacity is negative or too large
+     */
+    public DirectLongList(int initialCapacity) {
+        super(0);
+        this.storage = new OffHeapStorage(bytes(checkCapacity(initialCapacity)));
+    }
+
+    /**
+     * Constructs an empty list in a buffer mapped from the given file.
+     * The content of the file is overwritten, the file is not deleted on {@link #release()}.
+     *
+     * @param file            the file
+     * @param initialCapacity the initial capacity of the list
+     * @throws IllegalArgumentException if the initial capacity is negative or too large
+     * @throws UncheckedIOException     if the file can not be mapped
+     */
+    public DirectLongList(Path file, int initialCapacity) {
+        super(0);
+        this.storage = new OffHeapStorage(file, bytes(checkCapacity(initialCapacity)));
+    }
+
+    private DirectLongList(OffHeapStorage storage) {
+        super(0);
+        this.storage = storage;
+    }
+
+    private static int checkCapacity(int capacity) {
+        if (capacity < 0 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Illegal Capacity: " + capacity);
+        }
+        return capacity;
+    }
+
+    private static int bytes(int elements) {
+        return elements << ELEMENT_SHIFT;
+    }
+
+    /**
+     * Frees the off-heap memory. The list is empty afterwards and can not be used anymore.
+     * Releasing a list twice has no effect.
+     */
+    public void release() {
+        storage.release();
+        size = 0;
+    }
+
+    /**
+     * Same as {@link #release()}
+     */
+    @Override
+    public void close() {
+        release();
+    }
+
+    /**
+     * @return true if the list is stored in a mapped file
+     */
+    public boolean isMapped() {
+        return storage.isMapped();
+    }
+
+    /**
+     * @return the off-heap bytes held by this list, zero if it is released
+     */
+    public long offHeapBytes() {
+        return storage.capacity();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int indexOf(long o) {
+        ByteBuffer buffer = storage.buffer();
+        for (int i = 0; i < size; i++) {
+            if (o == buffer.getLong(bytes(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int lastIndexOf(long o) {
+        ByteBuffer buffer = storage.buffer();
+        for (int i = size - 1; i >= 0; i--) {
+            if (o == buffer.getLong(bytes(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return a copy of this list on the heap
+     */
+    @Override
+    public LongList copy() {
+        return new LongList(toArray(), size);
+    }
+
+    @Override
+    public long[] toArray() {
+        long[] array = new long[size];
+        copyTo(0, array, 0, size);
+        return array;
+    }
+
+    /**
+     * The elements are not stored in one array.
+     *
+     * @return null
+     */
+    @Override
+    long[] array() {
+        return null;
+    }
+
+    @Override
+    void copyTo(int srcIndex, long[] dest, int destIndex, int length) {
+        LongBuffer elements = storage.buffer().asLongBuffer();
+        elements.position(srcIndex);
+        elements.get(dest, destIndex, length);
+    }
+
+    private void copyFrom(long[] src, int srcIndex, int index, int length) {
+        LongBuffer elements = storage.buffer().asLongBuffer();
+        elements.position(index);
+        elements.put(src, srcIndex, length);
+    }
+
+    /**
+     * Returns a read-only buffer on the off-heap elements of this list without copying them.
+     * The buffer shows the changes of the elements until this list grows or is released.
+     * Afterwards it keeps the elements it was taken with, the memory is freed when the buffer is garbage collected.
+     *
+     * @return a read-only buffer holding the elements from the first to the last element
+     */
+    @Override
+    public LongBuffer asReadOnlyBuffer() {
+        LongBuffer elements = storage.sharedBuffer().asLongBuffer();
+        elements.limit(size);
+        return elements.asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns a read-only view of the elements between fromIndex (inclusive) and toIndex (exclusive).
+     * The view reads the off-heap elements of this list without copying them.
+     * Hence the view is only valid until this list is modified, it can not be read after {@link #release()}.
+     *
+     * @param fromIndex the index of the first element (inclusive)
+     * @param toIndex   the index of the last element (exclusive)
+     * @return a read-only view of the given range
+     */
+    @Override
+    public LongList subList(int fromIndex, int toIndex) {
+        subListRangeCheck(fromIndex, toIndex, size);
+        return new LongSubList(this, fromIndex, toIndex - fromIndex);
+    }
+
+    /**
+     * The scratch list is stored like this list, in a direct buffer or in a temporary file next to the mapped file.
+     */
+    @Override
+    DirectLongList newScratch(int capacity) {
+        return new DirectLongList(storage.newScratch(bytes(capacity)));
+    }
+
+    @Override
+    void releaseScratch() {
+        release();
+    }
+
+    @Override
+    public long get(int index) {
+        rangeCheck(index, size);
+        return storage.buffer().getLong(bytes(index));
+    }
+
+    @Override
+    long elementAt(int index) {
+        return storage.buffer().getLong(bytes(index));
+    }
+
+    @Override
+    public long set(int index, long element) {
+        rangeCheck(index, size);
+
+        ByteBuffer buffer = storage.buffer();
+        long oldValue = buffer.getLong(bytes(index));
+        buffer.putLong(bytes(index), element);
+        return oldValue;
+    }
+
+    @Override
+    public boolean add(long e) {
+        ensureCapacity(size + 1);
+        storage.buffer().putLong(bytes(size), e);
+        size++;
+        return true;
+    }
+
+    /**
+     * Grows the off-heap storage for the given number of elements.
+     * A mapped list extends its file.
+     */
+    @Override
+    public void ensureCapacity(int minCapacity) {
+        int capacity = storage.capacity() >>> ELEMENT_SHIFT;
+        int newCapacity = calculateNewCapacity(capacity, minCapacity);
+        if (newCapacity != -1) {
+            if (minCapacity > MAX_CAPACITY) {
+                throw new OutOfMemoryError("Direct long list can not hold " + minCapacity + " elements");
+            }
+            storage.grow(bytes(Math.min(Math.max(newCapacity, DEFAULT_CAPACITY), MAX_CAPACITY)), bytes(size));
+        }
+    }
+
+    /**
+     * Shrinks the off-heap storage to the size of this list.
+     * A mapped list maps fewer bytes of its file, the file itself is not truncated.
+     */
+    @Override
+    public void trimToSize() {
+        int used = bytes(size);
+        if (used < storage.capacity()) {
+            storage.grow(used, used);
+        }
+    }
+
+    /**
+     * The elements are stored off-heap, see {@link #offHeapBytes()}.
+     *
+     * @return the estimated heap bytes of this list without the off-heap elements
+     */
+    @Override
+    public long estimatedRetainedBytes() {
+        return MemoryFootprint.objectBytes(SHALLOW_FIELD_BYTES + MemoryFootprint.REFERENCE_BYTES + Integer.BYTES)
+                + OffHeapStorage.SHALLOW_BYTES;
+    }
+
+    @Override
+    public void add(int index, long element) {
+        rangeCheckForAdd(index, size);
+
+        ensureCapacity(size + 1);
+        ByteBuffer buffer = storage.buffer();
+        for (int i = size; i > index; i--) {
+            buffer.putLong(bytes(i), buffer.getLong(bytes(i - 1)));
+        }
+        buffer.putLong(bytes(index), element);
+        size++;
+    }
+
+    @Override
+    public long remove(int index) {
+        rangeCheck(index, size);
+
+        long oldValue = storage.buffer().getLong(bytes(index));
+        removeRange(index, index + 1);
+        return oldValue;
+    }
+
+    @Override
+    public boolean remove(long o) {
+        int index = indexOf(o);
+        if (index >= 0) {
+            removeRange(index, index + 1);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes all of the elements from this list. The off-heap memory is kept.
+     */
+    @Override
+    public void clear() {
+        size = 0;
+    }
+
+    @Override
+    public boolean addAll(LongList c) {
+        return addAll(c.toArray());
+    }
+
+    @Override
+    public boolean addAll(long[] otherLongs) {
+        return addAll(otherLongs, 0, otherLongs.length);
+    }
+
+    @Override
+    public boolean addAll(long[] otherLongs, int fromIndex, int length) {
+        arrayRangeCheck(fromIndex, length, otherLongs.length);
+        ensureCapacity(size + length);
+
+        copyFrom(otherLongs, fromIndex, size, length);
+        size += length;
+        return length != 0;
+    }
+
+    @Override
+    public boolean addAll(int index, LongList c) {
+        rangeCheckForAdd(index, size);
+
+        long[] a = c.toArray();
+        int numNew = a.length;
+        ensureCapacity(size + numNew);
+
+        ByteBuffer buffer = storage.buffer();
+        for (int i = size - 1; i >= index; i--) {
+            buffer.putLong(bytes(i + numNew), buffer.getLong(bytes(i)));
+        }
+        copyFrom(a, 0, index, numNew);
+        size += numNew;
+        return numNew != 0;
+    }
+
+    /**
+     * Sorts this list ascending. The sorted blocks are merged in off-heap scratch memory.
+     */
+    @Override
+    public void sort() {
+        RunMerge.sort(this, null);
+    }
+
+    /**
+     * Sorts this list ascending and applies the same permutation to the given values.
+     * The sorted blocks are merged in off-heap scratch memory, hence the sort does not copy the list to the heap.
+     *
+     * @param values the values belonging to the longs of this list
+     * @throws IllegalArgumentException if the values do not have the same size as this list
+     */
+    @Override
+    public void sort(DoubleList values) {
+        checkValues(values);
+        RunMerge.sort(this, values);
+    }
+
+    /**
+     * Merges the ascending runs of this list and applies the same permutation to the given values.
+     * The runs are merged in off-heap scratch memory, hence the merge does not copy the list to the heap.
+     *
+     * @param values    the values belonging to the longs of this list
+     * @param runStarts the ascending start indices of the runs after the first run
+     * @param runCount  the number of given run starts
+     * @throws IllegalArgumentException if the values do not have the same size as this list
+     */
+    @Override
+    public void mergeRuns(DoubleList values, int[] runStarts, int runCount) {
+        checkValues(values);
+        RunMerge.mergeRuns(this, values, runStarts, runCount);
+    }
+
+    @Override
+    public void removeRange(int fromIndex, int toIndex) {
+        int numRemoved = toIndex - fromIndex;
+        ByteBuffer buffer = storage.buffer();
+        for (int i = toIndex; i < size; i++) {
+            buffer.putLong(bytes(i - numRemoved), buffer.getLong(bytes(i)));
+        }
+        size -= numRemoved;
+    }
+
+    /**
+     * The off-heap memory is not serialized, the list is serialized as a heap list
+     *
+     * @return a heap copy of this list
+     */
+    private Object writeReplace() {
+        return copy();
+    }
+}
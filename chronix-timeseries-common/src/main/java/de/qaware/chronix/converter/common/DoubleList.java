@@ -20,7 +20,12 @@ import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
 import java.io.Serializable;
+import java.nio.DoubleBuffer;
 import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.DoubleStream;
+import java.util.stream.StreamSupport;
 
 import static de.qaware.chronix.converter.common.ListUtil.*;
 
@@ -33,6 +38,16 @@ public class DoubleList implements Serializable {
 
     private static final long serialVersionUID = -1275724597860546074L;
 
+    /**
+     * The bytes of the fields of a list: the array reference and the size
+     */
+    static final int SHALLOW_FIELD_BYTES = MemoryFootprint.REFERENCE_BYTES + Integer.BYTES;
+
+    /**
+     * Default initial capacity.
+     */
+    private static final int DEFAULT_CAPACITY = 10;
+
     /**
      * Shared empty array instance used for empty instances.
      */
@@ -195,6 +210,58 @@ public class DoubleList implements Serializable {
         return Arrays.copyOf(doubles, size);
     }
 
+    /**
+     * Copies the elements of this list starting at srcIndex into the given array.
+     * Used to copy the elements between lists without an intermediate array.
+     *
+     * @param srcIndex  the index of the first element to copy
+     * @param dest      the destination array
+     * @param destIndex the start position in the destination array
+     * @param length    the number of elements to copy
+     */
+    void copyTo(int srcIndex, double[] dest, int destIndex, int length) {
+        System.arraycopy(doubles, srcIndex, dest, destIndex, length);
+    }
+
+    /**
+     * Delivers the array holding the elements to read them without copies, e.g. for aggregations.
+     * The element at index i is stored at array()[arrayOffset() + i].
+     * This method should be used with care as it delivers the reference.
+     *
+     * @return the underlying array or null if the elements are not stored in one array
+     */
+    double[] array() {
+        return doubles;
+    }
+
+    /**
+     * @return the index of the first element in {@link #array()}
+     */
+    int arrayOffset() {
+        return 0;
+    }
+
+
+    /**
+     * Increases the capacity of this list, if necessary, to hold at least the given number of elements.
+     * Callers that know the number of elements upfront avoid the intermediate copies of a growing list.
+     *
+     * @param minCapacity the desired minimum capacity
+     */
+    public void ensureCapacity(int minCapacity) {
+        int minExpand = (doubles != DEFAULT_CAPACITY_EMPTY_ELEMENT_DATA) ? 0 : DEFAULT_CAPACITY;
+        if (minCapacity > minExpand) {
+            growIfNeeded(calculateNewCapacity(doubles.length, minCapacity));
+        }
+    }
+
+    private void ensureCapacityInternal(int minCapacity) {
+        int capacity = minCapacity;
+        if (doubles == DEFAULT_CAPACITY_EMPTY_ELEMENT_DATA && minCapacity > 0) {
+            capacity = Math.max(DEFAULT_CAPACITY, minCapacity);
+        }
+        growIfNeeded(calculateNewCapacity(doubles.length, capacity));
+    }
 
     private void growIfNeeded(int newCapacity) {
         if (newCapacity != -1) {
@@ -202,6 +269,128 @@ public class DoubleList implements Serializable {
         }
     }
 
+    /**
+     * Trims the capacity of this list to its size, e.g. before the list is kept in a cache.
+     * The growth of the list leaves up to half of the array unused.
+     */
+    public void trimToSize() {
+        if (size < doubles.length) {
+            doubles = (size == 0) ? EMPTY_ELEMENT_DATA : Arrays.copyOf(doubles, size);
+        }
+    }
+
+    /**
+     * Estimates the heap bytes retained by this list including the unused capacity, see {@link MemoryFootprint}.
+     *
+     * @return the estimated bytes of this list
+     */
+    public long estimatedRetainedBytes() {
+        return MemoryFootprint.objectBytes(SHALLOW_FIELD_BYTES) + MemoryFootprint.arrayBytes(doubles.length, Double.BYTES);
+    }
+
+    /**
+     * This method should be used with care as it delivers the reference.
+     * It is used by the sort of the belonging {@link LongList}.
+     *
+     * @return the underlying array (could be larger than the size) or null if the elements are not stored in one array
+     */
+    double[] elementData() {
+        return doubles;
+    }
+
+    /**
+     * Replaces the first elements of this list with the given elements.
+     * It is used by the sort of the belonging {@link LongList} if the elements are not stored in one array.
+     *
+     * @param source the new elements, at most as many as this list contains
+     */
+    void setElements(double[] source) {
+        System.arraycopy(source, 0, doubles, 0, source.length);
+    }
+
+    /**
+     * Delivers the element at the given index without a range check.
+     * The searches use it to work on all kinds of double lists.
+     *
+     * @param index the index of the element
+     * @return the element
+     */
+    double elementAt(int index) {
+        return doubles[index];
+    }
+
+    /**
+     * Creates an empty list that stores its elements like this list, e.g. in chunks or off-heap.
+     * The lists that do not store their elements in one array sort through it, see {@link RunMerge}.
+     *
+     * @param capacity the number of elements the list has to hold
+     * @return the empty list, has to be released with {@link #releaseScratch()}
+     */
+    DoubleList newScratch(int capacity) {
+        return new DoubleList(capacity);
+    }
+
+    /**
+     * Frees the memory of a list created with {@link #newScratch(int)}.
+     * A heap list leaves it to the garbage collector.
+     */
+    void releaseScratch() {
+        //nothing to free
+    }
+
+    /**
+     * Returns a read-only buffer backed by the elements of this list.
+     * Unlike {@link #toArray()} the elements are not copied.
+     * The buffer is only valid until this list is modified.
+     *
+     * @return a read-only buffer holding the elements from the first to the last element
+     */
+    public DoubleBuffer asReadOnlyBuffer() {
+        return DoubleBuffer.wrap(doubles, 0, size).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns a spliterator over the elements of this list that is ORDERED, SIZED and SUBSIZED.
+     * The spliterator is only valid until this list is modified.
+     *
+     * @return a spliterator over the elements from the first to the last element
+     */
+    public Spliterator.OfDouble spliterator() {
+        double[] elements = array();
+        if (elements != null) {
+            int offset = arrayOffset();
+            return Spliterators.spliterator(elements, offset, offset + size(), Spliterator.ORDERED);
+        }
+        return new DoubleListSpliterator(this, 0, size());
+    }
+
+    /**
+     * Returns a sequential stream of the elements without boxing them.
+     * Use {@link DoubleStream#parallel()} to process large lists on all cores.
+     * The stream is only valid until this list is modified.
+     *
+     * @return a stream of the elements from the first to the last element
+     */
+    public DoubleStream stream() {
+        return StreamSupport.doubleStream(spliterator(), false);
+    }
+
+    /**
+     * Returns a read-only view of the elements between fromIndex (inclusive) and toIndex (exclusive).
+     * Unlike {@link #copy()} the elements are not copied, the view shares the underlying array with this list.
+     * Hence the view is only valid until this list is modified.
+     * The methods that modify the view throw an {@link UnsupportedOperationException}.
+     *
+     * @param fromIndex the index of the first element (inclusive)
+     * @param toIndex   the index of the last element (exclusive)
+     * @return a read-only view of the given range
+     * @throws IndexOutOfBoundsException if the range is not within the list
+     */
+    public DoubleList subList(int fromIndex, int toIndex) {
+        subListRangeCheck(fromIndex, toIndex, size);
+        return new DoubleListView(doubles, fromIndex, toIndex - fromIndex);
+    }
+
     /**
      * Returns the element at the specified position in this list.
      *
@@ -238,8 +427,7 @@ public class DoubleList implements Serializable {
      * @return <tt>true</tt> (as specified by Collection#add)
      */
     public boolean add(double e) {
-        int newCapacity = calculateNewCapacity(doubles.length, size + 1);
-        growIfNeeded(newCapacity);
+        ensureCapacityInternal(size + 1);
 
         doubles[size++] = e;
         return true;
@@ -257,8 +445,7 @@ public class DoubleList implements Serializable {
     public void add(int index, double element) {
         rangeCheckForAdd(index, size);
 
-        int newCapacity = calculateNewCapacity(doubles.length, size + 1);
-        growIfNeeded(newCapacity);
+        ensureCapacityInternal(size + 1);
 
         System.arraycopy(doubles, index, doubles, index + 1, size - index);
         doubles[index] = element;
@@ -344,13 +531,11 @@ public class DoubleList implements Serializable {
      * @throws NullPointerException if the specified collection is null
      */
     public boolean addAll(DoubleList c) {
-        double[] a = c.toArray();
-        int numNew = a.length;
+        int numNew = c.size();
 
-        int newCapacity = calculateNewCapacity(doubles.length, size + numNew);
-        growIfNeeded(newCapacity);
+        ensureCapacityInternal(size + numNew);
 
-        System.arraycopy(a, 0, doubles, size, numNew);
+        c.copyTo(0, doubles, size, numNew);
         size += numNew;
         return numNew != 0;
     }
@@ -363,14 +548,26 @@ public class DoubleList implements Serializable {
      * @throws NullPointerException if the specified array is null
      */
     public boolean addAll(double[] otherDoubles) {
-        int numNew = otherDoubles.length;
+        return addAll(otherDoubles, 0, otherDoubles.length);
+    }
 
-        int newCapacity = calculateNewCapacity(doubles.length, size + numNew);
-        growIfNeeded(newCapacity);
+    /**
+     * Appends the given number of elements of the double[] starting at fromIndex at the end of this list.
+     *
+     * @param otherDoubles the array holding the elements that are appended
+     * @param fromIndex    the index of the first appended element in the array
+     * @param length       the number of appended elements
+     * @return <tt>true</tt> if this list changed as a result of the call
+     * @throws IndexOutOfBoundsException if the range is not within the array
+     * @throws NullPointerException      if the specified array is null
+     */
+    public boolean addAll(double[] otherDoubles, int fromIndex, int length) {
+        arrayRangeCheck(fromIndex, length, otherDoubles.length);
+        ensureCapacityInternal(size + length);
 
-        System.arraycopy(otherDoubles, 0, doubles, size, numNew);
-        size += numNew;
-        return numNew != 0;
+        System.arraycopy(otherDoubles, fromIndex, doubles, size, length);
+        size += length;
+        return length != 0;
     }
 
     /**
@@ -394,8 +591,7 @@ public class DoubleList implements Serializable {
         double[] a = c.toArray();
         int numNew = a.length;
 
-        int newCapacity = calculateNewCapacity(doubles.length, size + numNew);
-        growIfNeeded(newCapacity);
+        ensureCapacityInternal(size + numNew);
 
         int numMoved = size - index;
         if (numMoved > 0) {
@@ -407,6 +603,142 @@ public class DoubleList implements Serializable {
         return numNew != 0;
     }
 
+    /**
+     * Sorts this list ascending like {@link Arrays#sort(double[])}.
+     */
+    public void sort() {
+        double[] data = elementData();
+        if (data != null) {
+            Arrays.sort(data, 0, size());
+        } else {
+            //the elements are not stored in one array, sort a copy of them
+            data = toArray();
+            Arrays.sort(data);
+            setElements(data);
+        }
+    }
+
+    /**
+     * Checks if the elements of this list are sorted ascending.
+     * The elements are ordered like {@link Double#compare(double, double)} does, i.e. -0.0 before 0.0 and NaN last.
+     *
+     * @return true if the list is sorted, otherwise false
+     */
+    public boolean isSorted() {
+        int n = size();
+        for (int i = 1; i < n; i++) {
+            if (Double.compare(elementAt(i), elementAt(i - 1)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Searches the key in this sorted list using a binary search.
+     * The result is undefined if the list is not sorted.
+     *
+     * @param key the key to search for
+     * @return the index of the first element equal to the key, otherwise <tt>(-(insertion point) - 1)</tt>.
+     * The insertion point is the index of the first element greater than the key or the size of the list.
+     */
+    public int binarySearch(double key) {
+        int index = lowerBound(key);
+        if (index < size() && Double.compare(elementAt(index), key) == 0) {
+            return index;
+        }
+        return -(index + 1);
+    }
+
+    /**
+     * Finds the first element that is greater or equal the key in this sorted list using a binary search.
+     *
+     * @param key the key
+     * @return the index of the first element greater or equal the key or the size of the list if there is none
+     */
+    public int lowerBound(double key) {
+        return lowerBound(key, 0, size());
+    }
+
+    /**
+     * Finds the first element that is greater than the key in this sorted list using a binary search.
+     *
+     * @param key the key
+     * @return the index of the first element greater than the key or the size of the list if there is none
+     */
+    public int upperBound(double key) {
+        int low = 0;
+        int high = size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Double.compare(elementAt(mid), key) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Finds the first element that is greater or equal the key in this sorted list like {@link #lowerBound(double)}.
+     * The search starts at the hint and gallops away from it with steps of 1, 2, 4, ... elements.
+     * Hence it needs O(log d) steps for a distance d between the hint and the result,
+     * e.g. if successive keys are close to each other.
+     *
+     * @param key  the key
+     * @param hint the index to start the search at, it is moved into the list if it is out of range
+     * @return the index of the first element greater or equal the key or the size of the list if there is none
+     */
+    public int gallop(double key, int hint) {
+        int n = size();
+        if (n == 0) {
+            return 0;
+        }
+        int start = Math.min(Math.max(hint, 0), n - 1);
+
+        if (Double.compare(elementAt(start), key) < 0) {
+            //gallop right, the element at last is lower than the key
+            int last = start;
+            int step = 1;
+            int next = last + 1;
+            while (next < n && Double.compare(elementAt(next), key) < 0) {
+                last = next;
+                step <<= 1;
+                next = (n - last > step) ? last + step : n;
+            }
+            return lowerBound(key, last + 1, next);
+        }
+
+        //gallop left, the element at first is greater or equal the key
+        int first = start;
+        int step = 1;
+        int next = first - 1;
+        while (next >= 0 && Double.compare(elementAt(next), key) >= 0) {
+            first = next;
+            step <<= 1;
+            next = first - step;
+        }
+        return lowerBound(key, Math.max(next + 1, 0), first);
+    }
+
+    /**
+     * @return the first index in [fromIndex, toIndex) whose element is greater or equal the key, or toIndex
+     */
+    private int lowerBound(double key, int fromIndex, int toIndex) {
+        int low = fromIndex;
+        int high = toIndex;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Double.compare(elementAt(mid), key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
     /**
      * Removes from this list all of the elements whose index is between
      * {@code fromIndex}, inclusive, and {@code toIndex}, exclusive.
@@ -431,23 +763,6 @@ public class DoubleList implements Serializable {
     }
 
 
-    /**
-     * Trims the capacity of this <tt>ArrayList</tt> instance to be the
-     * list's current size. An application can use this operation to minimize
-     * the storage of an <tt>ArrayList</tt> instance.
-     *
-     * @param size     current size
-     * @param elements the current elements
-     * @return the trimmed elements
-     */
-    private double[] trimToSize(int size, double[] elements) {
-        double[] copy = Arrays.copyOf(elements, elements.length);
-        if (size < elements.length) {
-            copy = (size == 0) ? EMPTY_ELEMENT_DATA : Arrays.copyOf(elements, size);
-        }
-        return copy;
-    }
-
 
     @Override
     public boolean equals(Object obj) {
@@ -458,33 +773,30 @@ public class DoubleList implements Serializable {
             return true;
         }
 
-        if (obj.getClass() != getClass()) {
+        if (!(obj instanceof DoubleList)) {
             return false;
         }
         DoubleList rhs = (DoubleList) obj;
 
-        double[] thisTrimmed = trimToSize(this.size, this.doubles);
-        double[] otherTrimmed = trimToSize(rhs.size, rhs.doubles);
-
         return new EqualsBuilder()
-                .append(thisTrimmed, otherTrimmed)
-                .append(this.size, rhs.size)
+                .append(this.toArray(), rhs.toArray())
+                .append(this.size(), rhs.size())
                 .isEquals();
     }
 
     @Override
     public int hashCode() {
         return new HashCodeBuilder()
-                .append(doubles)
-                .append(size)
+                .append(toArray())
+                .append(size())
                 .toHashCode();
     }
 
     @Override
     public String toString() {
         return new ToStringBuilder(this)
-                .append("doubles", trimToSize(this.size, doubles))
-                .append("size", size)
+                .append("doubles", toArray())
+                .append("size", size())
                 .toString();
     }
 }
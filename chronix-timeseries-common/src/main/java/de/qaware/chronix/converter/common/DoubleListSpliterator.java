@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.converter.common;
+
+import java.util.Spliterator;
+import java.util.function.DoubleConsumer;
+
+/**
+ * A spliterator over the elements of a double list that are not stored in one array, e.g. in chunks or off-heap.
+ * It splits the index range in halves, hence parallel streams split cleanly across the cores.
+ *
+ * @author f.lautenschlager
+ */
+final class DoubleListSpliterator implements Spliterator.OfDouble {
+
+    private final DoubleList list;
+    private int index;
+    private final int fence;
+
+    /**
+     * Constructs a spliterator over the elements between index (inclusive) and fence (exclusive)
+     *
+     * @param list  the list
+     * @param index the index of the first element
+     * @param fence the index after the last element
+     */
+    DoubleListSpliterator(DoubleList list, int index, int fence) {
+        this.list = list;
+        this.index = index;
+        this.fence = fence;
+    }
+
+    @Override
+    public OfDouble trySplit() {
+        int lo = index;
+        int mid = (lo + fence) >>> 1;
+        if (lo >= mid) {
+            return null;
+        }
+        index = mid;
+        return new DoubleListSpliterator(list, lo, mid);
+    }
+
+    @Override
+    public boolean tryAdvance(DoubleConsumer action) {
+        if (index < fence) {
+            action.accept(list.elementAt(index++));
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void forEachRemaining(DoubleConsumer action) {
+        int hi = fence;
+        for (int i = index; i < hi; i++) {
+            action.accept(list.elementAt(i));
+        }
+        index = hi;
+    }
+
+    @Override
+    public long estimateSize() {
+        return (long) fence - index;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | SIZED | SUBSIZED;
+    }
+}
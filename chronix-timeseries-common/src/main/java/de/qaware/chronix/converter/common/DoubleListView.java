@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.converter.common;
+
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+
+import static de.qaware.chronix.converter.common.ListUtil.rangeCheck;
+import static de.qaware.chronix.converter.common.ListUtil.subListRangeCheck;
+
+/**
+ * A read-only view on a range of the elements of a double list.
+ * The view shares the array with the list, see {@link DoubleList#subList(int, int)}.
+ *
+ * @author f.lautenschlager
+ */
+final class DoubleListView extends DoubleList {
+
+    private static final long serialVersionUID = -6212805398765470253L;
+
+    private final double[] elements;
+    private final int offset;
+    private final int size;
+
+    /**
+     * Constructs a view on the given elements.
+     *
+     * @param elements the elements of the list
+     * @param offset   the index of the first element of the view
+     * @param size     the number of elements of the view
+     */
+    DoubleListView(double[] elements, int offset, int size) {
+        super(0);
+        this.elements = elements;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int indexOf(double o) {
+        for (int i = 0; i < size; i++) {
+            if (o == elements[offset + i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int lastIndexOf(double o) {
+        for (int i = size - 1; i >= 0; i--) {
+            if (o == elements[offset + i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public DoubleList copy() {
+        return new DoubleList(toArray(), size);
+    }
+
+    @Override
+    public double[] toArray() {
+        return Arrays.copyOfRange(elements, offset, offset + size);
+    }
+
+    @Override
+    double[] array() {
+        return elements;
+    }
+
+    @Override
+    int arrayOffset() {
+        return offset;
+    }
+
+    @Override
+    void copyTo(int srcIndex, double[] dest, int destIndex, int length) {
+        System.arraycopy(elements, offset + srcIndex, dest, destIndex, length);
+    }
+
+    @Override
+    public DoubleBuffer asReadOnlyBuffer() {
+        return DoubleBuffer.wrap(elements, offset, size).slice().asReadOnlyBuffer();
+    }
+
+    @Override
+    public DoubleList subList(int fromIndex, int toIndex) {
+        subListRangeCheck(fromIndex, toIndex, size);
+        return new DoubleListView(elements, offset + fromIndex, toIndex - fromIndex);
+    }
+
+    @Override
+    public double get(int index) {
+        rangeCheck(index, size);
+        return elements[offset + index];
+    }
+
+    @Override
+    double elementAt(int index) {
+        return elements[offset + index];
+    }
+
+    @Override
+    public double set(int index, double element) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean add(double e) {
+        throw readOnly();
+    }
+
+    @Override
+    public void add(int index, double element) {
+        throw readOnly();
+    }
+
+    @Override
+    public double remove(int index) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean remove(double o) {
+        throw readOnly();
+    }
+
+    @Override
+    public void clear() {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean addAll(DoubleList c) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean addAll(double[] otherDoubles) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean addAll(double[] otherDoubles, int fromIndex, int length) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean addAll(int index, DoubleList c) {
+        throw readOnly();
+    }
+
+    /**
+     * The view does not own the array, hence it can not be sorted along with a long list.
+     */
+    @Override
+    double[] elementData() {
+        throw readOnly();
+    }
+
+    @Override
+    void setElements(double[] source) {
+        throw readOnly();
+    }
+
+    @Override
+    public void sort() {
+        throw readOnly();
+    }
+
+    @Override
+    public void removeRange(int fromIndex, int toIndex) {
+        throw readOnly();
+    }
+
+    @Override
+    public void ensureCapacity(int minCapacity) {
+        throw readOnly();
+    }
+
+    /**
+     * The elements are shared with the list or time series the view is taken from and are accounted for there.
+     *
+     * @return the estimated bytes of the view without the shared elements
+     */
+    @Override
+    public long estimatedRetainedBytes() {
+        return MemoryFootprint.objectBytes(SHALLOW_FIELD_BYTES + MemoryFootprint.REFERENCE_BYTES + 2 * Integer.BYTES);
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("The view is read-only");
+    }
+
+    /**
+     * A view is serialized as a list that contains only the elements of the view
+     *
+     * @return a copy of the view
+     */
+    private Object writeReplace() {
+        return copy();
+    }
+}
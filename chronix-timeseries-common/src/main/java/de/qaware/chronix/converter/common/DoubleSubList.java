@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.converter.common;
+
+import java.nio.DoubleBuffer;
+
+import static de.qaware.chronix.converter.common.ListUtil.rangeCheck;
+import static de.qaware.chronix.converter.common.ListUtil.subListRangeCheck;
+
+/**
+ * A read-only view on a range of the elements of a double list that does not store them in one array, e.g. a chunked or direct list.
+ * The view reads the elements through the list without copying them, see {@link ChunkedDoubleList#subList(int, int)}.
+ *
+ * @author f.lautenschlager
+ */
+final class DoubleSubList extends DoubleList {
+
+    private static final long serialVersionUID = 3908172535620148397L;
+
+    private final DoubleList list;
+    private final int offset;
+    private final int size;
+
+    /**
+     * Constructs a view on a range of the given list.
+     *
+     * @param list   the list
+     * @param offset the index of the first element of the view
+     * @param size   the number of elements of the view
+     */
+    DoubleSubList(DoubleList list, int offset, int size) {
+        super(0);
+        this.list = list;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int indexOf(double o) {
+        for (int i = 0; i < size; i++) {
+            if (o == list.elementAt(offset + i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int lastIndexOf(double o) {
+        for (int i = size - 1; i >= 0; i--) {
+            if (o == list.elementAt(offset + i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public DoubleList copy() {
+        return new DoubleList(toArray(), size);
+    }
+
+    @Override
+    public double[] toArray() {
+        double[] array = new double[size];
+        list.copyTo(offset, array, 0, size);
+        return array;
+    }
+
+    /**
+     * The elements are not stored in one array.
+     *
+     * @return null
+     */
+    @Override
+    double[] array() {
+        return null;
+    }
+
+    @Override
+    void copyTo(int srcIndex, double[] dest, int destIndex, int length) {
+        list.copyTo(offset + srcIndex, dest, destIndex, length);
+    }
+
+    /**
+     * Returns a read-only buffer holding the elements of this view.
+     * As the elements are not stored in one array, they are copied.
+     *
+     * @return a read-only buffer holding the elements from the first to the last element
+     */
+    @Override
+    public DoubleBuffer asReadOnlyBuffer() {
+        return DoubleBuffer.wrap(toArray()).asReadOnlyBuffer();
+    }
+
+    @Override
+    public DoubleList subList(int fromIndex, int toIndex) {
+        subListRangeCheck(fromIndex, toIndex, size);
+        return new DoubleSubList(list, offset + fromIndex, toIndex - fromIndex);
+    }
+
+    @Override
+    public double get(int index) {
+        rangeCheck(index, size);
+        return list.elementAt(offset + index);
+    }
+
+    @Override
+    double elementAt(int index) {
+        return list.elementAt(offset + index);
+    }
+
+    @Override
+    public double set(int index, double element) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean add(double e) {
+        throw readOnly();
+    }
+
+    @Override
+    public void add(int index, double element) {
+        throw readOnly();
+    }
+
+    @Override
+    public double remove(int index) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean remove(double o) {
+        throw readOnly();
+    }
+
+    @Override
+    public void clear() {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean addAll(DoubleList c) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean addAll(double[] otherDoubles) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean addAll(double[] otherDoubles, int fromIndex, int length) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean addAll(int index, DoubleList c) {
+        throw readOnly();
+    }
+
+    /**
+     * The view does not own the elements, hence they can not be sorted along with a long list.
+     */
+    @Override
+    double[] elementData() {
+        throw readOnly();
+    }
+
+    @Override
+    void setElements(double[] source) {
+        throw readOnly();
+    }
+
+    @Override
+    public void sort() {
+        throw readOnly();
+    }
+
+    @Override
+    public void removeRange(int fromIndex, int toIndex) {
+        throw readOnly();
+    }
+
+    @Override
+    public void ensureCapacity(int minCapacity) {
+        throw readOnly();
+    }
+
+    /**
+     * The elements are shared with the list or time series the view is taken from and are accounted for there.
+     *
+     * @return the estimated bytes of the view without the shared elements
+     */
+    @Override
+    public long estimatedRetainedBytes() {
+        return MemoryFootprint.objectBytes(SHALLOW_FIELD_BYTES + 2 * MemoryFootprint.REFERENCE_BYTES + 2 * Integer.BYTES);
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("The view is read-only");
+    }
+
+    /**
+     * A view is serialized as a list that contains only the elements of the view
+     *
+     * @return a copy of the view
+     */
+    private Object writeReplace() {
+        return copy();
+    }
+}
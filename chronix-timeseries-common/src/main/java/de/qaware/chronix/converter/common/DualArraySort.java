@@ -0,0 +1,349 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.converter.common;
+
+import java.util.Arrays;
+
+/**
+ * Sorts a long[] (the keys, e.g. timestamps) and applies the same permutation to a double[] (the values).
+ * The sort works in place on the primitive arrays and is stable.
+ * It detects ascending and strictly descending runs (like the tim sort) and merges them.
+ * Hence an already sorted or almost sorted input costs close to O(n).
+ *
+ * @author f.lautenschlager
+ */
+public final class DualArraySort {
+
+    /**
+     * Inputs shorter than that are sorted using a binary insertion sort.
+     */
+    private static final int MIN_MERGE = 32;
+
+    private DualArraySort() {
+        //avoid instances
+    }
+
+    /**
+     * Sorts the first size keys ascending and moves the values along with the keys.
+     *
+     * @param keys   the keys to sort
+     * @param values the values that are permuted like the keys
+     * @param size   the number of elements to sort
+     */
+    public static void sort(long[] keys, double[] values, int size) {
+        sort(keys, values, 0, size);
+    }
+
+    /**
+     * Sorts the keys between fromIndex (inclusive) and toIndex (exclusive) ascending
+     * and moves the values along with the keys.
+     *
+     * @param keys      the keys to sort
+     * @param values    the values that are permuted like the keys
+     * @param fromIndex the index of the first element (inclusive)
+     * @param toIndex   the index of the last element (exclusive)
+     * @throws IllegalArgumentException  if fromIndex > toIndex
+     * @throws IndexOutOfBoundsException if the range does not fit into both arrays
+     */
+    public static void sort(long[] keys, double[] values, int fromIndex, int toIndex) {
+        rangeCheck(keys.length, values.length, fromIndex, toIndex);
+
+        int remaining = toIndex - fromIndex;
+        if (remaining < 2) {
+            return;
+        }
+
+        //small arrays are sorted without merges
+        if (remaining < MIN_MERGE) {
+            int runEnd = countRunAndMakeAscending(keys, values, fromIndex, toIndex);
+            binaryInsertionSort(keys, values, fromIndex, toIndex, runEnd);
+            return;
+        }
+
+        int minRun = minRunLength(remaining);
+        int[] runStarts = new int[8];
+        int runCount = 0;
+
+        int lo = fromIndex;
+        while (lo < toIndex) {
+            int runEnd = countRunAndMakeAscending(keys, values, lo, toIndex);
+
+            //extend short runs to min run
+            if (runEnd - lo < minRun) {
+                int force = Math.min(minRun, toIndex - lo);
+                binaryInsertionSort(keys, values, lo, lo + force, runEnd);
+                runEnd = lo + force;
+            }
+
+            if (runCount == runStarts.length) {
+                runStarts = Arrays.copyOf(runStarts, runCount << 1);
+            }
+            runStarts[runCount++] = lo;
+            lo = runEnd;
+        }
+
+        mergeAdjacentRuns(keys, values, runStarts, runCount, toIndex);
+    }
+
+    /**
+     * Merges the ascending runs of the first size keys and moves the values along with the keys.
+     * The first run starts at zero, each other run starts at one of the given run starts.
+     * Unlike {@link #sort(long[], double[], int)} the runs are not detected but taken as given.
+     * The merge is stable and needs log(k) linear passes for k runs.
+     *
+     * @param keys      the keys
+     * @param values    the values that are permuted like the keys
+     * @param runStarts the ascending start indices of the runs after the first run
+     * @param runCount  the number of given run starts
+     * @param size      the number of elements
+     * @throws IndexOutOfBoundsException if the size does not fit into both arrays
+     */
+    public static void mergeRuns(long[] keys, double[] values, int[] runStarts, int runCount, int size) {
+        rangeCheck(keys.length, values.length, 0, size);
+
+        int[] starts = new int[runCount + 1];
+        System.arraycopy(runStarts, 0, starts, 1, runCount);
+        mergeAdjacentRuns(keys, values, starts, runCount + 1, size);
+    }
+
+    /**
+     * Checks if the keys between fromIndex (inclusive) and toIndex (exclusive) are sorted ascending.
+     *
+     * @param keys      the keys
+     * @param fromIndex the index of the first element (inclusive)
+     * @param toIndex   the index of the last element (exclusive)
+     * @return true if the keys are sorted, otherwise false
+     */
+    public static boolean isSorted(long[] keys, int fromIndex, int toIndex) {
+        for (int i = fromIndex + 1; i < toIndex; i++) {
+            if (keys[i] < keys[i - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Merges the given ascending runs. A run ends where the next run starts, the last one ends at toIndex.
+     * Adjacent runs are merged pairwise, hence k runs are merged in log(k) linear passes.
+     *
+     * @param keys      the keys
+     * @param values    the values
+     * @param runStarts the start indices of the runs, the array is used as working space
+     * @param runCount  the number of runs
+     * @param toIndex   the end of the last run (exclusive)
+     */
+    private static void mergeAdjacentRuns(long[] keys, double[] values, int[] runStarts, int runCount, int toIndex) {
+        MergeBuffer buffer = new MergeBuffer();
+        int count = runCount;
+
+        while (count > 1) {
+            int merged = 0;
+            for (int i = 0; i < count; i += 2) {
+                if (i + 1 < count) {
+                    int hi = (i + 2 < count) ? runStarts[i + 2] : toIndex;
+                    merge(keys, values, runStarts[i], runStarts[i + 1], hi, buffer);
+                }
+                runStarts[merged++] = runStarts[i];
+            }
+            count = merged;
+        }
+    }
+
+    /**
+     * Merges the two adjacent ascending runs [lo, mid) and [mid, hi).
+     * Elements of both runs that are already at their final position are not touched.
+     */
+    private static void merge(long[] keys, double[] values, int lo, int mid, int hi, MergeBuffer buffer) {
+        //runs are already in order
+        if (keys[mid - 1] <= keys[mid]) {
+            return;
+        }
+
+        //left elements lower or equal the first right element stay where they are
+        int left = upperBound(keys, lo, mid, keys[mid]);
+        //right elements greater or equal the last left element stay where they are
+        int right = lowerBound(keys, mid, hi, keys[mid - 1]);
+
+        int leftLength = mid - left;
+        buffer.ensureCapacity(leftLength);
+        long[] tmpKeys = buffer.keys;
+        double[] tmpValues = buffer.values;
+
+        System.arraycopy(keys, left, tmpKeys, 0, leftLength);
+        System.arraycopy(values, left, tmpValues, 0, leftLength);
+
+        int i = 0;
+        int j = mid;
+        int k = left;
+
+        while (i < leftLength && j < right) {
+            //take the left one on equal keys to keep the sort stable
+            if (keys[j] < tmpKeys[i]) {
+                keys[k] = keys[j];
+                values[k] = values[j];
+                j++;
+            } else {
+                keys[k] = tmpKeys[i];
+                values[k] = tmpValues[i];
+                i++;
+            }
+            k++;
+        }
+
+        //the remaining right elements are already in place
+        int remaining = leftLength - i;
+        if (remaining > 0) {
+            System.arraycopy(tmpKeys, i, keys, k, remaining);
+            System.arraycopy(tmpValues, i, values, k, remaining);
+        }
+    }
+
+    /**
+     * Sorts the range [lo, hi) with a binary insertion sort. The range [lo, start) is already sorted.
+     */
+    private static void binaryInsertionSort(long[] keys, double[] values, int lo, int hi, int start) {
+        for (int i = start; i < hi; i++) {
+            long pivotKey = keys[i];
+            double pivotValue = values[i];
+
+            int position = upperBound(keys, lo, i, pivotKey);
+            int moved = i - position;
+            if (moved > 0) {
+                System.arraycopy(keys, position, keys, position + 1, moved);
+                System.arraycopy(values, position, values, position + 1, moved);
+                keys[position] = pivotKey;
+                values[position] = pivotValue;
+            }
+        }
+    }
+
+    /**
+     * Returns the end of the run starting at lo. A strictly descending run is reversed.
+     * Only strictly descending runs are reversed to keep the sort stable.
+     */
+    private static int countRunAndMakeAscending(long[] keys, double[] values, int lo, int hi) {
+        int runHi = lo + 1;
+        if (runHi == hi) {
+            return hi;
+        }
+
+        if (keys[runHi++] < keys[lo]) {
+            while (runHi < hi && keys[runHi] < keys[runHi - 1]) {
+                runHi++;
+            }
+            reverseRange(keys, values, lo, runHi);
+        } else {
+            while (runHi < hi && keys[runHi] >= keys[runHi - 1]) {
+                runHi++;
+            }
+        }
+        return runHi;
+    }
+
+    private static void reverseRange(long[] keys, double[] values, int lo, int hi) {
+        int left = lo;
+        int right = hi - 1;
+        while (left < right) {
+            long key = keys[left];
+            keys[left] = keys[right];
+            keys[right] = key;
+
+            double value = values[left];
+            values[left] = values[right];
+            values[right] = value;
+
+            left++;
+            right--;
+        }
+    }
+
+    /**
+     * @return the first index in [lo, hi) whose key is greater than the given key, or hi
+     */
+    private static int upperBound(long[] keys, int lo, int hi, long key) {
+        int low = lo;
+        int high = hi;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the first index in [lo, hi) whose key is greater or equal the given key, or hi
+     */
+    private static int lowerBound(long[] keys, int lo, int hi, long key) {
+        int low = lo;
+        int high = hi;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Calculates the minimum run length like the tim sort does.
+     * The result is chosen so that n / minRun is close to a power of two.
+     */
+    private static int minRunLength(int n) {
+        int length = n;
+        int r = 0;
+        while (length >= MIN_MERGE) {
+            r |= (length & 1);
+            length >>= 1;
+        }
+        return length + r;
+    }
+
+    private static void rangeCheck(int keysLength, int valuesLength, int fromIndex, int toIndex) {
+        if (fromIndex > toIndex) {
+            throw new IllegalArgumentException("fromIndex(" + fromIndex + ") > toIndex(" + toIndex + ")");
+        }
+        if (fromIndex < 0) {
+            throw new IndexOutOfBoundsException("fromIndex: " + fromIndex);
+        }
+        if (toIndex > keysLength || toIndex > valuesLength) {
+            throw new IndexOutOfBoundsException("toIndex: " + toIndex + ", keys: " + keysLength + ", values: " + valuesLength);
+        }
+    }
+
+    /**
+     * Lazy allocated temporary storage for the merges
+     */
+    private static final class MergeBuffer {
+        private long[] keys = new long[0];
+        private double[] values = new double[0];
+
+        private void ensureCapacity(int capacity) {
+            if (keys.length < capacity) {
+                int newCapacity = Math.max(capacity, keys.length + (keys.length >> 1));
+                keys = new long[newCapacity];
+                values = new double[newCapacity];
+            }
+        }
+    }
+}
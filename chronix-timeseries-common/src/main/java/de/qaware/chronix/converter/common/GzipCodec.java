@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.converter.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * The gzip codec. A gzip stream starts with its own magic bytes,
+ * hence it is written without a header and the points written before the codecs existed are read with it.
+ * <p>
+ * The header and trailer are written by hand around the pooled deflater of {@link ZlibPool}.
+ * The written bytes are the same as the ones of a {@link java.util.zip.GZIPOutputStream}.
+ *
+ * @author f.lautenschlager
+ */
+final class GzipCodec implements CompressionCodec {
+
+    static final int ID = 0;
+
+    private static final int HEADER_LENGTH = 10;
+    //the header of the gzip output stream, its os byte differs between java versions
+    private static final byte[] HEADER = streamHeader();
+    private static final int TRAILER_LENGTH = 8;
+
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    //deflate expands a byte to at most 1032 bytes
+    private static final int MAX_RATIO = 1032;
+
+    private static byte[] streamHeader() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(out)) {
+            gzipOutputStream.finish();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write gzip header", e);
+        }
+        return Arrays.copyOf(out.toByteArray(), HEADER_LENGTH);
+    }
+
+    @Override
+    public int id() {
+        return ID;
+    }
+
+    @Override
+    public String name() {
+        return "gzip";
+    }
+
+    @Override
+    public void compress(byte[] data, int offset, int length, OutputStream out) throws IOException {
+        ListUtil.arrayRangeCheck(offset, length, data.length);
+
+        out.write(HEADER);
+        Deflater deflater = ZlibPool.deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(data, offset, length);
+            ZlibPool.deflate(deflater, out);
+        } finally {
+            ZlibPool.release(deflater, Deflater.DEFAULT_COMPRESSION, true);
+        }
+        byte[] trailer = new byte[TRAILER_LENGTH];
+        writeTrailer(data, offset, length, trailer, 0);
+        out.write(trailer);
+    }
+
+    @Override
+    public int compress(byte[] data, int offset, int length, byte[] dest, int destOffset) {
+        ListUtil.arrayRangeCheck(offset, length, data.length);
+        if (HEADER_LENGTH + TRAILER_LENGTH > dest.length - destOffset) {
+            return -1;
+        }
+
+        System.arraycopy(HEADER, 0, dest, destOffset, HEADER_LENGTH);
+        Deflater deflater = ZlibPool.deflater(Deflater.DEFAULT_COMPRESSION, true);
+        int end;
+        try {
+            deflater.setInput(data, offset, length);
+            end = ZlibPool.deflate(deflater, dest, destOffset + HEADER_LENGTH, dest.length - TRAILER_LENGTH);
+        } finally {
+            ZlibPool.release(deflater, Deflater.DEFAULT_COMPRESSION, true);
+        }
+        if (end < 0) {
+            return -1;
+        }
+        writeTrailer(data, offset, length, dest, end);
+        return end + TRAILER_LENGTH - destOffset;
+    }
+
+    @Override
+    public InputStream decompress(byte[] compressed, int offset, int length) throws IOException {
+        return new GZIPInputStream(new ByteArrayInputStream(compressed, offset, length));
+    }
+
+    @Override
+    public int decompress(byte[] compressed, int offset, int length, byte[] dest, int destOffset) throws IOException {
+        ListUtil.arrayRangeCheck(offset, length, compressed.length);
+
+        int end = offset + length;
+        int dataStart = skipHeader(compressed, offset, end);
+        Inflater inflater = ZlibPool.inflater(true);
+        int position;
+        int remaining;
+        try {
+            inflater.setInput(compressed, dataStart, end - dataStart);
+            position = ZlibPool.inflate(inflater, dest, destOffset);
+            remaining = inflater.getRemaining();
+        } finally {
+            ZlibPool.release(inflater, true);
+        }
+        if (position < 0) {
+            return -1;
+        }
+        if (remaining < TRAILER_LENGTH) {
+            throw new EOFException("Unexpected end of gzip trailer");
+        }
+        if (remaining > TRAILER_LENGTH) {
+            //concatenated gzip members are rare, the stream reads them
+            return CompressionCodec.super.decompress(compressed, offset, length, dest, destOffset);
+        }
+
+        int decompressedLength = position - destOffset;
+        int trailer = end - TRAILER_LENGTH;
+        CRC32 crc = new CRC32();
+        crc.update(dest, destOffset, decompressedLength);
+        if (readIntLE(compressed, trailer) != (int) crc.getValue()) {
+            throw new ZipException("Corrupt gzip trailer");
+        }
+        if (readIntLE(compressed, trailer + 4) != decompressedLength) {
+            throw new ZipException("Corrupt gzip trailer");
+        }
+        return decompressedLength;
+    }
+
+    /**
+     * Reads the length of the decompressed bytes from the trailer.
+     * The trailer only holds it modulo 2^32 and only for the last member, hence it is checked against the compressed length.
+     */
+    @Override
+    public int decompressedLength(byte[] compressed, int offset, int length) {
+        if (length < HEADER_LENGTH + TRAILER_LENGTH) {
+            return -1;
+        }
+        int decompressedLength = readIntLE(compressed, offset + length - 4);
+        if (decompressedLength < 0 || decompressedLength > (long) length * MAX_RATIO || decompressedLength > ListUtil.MAX_ARRAY_SIZE) {
+            return -1;
+        }
+        return decompressedLength;
+    }
+
+    /**
+     * Skips the gzip header
+     *
+     * @return the index of the deflated bytes
+     * @throws IOException if the bytes do not start with a gzip header
+     */
+    private static int skipHeader(byte[] compressed, int offset, int end) throws IOException {
+        if (end - offset < HEADER_LENGTH) {
+            throw new EOFException("Unexpected end of gzip header");
+        }
+        if (compressed[offset] != HEADER[0] || compressed[offset + 1] != HEADER[1]) {
+            throw new ZipException("Not in GZIP format");
+        }
+        if (compressed[offset + 2] != Deflater.DEFLATED) {
+            throw new ZipException("Unsupported compression method");
+        }
+        int flags = compressed[offset + 3] & 0xFF;
+        int position = offset + HEADER_LENGTH;
+        if ((flags & FEXTRA) != 0) {
+            checkAvailable(position, 2, end);
+            position += 2 + ((compressed[position] & 0xFF) | ((compressed[position + 1] & 0xFF) << 8));
+        }
+        if ((flags & FNAME) != 0) {
+            position = skipZeroTerminated(compressed, position, end);
+        }
+        if ((flags & FCOMMENT) != 0) {
+            position = skipZeroTerminated(compressed, position, end);
+        }
+        if ((flags & FHCRC) != 0) {
+            position += 2;
+        }
+        checkAvailable(position, 0, end);
+        return position;
+    }
+
+    private static int skipZeroTerminated(byte[] compressed, int offset, int end) throws IOException {
+        int position = offset;
+        while (position < end && compressed[position] != 0) {
+            position++;
+        }
+        checkAvailable(position, 1, end);
+        return position + 1;
+    }
+
+    private static void checkAvailable(int position, int bytes, int end) throws EOFException {
+        if (position > end - bytes) {
+            throw new EOFException("Unexpected end of gzip header");
+        }
+    }
+
+    private static void writeTrailer(byte[] data, int offset, int length, byte[] dest, int destOffset) {
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        writeIntLE((int) crc.getValue(), dest, destOffset);
+        writeIntLE(length, dest, destOffset + 4);
+    }
+
+    private static int readIntLE(byte[] bytes, int index) {
+        return (bytes[index] & 0xFF)
+                | ((bytes[index + 1] & 0xFF) << 8)
+                | ((bytes[index + 2] & 0xFF) << 16)
+                | ((bytes[index + 3] & 0xFF) << 24);
+    }
+
+    private static void writeIntLE(int value, byte[] bytes, int index) {
+        bytes[index] = (byte) value;
+        bytes[index + 1] = (byte) (value >>> 8);
+        bytes[index + 2] = (byte) (value >>> 16);
+        bytes[index + 3] = (byte) (value >>> 24);
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.converter.common;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.DoubleBinaryOperator;
+
+import static de.qaware.chronix.converter.common.ListUtil.subListRangeCheck;
+
+/**
+ * Aggregation kernels over the elements of the lists between fromIndex (inclusive) and toIndex (exclusive).
+ * The kernels loop directly over the arrays of the lists, lists that are not stored in one array are read element by element.
+ * Ranges with at least {@link #PARALLEL_THRESHOLD} elements are split and aggregated in the common fork join pool.
+ *
+ * @author f.lautenschlager
+ */
+public final class ListAggregations {
+
+    /**
+     * Ranges with at least that many elements are aggregated in parallel
+     */
+    public static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    private ListAggregations() {
+        //avoid instances
+    }
+
+    /**
+     * @param values    the values
+     * @param fromIndex the index of the first value (inclusive)
+     * @param toIndex   the index of the last value (exclusive)
+     * @return the minimum of the values, NaN if the range is empty or contains NaN
+     * @throws IndexOutOfBoundsException if the range is not within the list
+     */
+    public static double min(DoubleList values, int fromIndex, int toIndex) {
+        subListRangeCheck(fromIndex, toIndex, values.size());
+        if (fromIndex == toIndex) {
+            return Double.NaN;
+        }
+        return reduce((from, to) -> minKernel(values, from, to), Math::min, fromIndex, toIndex, 0);
+    }
+
+    /**
+     * @param values    the values
+     * @param fromIndex the index of the first value (inclusive)
+     * @param toIndex   the index of the last value (exclusive)
+     * @return the maximum of the values, NaN if the range is empty or contains NaN
+     * @throws IndexOutOfBoundsException if the range is not within the list
+     */
+    public static double max(DoubleList values, int fromIndex, int toIndex) {
+        subListRangeCheck(fromIndex, toIndex, values.size());
+        if (fromIndex == toIndex) {
+            return Double.NaN;
+        }
+        return reduce((from, to) -> maxKernel(values, from, to), Math::max, fromIndex, toIndex, 0);
+    }
+
+    /**
+     * @param values    the values
+     * @param fromIndex the index of the first value (inclusive)
+     * @param toIndex   the index of the last value (exclusive)
+     * @return the sum of the values, zero if the range is empty
+     * @throws IndexOutOfBoundsException if the range is not within the list
+     */
+    public static double sum(DoubleList values, int fromIndex, int toIndex) {
+        subListRangeCheck(fromIndex, toIndex, values.size());
+        return reduce((from, to) -> sumKernel(values, from, to), Double::sum, fromIndex, toIndex, 0);
+    }
+
+    /**
+     * @param values    the values
+     * @param fromIndex the index of the first value (inclusive)
+     * @param toIndex   the index of the last value (exclusive)
+     * @return the arithmetic mean of the values, NaN if the range is empty
+     * @throws IndexOutOfBoundsException if the range is not within the list
+     */
+    public static double mean(DoubleList values, int fromIndex, int toIndex) {
+        return sum(values, fromIndex, toIndex) / (toIndex - fromIndex);
+    }
+
+    /**
+     * Calculates the bias corrected (sample) standard deviation in two passes, first the mean then the squared deviations.
+     *
+     * @param values    the values
+     * @param fromIndex the index of the first value (inclusive)
+     * @param toIndex   the index of the last value (exclusive)
+     * @return the standard deviation of the values, NaN if the range is empty and zero for one value
+     * @throws IndexOutOfBoundsException if the range is not within the list
+     */
+    public static double stdDev(DoubleList values, int fromIndex, int toIndex) {
+        int count = toIndex - fromIndex;
+        double mean = mean(values, fromIndex, toIndex);
+        if (count < 2) {
+            return count == 1 ? 0 : Double.NaN;
+        }
+        double squaredDeviations = reduce((from, to) -> squaredDeviationsKernel(values, from, to, mean), Double::sum, fromIndex, toIndex, 0);
+        return Math.sqrt(squaredDeviations / (count - 1));
+    }
+
+    /**
+     * Calculates the percentile with a linear interpolation between the closest ranks.
+     * The values of the range are copied and sorted.
+     *
+     * @param values     the values
+     * @param fromIndex  the index of the first value (inclusive)
+     * @param toIndex    the index of the last value (exclusive)
+     * @param percentile the percentile between 0 and 1, e.g. 0.5 for the median
+     * @return the percentile of the values, NaN if the range is empty
+     * @throws IllegalArgumentException  if the percentile is not between 0 and 1
+     * @throws IndexOutOfBoundsException if the range is not within the list
+     */
+    public static double percentile(DoubleList values, int fromIndex, int toIndex, double percentile) {
+        if (!(percentile >= 0 && percentile <= 1)) {
+            throw new IllegalArgumentException("Percentile has to be between 0 and 1. Current value is: " + percentile);
+        }
+        subListRangeCheck(fromIndex, toIndex, values.size());
+        int count = toIndex - fromIndex;
+        if (count == 0) {
+            return Double.NaN;
+        }
+
+        double[] sorted = new double[count];
+        values.copyTo(fromIndex, sorted, 0, count);
+        if (count >= PARALLEL_THRESHOLD) {
+            Arrays.parallelSort(sorted);
+        } else {
+            Arrays.sort(sorted);
+        }
+
+        double rank = percentile * (count - 1);
+        int lower = (int) rank;
+        if (lower == count - 1) {
+            return sorted[lower];
+        }
+        return sorted[lower] + (rank - lower) * (sorted[lower + 1] - sorted[lower]);
+    }
+
+    /**
+     * Calculates the integral of the values over the timestamps using the trapezoidal rule.
+     * The timestamps have to be sorted. The unit is value times the unit of the timestamps.
+     *
+     * @param timestamps the sorted timestamps
+     * @param values     the values belonging to the timestamps
+     * @param fromIndex  the index of the first point (inclusive)
+     * @param toIndex    the index of the last point (exclusive)
+     * @return the integral, zero if the range contains less than two points
+     * @throws IllegalArgumentException  if the values do not have the same size as the timestamps
+     * @throws IndexOutOfBoundsException if the range is not within the lists
+     */
+    public static double integral(LongList timestamps, DoubleList values, int fromIndex, int toIndex) {
+        timestamps.checkValues(values);
+        subListRangeCheck(fromIndex, toIndex, values.size());
+        if (toIndex - fromIndex < 2) {
+            return 0;
+        }
+        //the split ranges overlap by one point to include the area between them
+        return reduce((from, to) -> integralKernel(timestamps, values, from, to), Double::sum, fromIndex, toIndex, 1);
+    }
+
+    private static double minKernel(DoubleList values, int fromIndex, int toIndex) {
+        double[] array = values.array();
+        double min = Double.POSITIVE_INFINITY;
+        if (array != null) {
+            int offset = values.arrayOffset();
+            for (int i = fromIndex + offset; i < toIndex + offset; i++) {
+                min = Math.min(min, array[i]);
+            }
+        } else {
+            for (int i = fromIndex; i < toIndex; i++) {
+                min = Math.min(min, values.get(i));
+            }
+        }
+        return min;
+    }
+
+    private static double maxKernel(DoubleList values, int fromIndex, int toIndex) {
+        double[] array = values.array();
+        double max = Double.NEGATIVE_INFINITY;
+        if (array != null) {
+            int offset = values.arrayOffset();
+            for (int i = fromIndex + offset; i < toIndex + offset; i++) {
+                max = Math.max(max, array[i]);
+            }
+        } else {
+            for (int i = fromIndex; i < toIndex; i++) {
+                max = Math.max(max, values.get(i));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Sums up with four independent sums, hence the additions do not wait for each other.
+     */
+    private static double sumKernel(DoubleList values, int fromIndex, int toIndex) {
+        double[] array = values.array();
+        if (array == null) {
+            double sum = 0;
+            for (int i = fromIndex; i < toIndex; i++) {
+                sum += values.get(i);
+            }
+            return sum;
+        }
+
+        int offset = values.arrayOffset();
+        int end = toIndex + offset;
+        int i = fromIndex + offset;
+        double sum0 = 0;
+        double sum1 = 0;
+        double sum2 = 0;
+        double sum3 = 0;
+        for (; i + 3 < end; i += 4) {
+            sum0 += array[i];
+            sum1 += array[i + 1];
+            sum2 += array[i + 2];
+            sum3 += array[i + 3];
+        }
+        for (; i < end; i++) {
+            sum0 += array[i];
+        }
+        return (sum0 + sum1) + (sum2 + sum3);
+    }
+
+    private static double squaredDeviationsKernel(DoubleList values, int fromIndex, int toIndex, double mean) {
+        double[] array = values.array();
+        double sum = 0;
+        if (array != null) {
+            int offset = values.arrayOffset();
+            for (int i = fromIndex + offset; i < toIndex + offset; i++) {
+                double deviation = array[i] - mean;
+                sum += deviation * deviation;
+            }
+        } else {
+            for (int i = fromIndex; i < toIndex; i++) {
+                double deviation = values.get(i) - mean;
+                sum += deviation * deviation;
+            }
+        }
+        return sum;
+    }
+
+    private static double integralKernel(LongList timestamps, DoubleList values, int fromIndex, int toIndex) {
+        long[] times = timestamps.array();
+        double[] array = values.array();
+        double area = 0;
+        if (times != null && array != null) {
+            int timeOffset = timestamps.arrayOffset();
+            int valueOffset = values.arrayOffset();
+            for (int i = fromIndex; i < toIndex - 1; i++) {
+                long width = times[timeOffset + i + 1] - times[timeOffset + i];
+                area += width * (array[valueOffset + i] + array[valueOffset + i + 1]);
+            }
+        } else {
+            for (int i = fromIndex; i < toIndex - 1; i++) {
+                long width = timestamps.get(i + 1) - timestamps.get(i);
+                area += width * (values.get(i) + values.get(i + 1));
+            }
+        }
+        return area / 2;
+    }
+
+    /**
+     * Aggregates the range with the kernel, in parallel if the range is large
+     */
+    private static double reduce(RangeKernel kernel, DoubleBinaryOperator combiner, int fromIndex, int toIndex, int overlap) {
+        if (toIndex - fromIndex < PARALLEL_THRESHOLD) {
+            return kernel.apply(fromIndex, toIndex);
+        }
+        return ForkJoinPool.commonPool().invoke(new RangeTask(kernel, combiner, fromIndex, toIndex, overlap));
+    }
+
+    /**
+     * A kernel that aggregates a range of a list
+     */
+    @FunctionalInterface
+    private interface RangeKernel {
+        double apply(int fromIndex, int toIndex);
+    }
+
+    /**
+     * Splits the range in halves until it is smaller than the threshold and combines the results of the halves
+     */
+    private static final class RangeTask extends RecursiveTask<Double> {
+
+        private static final long serialVersionUID = 6618327340752906327L;
+
+        private final transient RangeKernel kernel;
+        private final transient DoubleBinaryOperator combiner;
+        private final int fromIndex;
+        private final int toIndex;
+        private final int overlap;
+
+        private RangeTask(RangeKernel kernel, DoubleBinaryOperator combiner, int fromIndex, int toIndex, int overlap) {
+            this.kernel = kernel;
+            this.combiner = combiner;
+            this.fromIndex = fromIndex;
+            this.toIndex = toIndex;
+            this.overlap = overlap;
+        }
+
+        @Override
+        protected Double compute() {
+            if (toIndex - fromIndex < PARALLEL_THRESHOLD) {
+                return kernel.apply(fromIndex, toIndex);
+            }
+            int mid = (fromIndex + toIndex) >>> 1;
+            RangeTask left = new RangeTask(kernel, combiner, fromIndex, mid + overlap, overlap);
+            RangeTask right = new RangeTask(kernel, combiner, mid, toIndex, overlap);
+            left.fork();
+            double rightResult = right.compute();
+            return combiner.applyAsDouble(left.join(), rightResult);
+        }
+    }
+}
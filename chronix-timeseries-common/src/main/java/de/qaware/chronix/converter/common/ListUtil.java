@@ -64,6 +64,40 @@ public final class ListUtil {
     }
 
 
+    /**
+     * A version of rangeCheck used by subList.
+     *
+     * @param fromIndex the index of the first element (inclusive)
+     * @param toIndex   the index of the last element (exclusive)
+     * @param size      the size of the container
+     */
+    public static void subListRangeCheck(int fromIndex, int toIndex, int size) {
+        if (fromIndex < 0) {
+            throw new IndexOutOfBoundsException("fromIndex = " + fromIndex);
+        }
+        if (toIndex > size) {
+            throw new IndexOutOfBoundsException("toIndex = " + toIndex);
+        }
+        if (fromIndex > toIndex) {
+            throw new IllegalArgumentException("fromIndex(" + fromIndex + ") > toIndex(" + toIndex + ")");
+        }
+    }
+
+
+    /**
+     * A version of rangeCheck used by the bulk operations on a part of an array.
+     *
+     * @param fromIndex   the index of the first element in the array
+     * @param length      the number of elements
+     * @param arrayLength the length of the array
+     */
+    public static void arrayRangeCheck(int fromIndex, int length, int arrayLength) {
+        if (fromIndex < 0 || length < 0 || fromIndex > arrayLength - length) {
+            throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + ", length: " + length + ", array length: " + arrayLength);
+        }
+    }
+
+
     /**
      * Calculates a new  capacity based on the old capacity and th min capacity
      *
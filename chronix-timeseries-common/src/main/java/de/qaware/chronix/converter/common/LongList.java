@@ -20,7 +20,12 @@ import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
 import java.io.Serializable;
+import java.nio.LongBuffer;
 import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
 
 import static de.qaware.chronix.converter.common.ListUtil.*;
 
@@ -35,6 +40,16 @@ public class LongList implements Serializable {
 
     private static final long serialVersionUID = -8791366160708918410L;
 
+    /**
+     * The bytes of the fields of a list: the array reference and the size
+     */
+    static final int SHALLOW_FIELD_BYTES = MemoryFootprint.REFERENCE_BYTES + Integer.BYTES;
+
+    /**
+     * Default initial capacity.
+     */
+    private static final int DEFAULT_CAPACITY = 10;
+
     /**
      * Shared empty array instance used for empty instances.
      */
@@ -193,6 +208,120 @@ public class LongList implements Serializable {
         return Arrays.copyOf(longs, size);
     }
 
+    /**
+     * Copies the elements of this list starting at srcIndex into the given array.
+     * Used to copy the elements between lists without an intermediate array.
+     *
+     * @param srcIndex  the index of the first element to copy
+     * @param dest      the destination array
+     * @param destIndex the start position in the destination array
+     * @param length    the number of elements to copy
+     */
+    void copyTo(int srcIndex, long[] dest, int destIndex, int length) {
+        System.arraycopy(longs, srcIndex, dest, destIndex, length);
+    }
+
+    /**
+     * Delivers the array holding the elements to read them without copies, e.g. for aggregations.
+     * The element at index i is stored at array()[arrayOffset() + i].
+     * This method should be used with care as it delivers the reference.
+     *
+     * @return the underlying array or null if the elements are not stored in one array
+     */
+    long[] array() {
+        return longs;
+    }
+
+    /**
+     * @return the index of the first element in {@link #array()}
+     */
+    int arrayOffset() {
+        return 0;
+    }
+
+    /**
+     * Delivers the element at the given index without a range check.
+     * The searches use it to work on all kinds of long lists.
+     *
+     * @param index the index of the element
+     * @return the element
+     */
+    long elementAt(int index) {
+        return longs[index];
+    }
+
+    /**
+     * Creates an empty list that stores its elements like this list, e.g. in chunks or off-heap.
+     * The lists that do not store their elements in one array sort through it, see {@link RunMerge}.
+     *
+     * @param capacity the number of elements the list has to hold
+     * @return the empty list, has to be released with {@link #releaseScratch()}
+     */
+    LongList newScratch(int capacity) {
+        return new LongList(capacity);
+    }
+
+    /**
+     * Frees the memory of a list created with {@link #newScratch(int)}.
+     * A heap list leaves it to the garbage collector.
+     */
+    void releaseScratch() {
+        //nothing to free
+    }
+
+    /**
+     * Returns a read-only buffer backed by the elements of this list.
+     * Unlike {@link #toArray()} the elements are not copied.
+     * The buffer is only valid until this list is modified.
+     *
+     * @return a read-only buffer holding the elements from the first to the last element
+     */
+    public LongBuffer asReadOnlyBuffer() {
+        return LongBuffer.wrap(longs, 0, size).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns a spliterator over the elements of this list that is ORDERED, SIZED and SUBSIZED.
+     * The spliterator is only valid until this list is modified.
+     *
+     * @return a spliterator over the elements from the first to the last element
+     */
+    public Spliterator.OfLong spliterator() {
+        long[] elements = array();
+        if (elements != null) {
+            int offset = arrayOffset();
+            return Spliterators.spliterator(elements, offset, offset + size(), Spliterator.ORDERED);
+        }
+        return new LongListSpliterator(this, 0, size());
+    }
+
+    /**
+     * Returns a sequential stream of the elements without boxing them.
+     * Use {@link LongStream#parallel()} to process large lists on all cores.
+     * The stream is only valid until this list is modified.
+     *
+     * @return a stream of the elements from the first to the last element
+     */
+    public LongStream stream() {
+        return StreamSupport.longStream(spliterator(), false);
+    }
+
+    /**
+     * Returns a read-only view of the elements between fromIndex (inclusive) and toIndex (exclusive).
+     * Unlike {@link #copy()} the elements are not copied, the view shares the underlying array with this list.
+     * Hence the view is only valid until this list is modified.
+     * The methods that modify the view throw an {@link UnsupportedOperationException}.
+     *
+     * @param fromIndex the index of the first element (inclusive)
+     * @param toIndex   the index of the last element (exclusive)
+     * @return a read-only view of the given range
+     * @throws IndexOutOfBoundsException if the range is not within the list
+     */
+    public LongList subList(int fromIndex, int toIndex) {
+        subListRangeCheck(fromIndex, toIndex, size);
+        return new LongListView(longs, fromIndex, toIndex - fromIndex);
+    }
+
     /**
      * Returns the element at the specified position in this list.
      *
@@ -229,19 +358,58 @@ public class LongList implements Serializable {
      * @return <tt>true</tt> (as specified by Collection#add)
      */
     public boolean add(long e) {
-        int newCapacity = calculateNewCapacity(longs.length, size + 1);
-        growIfNeeded(newCapacity);
+        ensureCapacityInternal(size + 1);
 
         longs[size++] = e;
         return true;
     }
 
+    /**
+     * Increases the capacity of this list, if necessary, to hold at least the given number of elements.
+     * Callers that know the number of elements upfront avoid the intermediate copies of a growing list.
+     *
+     * @param minCapacity the desired minimum capacity
+     */
+    public void ensureCapacity(int minCapacity) {
+        int minExpand = (longs != DEFAULT_CAPACITY_EMPTY_ELEMENT_DATA) ? 0 : DEFAULT_CAPACITY;
+        if (minCapacity > minExpand) {
+            growIfNeeded(calculateNewCapacity(longs.length, minCapacity));
+        }
+    }
+
+    private void ensureCapacityInternal(int minCapacity) {
+        int capacity = minCapacity;
+        if (longs == DEFAULT_CAPACITY_EMPTY_ELEMENT_DATA && minCapacity > 0) {
+            capacity = Math.max(DEFAULT_CAPACITY, minCapacity);
+        }
+        growIfNeeded(calculateNewCapacity(longs.length, capacity));
+    }
+
     private void growIfNeeded(int newCapacity) {
         if (newCapacity != -1) {
             longs = Arrays.copyOf(longs, newCapacity);
         }
     }
 
+    /**
+     * Trims the capacity of this list to its size, e.g. before the list is kept in a cache.
+     * The growth of the list leaves up to half of the array unused.
+     */
+    public void trimToSize() {
+        if (size < longs.length) {
+            longs = (size == 0) ? EMPTY_ELEMENT_DATA : Arrays.copyOf(longs, size);
+        }
+    }
+
+    /**
+     * Estimates the heap bytes retained by this list including the unused capacity, see {@link MemoryFootprint}.
+     *
+     * @return the estimated bytes of this list
+     */
+    public long estimatedRetainedBytes() {
+        return MemoryFootprint.objectBytes(SHALLOW_FIELD_BYTES) + MemoryFootprint.arrayBytes(longs.length, Long.BYTES);
+    }
+
     /**
      * Inserts the specified element at the specified position in this
      * list. Shifts the element currently at that position (if any) and
@@ -254,8 +422,7 @@ public class LongList implements Serializable {
     public void add(int index, long element) {
         rangeCheckForAdd(index, size);
 
-        int newCapacity = calculateNewCapacity(longs.length, size + 1);
-        growIfNeeded(newCapacity);
+        ensureCapacityInternal(size + 1);
 
         System.arraycopy(longs, index, longs, index + 1, size - index);
         longs[index] = element;
@@ -343,12 +510,10 @@ public class LongList implements Serializable {
      * @throws NullPointerException if the specified collection is null
      */
     public boolean addAll(LongList c) {
-        long[] a = c.toArray();
-        int numNew = a.length;
-        int newCapacity = calculateNewCapacity(longs.length, size + numNew);
-        growIfNeeded(newCapacity);
+        int numNew = c.size();
+        ensureCapacityInternal(size + numNew);
 
-        System.arraycopy(a, 0, longs, size, numNew);
+        c.copyTo(0, longs, size, numNew);
         size += numNew;
         return numNew != 0;
     }
@@ -361,14 +526,26 @@ public class LongList implements Serializable {
      * @throws NullPointerException if the specified array is null
      */
     public boolean addAll(long[] otherLongs) {
-        int numNew = otherLongs.length;
+        return addAll(otherLongs, 0, otherLongs.length);
+    }
 
-        int newCapacity = calculateNewCapacity(longs.length, size + numNew);
-        growIfNeeded(newCapacity);
+    /**
+     * Appends the given number of elements of the long[] starting at fromIndex at the end of this list.
+     *
+     * @param otherLongs the array holding the elements that are appended
+     * @param fromIndex  the index of the first appended element in the array
+     * @param length     the number of appended elements
+     * @return <tt>true</tt> if this list changed as a result of the call
+     * @throws IndexOutOfBoundsException if the range is not within the array
+     * @throws NullPointerException      if the specified array is null
+     */
+    public boolean addAll(long[] otherLongs, int fromIndex, int length) {
+        arrayRangeCheck(fromIndex, length, otherLongs.length);
+        ensureCapacityInternal(size + length);
 
-        System.arraycopy(otherLongs, 0, longs, size, numNew);
-        size += numNew;
-        return numNew != 0;
+        System.arraycopy(otherLongs, fromIndex, longs, size, length);
+        size += length;
+        return length != 0;
     }
 
     /**
@@ -392,8 +569,7 @@ public class LongList implements Serializable {
         long[] a = c.toArray();
         int numNew = a.length;
 
-        int newCapacity = calculateNewCapacity(longs.length, size + numNew);
-        growIfNeeded(newCapacity);
+        ensureCapacityInternal(size + numNew);
 
         int numMoved = size - index;
         if (numMoved > 0) {
@@ -406,6 +582,191 @@ public class LongList implements Serializable {
     }
 
 
+    /**
+     * Sorts this list ascending and applies the same permutation to the given values.
+     * The sort is stable and works in place on the underlying arrays, see {@link DualArraySort}.
+     *
+     * @param values the values belonging to the longs of this list
+     * @throws IllegalArgumentException if the values do not have the same size as this list
+     */
+    public void sort(DoubleList values) {
+        checkValues(values);
+
+        double[] valueData = values.elementData();
+        if (valueData != null) {
+            DualArraySort.sort(longs, valueData, size);
+        } else {
+            //the values are not stored in one array, sort a copy of them
+            valueData = values.toArray();
+            DualArraySort.sort(longs, valueData, size);
+            values.setElements(valueData);
+        }
+    }
+
+    /**
+     * Merges the ascending runs of this list and applies the same permutation to the given values.
+     * The first run starts at zero, each other run starts at one of the given run starts.
+     * Use it instead of {@link #sort(DoubleList)} if the sorted runs are known, e.g. if sorted chunks were appended.
+     *
+     * @param values    the values belonging to the longs of this list
+     * @param runStarts the ascending start indices of the runs after the first run
+     * @param runCount  the number of given run starts
+     * @throws IllegalArgumentException if the values do not have the same size as this list
+     */
+    public void mergeRuns(DoubleList values, int[] runStarts, int runCount) {
+        checkValues(values);
+
+        double[] valueData = values.elementData();
+        if (valueData != null) {
+            DualArraySort.mergeRuns(longs, valueData, runStarts, runCount, size);
+        } else {
+            //the values are not stored in one array, merge a copy of them
+            valueData = values.toArray();
+            DualArraySort.mergeRuns(longs, valueData, runStarts, runCount, size);
+            values.setElements(valueData);
+        }
+    }
+
+    /**
+     * Checks if the given values belong to the elements of this list
+     *
+     * @param values the values
+     * @throws IllegalArgumentException if the values do not have the same size as this list
+     */
+    void checkValues(DoubleList values) {
+        if (values.size() != size()) {
+            throw new IllegalArgumentException("Size of values " + values.size() + " does not match size " + size());
+        }
+    }
+
+    /**
+     * Sorts this list ascending.
+     * Use {@link #sort(DoubleList)} to sort the list along with its values.
+     */
+    public void sort() {
+        Arrays.sort(longs, 0, size);
+    }
+
+    /**
+     * Checks if the elements of this list are sorted ascending.
+     *
+     * @return true if the list is sorted, otherwise false
+     */
+    public boolean isSorted() {
+        int n = size();
+        for (int i = 1; i < n; i++) {
+            if (elementAt(i) < elementAt(i - 1)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Searches the key in this sorted list using a binary search.
+     * The result is undefined if the list is not sorted.
+     *
+     * @param key the key to search for
+     * @return the index of the first element equal to the key, otherwise <tt>(-(insertion point) - 1)</tt>.
+     * The insertion point is the index of the first element greater than the key or the size of the list.
+     */
+    public int binarySearch(long key) {
+        int index = lowerBound(key);
+        if (index < size() && elementAt(index) == key) {
+            return index;
+        }
+        return -(index + 1);
+    }
+
+    /**
+     * Finds the first element that is greater or equal the key in this sorted list using a binary search.
+     *
+     * @param key the key
+     * @return the index of the first element greater or equal the key or the size of the list if there is none
+     */
+    public int lowerBound(long key) {
+        return lowerBound(key, 0, size());
+    }
+
+    /**
+     * Finds the first element that is greater than the key in this sorted list using a binary search.
+     *
+     * @param key the key
+     * @return the index of the first element greater than the key or the size of the list if there is none
+     */
+    public int upperBound(long key) {
+        int low = 0;
+        int high = size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (elementAt(mid) <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Finds the first element that is greater or equal the key in this sorted list like {@link #lowerBound(long)}.
+     * The search starts at the hint and gallops away from it with steps of 1, 2, 4, ... elements.
+     * Hence it needs O(log d) steps for a distance d between the hint and the result,
+     * e.g. if successive keys are close to each other.
+     *
+     * @param key  the key
+     * @param hint the index to start the search at, it is moved into the list if it is out of range
+     * @return the index of the first element greater or equal the key or the size of the list if there is none
+     */
+    public int gallop(long key, int hint) {
+        int n = size();
+        if (n == 0) {
+            return 0;
+        }
+        int start = Math.min(Math.max(hint, 0), n - 1);
+
+        if (elementAt(start) < key) {
+            //gallop right, the element at last is lower than the key
+            int last = start;
+            int step = 1;
+            int next = last + 1;
+            while (next < n && elementAt(next) < key) {
+                last = next;
+                step <<= 1;
+                next = (n - last > step) ? last + step : n;
+            }
+            return lowerBound(key, last + 1, next);
+        }
+
+        //gallop left, the element at first is greater or equal the key
+        int first = start;
+        int step = 1;
+        int next = first - 1;
+        while (next >= 0 && elementAt(next) >= key) {
+            first = next;
+            step <<= 1;
+            next = first - step;
+        }
+        return lowerBound(key, Math.max(next + 1, 0), first);
+    }
+
+    /**
+     * @return the first index in [fromIndex, toIndex) whose element is greater or equal the key, or toIndex
+     */
+    private int lowerBound(long key, int fromIndex, int toIndex) {
+        int low = fromIndex;
+        int high = toIndex;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (elementAt(mid) < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
     /**
      * Removes from this list all of the elements whose index is between
      * {@code fromIndex}, inclusive, and {@code toIndex}, exclusive.
@@ -431,8 +792,8 @@ public class LongList implements Serializable {
     @Override
     public String toString() {
         return new ToStringBuilder(this)
-                .append("longs", trimToSize(this.size, longs))
-                .append("size", size)
+                .append("longs", toArray())
+                .append("size", size())
                 .toString();
     }
 
@@ -444,38 +805,22 @@ public class LongList implements Serializable {
         if (obj == this) {
             return true;
         }
-        if (obj.getClass() != getClass()) {
+        if (!(obj instanceof LongList)) {
             return false;
         }
         LongList rhs = (LongList) obj;
 
-        long[] thisTrimmed = trimToSize(this.size, this.longs);
-        long[] otherTrimmed = trimToSize(rhs.size, rhs.longs);
-
         return new EqualsBuilder()
-                .append(thisTrimmed, otherTrimmed)
-                .append(this.size, rhs.size)
+                .append(this.toArray(), rhs.toArray())
+                .append(this.size(), rhs.size())
                 .isEquals();
     }
 
-    /**
-     * Trims the capacity of this <tt>ArrayList</tt> instance to be the
-     * list's current size.  An application can use this operation to minimize
-     * the storage of an <tt>ArrayList</tt> instance.
-     */
-    private long[] trimToSize(int size, long[] elements) {
-        long[] copy = Arrays.copyOf(elements, elements.length);
-        if (size < elements.length) {
-            copy = (size == 0) ? EMPTY_ELEMENT_DATA : Arrays.copyOf(elements, size);
-        }
-        return copy;
-    }
-
     @Override
     public int hashCode() {
         return new HashCodeBuilder()
-                .append(longs)
-                .append(size)
+                .append(toArray())
+                .append(size())
                 .toHashCode();
     }
 }
@@ -0,0 +1,315 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.converter.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A pure Java codec for the LZ4 block format. It compresses less than gzip but decompresses several times faster.
+ * The compressed bytes start with the number of decompressed bytes (4 bytes, big endian) followed by one LZ4 block.
+ * The compressor uses a hash table of the last positions of 4 byte sequences like the fast LZ4 compressor.
+ *
+ * @author f.lautenschlager
+ */
+final class Lz4Codec implements CompressionCodec {
+
+    static final int ID = 2;
+
+    private static final int MIN_MATCH = 4;
+    //the last 5 bytes are literals and the last match starts 12 bytes before the end
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+    private static final int MAX_OFFSET = 0xFFFF;
+    private static final int HASH_BITS = 12;
+    private static final int RUN_MASK = 0x0F;
+
+    @Override
+    public int id() {
+        return ID;
+    }
+
+    @Override
+    public String name() {
+        return "lz4";
+    }
+
+    @Override
+    public void compress(byte[] data, int offset, int length, OutputStream out) throws IOException {
+        ListUtil.arrayRangeCheck(offset, length, data.length);
+
+        byte[] block = new byte[4 + maxCompressedLength(length)];
+        writeInt(block, 0, length);
+        int blockLength = compressBlock(data, offset, length, block, 4);
+        out.write(block, 0, blockLength);
+    }
+
+    @Override
+    public int compress(byte[] data, int offset, int length, byte[] dest, int destOffset) {
+        ListUtil.arrayRangeCheck(offset, length, data.length);
+
+        if (4 + maxCompressedLength(length) <= dest.length - destOffset) {
+            writeInt(dest, destOffset, length);
+            return compressBlock(data, offset, length, dest, destOffset + 4) - destOffset;
+        }
+        //the block could still fit, hence it is compressed aside
+        byte[] block = new byte[4 + maxCompressedLength(length)];
+        writeInt(block, 0, length);
+        int blockLength = compressBlock(data, offset, length, block, 4);
+        if (blockLength > dest.length - destOffset) {
+            return -1;
+        }
+        System.arraycopy(block, 0, dest, destOffset, blockLength);
+        return blockLength;
+    }
+
+    @Override
+    public InputStream decompress(byte[] compressed, int offset, int length) throws IOException {
+        byte[] decompressed = new byte[readDecompressedLength(compressed, offset, length)];
+        decompressBlock(compressed, offset + 4, offset + length, decompressed, 0, decompressed.length);
+        return new ByteArrayInputStream(decompressed);
+    }
+
+    @Override
+    public int decompress(byte[] compressed, int offset, int length, byte[] dest, int destOffset) throws IOException {
+        int decompressedLength = readDecompressedLength(compressed, offset, length);
+        if (decompressedLength > dest.length - destOffset) {
+            return -1;
+        }
+        decompressBlock(compressed, offset + 4, offset + length, dest, destOffset, destOffset + decompressedLength);
+        return decompressedLength;
+    }
+
+    @Override
+    public int decompressedLength(byte[] compressed, int offset, int length) {
+        try {
+            return readDecompressedLength(compressed, offset, length);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static int readDecompressedLength(byte[] compressed, int offset, int length) throws IOException {
+        ListUtil.arrayRangeCheck(offset, length, compressed.length);
+        if (length < 4) {
+            throw new IOException("LZ4 block is too short: " + length);
+        }
+        int decompressedLength = readInt(compressed, offset);
+        //a byte of a block expands to at most 255 bytes, hence a corrupt length does not allocate a huge array
+        if (decompressedLength < 0 || decompressedLength > (length - 4L) * 255) {
+            throw new IOException("Illegal decompressed length: " + decompressedLength);
+        }
+        return decompressedLength;
+    }
+
+    /**
+     * @return the maximum number of bytes of a block holding the given number of bytes
+     */
+    static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Compresses the source into one LZ4 block
+     *
+     * @return the end of the block in the destination
+     */
+    static int compressBlock(byte[] src, int srcOffset, int length, byte[] dest, int destOffset) {
+        int srcEnd = srcOffset + length;
+        int matchLimit = srcEnd - LAST_LITERALS;
+        int mfLimit = srcEnd - MF_LIMIT;
+
+        int anchor = srcOffset;
+        int op = destOffset;
+        int ip = srcOffset;
+
+        if (length >= MF_LIMIT + 1) {
+            int[] table = new int[1 << HASH_BITS];
+            Arrays.fill(table, -1);
+
+            while (ip < mfLimit) {
+                int sequence = readIntLE(src, ip);
+                int hash = hash(sequence);
+                int ref = table[hash];
+                table[hash] = ip;
+
+                if (ref < 0 || ip - ref > MAX_OFFSET || readIntLE(src, ref) != sequence) {
+                    ip++;
+                    continue;
+                }
+
+                //extend the match backwards into the literals
+                while (ip > anchor && ref > srcOffset && src[ip - 1] == src[ref - 1]) {
+                    ip--;
+                    ref--;
+                }
+                int matchLength = MIN_MATCH;
+                while (ip + matchLength < matchLimit && src[ip + matchLength] == src[ref + matchLength]) {
+                    matchLength++;
+                }
+
+                op = writeSequence(src, anchor, ip - anchor, ip - ref, matchLength, dest, op);
+                ip += matchLength;
+                anchor = ip;
+            }
+        }
+
+        //the last literals
+        int literals = srcEnd - anchor;
+        int token = Math.min(literals, RUN_MASK) << 4;
+        dest[op++] = (byte) token;
+        op = writeLength(literals, dest, op);
+        System.arraycopy(src, anchor, dest, op, literals);
+        return op + literals;
+    }
+
+    private static int writeSequence(byte[] src, int literalStart, int literals, int matchOffset, int matchLength, byte[] dest, int destOffset) {
+        int op = destOffset;
+        int matchRun = matchLength - MIN_MATCH;
+        dest[op++] = (byte) ((Math.min(literals, RUN_MASK) << 4) | Math.min(matchRun, RUN_MASK));
+        op = writeLength(literals, dest, op);
+        System.arraycopy(src, literalStart, dest, op, literals);
+        op += literals;
+        dest[op++] = (byte) matchOffset;
+        dest[op++] = (byte) (matchOffset >>> 8);
+        return writeLength(matchRun, dest, op);
+    }
+
+    /**
+     * Writes the remainder of a length that does not fit into the 4 bits of the token
+     */
+    private static int writeLength(int length, byte[] dest, int destOffset) {
+        int op = destOffset;
+        if (length >= RUN_MASK) {
+            int remaining = length - RUN_MASK;
+            while (remaining >= 0xFF) {
+                dest[op++] = (byte) 0xFF;
+                remaining -= 0xFF;
+            }
+            dest[op++] = (byte) remaining;
+        }
+        return op;
+    }
+
+    /**
+     * Decompresses one LZ4 block into the range of the destination that has exactly the size of the decompressed bytes
+     *
+     * @throws IOException if the block is malformed
+     */
+    static void decompressBlock(byte[] src, int srcOffset, int srcEnd, byte[] dest, int destOffset, int destEnd) throws IOException {
+        int ip = srcOffset;
+        int op = destOffset;
+
+        while (ip < srcEnd) {
+            int token = src[ip++] & 0xFF;
+
+            int literals = token >>> 4;
+            if (literals == RUN_MASK) {
+                int b;
+                do {
+                    if (ip >= srcEnd) {
+                        throw malformed();
+                    }
+                    b = src[ip++] & 0xFF;
+                    literals += b;
+                } while (b == 0xFF);
+            }
+            if (literals > srcEnd - ip || literals > destEnd - op) {
+                throw malformed();
+            }
+            System.arraycopy(src, ip, dest, op, literals);
+            ip += literals;
+            op += literals;
+
+            //the last sequence has no match
+            if (ip == srcEnd) {
+                break;
+            }
+
+            if (ip + 2 > srcEnd) {
+                throw malformed();
+            }
+            int matchOffset = (src[ip] & 0xFF) | ((src[ip + 1] & 0xFF) << 8);
+            ip += 2;
+            if (matchOffset == 0 || matchOffset > op - destOffset) {
+                throw malformed();
+            }
+
+            int matchLength = token & RUN_MASK;
+            if (matchLength == RUN_MASK) {
+                int b;
+                do {
+                    if (ip >= srcEnd) {
+                        throw malformed();
+                    }
+                    b = src[ip++] & 0xFF;
+                    matchLength += b;
+                } while (b == 0xFF);
+            }
+            matchLength += MIN_MATCH;
+            if (matchLength > destEnd - op) {
+                throw malformed();
+            }
+
+            int ref = op - matchOffset;
+            if (matchOffset >= matchLength) {
+                System.arraycopy(dest, ref, dest, op, matchLength);
+                op += matchLength;
+            } else {
+                //the match overlaps the bytes it writes, e.g. a run of one byte
+                for (int i = 0; i < matchLength; i++) {
+                    dest[op++] = dest[ref++];
+                }
+            }
+        }
+
+        if (op != destEnd) {
+            throw malformed();
+        }
+    }
+
+    private static IOException malformed() {
+        return new IOException("Malformed LZ4 block");
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_BITS);
+    }
+
+    private static int readIntLE(byte[] bytes, int index) {
+        return (bytes[index] & 0xFF)
+                | ((bytes[index + 1] & 0xFF) << 8)
+                | ((bytes[index + 2] & 0xFF) << 16)
+                | ((bytes[index + 3] & 0xFF) << 24);
+    }
+
+    private static int readInt(byte[] bytes, int index) {
+        return ((bytes[index] & 0xFF) << 24)
+                | ((bytes[index + 1] & 0xFF) << 16)
+                | ((bytes[index + 2] & 0xFF) << 8)
+                | (bytes[index + 3] & 0xFF);
+    }
+
+    private static void writeInt(byte[] bytes, int index, int value) {
+        bytes[index] = (byte) (value >>> 24);
+        bytes[index + 1] = (byte) (value >>> 16);
+        bytes[index + 2] = (byte) (value >>> 8);
+        bytes[index + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.converter.common;
+
+/**
+ * Estimates the heap bytes retained by objects, e.g. by the lists and time series.
+ * The estimates assume a 64 bit JVM with compressed references:
+ * an object header of 12 bytes, an array header of 16 bytes, references of 4 bytes
+ * and objects aligned to 8 bytes.
+ * They are meant for byte budgets of caches and buffers, not as exact measurements.
+ * The off-heap memory of the direct lists is accounted for by {@link OffHeapMemory}.
+ *
+ * @author f.lautenschlager
+ */
+public final class MemoryFootprint {
+
+    /**
+     * The bytes of an object header
+     */
+    public static final int OBJECT_HEADER_BYTES = 12;
+
+    /**
+     * The bytes of an array header including the length
+     */
+    public static final int ARRAY_HEADER_BYTES = 16;
+
+    /**
+     * The bytes of a reference
+     */
+    public static final int REFERENCE_BYTES = 4;
+
+    private MemoryFootprint() {
+        //avoid instances
+    }
+
+    /**
+     * @param fieldBytes the bytes of the fields of an object
+     * @return the bytes of the object including its header and alignment
+     */
+    public static long objectBytes(long fieldBytes) {
+        return align(OBJECT_HEADER_BYTES + fieldBytes);
+    }
+
+    /**
+     * Estimates the bytes of an array. An empty array counts zero bytes as the lists share their empty arrays.
+     *
+     * @param length       the length of the array
+     * @param elementBytes the bytes of an element, e.g. {@link Long#BYTES}
+     * @return the bytes of the array including its header and alignment
+     */
+    public static long arrayBytes(int length, int elementBytes) {
+        if (length == 0) {
+            return 0;
+        }
+        return align(ARRAY_HEADER_BYTES + (long) length * elementBytes);
+    }
+
+    /**
+     * Estimates the bytes of a string with a char[] holding its characters.
+     *
+     * @param string the string, could be null
+     * @return the bytes of the string and its characters, zero for null
+     */
+    public static long stringBytes(String string) {
+        if (string == null) {
+            return 0;
+        }
+        //the value reference and the cached hash
+        return objectBytes(REFERENCE_BYTES + Integer.BYTES) + align(ARRAY_HEADER_BYTES + (long) string.length() * Character.BYTES);
+    }
+
+    /**
+     * Estimates the bytes of an attribute value, e.g. a string or a boxed number.
+     * Other objects are counted with their header only.
+     *
+     * @param value the value, could be null
+     * @return the estimated bytes of the value
+     */
+    public static long valueBytes(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof String) {
+            return stringBytes((String) value);
+        }
+        if (value instanceof Long || value instanceof Double) {
+            return objectBytes(Long.BYTES);
+        }
+        if (value instanceof Number || value instanceof Boolean || value instanceof Character) {
+            return objectBytes(Integer.BYTES);
+        }
+        if (value instanceof byte[]) {
+            return arrayBytes(((byte[]) value).length, Byte.BYTES);
+        }
+        return objectBytes(0);
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
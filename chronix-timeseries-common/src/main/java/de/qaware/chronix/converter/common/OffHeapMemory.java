@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.converter.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allocates and releases the off-heap memory of the direct lists and accounts for it.
+ * The memory is either allocated with {@link ByteBuffer#allocateDirect(int)} or mapped from a file.
+ * Released buffers are freed immediately instead of waiting for the garbage collector.
+ * A buffer that is not released, e.g. because the list was dropped, is freed by the garbage collector
+ * and leaves the accounting once it is collected.
+ *
+ * @author f.lautenschlager
+ */
+public final class OffHeapMemory {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OffHeapMemory.class);
+
+    private static final AtomicLong DIRECT_BYTES = new AtomicLong();
+    private static final AtomicLong MAPPED_BYTES = new AtomicLong();
+    //The accounted buffers, the bytes of a collected buffer are removed when its allocation is polled from the queue
+    private static final Set<Allocation> ALLOCATIONS = ConcurrentHashMap.newKeySet();
+    private static final ReferenceQueue<ByteBuffer> COLLECTED = new ReferenceQueue<>();
+
+    private OffHeapMemory() {
+        //avoid instances
+    }
+
+    /**
+     * @return the number of bytes allocated by the direct lists and not yet released
+     */
+    public static long directBytes() {
+        removeCollected();
+        return DIRECT_BYTES.get();
+    }
+
+    /**
+     * @return the number of bytes mapped by the direct lists and not yet released
+     */
+    public static long mappedBytes() {
+        removeCollected();
+        return MAPPED_BYTES.get();
+    }
+
+    /**
+     * Allocates a direct buffer with the native byte order.
+     * The buffer has to be accounted with {@link #account(ByteBuffer, boolean)}.
+     *
+     * @param bytes the capacity in bytes
+     * @return the direct buffer
+     */
+    static ByteBuffer allocateDirect(int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Maps the first bytes of the given file with the native byte order.
+     * The file grows if it is smaller. The buffer has to be accounted with {@link #account(ByteBuffer, boolean)}.
+     *
+     * @param channel the channel of the file
+     * @param bytes   the number of bytes to map
+     * @return the mapped buffer
+     * @throws IOException if the file can not be mapped
+     */
+    static ByteBuffer map(FileChannel channel, int bytes) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+        return buffer.order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Accounts for the bytes of the given buffer until it is released or collected by the garbage collector.
+     *
+     * @param buffer the buffer allocated or mapped by this class
+     * @param mapped true if the buffer is mapped from a file
+     * @return the allocation that has to be handed to {@link #release(ByteBuffer, Allocation)}
+     */
+    static Allocation account(ByteBuffer buffer, boolean mapped) {
+        removeCollected();
+        //a direct buffer is a mapped byte buffer as well, hence we can not use instanceof
+        return new Allocation(buffer, mapped ? MAPPED_BYTES : DIRECT_BYTES);
+    }
+
+    /**
+     * Frees the memory of the given buffer immediately.
+     * Neither the buffer nor views of it must be used afterwards.
+     * Hence a buffer with views that could still be used must be left to the garbage collector instead.
+     *
+     * @param buffer     the buffer allocated or mapped by this class
+     * @param allocation the allocation of the buffer
+     */
+    static void release(ByteBuffer buffer, Allocation allocation) {
+        allocation.free();
+        clean(buffer);
+    }
+
+    private static void removeCollected() {
+        Reference<? extends ByteBuffer> collected;
+        while ((collected = COLLECTED.poll()) != null) {
+            ((Allocation) collected).free();
+        }
+    }
+
+    /**
+     * Invokes the cleaner of the buffer.
+     * Java 9 and later provide Unsafe.invokeCleaner, Java 8 a cleaner method on the buffer.
+     * If both are not accessible the memory is freed by the garbage collector.
+     */
+    private static void clean(ByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            return;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.trace("Unsafe.invokeCleaner is not available", e);
+        }
+
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                Method clean = cleaner.getClass().getMethod("clean");
+                clean.setAccessible(true);
+                clean.invoke(cleaner);
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.debug("Could not free the buffer. The garbage collector frees it.", e);
+        }
+    }
+
+    /**
+     * The accounted bytes of a buffer. It is enqueued when the garbage collector collected the buffer.
+     */
+    static final class Allocation extends PhantomReference<ByteBuffer> {
+
+        private final AtomicLong counter;
+        private final int bytes;
+
+        private Allocation(ByteBuffer buffer, AtomicLong counter) {
+            super(buffer, COLLECTED);
+            this.counter = counter;
+            this.bytes = buffer.capacity();
+            ALLOCATIONS.add(this);
+            counter.addAndGet(bytes);
+        }
+
+        /**
+         * Removes the bytes from the accounting. Only the first call has an effect.
+         */
+        private void free() {
+            if (ALLOCATIONS.remove(this)) {
+                counter.addAndGet(-bytes);
+            }
+        }
+    }
+}
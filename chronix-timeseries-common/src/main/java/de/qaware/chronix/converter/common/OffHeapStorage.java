@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.converter.common;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The off-heap memory of a direct list.
+ * It is either a direct buffer or a buffer mapped from a file.
+ *
+ * @author f.lautenschlager
+ */
+final class OffHeapStorage {
+
+    /**
+     * The largest capacity of one buffer in bytes
+     */
+    static final int MAX_CAPACITY = Integer.MAX_VALUE - 7;
+
+    /**
+     * The estimated heap bytes of a storage and its buffer object
+     */
+    static final long SHALLOW_BYTES = MemoryFootprint.objectBytes(4 * MemoryFootprint.REFERENCE_BYTES + 3)
+            + MemoryFootprint.objectBytes(64)
+            + MemoryFootprint.objectBytes(5 * MemoryFootprint.REFERENCE_BYTES + Integer.BYTES);
+
+    private final Path file;
+    private final boolean temporary;
+    private final FileChannel channel;
+    private ByteBuffer buffer;
+    private OffHeapMemory.Allocation allocation;
+    //true if views of the buffer were handed out, then the buffer is not freed before they are collected
+    private boolean shared;
+    private boolean released;
+
+    /**
+     * Allocates a direct buffer with the given capacity.
+     *
+     * @param capacity the capacity in bytes
+     */
+    OffHeapStorage(int capacity) {
+        this.file = null;
+        this.temporary = false;
+        this.channel = null;
+        use(OffHeapMemory.allocateDirect(capacity));
+    }
+
+    /**
+     * Maps the given file with the given capacity. The content of the file is overwritten.
+     *
+     * @param file     the file
+     * @param capacity the capacity in bytes
+     * @throws UncheckedIOException if the file can not be mapped
+     */
+    OffHeapStorage(Path file, int capacity) {
+        this(file, capacity, false);
+    }
+
+    private OffHeapStorage(Path file, int capacity, boolean temporary) {
+        this.file = file;
+        this.temporary = temporary;
+        try {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            use(OffHeapMemory.map(channel, capacity));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not map file " + file, e);
+        }
+    }
+
+    /**
+     * @return the buffer with the native byte order
+     * @throws IllegalStateException if the storage is released
+     */
+    ByteBuffer buffer() {
+        if (released) {
+            throw new IllegalStateException("The off-heap memory is released");
+        }
+        return buffer;
+    }
+
+    /**
+     * Delivers the buffer to create views that are handed out, e.g. a read-only buffer of the elements.
+     * The buffer is not freed on {@link #grow(int, int)} or {@link #release()} anymore,
+     * the garbage collector frees it when the views are not referenced anymore.
+     *
+     * @return the buffer with the native byte order
+     * @throws IllegalStateException if the storage is released
+     */
+    ByteBuffer sharedBuffer() {
+        ByteBuffer current = buffer();
+        shared = true;
+        return current;
+    }
+
+    /**
+     * @return the capacity in bytes or zero if the storage is released
+     */
+    int capacity() {
+        return released ? 0 : buffer.capacity();
+    }
+
+    /**
+     * @return true if the storage is mapped from a file
+     */
+    boolean isMapped() {
+        return channel != null;
+    }
+
+    /**
+     * Creates a storage for temporary elements, e.g. to sort the elements of this storage.
+     * The scratch storage of a mapped file is a temporary file in the same directory that is deleted on {@link #release()}.
+     *
+     * @param capacity the capacity in bytes
+     * @return the scratch storage, a direct buffer or a mapped file like this storage
+     * @throws UncheckedIOException if the temporary file can not be created or mapped
+     */
+    OffHeapStorage newScratch(int capacity) {
+        if (channel == null) {
+            return new OffHeapStorage(capacity);
+        }
+        Path scratchFile;
+        try {
+            scratchFile = Files.createTempFile(file.toAbsolutePath().getParent(), "scratch", ".bin");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create scratch file next to " + file, e);
+        }
+        return new OffHeapStorage(scratchFile, capacity, true);
+    }
+
+    /**
+     * Grows the storage to the given capacity.
+     * A direct buffer is copied into a new one, a mapped file is mapped again with the larger size.
+     *
+     * @param capacity the new capacity in bytes
+     * @param used     the number of used bytes that are kept
+     * @throws UncheckedIOException if the file can not be mapped
+     */
+    void grow(int capacity, int used) {
+        ByteBuffer old = buffer();
+        ByteBuffer grown;
+        if (channel == null) {
+            grown = OffHeapMemory.allocateDirect(capacity);
+            ByteBuffer src = old.duplicate();
+            src.limit(used);
+            grown.put(src);
+            grown.clear();
+        } else {
+            try {
+                //the mapped file already contains the used bytes
+                grown = OffHeapMemory.map(channel, capacity);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not grow mapped file", e);
+            }
+        }
+        OffHeapMemory.Allocation oldAllocation = allocation;
+        boolean oldShared = shared;
+        use(grown);
+        free(old, oldAllocation, oldShared);
+    }
+
+    private void use(ByteBuffer newBuffer) {
+        buffer = newBuffer;
+        allocation = OffHeapMemory.account(newBuffer, isMapped());
+        shared = false;
+    }
+
+    private static void free(ByteBuffer old, OffHeapMemory.Allocation oldAllocation, boolean oldShared) {
+        //a shared buffer is freed by the garbage collector, hence the views never read freed memory
+        if (!oldShared) {
+            OffHeapMemory.release(old, oldAllocation);
+        }
+    }
+
+    /**
+     * Frees the memory. A mapped file is closed but not deleted unless it is a scratch file.
+     */
+    void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        free(buffer, allocation, shared);
+        buffer = null;
+        allocation = null;
+        if (channel != null) {
+            try {
+                channel.close();
+                if (temporary) {
+                    Files.deleteIfExists(file);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not close mapped file", e);
+            }
+        }
+    }
+}
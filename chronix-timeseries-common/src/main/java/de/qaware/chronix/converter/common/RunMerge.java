@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.converter.common;
+
+import java.util.Arrays;
+
+/**
+ * Sorts the lists that do not store their elements in one array, e.g. the chunked and direct lists.
+ * The elements are copied block by block into a scratch list that stores them like the list, e.g. in chunks or off-heap.
+ * Then the sorted runs of the scratch list are merged back into the list with one k-way merge.
+ * Hence the sort needs no array of the size of the list, the heap only holds a block and the heads of the runs.
+ *
+ * @author f.lautenschlager
+ */
+final class RunMerge {
+
+    /**
+     * The number of elements that are sorted or copied on the heap at once
+     */
+    static final int BLOCK_SIZE = 4096;
+
+    private RunMerge() {
+        //avoid instances
+    }
+
+    /**
+     * Sorts the keys ascending and applies the same permutation to the values.
+     * The blocks of the keys are sorted with the {@link DualArraySort} and merged afterwards, hence the sort is stable.
+     *
+     * @param keys   the keys
+     * @param values the values of the keys or null to sort only the keys
+     */
+    static void sort(LongList keys, DoubleList values) {
+        if (!keys.isSorted()) {
+            merge(keys, values, null, 0);
+        }
+    }
+
+    /**
+     * Merges the ascending runs of the keys and applies the same permutation to the values.
+     * The first run starts at zero, each other run starts at one of the given run starts.
+     *
+     * @param keys      the keys
+     * @param values    the values of the keys
+     * @param runStarts the ascending start indices of the runs after the first run
+     * @param runCount  the number of given run starts
+     */
+    static void mergeRuns(LongList keys, DoubleList values, int[] runStarts, int runCount) {
+        if (runCount > 0) {
+            merge(keys, values, runStarts, runCount);
+        }
+    }
+
+    /**
+     * Copies the keys and values into scratch lists and merges their runs back.
+     * Without run starts the blocks are sorted while they are copied and each unordered block starts a run.
+     */
+    private static void merge(LongList keys, DoubleList values, int[] runStarts, int runCount) {
+        int size = keys.size();
+        LongList keyScratch = keys.newScratch(size);
+        DoubleList valueScratch = values != null ? values.newScratch(size) : null;
+        try {
+            long[] keyBlock = new long[Math.min(size, BLOCK_SIZE)];
+            double[] valueBlock = values != null ? new double[keyBlock.length] : null;
+            int[] starts = runStarts;
+            int count = runCount;
+            if (starts == null) {
+                starts = new int[(size - 1) / BLOCK_SIZE];
+            }
+
+            long last = Long.MIN_VALUE;
+            for (int from = 0; from < size; from += BLOCK_SIZE) {
+                int length = Math.min(BLOCK_SIZE, size - from);
+                keys.copyTo(from, keyBlock, 0, length);
+                if (values != null) {
+                    values.copyTo(from, valueBlock, 0, length);
+                }
+                if (runStarts == null) {
+                    if (values != null) {
+                        DualArraySort.sort(keyBlock, valueBlock, 0, length);
+                    } else {
+                        Arrays.sort(keyBlock, 0, length);
+                    }
+                    if (from > 0 && keyBlock[0] < last) {
+                        starts[count++] = from;
+                    }
+                    last = keyBlock[length - 1];
+                }
+                append(keyScratch, valueScratch, keyBlock, valueBlock, length);
+            }
+
+            keys.clear();
+            if (values != null) {
+                values.clear();
+            }
+            mergeBack(keyScratch, valueScratch, keys, values, starts, count, keyBlock, valueBlock);
+        } finally {
+            keyScratch.releaseScratch();
+            if (valueScratch != null) {
+                valueScratch.releaseScratch();
+            }
+        }
+    }
+
+    /**
+     * Merges the runs of the source keys and values with a heap of the runs ordered by their heads.
+     * Equal heads are taken from the earlier run first, hence the merge is stable.
+     */
+    private static void mergeBack(LongList srcKeys, DoubleList srcValues, LongList keys, DoubleList values,
+                                  int[] runStarts, int runCount, long[] keyBlock, double[] valueBlock) {
+        int runs = runCount + 1;
+        int[] positions = new int[runs];
+        int[] ends = new int[runs];
+        long[] heads = new long[runs];
+        int[] heap = new int[runs];
+        int heapSize = 0;
+        for (int run = 0; run < runs; run++) {
+            positions[run] = run == 0 ? 0 : runStarts[run - 1];
+            ends[run] = run < runCount ? runStarts[run] : srcKeys.size();
+            if (positions[run] < ends[run]) {
+                heads[run] = srcKeys.elementAt(positions[run]);
+                heap[heapSize++] = run;
+            }
+        }
+        for (int i = (heapSize >>> 1) - 1; i >= 0; i--) {
+            siftDown(heap, heapSize, i, heads);
+        }
+
+        int buffered = 0;
+        while (heapSize > 1) {
+            int run = heap[0];
+            int position = positions[run];
+            keyBlock[buffered] = heads[run];
+            if (values != null) {
+                valueBlock[buffered] = srcValues.elementAt(position);
+            }
+            if (++buffered == keyBlock.length) {
+                append(keys, values, keyBlock, valueBlock, buffered);
+                buffered = 0;
+            }
+
+            positions[run] = ++position;
+            if (position < ends[run]) {
+                heads[run] = srcKeys.elementAt(position);
+            } else {
+                heap[0] = heap[--heapSize];
+            }
+            siftDown(heap, heapSize, 0, heads);
+        }
+        append(keys, values, keyBlock, valueBlock, buffered);
+
+        //the rest of the last run is copied as it is
+        if (heapSize == 1) {
+            int run = heap[0];
+            for (int from = positions[run]; from < ends[run]; from += keyBlock.length) {
+                int length = Math.min(keyBlock.length, ends[run] - from);
+                srcKeys.copyTo(from, keyBlock, 0, length);
+                if (values != null) {
+                    srcValues.copyTo(from, valueBlock, 0, length);
+                }
+                append(keys, values, keyBlock, valueBlock, length);
+            }
+        }
+    }
+
+    private static void siftDown(int[] heap, int heapSize, int index, long[] heads) {
+        int run = heap[index];
+        int i = index;
+        while (true) {
+            int child = (i << 1) + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && before(heap[child + 1], heap[child], heads)) {
+                child++;
+            }
+            if (!before(heap[child], run, heads)) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = run;
+    }
+
+    private static boolean before(int run, int other, long[] heads) {
+        return heads[run] < heads[other] || heads[run] == heads[other] && run < other;
+    }
+
+    private static void append(LongList keys, DoubleList values, long[] keyBlock, double[] valueBlock, int length) {
+        keys.addAll(keyBlock, 0, length);
+        if (values != null) {
+            values.addAll(valueBlock, 0, length);
+        }
+    }
+
+    /**
+     * Sorts the values ascending like {@link Arrays#sort(double[])}.
+     * The blocks are sorted on the heap and merged afterwards.
+     *
+     * @param values the values
+     */
+    static void sort(DoubleList values) {
+        if (values.isSorted()) {
+            return;
+        }
+        int size = values.size();
+        DoubleList scratch = values.newScratch(size);
+        try {
+            double[] block = new double[Math.min(size, BLOCK_SIZE)];
+            int[] starts = new int[(size - 1) / BLOCK_SIZE];
+            int count = 0;
+            double last = Double.NEGATIVE_INFINITY;
+            for (int from = 0; from < size; from += BLOCK_SIZE) {
+                int length = Math.min(BLOCK_SIZE, size - from);
+                values.copyTo(from, block, 0, length);
+                Arrays.sort(block, 0, length);
+                if (from > 0 && Double.compare(block[0], last) < 0) {
+                    starts[count++] = from;
+                }
+                last = block[length - 1];
+                scratch.addAll(block, 0, length);
+            }
+
+            values.clear();
+            mergeBack(scratch, values, starts, count, block);
+        } finally {
+            scratch.releaseScratch();
+        }
+    }
+
+    /**
+     * Merges the runs of the source values like {@link #mergeBack(LongList, DoubleList, LongList, DoubleList, int[], int, long[], double[])}
+     */
+    private static void mergeBack(DoubleList src, DoubleList values, int[] runStarts, int runCount, double[] block) {
+        int runs = runCount + 1;
+        int[] positions = new int[runs];
+        int[] ends = new int[runs];
+        double[] heads = new double[runs];
+        int[] heap = new int[runs];
+        int heapSize = 0;
+        for (int run = 0; run < runs; run++) {
+            positions[run] = run == 0 ? 0 : runStarts[run - 1];
+            ends[run] = run < runCount ? runStarts[run] : src.size();
+            if (positions[run] < ends[run]) {
+                heads[run] = src.elementAt(positions[run]);
+                heap[heapSize++] = run;
+            }
+        }
+        for (int i = (heapSize >>> 1) - 1; i >= 0; i--) {
+            siftDown(heap, heapSize, i, heads);
+        }
+
+        int buffered = 0;
+        while (heapSize > 1) {
+            int run = heap[0];
+            block[buffered] = heads[run];
+            if (++buffered == block.length) {
+                values.addAll(block, 0, buffered);
+                buffered = 0;
+            }
+
+            int position = ++positions[run];
+            if (position < ends[run]) {
+                heads[run] = src.elementAt(position);
+            } else {
+                heap[0] = heap[--heapSize];
+            }
+            siftDown(heap, heapSize, 0, heads);
+        }
+        values.addAll(block, 0, buffered);
+
+        //the rest of the last run is copied as it is
+        if (heapSize == 1) {
+            int run = heap[0];
+            for (int from = positions[run]; from < ends[run]; from += block.length) {
+                int length = Math.min(block.length, ends[run] - from);
+                src.copyTo(from, block, 0, length);
+                values.addAll(block, 0, length);
+            }
+        }
+    }
+
+    private static void siftDown(int[] heap, int heapSize, int index, double[] heads) {
+        int run = heap[index];
+        int i = index;
+        while (true) {
+            int child = (i << 1) + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && before(heap[child + 1], heap[child], heads)) {
+                child++;
+            }
+            if (!before(heap[child], run, heads)) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = run;
+    }
+
+    private static boolean before(int run, int other, double[] heads) {
+        int cmp = Double.compare(heads[run], heads[other]);
+        return cmp < 0 || cmp == 0 && run < other;
+    }
+}
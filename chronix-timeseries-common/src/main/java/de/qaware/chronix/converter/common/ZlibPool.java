@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.converter.common;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Pools the deflaters and inflaters of the gzip and deflate codecs.
+ * A deflater or inflater holds native memory that is only freed by end() or the finalizer.
+ * Hence creating one per call churns native memory under load. The pooled ones are reset and reused instead.
+ * The pool keeps at most {@link #MAX_POOLED} instances per kind, further released instances are ended.
+ * <p>
+ * It also holds the loops that deflate and inflate between arrays without intermediate streams.
+ *
+ * @author f.lautenschlager
+ */
+final class ZlibPool {
+
+    /**
+     * The maximum number of pooled deflaters per level and inflaters per format
+     */
+    static final int MAX_POOLED = 16;
+
+    private static final int LEVELS = 11;
+    private static final int CHUNK_SIZE = 8192;
+
+    //The deflaters by level (-1 to 9), first with the zlib header then without (nowrap)
+    private static final List<Deque<Deflater>> DEFLATERS = newPools(2 * LEVELS);
+    //The inflaters with the zlib header and without (nowrap)
+    private static final List<Deque<Inflater>> INFLATERS = newPools(2);
+
+    private ZlibPool() {
+        //avoid instances
+    }
+
+    private static <T> List<Deque<T>> newPools(int count) {
+        List<Deque<T>> pools = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            pools.add(new ArrayDeque<>());
+        }
+        return pools;
+    }
+
+    /**
+     * Takes a deflater from the pool or creates a new one
+     *
+     * @param level  the compression level between -1 and 9
+     * @param nowrap true to deflate without the zlib header, e.g. for gzip
+     * @return the deflater, has to be handed back with {@link #release(Deflater, int, boolean)}
+     */
+    static Deflater deflater(int level, boolean nowrap) {
+        Deque<Deflater> pool = DEFLATERS.get(deflaterIndex(level, nowrap));
+        Deflater deflater;
+        synchronized (pool) {
+            deflater = pool.pollFirst();
+        }
+        return deflater != null ? deflater : new Deflater(level, nowrap);
+    }
+
+    /**
+     * Hands the deflater back to the pool or ends it if the pool is full
+     *
+     * @param deflater the deflater taken with the same level and format
+     * @param level    the compression level
+     * @param nowrap   the format
+     */
+    static void release(Deflater deflater, int level, boolean nowrap) {
+        deflater.reset();
+        Deque<Deflater> pool = DEFLATERS.get(deflaterIndex(level, nowrap));
+        synchronized (pool) {
+            if (pool.size() < MAX_POOLED) {
+                pool.offerFirst(deflater);
+                return;
+            }
+        }
+        deflater.end();
+    }
+
+    /**
+     * Takes an inflater from the pool or creates a new one
+     *
+     * @param nowrap true to inflate without the zlib header, e.g. for gzip
+     * @return the inflater, has to be handed back with {@link #release(Inflater, boolean)}
+     */
+    static Inflater inflater(boolean nowrap) {
+        Deque<Inflater> pool = INFLATERS.get(nowrap ? 1 : 0);
+        Inflater inflater;
+        synchronized (pool) {
+            inflater = pool.pollFirst();
+        }
+        return inflater != null ? inflater : new Inflater(nowrap);
+    }
+
+    /**
+     * Hands the inflater back to the pool or ends it if the pool is full
+     *
+     * @param inflater the inflater taken with the same format
+     * @param nowrap   the format
+     */
+    static void release(Inflater inflater, boolean nowrap) {
+        inflater.reset();
+        Deque<Inflater> pool = INFLATERS.get(nowrap ? 1 : 0);
+        synchronized (pool) {
+            if (pool.size() < MAX_POOLED) {
+                pool.offerFirst(inflater);
+                return;
+            }
+        }
+        inflater.end();
+    }
+
+    private static int deflaterIndex(int level, boolean nowrap) {
+        return (level + 1) + (nowrap ? LEVELS : 0);
+    }
+
+    /**
+     * Deflates all input of the deflater into the array
+     *
+     * @param deflater the deflater with the input set
+     * @param dest     the destination array
+     * @param offset   the index of the first byte to write
+     * @param limit    the index after the last byte that can be written
+     * @return the index after the last written byte or -1 if the deflated bytes do not fit
+     */
+    static int deflate(Deflater deflater, byte[] dest, int offset, int limit) {
+        deflater.finish();
+        int position = offset;
+        while (!deflater.finished()) {
+            if (position == limit) {
+                //the deflater only notices the end after the last bytes filled the array
+                return deflater.deflate(new byte[1]) == 0 && deflater.finished() ? position : -1;
+            }
+            position += deflater.deflate(dest, position, limit - position);
+        }
+        return position;
+    }
+
+    /**
+     * Deflates all input of the deflater into the stream
+     *
+     * @param deflater the deflater with the input set
+     * @param out      the stream
+     * @throws IOException if the bytes can not be written
+     */
+    static void deflate(Deflater deflater, OutputStream out) throws IOException {
+        deflater.finish();
+        byte[] chunk = new byte[CHUNK_SIZE];
+        while (!deflater.finished()) {
+            int length = deflater.deflate(chunk);
+            out.write(chunk, 0, length);
+        }
+    }
+
+    /**
+     * Inflates the input of the inflater into the array until the end of the deflated bytes
+     *
+     * @param inflater the inflater with the input set
+     * @param dest     the destination array
+     * @param offset   the index of the first byte to write
+     * @return the index after the last written byte or -1 if the inflated bytes do not fit
+     * @throws IOException if the bytes are not deflated or end too early
+     */
+    static int inflate(Inflater inflater, byte[] dest, int offset) throws IOException {
+        try {
+            int position = offset;
+            while (!inflater.finished()) {
+                if (position == dest.length) {
+                    //the end of the deflated bytes could follow without further bytes
+                    return inflater.inflate(new byte[1]) == 0 && inflater.finished() ? position : -1;
+                }
+                int length = inflater.inflate(dest, position, dest.length - position);
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new EOFException("Unexpected end of deflated bytes");
+                }
+                position += length;
+            }
+            return position;
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        }
+    }
+}
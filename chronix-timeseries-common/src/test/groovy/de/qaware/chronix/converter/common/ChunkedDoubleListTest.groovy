@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.converter.common
+
+import spock.lang.Specification
+
+/**
+ * Unit test for the chunked double list
+ * @author f.lautenschlager
+ */
+class ChunkedDoubleListTest extends Specification {
+
+    def "test add and get across chunks"() {
+        given:
+        def list = new ChunkedDoubleList(4)
+
+        when:
+        10.times {
+            list.add(it as double)
+        }
+
+        then:
+        list.size() == 10
+        list.get(3) == 3d
+        list.get(4) == 4d
+        list.toArray() == (0..9).collect { it as double } as double[]
+    }
+
+    def "test equals a double list with the same elements"() {
+        given:
+        def list = new ChunkedDoubleList(2)
+        list.addAll([1d, 2d, 3d] as double[])
+        def other = new DoubleList([1d, 2d, 3d] as double[], 3)
+
+        expect:
+        list == other
+        other == list
+        list.hashCode() == other.hashCode()
+    }
+
+    def "test insert and remove"() {
+        given:
+        def list = new ChunkedDoubleList(2)
+        list.addAll([1d, 2d, 4d, 5d] as double[])
+
+        when:
+        list.add(2, 3d)
+        list.remove(5d)
+        def removed = list.remove(0)
+
+        then:
+        removed == 1d
+        list.toArray() == [2d, 3d, 4d] as double[]
+    }
+
+    def "test copy keeps the chunks"() {
+        given:
+        def list = new ChunkedDoubleList(2)
+        list.addAll([1d, 2d, 3d] as double[])
+
+        when:
+        def copy = list.copy()
+        copy.set(0, 4d)
+
+        then:
+        copy instanceof ChunkedDoubleList
+        list.get(0) == 1d
+        copy.get(0) == 4d
+    }
+
+    def "test illegal chunk size"() {
+        when:
+        new ChunkedDoubleList(6)
+
+        then:
+        thrown IllegalArgumentException
+    }
+
+    def "test search and sort"() {
+        given:
+        def list = new ChunkedDoubleList(4)
+        list.addAll([9d, 0d, 5d, 7d, 1d, 3d, 8d, 2d, 6d, 4d] as double[], 0, 10)
+
+        when:
+        list.sort()
+
+        then:
+        list.isSorted()
+        list.toArray() == [0d, 1d, 2d, 3d, 4d, 5d, 6d, 7d, 8d, 9d] as double[]
+        list.binarySearch(6d) == 6
+        list.lowerBound(10d) == 10
+        list.upperBound(4d) == 5
+        list.gallop(7d, 1) == 7
+    }
+
+    def "test sort of several blocks"() {
+        given:
+        def random = new Random(7)
+        def list = new ChunkedDoubleList(64)
+        20_000.times { list.add(it % 100 == 0 ? Double.NaN : random.nextInt(1000) - 500d) }
+        list.add(-0d)
+        list.add(0d)
+        def expected = list.toArray()
+        Arrays.sort(expected)
+
+        when:
+        list.sort()
+
+        then:
+        Arrays.equals(list.toArray(), expected)
+    }
+
+    def "test sub list is a view"() {
+        given:
+        def list = new ChunkedDoubleList(2)
+        list.addAll([1d, 2d, 3d, 4d, 5d] as double[])
+        def subList = list.subList(1, 4)
+
+        when:
+        list.set(2, 9d)
+
+        then:
+        subList.get(1) == 9d
+        subList.toArray() == [2d, 9d, 4d] as double[]
+        subList.asReadOnlyBuffer().get(2) == 4d
+
+        when:
+        subList.add(1d)
+
+        then:
+        thrown UnsupportedOperationException
+    }
+
+    def "test stream"() {
+        given:
+        def list = new ChunkedDoubleList(4)
+        10.times { list.add(it as double) }
+
+        when:
+        def spliterator = list.spliterator()
+        def prefix = spliterator.trySplit()
+
+        then:
+        spliterator.hasCharacteristics(Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED)
+        prefix.estimateSize() + spliterator.estimateSize() == 10
+        list.stream().toArray() == list.toArray()
+        list.stream().parallel().sum() == 45d
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.converter.common
+
+import spock.lang.Specification
+
+/**
+ * Unit test for the chunked long list
+ * @author f.lautenschlager
+ */
+class ChunkedLongListTest extends Specification {
+
+    def "test add and get across chunks"() {
+        given:
+        def list = new ChunkedLongList(4)
+
+        when:
+        10.times {
+            list.add(it as long)
+        }
+
+        then:
+        list.size() == 10
+        list.get(0) == 0l
+        list.get(4) == 4l
+        list.get(9) == 9l
+        list.toArray() == (0..9).collect { it as long } as long[]
+        list.chunkSize() == 4
+    }
+
+    def "test get out of range"() {
+        given:
+        def list = new ChunkedLongList(4)
+        list.add(1l)
+
+        when:
+        list.get(1)
+
+        then:
+        thrown IndexOutOfBoundsException
+    }
+
+    def "test equals a long list with the same elements"() {
+        given:
+        def list = new ChunkedLongList(2)
+        list.addAll([1l, 2l, 3l] as long[])
+        def other = new LongList([1l, 2l, 3l] as long[], 3)
+
+        expect:
+        list == other
+        other == list
+        list.hashCode() == other.hashCode()
+    }
+
+    def "test add all from other lists"() {
+        given:
+        def list = new ChunkedLongList(4)
+        list.add(0l)
+        def plain = new LongList()
+        plain.addAll([1l, 2l, 3l, 4l, 5l] as long[])
+
+        when:
+        list.addAll(plain)
+        list.addAll(list.copy())
+        def target = new LongList()
+        target.addAll(list)
+
+        then:
+        list.toArray() == [0l, 1l, 2l, 3l, 4l, 5l, 0l, 1l, 2l, 3l, 4l, 5l] as long[]
+        target == list
+    }
+
+    def "test insert and remove"() {
+        given:
+        def list = new ChunkedLongList(2)
+        list.addAll([1l, 2l, 4l, 5l] as long[])
+
+        when:
+        list.add(2, 3l)
+        list.addAll(0, new LongList([-1l, 0l] as long[], 2))
+        def removed = list.remove(0)
+        list.remove(5l)
+        list.removeRange(0, 1)
+
+        then:
+        removed == -1l
+        list.toArray() == [1l, 2l, 3l, 4l] as long[]
+    }
+
+    def "test set"() {
+        given:
+        def list = new ChunkedLongList(2)
+        list.addAll([1l, 2l, 3l] as long[])
+
+        when:
+        def old = list.set(2, 4l)
+
+        then:
+        old == 3l
+        list.get(2) == 4l
+        list.indexOf(4l) == 2
+        list.lastIndexOf(1l) == 0
+        list.contains(2l)
+    }
+
+    def "test sort with values"() {
+        given:
+        def list = new ChunkedLongList(2)
+        list.addAll([5l, 1l, 4l, 2l, 3l] as long[])
+        def values = new ChunkedDoubleList(2)
+        values.addAll([5d, 1d, 4d, 2d, 3d] as double[])
+
+        when:
+        list.sort(values)
+
+        then:
+        list.toArray() == [1l, 2l, 3l, 4l, 5l] as long[]
+        values.toArray() == [1d, 2d, 3d, 4d, 5d] as double[]
+    }
+
+    def "test sort of a long list with chunked values"() {
+        given:
+        def list = new LongList()
+        list.addAll([3l, 1l, 2l] as long[])
+        def values = new ChunkedDoubleList(2)
+        values.addAll([3d, 1d, 2d] as double[])
+
+        when:
+        list.sort(values)
+
+        then:
+        list.toArray() == [1l, 2l, 3l] as long[]
+        values.toArray() == [1d, 2d, 3d] as double[]
+    }
+
+    def "test merge runs"() {
+        given:
+        def list = new ChunkedLongList(2)
+        list.addAll([1l, 4l, 2l, 3l] as long[])
+        def values = new DoubleList()
+        values.addAll([1d, 4d, 2d, 3d] as double[])
+
+        when:
+        list.mergeRuns(values, [2] as int[], 1)
+
+        then:
+        list.toArray() == [1l, 2l, 3l, 4l] as long[]
+        values.toArray() == [1d, 2d, 3d, 4d] as double[]
+    }
+
+    def "test sub list and buffer"() {
+        given:
+        def list = new ChunkedLongList(2)
+        list.addAll([1l, 2l, 3l, 4l, 5l] as long[])
+
+        expect:
+        list.subList(1, 4).toArray() == [2l, 3l, 4l] as long[]
+        list.asReadOnlyBuffer().get(4) == 5l
+        list.asReadOnlyBuffer().isReadOnly()
+    }
+
+    def "test merge runs of several blocks keeps equal timestamps in order"() {
+        given:
+        def list = new ChunkedLongList(64)
+        def values = new ChunkedDoubleList(64)
+        10_000.times { list.add((it >> 1) as long); values.add(it as double) }
+        3_000.times { list.add((it * 3) as long); values.add(-it as double) }
+        def keys = list.toArray()
+        def expectedValues = values.toArray()
+        DualArraySort.mergeRuns(keys, expectedValues, [10_000] as int[], 1, keys.length)
+
+        when:
+        list.mergeRuns(values, [10_000] as int[], 1)
+
+        then:
+        list.toArray() == keys
+        values.toArray() == expectedValues
+    }
+
+    def "test sort of several blocks"() {
+        given:
+        def random = new Random(7)
+        def list = new ChunkedLongList(64)
+        def values = new ChunkedDoubleList(64)
+        20_000.times { list.add(random.nextInt(1000) as long); values.add(it as double) }
+        def keys = list.toArray()
+        def expectedValues = values.toArray()
+        DualArraySort.sort(keys, expectedValues, keys.length)
+
+        when:
+        list.sort(values)
+
+        then:
+        list.toArray() == keys
+        values.toArray() == expectedValues
+    }
+
+    def "test sub list is a view"() {
+        given:
+        def list = new ChunkedLongList(2)
+        list.addAll([1l, 2l, 3l, 4l, 5l] as long[])
+        def subList = list.subList(1, 4)
+
+        when:
+        list.set(2, 9l)
+
+        then:
+        subList.get(1) == 9l
+        subList.subList(1, 3).toArray() == [9l, 4l] as long[]
+
+        when:
+        subList.set(0, 1l)
+
+        then:
+        thrown UnsupportedOperationException
+    }
+
+    def "test clear"() {
+        given:
+        def list = new ChunkedLongList(2)
+        list.addAll([1l, 2l, 3l] as long[])
+
+        when:
+        list.clear()
+        list.add(4l)
+
+        then:
+        list.size() == 1
+        list.get(0) == 4l
+    }
+
+    def "test illegal chunk size"() {
+        when:
+        new ChunkedLongList(chunkSize)
+
+        then:
+        thrown IllegalArgumentException
+
+        where:
+        chunkSize << [0, -4, 3, 100]
+    }
+
+    def "test search and sort"() {
+        given:
+        def list = new ChunkedLongList(4)
+        list.addAll([9l, 0l, 5l, 7l, 1l, 3l, 8l, 2l, 6l, 4l] as long[], 0, 10)
+
+        when:
+        list.sort()
+
+        then:
+        list.isSorted()
+        list.toArray() == [0l, 1l, 2l, 3l, 4l, 5l, 6l, 7l, 8l, 9l] as long[]
+        list.binarySearch(6l) == 6
+        list.lowerBound(10l) == 10
+        list.upperBound(4l) == 5
+        list.gallop(7l, 1) == 7
+    }
+
+    def "test stream"() {
+        given:
+        def list = new ChunkedLongList(4)
+        10.times { list.add(it as long) }
+
+        when:
+        def spliterator = list.spliterator()
+        def prefix = spliterator.trySplit()
+
+        then:
+        spliterator.hasCharacteristics(Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED)
+        prefix.estimateSize() + spliterator.estimateSize() == 10
+        list.stream().toArray() == list.toArray()
+        list.stream().parallel().sum() == 45l
+    }
+
+    def "test trim to size frees unused chunks"() {
+        given:
+        def list = new ChunkedLongList(64)
+        list.ensureCapacity(1000)
+        list.add(1l)
+        def untrimmed = list.estimatedRetainedBytes()
+
+        when:
+        list.trimToSize()
+
+        then:
+        untrimmed > 16 * MemoryFootprint.arrayBytes(64, 8)
+        list.estimatedRetainedBytes() < 2 * MemoryFootprint.arrayBytes(64, 8)
+
+        when:
+        100.times {
+            list.add(it as long)
+        }
+
+        then:
+        list.size() == 101
+        list.get(100) == 99l
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.converter.common
+
+import spock.lang.Specification
+
+/**
+ * Unit test for the compressed double list
+ * @author f.lautenschlager
+ */
+class CompressedDoubleListTest extends Specification {
+
+    def "test add and get across blocks"() {
+        given:
+        def list = new CompressedDoubleList()
+        def expected = new DoubleList()
+        def random = new Random(42)
+        def value = 42d
+
+        when:
+        1000.times {
+            if (it % 10 == 0) {
+                value += random.nextGaussian()
+            }
+            list.add(value)
+            expected.add(value)
+        }
+
+        then:
+        list.size() == 1000
+        list.blocks() == 7
+        list.get(0) == expected.get(0)
+        list.get(500) == expected.get(500)
+        list.get(999) == expected.get(999)
+        list.toArray() == expected.toArray()
+        list == expected
+        expected == list
+        list.hashCode() == expected.hashCode()
+    }
+
+    def "test special values"() {
+        given:
+        def list = new CompressedDoubleList()
+        def elements = [0d, -0d, Double.NaN, Double.MAX_VALUE, Double.MIN_VALUE,
+                        Double.NEGATIVE_INFINITY, 1d, 1.5d, -1d] as double[]
+
+        when:
+        50.times {
+            list.addAll(elements)
+        }
+
+        then:
+        list.size() == 450
+        list.blocks() == 3
+        450.times {
+            assert Double.compare(list.get(it), elements[it % elements.length]) == 0
+        }
+    }
+
+    def "test get out of range"() {
+        given:
+        def list = new CompressedDoubleList()
+        list.add(1d)
+
+        when:
+        list.get(1)
+
+        then:
+        thrown IndexOutOfBoundsException
+    }
+
+    def "test modifications encode the elements again"() {
+        given:
+        def list = new CompressedDoubleList()
+        def expected = new DoubleList()
+        300.times {
+            list.add(it / 4d)
+            expected.add(it / 4d)
+        }
+
+        when:
+        def setOld = list.set(10, 42d)
+        expected.set(10, 42d)
+        list.add(5, 7d)
+        expected.add(5, 7d)
+        def removed = list.remove(200)
+        expected.remove(200)
+        list.removeRange(100, 150)
+        expected.removeRange(100, 150)
+        list.addAll(20, expected.subList(0, 3))
+        expected.addAll(20, expected.subList(0, 3))
+
+        then:
+        setOld == 2.5d
+        removed == 49.75d
+        list == expected
+        list.size() == expected.size()
+    }
+
+    def "test sort and sort as values of a long list"() {
+        given:
+        def list = new CompressedDoubleList()
+        def timestamps = new LongList()
+        200.times {
+            list.add(it as double)
+            timestamps.add(200l - it)
+        }
+
+        when:
+        timestamps.sort(list)
+
+        then:
+        list.get(0) == 199d
+        list.get(199) == 0d
+
+        when:
+        list.sort()
+
+        then:
+        list.isSorted()
+        list.get(0) == 0d
+        list.get(199) == 199d
+    }
+
+    def "test sub list, buffer and stream"() {
+        given:
+        def list = new CompressedDoubleList()
+        list.addAll((0..299).collect { it as double } as double[])
+
+        expect:
+        list.subList(126, 130).toArray() == [126d, 127d, 128d, 129d] as double[]
+        list.asReadOnlyBuffer().get(257) == 257d
+        list.stream().sum() == (0..299).sum()
+        list.indexOf(250d) == 250
+        list.lastIndexOf(300d) == -1
+    }
+
+    def "test serialize"() {
+        given:
+        def list = new CompressedDoubleList()
+        list.addAll((0..299).collect { it / 10d } as double[])
+        def out = new ByteArrayOutputStream()
+
+        when:
+        new ObjectOutputStream(out).writeObject(list)
+        def read = new ObjectInputStream(new ByteArrayInputStream(out.toByteArray())).readObject()
+
+        then:
+        read == list
+        read.get(150) == 15d
+    }
+
+    def "test clear"() {
+        given:
+        def list = new CompressedDoubleList()
+        list.addAll((0..299).collect { it as double } as double[])
+
+        when:
+        list.clear()
+        list.add(7d)
+
+        then:
+        list.size() == 1
+        list.blocks() == 0
+        list.get(0) == 7d
+    }
+
+    def "test trim to size and append"() {
+        given:
+        def list = new CompressedDoubleList()
+        200.times {
+            list.add(it % 3 as double)
+        }
+
+        when:
+        list.trimToSize()
+        list.addAll([7d, 8d] as double[])
+
+        then:
+        list.estimatedRetainedBytes() < 200 * 8
+        list.size() == 202
+        list.get(199) == 1d
+        list.get(201) == 8d
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.converter.common
+
+import spock.lang.Specification
+
+/**
+ * Unit test for the compressed long list
+ * @author f.lautenschlager
+ */
+class CompressedLongListTest extends Specification {
+
+    def "test add and get across blocks"() {
+        given:
+        def list = new CompressedLongList()
+        def expected = new LongList()
+        def random = new Random(42)
+        def timestamp = 1_500_000_000_000l
+
+        when:
+        1000.times {
+            timestamp += 15_000 + (it % 10 == 0 ? random.nextInt(100) - 50 : 0)
+            list.add(timestamp)
+            expected.add(timestamp)
+        }
+
+        then:
+        list.size() == 1000
+        list.blocks() == 7
+        list.get(0) == expected.get(0)
+        list.get(500) == expected.get(500)
+        list.get(999) == expected.get(999)
+        list.toArray() == expected.toArray()
+        list == expected
+        expected == list
+        list.hashCode() == expected.hashCode()
+    }
+
+    def "test extreme deltas"() {
+        given:
+        def list = new CompressedLongList()
+        def elements = [0l, Long.MAX_VALUE, Long.MIN_VALUE, -1l, 1l, Long.MIN_VALUE, Long.MAX_VALUE] as long[]
+
+        when:
+        50.times {
+            list.addAll(elements)
+        }
+
+        then:
+        list.size() == 350
+        list.blocks() == 2
+        350.times {
+            assert list.get(it) == elements[it % elements.length]
+        }
+    }
+
+    def "test get out of range"() {
+        given:
+        def list = new CompressedLongList()
+        list.add(1l)
+
+        when:
+        list.get(1)
+
+        then:
+        thrown IndexOutOfBoundsException
+    }
+
+    def "test add all from other lists"() {
+        given:
+        def list = new CompressedLongList()
+        def plain = new LongList()
+        300.times {
+            plain.add(it * 1000l)
+        }
+
+        when:
+        list.addAll(plain)
+        list.addAll(list.copy())
+        def target = new LongList()
+        target.addAll(list)
+
+        then:
+        list.size() == 600
+        target == list
+        list.get(299) == 299_000l
+        list.get(300) == 0l
+    }
+
+    def "test modifications encode the elements again"() {
+        given:
+        def list = new CompressedLongList()
+        def expected = new LongList()
+        300.times {
+            list.add(it as long)
+            expected.add(it as long)
+        }
+
+        when:
+        def setOld = list.set(10, 42l)
+        expected.set(10, 42l)
+        list.add(5, 7l)
+        expected.add(5, 7l)
+        def removed = list.remove(200)
+        expected.remove(200)
+        list.removeRange(100, 150)
+        expected.removeRange(100, 150)
+        list.addAll(20, expected.subList(0, 3))
+        expected.addAll(20, expected.subList(0, 3))
+
+        then:
+        setOld == 10l
+        removed == 199l
+        list == expected
+        list.size() == expected.size()
+    }
+
+    def "test remove the last elements"() {
+        given:
+        def list = new CompressedLongList()
+        list.addAll((0..199).collect { it as long } as long[])
+
+        when:
+        list.removeRange(150, 200)
+        list.add(1000l)
+
+        then:
+        list.size() == 151
+        list.get(149) == 149l
+        list.get(150) == 1000l
+    }
+
+    def "test sort with values"() {
+        given:
+        def list = new CompressedLongList()
+        def values = new DoubleList()
+        200.times {
+            list.add(200l - it)
+            values.add(it as double)
+        }
+
+        when:
+        list.sort(values)
+
+        then:
+        list.isSorted()
+        list.get(0) == 1l
+        list.get(199) == 200l
+        values.get(0) == 199d
+        values.get(199) == 0d
+    }
+
+    def "test sub list, buffer and stream"() {
+        given:
+        def list = new CompressedLongList()
+        list.addAll((0..299).collect { it as long } as long[])
+
+        expect:
+        list.subList(126, 130).toArray() == [126l, 127l, 128l, 129l] as long[]
+        list.asReadOnlyBuffer().get(257) == 257l
+        list.stream().sum() == (0..299).sum()
+        list.indexOf(250l) == 250
+        list.lastIndexOf(300l) == -1
+        list.binarySearch(130l) == 130
+    }
+
+    def "test serialize"() {
+        given:
+        def list = new CompressedLongList()
+        list.addAll((0..299).collect { it * 10l } as long[])
+        def out = new ByteArrayOutputStream()
+
+        when:
+        new ObjectOutputStream(out).writeObject(list)
+        def read = new ObjectInputStream(new ByteArrayInputStream(out.toByteArray())).readObject()
+
+        then:
+        read == list
+        read.get(150) == 1500l
+    }
+
+    def "test clear"() {
+        given:
+        def list = new CompressedLongList()
+        list.addAll((0..299).collect { it as long } as long[])
+
+        when:
+        list.clear()
+        list.add(7l)
+
+        then:
+        list.size() == 1
+        list.blocks() == 0
+        list.get(0) == 7l
+    }
+
+    def "test trim to size and append"() {
+        given:
+        def list = new CompressedLongList()
+        200.times {
+            list.add(it * 1000l)
+        }
+        def untrimmed = list.estimatedRetainedBytes()
+
+        when:
+        list.trimToSize()
+        100.times {
+            list.add((200 + it) * 1000l)
+        }
+
+        then:
+        list.estimatedRetainedBytes() < 300 * 8
+        untrimmed < 200 * 8
+        list.size() == 300
+        300.times {
+            assert list.get(it) == it * 1000l
+        }
+    }
+}
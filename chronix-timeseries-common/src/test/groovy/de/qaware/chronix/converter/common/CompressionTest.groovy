@@ -18,6 +18,9 @@ package de.qaware.chronix.converter.common
 import org.apache.commons.io.IOUtils
 import spock.lang.Specification
 
+import java.nio.ByteBuffer
+import java.util.zip.GZIPOutputStream
+
 /**
  * The unit test for the compression class
  * @author f.lautenschlager
@@ -82,4 +85,204 @@ class CompressionTest extends Specification {
         then:
         noExceptionThrown()
     }
+
+    def "test compress and decompress with codecs"() {
+        given:
+        def data = (0..9999).collect { (it % 100) as byte } as byte[]
+
+        when:
+        def compressed = Compression.compress(data, codec)
+
+        then:
+        Compression.codecOf(compressed).id() == codec.id()
+        Compression.decompress(compressed) == data
+        compressed.length < data.length
+
+        where:
+        codec << [Compression.GZIP, Compression.DEFLATE, Compression.deflate(1), Compression.deflate(9), Compression.LZ4]
+    }
+
+    def "test gzip is written without a header"() {
+        when:
+        def compressed = Compression.compress("Some Bytes".bytes, Compression.GZIP)
+
+        then:
+        compressed == Compression.compress("Some Bytes".bytes)
+        compressed[0] == (byte) 0x1f
+        compressed[1] == (byte) 0x8b
+        Compression.codecOf(compressed).is(Compression.GZIP)
+    }
+
+    def "test lz4 with empty, short and incompressible data"() {
+        given:
+        def random = new Random(7)
+        def incompressible = new byte[1000]
+        random.nextBytes(incompressible)
+
+        expect:
+        Compression.decompress(Compression.compress(data, Compression.LZ4)) == data
+
+        where:
+        data << [new byte[0], "abc".bytes, incompressible, ("ab" * 1000).bytes]
+    }
+
+    def "test decompress corrupt lz4 bytes"() {
+        given:
+        def compressed = Compression.compress(("abc" * 100).bytes, Compression.LZ4)
+        compressed[Compression.HEADER_LENGTH] = 0x7f
+
+        when:
+        def result = Compression.decompress(compressed)
+
+        then:
+        noExceptionThrown()
+        result.length == 0
+    }
+
+    def "test unknown codec"() {
+        expect:
+        Compression.codecOf(null) == null
+        Compression.codecOf("notCompressed".bytes) == null
+        Compression.codecOf([(byte) 0xC0, (byte) 0xDE, (byte) 200] as byte[]) == null
+    }
+
+    def "test register a codec"() {
+        given:
+        def codec = new CompressionCodec() {
+            int id() { 100 }
+
+            String name() { "stored" }
+
+            void compress(byte[] data, int offset, int length, OutputStream out) { out.write(data, offset, length) }
+
+            InputStream decompress(byte[] compressed, int offset, int length) {
+                new ByteArrayInputStream(compressed, offset, length)
+            }
+        }
+
+        when:
+        Compression.register(codec)
+        Compression.register(codec)
+        def compressed = Compression.compress("Some Bytes".bytes, codec)
+
+        then:
+        compressed.length == "Some Bytes".bytes.length + Compression.HEADER_LENGTH
+        Compression.codecOf(compressed).is(codec)
+        Compression.decompress(compressed) == "Some Bytes".bytes
+
+        when:
+        Compression.register(Compression.deflate(5))
+
+        then:
+        thrown IllegalArgumentException
+    }
+
+    def "test illegal deflate level"() {
+        when:
+        Compression.deflate(10)
+
+        then:
+        thrown IllegalArgumentException
+    }
+
+    def "test compress and decompress into arrays"() {
+        given:
+        def data = (0..9999).collect { (it % 100) as byte } as byte[]
+        def expected = Compression.compress(data, codec)
+        def dest = new byte[Compression.maxCompressedLength(data.length) + 5]
+
+        when:
+        def length = Compression.compress(data, 0, data.length, dest, 5, codec)
+
+        then:
+        length == expected.length
+        Arrays.copyOfRange(dest, 5, 5 + length) == expected
+
+        when:
+        def decompressed = new byte[data.length + 2]
+        def decompressedLength = Compression.decompress(dest, 5, length, decompressed, 2)
+
+        then:
+        decompressedLength == data.length
+        Arrays.copyOfRange(decompressed, 2, decompressed.length) == data
+
+        and:
+        Compression.compress(data, 0, data.length, new byte[expected.length - 1], 0, codec) == -1
+        Compression.decompress(expected, 0, expected.length, new byte[data.length - 1], 0) == -1
+
+        where:
+        codec << [Compression.GZIP, Compression.DEFLATE, Compression.deflate(1), Compression.LZ4]
+    }
+
+    def "test compress and decompress into byte buffers"() {
+        given:
+        def data = ("Some Bytes" * 100).bytes
+        def expected = Compression.compress(data, codec)
+        def dest = direct ? ByteBuffer.allocateDirect(expected.length + 1) : ByteBuffer.allocate(expected.length + 1)
+        dest.put((byte) 7)
+
+        when:
+        def length = Compression.compress(data, 0, data.length, dest, codec)
+        def compressed = new byte[length]
+        dest.flip()
+        dest.get()
+        dest.get(compressed)
+
+        then:
+        length == expected.length
+        compressed == expected
+
+        when:
+        def decompressed = direct ? ByteBuffer.allocateDirect(data.length) : ByteBuffer.allocate(data.length)
+        def decompressedLength = Compression.decompress(compressed, 0, compressed.length, decompressed)
+
+        then:
+        decompressedLength == data.length
+        decompressed.position() == data.length
+        Compression.decompress(compressed, 0, compressed.length, ByteBuffer.allocate(10)) == -1
+
+        where:
+        codec                | direct
+        Compression.GZIP     | false
+        Compression.GZIP     | true
+        Compression.DEFLATE  | false
+        Compression.LZ4      | true
+    }
+
+    def "test gzip bytes are equal to the gzip output stream"() {
+        given:
+        def data = (0..99999).collect { (it % 7 * it % 13) as byte } as byte[]
+        def bytes = new ByteArrayOutputStream()
+        def gzip = new GZIPOutputStream(bytes)
+        gzip.write(data)
+        gzip.close()
+
+        expect:
+        Compression.compress(data) == bytes.toByteArray()
+    }
+
+    def "test decompress concatenated gzip members"() {
+        given:
+        def first = Compression.compress("Some ".bytes)
+        def second = Compression.compress("Bytes".bytes)
+        def concatenated = new byte[first.length + second.length]
+        System.arraycopy(first, 0, concatenated, 0, first.length)
+        System.arraycopy(second, 0, concatenated, first.length, second.length)
+
+        expect:
+        Compression.decompress(concatenated) == "Some Bytes".bytes
+    }
+
+    def "test decompress corrupt gzip bytes"() {
+        given:
+        def compressed = Compression.compress(("abc" * 100).bytes)
+        compressed[compressed.length - 6] = (byte) (compressed[compressed.length - 6] ^ 0x01)
+
+        when:
+        def result = Compression.decompress(compressed)
+
+        then:
+        noExceptionThrown()
+        result.length == 0
+    }
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.converter.common
+
+import spock.lang.Specification
+
+/**
+ * Unit test for the direct double list
+ * @author f.lautenschlager
+ */
+class DirectDoubleListTest extends Specification {
+
+    def "test add and get"() {
+        given:
+        def list = new DirectDoubleList(1)
+
+        when:
+        list.add(1d)
+        list.addAll([2d, 3d] as double[])
+        list.add(0, 0d)
+
+        then:
+        list.size() == 4
+        list.toArray() == [0d, 1d, 2d, 3d] as double[]
+        list.contains(2d)
+        list.asReadOnlyBuffer().get(3) == 3d
+
+        cleanup:
+        list.release()
+    }
+
+    def "test equals a double list with the same elements"() {
+        given:
+        def list = new DirectDoubleList()
+        list.addAll([1d, 2d] as double[])
+
+        expect:
+        list == new DoubleList([1d, 2d] as double[], 2)
+        list.subList(1, 2).toArray() == [2d] as double[]
+
+        cleanup:
+        list.close()
+    }
+
+    def "test sort of a long list with direct values"() {
+        given:
+        def list = new LongList()
+        list.addAll([3l, 1l, 2l] as long[])
+        def values = new DirectDoubleList()
+        values.addAll([3d, 1d, 2d] as double[])
+
+        when:
+        list.sort(values)
+
+        then:
+        list.toArray() == [1l, 2l, 3l] as long[]
+        values.toArray() == [1d, 2d, 3d] as double[]
+
+        cleanup:
+        values.release()
+    }
+
+    def "test sort of several blocks"() {
+        given:
+        def random = new Random(7)
+        def list = new DirectDoubleList()
+        20_000.times { list.add(it % 100 == 0 ? Double.NaN : random.nextInt(1000) - 500d) }
+        def expected = list.toArray()
+        Arrays.sort(expected)
+
+        when:
+        list.sort()
+
+        then:
+        Arrays.equals(list.toArray(), expected)
+
+        cleanup:
+        list.release()
+    }
+
+    def "test sub list is a view"() {
+        given:
+        def list = new DirectDoubleList()
+        list.addAll([1d, 2d, 3d, 4d, 5d] as double[])
+
+        when:
+        def subList = list.subList(1, 4)
+        list.set(2, 9d)
+
+        then:
+        subList.toArray() == [2d, 9d, 4d] as double[]
+        subList.subList(1, 2).get(0) == 9d
+
+        cleanup:
+        list.release()
+    }
+
+    def "test search and sort"() {
+        given:
+        def list = new DirectDoubleList()
+        list.addAll([9d, 0d, 5d, 7d, 1d, 3d, 8d, 2d, 6d, 4d] as double[], 0, 10)
+
+        when:
+        list.sort()
+
+        then:
+        list.isSorted()
+        list.toArray() == [0d, 1d, 2d, 3d, 4d, 5d, 6d, 7d, 8d, 9d] as double[]
+        list.binarySearch(6d) == 6
+        list.lowerBound(10d) == 10
+        list.upperBound(4d) == 5
+        list.gallop(7d, 1) == 7
+
+        cleanup:
+        list.release()
+    }
+}
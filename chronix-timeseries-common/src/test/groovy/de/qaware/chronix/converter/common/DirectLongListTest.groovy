@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.converter.common
+
+import spock.lang.Specification
+
+import java.nio.file.Files
+
+/**
+ * Unit test for the direct long list
+ * @author f.lautenschlager
+ */
+class DirectLongListTest extends Specification {
+
+    def "test add and get"() {
+        given:
+        def list = new DirectLongList(2)
+
+        when:
+        10.times {
+            list.add(it as long)
+        }
+
+        then:
+        list.size() == 10
+        list.get(0) == 0l
+        list.get(9) == 9l
+        list.toArray() == (0..9).collect { it as long } as long[]
+        !list.isMapped()
+
+        cleanup:
+        list.release()
+    }
+
+    def "test equals a long list with the same elements"() {
+        given:
+        def list = new DirectLongList()
+        list.addAll([1l, 2l, 3l] as long[])
+        def other = new LongList([1l, 2l, 3l] as long[], 3)
+
+        expect:
+        list == other
+        other == list
+        list.hashCode() == other.hashCode()
+        list.copy().getClass() == LongList
+
+        cleanup:
+        list.release()
+    }
+
+    def "test insert and remove"() {
+        given:
+        def list = new DirectLongList(0)
+        list.addAll([1l, 2l, 4l, 5l] as long[])
+
+        when:
+        list.add(2, 3l)
+        list.addAll(0, new LongList([-1l, 0l] as long[], 2))
+        def removed = list.remove(0)
+        list.remove(5l)
+        list.removeRange(0, 1)
+        def old = list.set(0, 10l)
+
+        then:
+        removed == -1l
+        old == 1l
+        list.toArray() == [10l, 2l, 3l, 4l] as long[]
+
+        cleanup:
+        list.release()
+    }
+
+    def "test sort with values"() {
+        given:
+        def list = new DirectLongList()
+        list.addAll([5l, 1l, 4l, 2l, 3l] as long[])
+        def values = new DirectDoubleList()
+        values.addAll([5d, 1d, 4d, 2d, 3d] as double[])
+
+        when:
+        list.sort(values)
+
+        then:
+        list.toArray() == [1l, 2l, 3l, 4l, 5l] as long[]
+        values.toArray() == [1d, 2d, 3d, 4d, 5d] as double[]
+
+        cleanup:
+        list.release()
+        values.release()
+    }
+
+    def "test read only buffer does not copy"() {
+        given:
+        def list = new DirectLongList()
+        list.addAll([1l, 2l, 3l] as long[])
+
+        when:
+        def buffer = list.asReadOnlyBuffer()
+        list.set(0, 4l)
+
+        then:
+        buffer.isReadOnly()
+        buffer.isDirect()
+        buffer.remaining() == 3
+        buffer.get(0) == 4l
+
+        cleanup:
+        list.release()
+    }
+
+    def "test read only buffer after the list grows and is released"() {
+        given:
+        def list = new DirectLongList(10)
+        10.times { list.add(it as long) }
+        def buffer = list.asReadOnlyBuffer()
+
+        when:
+        100_000.times { list.add(-1l) }
+        def afterGrow = [buffer.get(5), buffer.get(9)]
+        list.release()
+
+        then:
+        afterGrow == [5l, 9l]
+        buffer.get(5) == 5l
+        buffer.get(9) == 9l
+    }
+
+    def "test a dropped list leaves the memory accounting when it is collected"() {
+        given:
+        def before = OffHeapMemory.directBytes()
+        new DirectLongList(1000).add(1l)
+
+        when:
+        def after = OffHeapMemory.directBytes()
+        for (int i = 0; i < 100 && after > before; i++) {
+            System.gc()
+            Thread.sleep(10)
+            after = OffHeapMemory.directBytes()
+        }
+
+        then:
+        after <= before
+    }
+
+    def "test memory accounting"() {
+        given:
+        def before = OffHeapMemory.directBytes()
+
+        when:
+        def list = new DirectLongList(100)
+        def allocated = OffHeapMemory.directBytes() - before
+        def bytes = list.offHeapBytes()
+        list.release()
+
+        then:
+        allocated == 800
+        bytes == 800
+        list.offHeapBytes() == 0
+        list.isEmpty()
+        OffHeapMemory.directBytes() == before
+    }
+
+    def "test released list can not be used"() {
+        given:
+        def list = new DirectLongList()
+        list.release()
+
+        when:
+        list.add(1l)
+
+        then:
+        thrown IllegalStateException
+    }
+
+    def "test mapped list"() {
+        given:
+        def file = Files.createTempFile("timestamps", ".bin")
+        def list = new DirectLongList(file, 1)
+
+        when:
+        list.addAll([1l, 2l, 3l] as long[])
+        def mapped = OffHeapMemory.mappedBytes()
+
+        then:
+        list.isMapped()
+        list.toArray() == [1l, 2l, 3l] as long[]
+        mapped >= 24
+        Files.size(file) >= 24
+
+        cleanup:
+        list.release()
+        Files.deleteIfExists(file)
+    }
+
+    def "test merge runs of a mapped list in scratch files"() {
+        given:
+        def directory = Files.createTempDirectory("columns")
+        def list = new DirectLongList(directory.resolve("timestamps.bin"), 1)
+        def values = new DirectDoubleList(directory.resolve("values.bin"), 1)
+        10_000.times { list.add((it >> 1) as long); values.add(it as double) }
+        3_000.times { list.add((it * 3) as long); values.add(-it as double) }
+        def keys = list.toArray()
+        def expectedValues = values.toArray()
+        DualArraySort.mergeRuns(keys, expectedValues, [10_000] as int[], 1, keys.length)
+        def mapped = OffHeapMemory.mappedBytes()
+
+        when:
+        list.mergeRuns(values, [10_000] as int[], 1)
+
+        then:
+        list.toArray() == keys
+        values.toArray() == expectedValues
+        OffHeapMemory.mappedBytes() == mapped
+        Files.list(directory).count() == 2
+
+        cleanup:
+        list.release()
+        values.release()
+        Files.list(directory).each { Files.delete(it) }
+        Files.delete(directory)
+    }
+
+    def "test sort of several blocks"() {
+        given:
+        def random = new Random(7)
+        def list = new DirectLongList()
+        def values = new DirectDoubleList()
+        20_000.times { list.add(random.nextInt(1000) as long); values.add(it as double) }
+        def keys = list.toArray()
+        def expectedValues = values.toArray()
+        DualArraySort.sort(keys, expectedValues, keys.length)
+        def direct = OffHeapMemory.directBytes()
+
+        when:
+        list.sort(values)
+
+        then:
+        list.toArray() == keys
+        values.toArray() == expectedValues
+        OffHeapMemory.directBytes() == direct
+
+        cleanup:
+        list.release()
+        values.release()
+    }
+
+    def "test sub list is a view"() {
+        given:
+        def list = new DirectLongList()
+        list.addAll([1l, 2l, 3l, 4l, 5l] as long[])
+        def subList = list.subList(1, 4)
+
+        when:
+        list.set(2, 9l)
+
+        then:
+        subList.get(1) == 9l
+        subList.toArray() == [2l, 9l, 4l] as long[]
+
+        when:
+        list.release()
+        subList.get(1)
+
+        then:
+        thrown IllegalStateException
+    }
+
+    def "test illegal capacity"() {
+        when:
+        new DirectLongList(-1)
+
+        then:
+        thrown IllegalArgumentException
+    }
+
+    def "test search and sort"() {
+        given:
+        def list = new DirectLongList()
+        list.addAll([9l, 0l, 5l, 7l, 1l, 3l, 8l, 2l, 6l, 4l] as long[], 0, 10)
+
+        when:
+        list.sort()
+
+        then:
+        list.isSorted()
+        list.toArray() == [0l, 1l, 2l, 3l, 4l, 5l, 6l, 7l, 8l, 9l] as long[]
+        list.binarySearch(6l) == 6
+        list.lowerBound(10l) == 10
+        list.upperBound(4l) == 5
+        list.gallop(7l, 1) == 7
+
+        cleanup:
+        list.release()
+    }
+}
@@ -556,6 +556,37 @@ class DoubleListTest extends Specification {
 
     }
 
+    def "test read only buffer"() {
+        given:
+        def list = new DoubleList(10)
+        list.add(1d)
+        list.add(2d)
+        list.add(3d)
+
+        when:
+        def buffer = list.asReadOnlyBuffer()
+        list.set(0, 4d)
+
+        then:
+        buffer.isReadOnly()
+        buffer.remaining() == 3
+        buffer.get(0) == 4d
+        buffer.get(2) == 3d
+    }
+
+    def "test read only buffer is not writable"() {
+        given:
+        def list = new DoubleList()
+        list.add(1d)
+
+        when:
+        list.asReadOnlyBuffer().put(0, 2d)
+
+        then:
+        thrown java.nio.ReadOnlyBufferException
+        list.get(0) == 1d
+    }
+
     def "test array constructor null array"() {
         when:
         new DoubleList(null, 0)
@@ -570,5 +601,155 @@ class DoubleListTest extends Specification {
         thrown IllegalArgumentException
     }
 
+    def "test sub list"() {
+        given:
+        def list = new DoubleList()
+        list.addAll([1d, 2d, 3d, 4d, 5d] as double[])
+
+        when:
+        def view = list.subList(1, 4)
+
+        then:
+        view.size() == 3
+        view.get(0) == 2d
+        view.toArray() == [2d, 3d, 4d] as double[]
+        view.contains(4d)
+        !view.contains(5d)
+        view.asReadOnlyBuffer().get(2) == 4d
+        view == new DoubleList([2d, 3d, 4d] as double[], 3)
+        view.hashCode() == new DoubleList([2d, 3d, 4d, 7d] as double[], 3).hashCode()
+    }
+
+    def "test sub list is read-only"() {
+        given:
+        def list = new DoubleList()
+        list.addAll([1d, 2d, 3d] as double[])
+
+        when:
+        list.subList(0, 2).set(0, 4d)
+
+        then:
+        thrown UnsupportedOperationException
+        list.get(0) == 1d
+    }
+
+    def "test ensure capacity"() {
+        given:
+        def list = new DoubleList()
+        list.add(1d)
 
+        when:
+        list.ensureCapacity(1000)
+        for (int i = 2; i <= 1000; i++) {
+            list.add(i as double)
+        }
+
+        then:
+        list.size() == 1000
+        list.get(0) == 1d
+        list.get(999) == 1000d
+    }
+
+    def "test ensure capacity of a view"() {
+        given:
+        def list = new DoubleList()
+        list.addAll([1d, 2d] as double[])
+
+        when:
+        list.subList(0, 1).ensureCapacity(10)
+
+        then:
+        thrown UnsupportedOperationException
+    }
+
+    def "test sort and is sorted"() {
+        given:
+        def list = new DoubleList()
+        list.addAll([5d, Double.NaN, 0d, -0d, 3d] as double[])
+
+        expect:
+        !list.isSorted()
+
+        when:
+        list.sort()
+
+        then:
+        list.isSorted()
+        Arrays.equals(list.toArray(), [-0d, 0d, 3d, 5d, Double.NaN] as double[])
+    }
+
+    def "test binary search"() {
+        given:
+        def list = new DoubleList()
+        list.addAll([1d, 2.5d, 2.5d, 7d] as double[])
+
+        expect:
+        list.binarySearch(key) == index
+        list.lowerBound(key) == lower
+        list.upperBound(key) == upper
+        list.gallop(key, 3) == lower
+
+        where:
+        key << [0d, 1d, 2.5d, 5d, 7d, 8d]
+        index << [-1, 0, 1, -4, 3, -5]
+        lower << [0, 0, 1, 3, 3, 4]
+        upper << [0, 1, 3, 3, 4, 4]
+    }
+
+    def "test add all of an array range"() {
+        given:
+        def list = new DoubleList()
+
+        when:
+        list.addAll([1d, 2d, 3d] as double[], 0, 2)
+
+        then:
+        list.toArray() == [1d, 2d] as double[]
+
+        when:
+        list.addAll([1d, 2d] as double[], -1, 1)
+
+        then:
+        thrown IndexOutOfBoundsException
+    }
+
+    def "test stream"() {
+        given:
+        def list = new DoubleList()
+        10.times { list.add(it as double) }
+
+        when:
+        def spliterator = list.spliterator()
+
+        then:
+        spliterator.hasCharacteristics(Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED)
+        spliterator.estimateSize() == 10
+        list.stream().sum() == 45d
+        list.stream().parallel().sum() == 45d
+        list.subList(2, 5).stream().toArray() == [2d, 3d, 4d] as double[]
+    }
+
+    def "test trim to size and estimated bytes"() {
+        given:
+        def list = new DoubleList()
+        100.times {
+            list.add(it as double)
+        }
+        def untrimmed = list.estimatedRetainedBytes()
+
+        when:
+        list.trimToSize()
+
+        then:
+        list.estimatedRetainedBytes() < untrimmed
+        list.estimatedRetainedBytes() == MemoryFootprint.objectBytes(DoubleList.SHALLOW_FIELD_BYTES) + MemoryFootprint.arrayBytes(100, 8)
+        list.size() == 100
+
+        when:
+        list.add(100d)
+
+        then:
+        list.get(100) == 100d
+        list.subList(0, 100).estimatedRetainedBytes() < MemoryFootprint.arrayBytes(100, 8)
+    }
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.converter.common
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+/**
+ * Unit test for the dual array sort
+ * @author f.lautenschlager
+ */
+class DualArraySortTest extends Specification {
+
+    @Unroll
+    def "test sort of #keys"() {
+        given:
+        def keyArray = keys as long[]
+        def valueArray = keys.collect { it * 10 } as double[]
+
+        when:
+        DualArraySort.sort(keyArray, valueArray, keyArray.length)
+
+        then:
+        keyArray == keys.sort(false) as long[]
+        valueArray == keys.sort(false).collect { it * 10 } as double[]
+
+        where:
+        keys << [[], [1], [2, 1], [5, 3, 9, 1, 7], (0..99).toList(), (99..0).toList(), [3, 3, 1, 1, 2, 2]]
+    }
+
+    def "test sort is stable"() {
+        given:
+        def random = new Random(4711)
+        def keys = new long[1000]
+        def values = new double[1000]
+        1000.times {
+            keys[it] = random.nextInt(20)
+            values[it] = it
+        }
+
+        when:
+        DualArraySort.sort(keys, values, keys.length)
+
+        then:
+        DualArraySort.isSorted(keys, 0, keys.length)
+        for (int i = 1; i < keys.length; i++) {
+            if (keys[i] == keys[i - 1]) {
+                assert values[i] > values[i - 1]
+            }
+        }
+    }
+
+    def "test sort of almost sorted chunks"() {
+        given:
+        def keys = new long[10000]
+        def values = new double[10000]
+        //ten sorted chunks that overlap each other
+        10000.times {
+            keys[it] = (it % 1000) * 10 + (it / 1000 as int)
+            values[it] = keys[it] * 2
+        }
+
+        when:
+        DualArraySort.sort(keys, values, keys.length)
+
+        then:
+        DualArraySort.isSorted(keys, 0, keys.length)
+        10000.times {
+            assert keys[it] == it
+            assert values[it] == it * 2
+        }
+    }
+
+    def "test sort of a range"() {
+        given:
+        def keys = [9, 3, 2, 1, 0] as long[]
+        def values = [90, 30, 20, 10, 0] as double[]
+
+        when:
+        DualArraySort.sort(keys, values, 1, 4)
+
+        then:
+        keys == [9, 1, 2, 3, 0] as long[]
+        values == [90, 10, 20, 30, 0] as double[]
+    }
+
+    def "test merge of known runs"() {
+        given:
+        def keys = [1, 4, 7, 2, 5, 8, 0, 3, 6, 9] as long[]
+        def values = keys.collect { it * 10 } as double[]
+
+        when:
+        DualArraySort.mergeRuns(keys, values, [3, 6] as int[], 2, keys.length)
+
+        then:
+        keys == (0..9).collect { it } as long[]
+        values == (0..9).collect { it * 10 } as double[]
+    }
+
+    def "test sort with invalid range"() {
+        when:
+        DualArraySort.sort(new long[2], new double[1], from, to)
+
+        then:
+        thrown exception
+
+        where:
+        from << [1, -1, 0]
+        to << [0, 1, 2]
+        exception << [IllegalArgumentException, IndexOutOfBoundsException, IndexOutOfBoundsException]
+    }
+
+    def "test is sorted"() {
+        expect:
+        DualArraySort.isSorted(keys as long[], 0, keys.size()) == expected
+
+        where:
+        keys << [[], [1], [1, 1, 2], [2, 1]]
+        expected << [true, true, true, false]
+    }
+
+    def "test private constructor"() {
+        when:
+        DualArraySort.newInstance()
+        then:
+        noExceptionThrown()
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.converter.common
+
+import spock.lang.Specification
+
+/**
+ * Unit test for the list aggregations
+ * @author f.lautenschlager
+ */
+class ListAggregationsTest extends Specification {
+
+    def values = new DoubleList([4d, 2d, 8d, 6d, 5d] as double[], 5)
+
+    def "test min, max, sum and mean"() {
+        expect:
+        ListAggregations.min(values, 0, 5) == 2d
+        ListAggregations.max(values, 0, 5) == 8d
+        ListAggregations.sum(values, 0, 5) == 25d
+        ListAggregations.mean(values, 0, 5) == 5d
+        ListAggregations.min(values, 2, 5) == 5d
+        ListAggregations.sum(values, 1, 3) == 10d
+    }
+
+    def "test empty range"() {
+        expect:
+        Double.isNaN(ListAggregations.min(values, 1, 1))
+        Double.isNaN(ListAggregations.max(values, 1, 1))
+        Double.isNaN(ListAggregations.mean(values, 1, 1))
+        Double.isNaN(ListAggregations.stdDev(values, 1, 1))
+        Double.isNaN(ListAggregations.percentile(values, 1, 1, 0.5))
+        ListAggregations.sum(values, 1, 1) == 0d
+    }
+
+    def "test min and max with NaN"() {
+        given:
+        def withNaN = new DoubleList([1d, Double.NaN, 3d] as double[], 3)
+
+        expect:
+        Double.isNaN(ListAggregations.min(withNaN, 0, 3))
+        Double.isNaN(ListAggregations.max(withNaN, 0, 3))
+    }
+
+    def "test standard deviation"() {
+        given:
+        def list = new DoubleList([2d, 4d, 4d, 4d, 5d, 5d, 7d, 9d] as double[], 8)
+
+        expect:
+        Math.abs(ListAggregations.stdDev(list, 0, 8) - Math.sqrt(32d / 7d)) < 1e-12
+        ListAggregations.stdDev(list, 0, 1) == 0d
+    }
+
+    def "test percentile"() {
+        expect:
+        ListAggregations.percentile(values, 0, 5, percentile) == expected
+
+        where:
+        percentile << [0d, 0.25d, 0.5d, 0.625d, 1d]
+        expected << [2d, 4d, 5d, 5.5d, 8d]
+    }
+
+    def "test illegal percentile"() {
+        when:
+        ListAggregations.percentile(values, 0, 5, 1.5)
+
+        then:
+        thrown IllegalArgumentException
+    }
+
+    def "test integral"() {
+        given:
+        def timestamps = new LongList([0l, 10l, 20l, 40l] as long[], 4)
+        def points = new DoubleList([0d, 10d, 10d, 0d] as double[], 4)
+
+        expect:
+        ListAggregations.integral(timestamps, points, 0, 4) == 250d
+        ListAggregations.integral(timestamps, points, 1, 3) == 100d
+        ListAggregations.integral(timestamps, points, 1, 2) == 0d
+    }
+
+    def "test integral with values of another size"() {
+        when:
+        ListAggregations.integral(new LongList([1l] as long[], 1), values, 0, 1)
+
+        then:
+        thrown IllegalArgumentException
+    }
+
+    def "test range out of bounds"() {
+        when:
+        ListAggregations.sum(values, 0, 6)
+
+        then:
+        thrown IndexOutOfBoundsException
+    }
+
+    def "test aggregations of views and chunked lists"() {
+        given:
+        def chunked = new ChunkedDoubleList(2)
+        chunked.addAll([4d, 2d, 8d, 6d, 5d] as double[])
+        def view = values.subList(1, 4)
+
+        expect:
+        ListAggregations.sum(chunked, 0, 5) == 25d
+        ListAggregations.max(chunked, 3, 5) == 6d
+        ListAggregations.sum(view, 0, 3) == 16d
+        ListAggregations.min(view, 0, 3) == 2d
+        ListAggregations.percentile(view, 0, 3, 0.5) == 6d
+    }
+
+    def "test parallel aggregations"() {
+        given:
+        def size = ListAggregations.PARALLEL_THRESHOLD * 4 + 3
+        def timestamps = new LongList(size)
+        def list = new DoubleList(size)
+        for (int i = 0; i < size; i++) {
+            timestamps.add(i * 2 as long)
+            list.add(i % 10 as double)
+        }
+        def expectedSum = 0d
+        def expectedIntegral = 0d
+        for (int i = 0; i < size; i++) {
+            expectedSum += i % 10
+            if (i > 0) {
+                expectedIntegral += ((i - 1) % 10 + i % 10)
+            }
+        }
+
+        expect:
+        ListAggregations.sum(list, 0, size) == expectedSum
+        ListAggregations.min(list, 0, size) == 0d
+        ListAggregations.max(list, 0, size) == 9d
+        ListAggregations.integral(timestamps, list, 0, size) == expectedIntegral
+    }
+}
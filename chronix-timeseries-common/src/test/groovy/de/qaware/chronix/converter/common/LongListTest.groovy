@@ -551,6 +551,79 @@ class LongListTest extends Specification {
         size << [4, 1]
     }
 
+    def "test sort with values"() {
+        given:
+        def list = new LongList()
+        def values = new DoubleList()
+        [5l, 3l, 9l, 1l].each {
+            list.add(it)
+            values.add(it * 10 as double)
+        }
+
+        when:
+        list.sort(values)
+
+        then:
+        list.toArray() == [1l, 3l, 5l, 9l] as long[]
+        values.toArray() == [10d, 30d, 50d, 90d] as double[]
+    }
+
+    def "test merge runs with values"() {
+        given:
+        def list = new LongList([3, 5, 1, 4] as long[], 4)
+        def values = new DoubleList([30, 50, 10, 40] as double[], 4)
+
+        when:
+        list.mergeRuns(values, [2] as int[], 1)
+
+        then:
+        list.toArray() == [1l, 3l, 4l, 5l] as long[]
+        values.toArray() == [10d, 30d, 40d, 50d] as double[]
+    }
+
+    def "test sort with values of a different size"() {
+        given:
+        def list = new LongList()
+        list.add(1l)
+
+        when:
+        list.sort(new DoubleList())
+
+        then:
+        thrown IllegalArgumentException
+    }
+
+    def "test read only buffer"() {
+        given:
+        def list = new LongList(10)
+        list.add(1l)
+        list.add(2l)
+        list.add(3l)
+
+        when:
+        def buffer = list.asReadOnlyBuffer()
+        list.set(0, 4l)
+
+        then:
+        buffer.isReadOnly()
+        buffer.remaining() == 3
+        buffer.get(0) == 4l
+        buffer.get(2) == 3l
+    }
+
+    def "test read only buffer is not writable"() {
+        given:
+        def list = new LongList()
+        list.add(1l)
+
+        when:
+        list.asReadOnlyBuffer().put(0, 2l)
+
+        then:
+        thrown java.nio.ReadOnlyBufferException
+        list.get(0) == 1l
+    }
+
     def "test array constructor null array"() {
         when:
         new LongList(null, 0)
@@ -564,4 +637,222 @@ class LongListTest extends Specification {
         then:
         thrown IllegalArgumentException
     }
+
+    def "test sub list"() {
+        given:
+        def list = new LongList()
+        list.addAll([1l, 2l, 3l, 4l, 5l] as long[])
+
+        when:
+        def view = list.subList(1, 4)
+
+        then:
+        view.size() == 3
+        view.get(0) == 2l
+        view.get(2) == 4l
+        view.toArray() == [2l, 3l, 4l] as long[]
+        view.indexOf(3l) == 1
+        view.lastIndexOf(5l) == -1
+        view.asReadOnlyBuffer().get(0) == 2l
+        view.subList(1, 3).toArray() == [3l, 4l] as long[]
+        view == new LongList([2l, 3l, 4l] as long[], 3)
+        new LongList([2l, 3l, 4l, 0l] as long[], 3) == view
+        view.hashCode() == new LongList([2l, 3l, 4l] as long[], 3).hashCode()
+    }
+
+    def "test sub list shares the elements"() {
+        given:
+        def list = new LongList()
+        list.addAll([1l, 2l, 3l] as long[])
+        def view = list.subList(1, 3)
+
+        when:
+        list.set(1, 20l)
+        def other = new LongList()
+        other.addAll(view)
+
+        then:
+        view.get(0) == 20l
+        other.toArray() == [20l, 3l] as long[]
+        view.copy().getClass() == LongList
+    }
+
+    def "test sub list is read-only"() {
+        given:
+        def list = new LongList()
+        list.addAll([1l, 2l, 3l] as long[])
+
+        when:
+        list.subList(0, 2).add(4l)
+
+        then:
+        thrown UnsupportedOperationException
+        list.size() == 3
+    }
+
+    def "test sub list range"() {
+        given:
+        def list = new LongList()
+        list.addAll([1l, 2l, 3l] as long[])
+
+        when:
+        list.subList(from, to)
+
+        then:
+        thrown exception
+
+        where:
+        from << [-1, 0, 2]
+        to << [1, 4, 1]
+        exception << [IndexOutOfBoundsException, IndexOutOfBoundsException, IllegalArgumentException]
+    }
+
+    def "test ensure capacity"() {
+        given:
+        def list = new LongList()
+        list.add(1l)
+
+        when:
+        list.ensureCapacity(1000)
+        for (int i = 2; i <= 1000; i++) {
+            list.add(i as long)
+        }
+
+        then:
+        list.size() == 1000
+        list.get(0) == 1l
+        list.get(999) == 1000l
+    }
+
+    def "test ensure capacity of a view"() {
+        given:
+        def list = new LongList()
+        list.addAll([1l, 2l] as long[])
+
+        when:
+        list.subList(0, 1).ensureCapacity(10)
+
+        then:
+        thrown UnsupportedOperationException
+    }
+
+    def "test sort and is sorted"() {
+        given:
+        def list = new LongList()
+        list.addAll([5l, 1l, 4l, 2l, 3l] as long[])
+
+        expect:
+        !list.isSorted()
+
+        when:
+        list.sort()
+
+        then:
+        list.isSorted()
+        list.toArray() == [1l, 2l, 3l, 4l, 5l] as long[]
+    }
+
+    def "test binary search"() {
+        given:
+        def list = new LongList()
+        list.addAll([1l, 3l, 3l, 3l, 7l] as long[])
+
+        expect:
+        list.binarySearch(key) == index
+        list.lowerBound(key) == lower
+        list.upperBound(key) == upper
+
+        where:
+        key << [0l, 1l, 3l, 5l, 7l, 8l]
+        index << [-1, 0, 1, -5, 4, -6]
+        lower << [0, 0, 1, 4, 4, 5]
+        upper << [0, 1, 4, 4, 5, 5]
+    }
+
+    def "test gallop"() {
+        given:
+        def list = new LongList()
+        100.times { list.add(it * 2 as long) }
+
+        expect:
+        list.gallop(key, hint) == index
+
+        where:
+        key << [-1l, 0l, 41l, 42l, 42l, 42l, 198l, 500l, 42l]
+        hint << [50, 99, 0, 21, 99, 20, 0, 10, -7]
+        index << [0, 0, 21, 21, 21, 21, 99, 100, 21]
+    }
+
+    def "test add all of an array range"() {
+        given:
+        def list = new LongList()
+        list.add(0l)
+
+        when:
+        def changed = list.addAll([1l, 2l, 3l, 4l] as long[], 1, 2)
+
+        then:
+        changed
+        list.toArray() == [0l, 2l, 3l] as long[]
+
+        when:
+        list.addAll([1l, 2l] as long[], 1, 2)
+
+        then:
+        thrown IndexOutOfBoundsException
+    }
+
+    def "test search in a view"() {
+        given:
+        def list = new LongList()
+        list.addAll([1l, 2l, 3l, 4l, 5l] as long[])
+        def view = list.subList(1, 4)
+
+        expect:
+        view.isSorted()
+        view.binarySearch(4l) == 2
+        view.lowerBound(1l) == 0
+        view.upperBound(5l) == 3
+        view.gallop(3l, 2) == 1
+    }
+
+    def "test stream"() {
+        given:
+        def list = new LongList()
+        10.times { list.add(it as long) }
+
+        when:
+        def spliterator = list.spliterator()
+
+        then:
+        spliterator.hasCharacteristics(Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED)
+        spliterator.estimateSize() == 10
+        list.stream().sum() == 45l
+        list.stream().parallel().sum() == 45l
+        list.subList(2, 5).stream().toArray() == [2l, 3l, 4l] as long[]
+    }
+
+    def "test trim to size and estimated bytes"() {
+        given:
+        def list = new LongList()
+        100.times {
+            list.add(it as long)
+        }
+        def untrimmed = list.estimatedRetainedBytes()
+
+        when:
+        list.trimToSize()
+
+        then:
+        list.estimatedRetainedBytes() < untrimmed
+        list.estimatedRetainedBytes() == MemoryFootprint.objectBytes(LongList.SHALLOW_FIELD_BYTES) + MemoryFootprint.arrayBytes(100, 8)
+        list.size() == 100
+
+        when:
+        list.add(100l)
+
+        then:
+        list.get(100) == 100l
+        list.subList(0, 100).estimatedRetainedBytes() < MemoryFootprint.arrayBytes(100, 8)
+    }
 }
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.converter.common
+
+import spock.lang.Specification
+
+/**
+ * Unit test for the memory footprint estimates
+ * @author f.lautenschlager
+ */
+class MemoryFootprintTest extends Specification {
+
+    def "test object and array bytes are aligned"() {
+        expect:
+        MemoryFootprint.objectBytes(0) == 16
+        MemoryFootprint.objectBytes(8) == 24
+        MemoryFootprint.arrayBytes(0, 8) == 0
+        MemoryFootprint.arrayBytes(1, 8) == 24
+        MemoryFootprint.arrayBytes(3, 4) == 32
+    }
+
+    def "test string and value bytes"() {
+        expect:
+        MemoryFootprint.stringBytes(null) == 0
+        MemoryFootprint.stringBytes("host") == 24 + 24
+        MemoryFootprint.valueBytes(null) == 0
+        MemoryFootprint.valueBytes(1l) == 24
+        MemoryFootprint.valueBytes(1) == 16
+        MemoryFootprint.valueBytes("host") == MemoryFootprint.stringBytes("host")
+        MemoryFootprint.valueBytes(new byte[10]) == 32
+        MemoryFootprint.valueBytes(new Object()) == 16
+    }
+}
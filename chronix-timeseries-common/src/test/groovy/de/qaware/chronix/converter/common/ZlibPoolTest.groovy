@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.converter.common
+
+import spock.lang.Specification
+
+import java.util.zip.Deflater
+
+/**
+ * Unit test for the pool of deflaters and inflaters
+ * @author f.lautenschlager
+ */
+class ZlibPoolTest extends Specification {
+
+    def "test released deflaters and inflaters are reused"() {
+        given:
+        def deflater = ZlibPool.deflater(level, nowrap)
+        def inflater = ZlibPool.inflater(nowrap)
+
+        when:
+        ZlibPool.release(deflater, level, nowrap)
+        ZlibPool.release(inflater, nowrap)
+
+        then:
+        ZlibPool.deflater(level, nowrap).is(deflater)
+        ZlibPool.inflater(nowrap).is(inflater)
+        !ZlibPool.deflater(level, !nowrap).is(deflater)
+
+        where:
+        level                       | nowrap
+        Deflater.DEFAULT_COMPRESSION | true
+        Deflater.BEST_SPEED          | false
+    }
+
+    def "test deflate and inflate arrays"() {
+        given:
+        def data = ("Some Bytes" * 100).bytes
+        def deflater = ZlibPool.deflater(Deflater.BEST_COMPRESSION, false)
+        def inflater = ZlibPool.inflater(false)
+        def deflated = new byte[data.length]
+
+        when:
+        deflater.setInput(data)
+        def deflatedLength = ZlibPool.deflate(deflater, deflated, 0, deflated.length)
+        inflater.setInput(deflated, 0, deflatedLength)
+        def inflated = new byte[data.length]
+        def inflatedLength = ZlibPool.inflate(inflater, inflated, 0)
+
+        then:
+        deflatedLength < data.length
+        inflatedLength == data.length
+        inflated == data
+
+        when:
+        deflater.reset()
+        deflater.setInput(data)
+
+        then:
+        ZlibPool.deflate(deflater, new byte[10], 0, 10) == -1
+
+        cleanup:
+        ZlibPool.release(deflater, Deflater.BEST_COMPRESSION, false)
+        ZlibPool.release(inflater, false)
+    }
+
+    def "test pool is bounded"() {
+        given:
+        def deflaters = (0..ZlibPool.MAX_POOLED).collect { new Deflater(Deflater.BEST_SPEED, true) }
+
+        when:
+        deflaters.each { ZlibPool.release(it, Deflater.BEST_SPEED, true) }
+        def borrowed = (0..ZlibPool.MAX_POOLED).collect { ZlibPool.deflater(Deflater.BEST_SPEED, true) }
+
+        then:
+        borrowed.count { deflaters.contains(it) } <= ZlibPool.MAX_POOLED
+    }
+}
@@ -18,12 +18,12 @@ package de.qaware.chronix.converter;
 import de.qaware.chronix.timeseries.GenericTimeSeries;
 import de.qaware.chronix.timeseries.MetricTimeSeries;
 import de.qaware.chronix.timeseries.dts.Pair;
-import de.qaware.chronix.timeseries.dts.Point;
+import de.qaware.chronix.timeseries.dts.PointCursor;
+import de.qaware.chronix.timeseries.iterators.ImmutableIterator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Iterator;
-import java.util.stream.Stream;
 
 /**
  * Generic time series converter to convert our time series into a binary storage time series and back
@@ -39,14 +39,25 @@ public class GenericTimeSeriesConverter implements TimeSeriesConverter<GenericTi
 
         //This is a hack
         MetricTimeSeries metricTimeSeries = new MetricTimeSeriesConverter().from(binaryTimeSeries, queryStart, queryEnd);
-        GenericTimeSeries<Long, Double> genericTimeSeries = new GenericTimeSeries<>(map(metricTimeSeries.points()));
-        metricTimeSeries.getAttributesReference().forEach(genericTimeSeries::addAttribute);
+        GenericTimeSeries<Long, Double> genericTimeSeries = new GenericTimeSeries<>(map(metricTimeSeries.cursor()));
+        metricTimeSeries.attributesView().forEach(genericTimeSeries::addAttribute);
 
         return genericTimeSeries;
     }
 
-    private Iterator<Pair<Long, Double>> map(Stream<Point> points) {
-        return points.map(point -> Pair.pairOf(point.getTimestamp(), point.getValue())).iterator();
+    private Iterator<Pair<Long, Double>> map(PointCursor points) {
+        return new ImmutableIterator<Pair<Long, Double>>() {
+            @Override
+            public boolean hasNext() {
+                return points.hasNext();
+            }
+
+            @Override
+            public Pair<Long, Double> next() {
+                points.next();
+                return Pair.pairOf(points.timestamp(), points.value());
+            }
+        };
     }
 
 
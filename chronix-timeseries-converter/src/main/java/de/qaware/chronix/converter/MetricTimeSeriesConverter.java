@@ -17,14 +17,16 @@ package de.qaware.chronix.converter;
 
 import de.qaware.chronix.Schema;
 import de.qaware.chronix.converter.common.Compression;
+import de.qaware.chronix.converter.common.CompressionCodec;
 import de.qaware.chronix.converter.serializer.json.JsonMetricTimeSeriesSerializer;
 import de.qaware.chronix.converter.serializer.protobuf.ProtoBufMetricTimeSeriesSerializer;
+import de.qaware.chronix.timeseries.MetricAggregate;
+import de.qaware.chronix.timeseries.MetricAggregations;
 import de.qaware.chronix.timeseries.MetricTimeSeries;
-import org.apache.commons.io.IOUtils;
+import de.qaware.chronix.timeseries.MetricTimeSeriesPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.InputStream;
 import java.nio.charset.Charset;
 
 /**
@@ -38,11 +40,67 @@ public class MetricTimeSeriesConverter implements TimeSeriesConverter<MetricTime
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MetricTimeSeriesConverter.class);
 
+    private final MetricTimeSeriesPool pool;
+    private final CompressionCodec codec;
+    private final int pointsPerBlock;
+
+    /**
+     * Constructs a converter that creates a new time series per conversion
+     */
+    public MetricTimeSeriesConverter() {
+        this(null);
+    }
+
+    /**
+     * Constructs a converter that takes the time series from the given pool.
+     * Batch readers hand the converted time series back to the pool to reuse them and their arrays.
+     *
+     * @param pool the pool of time series, null to create a new time series per conversion
+     */
+    public MetricTimeSeriesConverter(MetricTimeSeriesPool pool) {
+        this(pool, Compression.GZIP);
+    }
+
+    /**
+     * Constructs a converter that compresses the points with the given codec, e.g. {@link Compression#LZ4}.
+     * The codec of the points to read is detected, hence points compressed with any codec are read.
+     *
+     * @param pool  the pool of time series, null to create a new time series per conversion
+     * @param codec the codec to compress the points
+     * @throws IllegalArgumentException if the codec is null
+     */
+    public MetricTimeSeriesConverter(MetricTimeSeriesPool pool, CompressionCodec codec) {
+        this(pool, codec, 0);
+    }
+
+    /**
+     * Constructs a converter that splits the points into blocks of the given number of points.
+     * A range query then decodes only the blocks within the range instead of all points before the end of the range.
+     * The aggregates of each block are stored as well, see {@link #aggregate(BinaryTimeSeries, long, long)}.
+     * Points with and without blocks are read by any converter, older versions read only the points without blocks.
+     *
+     * @param pool           the pool of time series, null to create a new time series per conversion
+     * @param codec          the codec to compress the points
+     * @param pointsPerBlock the maximum number of points of a block, 0 to store the points without blocks
+     * @throws IllegalArgumentException if the codec is null or the points per block are negative
+     */
+    public MetricTimeSeriesConverter(MetricTimeSeriesPool pool, CompressionCodec codec, int pointsPerBlock) {
+        if (codec == null) {
+            throw new IllegalArgumentException("Codec must not be null");
+        }
+        if (pointsPerBlock < 0) {
+            throw new IllegalArgumentException("Points per block must not be negative. Current value is: " + pointsPerBlock);
+        }
+        this.pool = pool;
+        this.codec = codec;
+        this.pointsPerBlock = pointsPerBlock;
+    }
+
     @Override
     public MetricTimeSeries from(BinaryTimeSeries binaryTimeSeries, long queryStart, long queryEnd) {
         LOGGER.debug("Converting {} to MetricTimeSeries starting at {} and ending at {}", binaryTimeSeries, queryStart, queryEnd);
 
-        MetricTimeSeries.Builder builder = new MetricTimeSeries.Builder(binaryTimeSeries.getName(), binaryTimeSeries.getType());
+        MetricTimeSeries.Builder builder = builder(binaryTimeSeries.getName(), binaryTimeSeries.getType());
 
         //add all user defined attributes
         binaryTimeSeries.getFields().forEach((field, value) -> {
@@ -69,10 +127,36 @@ public class MetricTimeSeriesConverter implements TimeSeriesConverter<MetricTime
         return builder.build();
     }
 
+    /**
+     * Aggregates the points of the binary time series within the range without converting the time series.
+     * The stored aggregates of the blocks within the range are used, hence only the blocks at the borders of the range are decoded.
+     * Points without blocks or without aggregates are decoded.
+     *
+     * @param binaryTimeSeries the binary time series
+     * @param queryStart       the start of the range (inclusive)
+     * @param queryEnd         the end of the range (inclusive)
+     * @return the aggregate of the points within the range
+     */
+    public MetricAggregate aggregate(BinaryTimeSeries binaryTimeSeries, long queryStart, long queryEnd) {
+        LOGGER.debug("Aggregating {} starting at {} and ending at {}", binaryTimeSeries, queryStart, queryEnd);
+
+        if (binaryTimeSeries.getPoints().length > 0) {
+            final byte[] decompressed = Compression.decompress(binaryTimeSeries.getPoints());
+            return ProtoBufMetricTimeSeriesSerializer.aggregate(decompressed, binaryTimeSeries.getStart(), binaryTimeSeries.getEnd(), queryStart, queryEnd);
+        }
+        return MetricAggregations.aggregate(from(binaryTimeSeries, queryStart, queryEnd));
+    }
+
+    private MetricTimeSeries.Builder builder(String name, String type) {
+        if (pool == null) {
+            return new MetricTimeSeries.Builder(name, type);
+        }
+        return pool.builder(name, type);
+    }
+
     private void fromProtocolBuffers(BinaryTimeSeries binaryTimeSeries, long queryStart, long queryEnd, MetricTimeSeries.Builder builder) {
-        final InputStream decompressed = Compression.decompressToStream(binaryTimeSeries.getPoints());
+        final byte[] decompressed = Compression.decompress(binaryTimeSeries.getPoints());
         ProtoBufMetricTimeSeriesSerializer.from(decompressed, binaryTimeSeries.getStart(), binaryTimeSeries.getEnd(), queryStart, queryEnd, builder);
-        IOUtils.closeQuietly(decompressed);
     }
 
     private void fromJson(BinaryTimeSeries binaryTimeSeries, long queryStart, long queryEnd, MetricTimeSeries.Builder builder) {
@@ -84,12 +168,32 @@ public class MetricTimeSeriesConverter implements TimeSeriesConverter<MetricTime
 
     @Override
     public BinaryTimeSeries to(MetricTimeSeries timeSeries) {
-        LOGGER.debug("Converting {} to BinaryTimeSeries", timeSeries);
+        return to(timeSeries, codec);
+    }
+
+    /**
+     * Converts the time series and compresses its points with the given codec instead of the codec of this converter,
+     * e.g. to store cold time series with a better compression.
+     *
+     * @param timeSeries the time series
+     * @param codec      the codec to compress the points
+     * @return the binary time series
+     */
+    public BinaryTimeSeries to(MetricTimeSeries timeSeries, CompressionCodec codec) {
+        LOGGER.debug("Converting {} to BinaryTimeSeries with {}", timeSeries, codec.name());
         BinaryTimeSeries.Builder builder = new BinaryTimeSeries.Builder();
 
+        //the points are stored as deltas starting at the start of the time series, hence they have to be sorted
+        timeSeries.sort();
+
         //serialize
-        byte[] serializedPoints = ProtoBufMetricTimeSeriesSerializer.to(timeSeries.points().iterator());
-        byte[] compressedPoints = Compression.compress(serializedPoints);
+        byte[] serializedPoints;
+        if (pointsPerBlock > 0) {
+            serializedPoints = ProtoBufMetricTimeSeriesSerializer.serializeBlocks(timeSeries.cursor(), 0, pointsPerBlock, true);
+        } else {
+            serializedPoints = ProtoBufMetricTimeSeriesSerializer.serialize(timeSeries.cursor());
+        }
+        byte[] compressedPoints = Compression.compress(serializedPoints, codec);
 
         //Add the minimum required fields
         builder.name(timeSeries.getName())
@@ -99,7 +203,7 @@ public class MetricTimeSeriesConverter implements TimeSeriesConverter<MetricTime
                 .data(compressedPoints);
 
         //Add a list of user defined attributes
-        timeSeries.attributes().forEach(builder::field);
+        timeSeries.attributesView().forEach(builder::field);
 
         return builder.build();
     }
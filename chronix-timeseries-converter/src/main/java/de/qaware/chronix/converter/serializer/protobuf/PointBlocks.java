@@ -0,0 +1,411 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.converter.serializer.protobuf;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import de.qaware.chronix.timeseries.MetricAggregate;
+import de.qaware.chronix.timeseries.MetricAggregations;
+import de.qaware.chronix.timeseries.MetricTimeSeries;
+import de.qaware.chronix.timeseries.dts.PointCursor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The points split into blocks that are decoded independently.
+ * <p>
+ * The blocks start with a magic number and a header followed by the points of the blocks:
+ * <pre>
+ * magic       0x00 'C' 'X' 0x02
+ * count       varint, the number of blocks
+ * per block   varint first timestamp, varint offset of the last timestamp, varint points, varint bytes, byte flags,
+ *             with aggregates the fixed64 minimum, maximum, sum, first and last value
+ * per block   the points as written by {@link ProtoBufMetricTimeSeriesSerializer#serialize(PointCursor, int)}
+ * </pre>
+ * The points without blocks start with a tag and a tag is never 0, hence the first byte tells the formats apart.
+ * Each block has its own base timestamp and value references, hence a block within the range is decoded without the blocks before it.
+ * The timestamps of the header are the ones the decoder reconstructs, hence they bound the decoded points of a sorted block.
+ * A block with unsorted points is always decoded.
+ * <p>
+ * The optional aggregates of a block answer aggregations over ranges that contain the whole block without decoding it.
+ *
+ * @author f.lautenschlager
+ */
+final class PointBlocks {
+
+    private static final byte[] MAGIC = {0x00, 'C', 'X', 0x02};
+
+    //the points of the block are sorted by their timestamps
+    private static final int SORTED = 1;
+    //the header of the block holds the aggregates of its values
+    private static final int AGGREGATES = 2;
+    //the smallest header of a block: four varints and the flags
+    private static final int MIN_HEADER_SIZE = 5;
+
+    /**
+     * Private constructor
+     */
+    private PointBlocks() {
+        //utility class
+    }
+
+    /**
+     * @param bytes the serialized points
+     * @return true if the points are split into blocks
+     */
+    static boolean isBlocks(byte[] bytes) {
+        if (bytes.length < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (bytes[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the points of the cursor in blocks
+     *
+     * @param points         the cursor over the points
+     * @param ddcThreshold   the aberration threshold for the deltas
+     * @param pointsPerBlock the maximum number of points of a block
+     * @param aggregates     true to store the aggregates of each block
+     * @return the serialized blocks
+     */
+    static byte[] write(PointCursor points, int ddcThreshold, int pointsPerBlock, boolean aggregates) {
+        BlockCursor block = new BlockCursor(points, pointsPerBlock);
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        List<byte[]> blocks = new ArrayList<>();
+        int blocksLength = 0;
+
+        while (block.nextBlock()) {
+            PointsWriter writer = ProtoBufMetricTimeSeriesSerializer.encode(block, ddcThreshold, ValueIndex.UNLIMITED);
+            long lastOffset = writer.reconstructedOffset();
+            int size = writer.size();
+            byte[] encoded = writer.toByteArray();
+
+            writeVarint(header, block.first);
+            writeVarint(header, lastOffset);
+            writeVarint(header, size);
+            writeVarint(header, encoded.length);
+            header.write((block.sorted ? SORTED : 0) | (aggregates ? AGGREGATES : 0));
+            if (aggregates) {
+                writeDouble(header, block.min);
+                writeDouble(header, block.max);
+                writeDouble(header, block.sum);
+                writeDouble(header, block.firstValue);
+                writeDouble(header, block.lastValue);
+            }
+            blocks.add(encoded);
+            blocksLength += encoded.length;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(MAGIC.length + 5 + header.size() + blocksLength);
+        out.write(MAGIC, 0, MAGIC.length);
+        writeVarint(out, blocks.size());
+        byte[] headerBytes = header.toByteArray();
+        out.write(headerBytes, 0, headerBytes.length);
+        for (byte[] encoded : blocks) {
+            out.write(encoded, 0, encoded.length);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Adds the points of the blocks within the range to the builder
+     *
+     * @param bytes   the serialized blocks
+     * @param from    including points from
+     * @param to      including points to
+     * @param builder the time series builder
+     * @throws IOException if the bytes are not valid blocks
+     */
+    static void read(byte[] bytes, long from, long to, MetricTimeSeries.Builder builder) throws IOException {
+        Header header = new Header(bytes);
+
+        int capacity = 0;
+        for (int i = 0; i < header.count; i++) {
+            if (header.overlaps(i, from, to)) {
+                capacity += header.sizes[i];
+            }
+        }
+        builder.capacity(capacity);
+
+        for (int i = 0; i < header.count; i++) {
+            if (header.overlaps(i, from, to)) {
+                ProtoBufMetricTimeSeriesSerializer.decode(bytes, header.offsets[i], header.lengths[i],
+                        header.firsts[i], header.lasts[i], from, to, builder);
+            }
+        }
+    }
+
+    /**
+     * Aggregates the points within the range.
+     * A block within the range is aggregated from its stored aggregates, the other blocks are decoded.
+     *
+     * @param bytes the serialized blocks
+     * @param from  including points from
+     * @param to    including points to
+     * @return the aggregate of the points within the range
+     * @throws IOException if the bytes are not valid blocks
+     */
+    static MetricAggregate aggregate(byte[] bytes, long from, long to) throws IOException {
+        Header header = new Header(bytes);
+
+        MetricAggregate aggregate = MetricAggregate.EMPTY;
+        for (int i = 0; i < header.count; i++) {
+            if (header.covers(i, from, to)) {
+                aggregate = aggregate.merge(new MetricAggregate(header.sizes[i], header.mins[i], header.maxs[i], header.sums[i],
+                        header.firsts[i], header.firstValues[i], header.lasts[i], header.lastValues[i]));
+            } else if (header.overlaps(i, from, to)) {
+                MetricTimeSeries.Builder builder = new MetricTimeSeries.Builder("block", "metric");
+                ProtoBufMetricTimeSeriesSerializer.decode(bytes, header.offsets[i], header.lengths[i],
+                        header.firsts[i], header.lasts[i], from, to, builder);
+                aggregate = aggregate.merge(MetricAggregations.aggregate(builder.build()));
+            }
+        }
+        return aggregate;
+    }
+
+    private static void writeDouble(ByteArrayOutputStream out, double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        for (int i = 0; i < Long.BYTES; i++) {
+            out.write((int) (bits >>> (8 * i)));
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0) {
+            out.write((int) ((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+        out.write((int) remaining);
+    }
+
+    /**
+     * The parsed header of the blocks
+     */
+    private static final class Header {
+
+        private final byte[] bytes;
+        private int position;
+
+        private final int count;
+        private final long[] firsts;
+        private final long[] lasts;
+        private final int[] sizes;
+        private final int[] offsets;
+        private final int[] lengths;
+        private final boolean[] sorted;
+        private final boolean[] aggregated;
+        private final double[] mins;
+        private final double[] maxs;
+        private final double[] sums;
+        private final double[] firstValues;
+        private final double[] lastValues;
+
+        private Header(byte[] bytes) throws IOException {
+            this.bytes = bytes;
+            this.position = MAGIC.length;
+
+            long blocks = readVarint();
+            if (blocks < 0 || blocks > (bytes.length - position) / MIN_HEADER_SIZE) {
+                throw new InvalidProtocolBufferException("Invalid number of blocks: " + blocks);
+            }
+            count = (int) blocks;
+            firsts = new long[count];
+            lasts = new long[count];
+            sizes = new int[count];
+            offsets = new int[count];
+            lengths = new int[count];
+            sorted = new boolean[count];
+            aggregated = new boolean[count];
+            mins = new double[count];
+            maxs = new double[count];
+            sums = new double[count];
+            firstValues = new double[count];
+            lastValues = new double[count];
+
+            for (int i = 0; i < count; i++) {
+                firsts[i] = readVarint();
+                lasts[i] = firsts[i] + readVarint();
+                sizes[i] = readLength();
+                lengths[i] = readLength();
+                int flags = readByte();
+                sorted[i] = (flags & SORTED) != 0;
+                aggregated[i] = (flags & AGGREGATES) != 0;
+                if (aggregated[i]) {
+                    mins[i] = readDouble();
+                    maxs[i] = readDouble();
+                    sums[i] = readDouble();
+                    firstValues[i] = readDouble();
+                    lastValues[i] = readDouble();
+                }
+            }
+
+            //the points of the blocks follow the header
+            int offset = position;
+            for (int i = 0; i < count; i++) {
+                if (lengths[i] > bytes.length - offset) {
+                    throw new InvalidProtocolBufferException("Block " + i + " is truncated");
+                }
+                offsets[i] = offset;
+                offset += lengths[i];
+            }
+        }
+
+        /**
+         * @return true if the block may have points within the range
+         */
+        private boolean overlaps(int block, long from, long to) {
+            return !sorted[block] || (firsts[block] <= to && lasts[block] >= from);
+        }
+
+        /**
+         * @return true if the aggregates of the block are stored and all of its points are within the range
+         */
+        private boolean covers(int block, long from, long to) {
+            return aggregated[block] && sorted[block] && firsts[block] >= from && lasts[block] <= to;
+        }
+
+        private double readDouble() throws IOException {
+            long bits = 0;
+            for (int i = 0; i < Long.BYTES; i++) {
+                bits |= (readByte() & 0xFFL) << (8 * i);
+            }
+            return Double.longBitsToDouble(bits);
+        }
+
+        private int readLength() throws IOException {
+            long length = readVarint();
+            if (length < 0 || length > Integer.MAX_VALUE) {
+                throw new InvalidProtocolBufferException("Invalid length in the header of the blocks: " + length);
+            }
+            return (int) length;
+        }
+
+        private byte readByte() throws IOException {
+            if (position >= bytes.length) {
+                throw new InvalidProtocolBufferException("The header of the blocks is truncated");
+            }
+            return bytes[position++];
+        }
+
+        private long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new InvalidProtocolBufferException("Malformed varint in the header of the blocks");
+        }
+    }
+
+    /**
+     * Moves over the points of the underlying cursor block by block.
+     * The cursor ends with the last point of the current block until the next block is started.
+     */
+    private static final class BlockCursor implements PointCursor {
+
+        private final PointCursor points;
+        private final int pointsPerBlock;
+        private int remaining;
+
+        private long first;
+        private long previous;
+        private boolean sorted;
+
+        private double min;
+        private double max;
+        private double sum;
+        private double firstValue;
+        private double lastValue;
+
+        private BlockCursor(PointCursor points, int pointsPerBlock) {
+            this.points = points;
+            this.pointsPerBlock = pointsPerBlock;
+        }
+
+        /**
+         * Starts the next block
+         *
+         * @return false if there are no more points
+         */
+        private boolean nextBlock() {
+            if (!points.hasNext()) {
+                return false;
+            }
+            remaining = pointsPerBlock;
+            sorted = true;
+            return true;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0 && points.hasNext();
+        }
+
+        @Override
+        public void next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            points.next();
+            long timestamp = points.timestamp();
+            double value = points.value();
+            if (remaining == pointsPerBlock) {
+                first = timestamp;
+                min = value;
+                max = value;
+                sum = 0;
+                firstValue = value;
+            } else if (timestamp < previous) {
+                sorted = false;
+            }
+            //like the aggregations of the decoded points, NaN is the minimum and maximum of points with NaN
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            sum += value;
+            lastValue = value;
+            previous = timestamp;
+            remaining--;
+        }
+
+        @Override
+        public int index() {
+            return points.index();
+        }
+
+        @Override
+        public long timestamp() {
+            return points.timestamp();
+        }
+
+        @Override
+        public double value() {
+            return points.value();
+        }
+    }
+}
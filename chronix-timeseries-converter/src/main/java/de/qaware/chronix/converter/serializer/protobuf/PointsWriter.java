@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.converter.serializer.protobuf;
+
+import java.util.Arrays;
+
+import static de.qaware.chronix.converter.serializer.protobuf.ProtoBufMetricTimeSeriesSerializer.POINTS_DDC;
+import static de.qaware.chronix.converter.serializer.protobuf.ProtoBufMetricTimeSeriesSerializer.POINTS_P;
+import static de.qaware.chronix.converter.serializer.protobuf.ProtoBufMetricTimeSeriesSerializer.POINT_TINT;
+import static de.qaware.chronix.converter.serializer.protobuf.ProtoBufMetricTimeSeriesSerializer.POINT_TINT_BP;
+import static de.qaware.chronix.converter.serializer.protobuf.ProtoBufMetricTimeSeriesSerializer.POINT_TLONG;
+import static de.qaware.chronix.converter.serializer.protobuf.ProtoBufMetricTimeSeriesSerializer.POINT_TLONG_BP;
+import static de.qaware.chronix.converter.serializer.protobuf.ProtoBufMetricTimeSeriesSerializer.POINT_V;
+import static de.qaware.chronix.converter.serializer.protobuf.ProtoBufMetricTimeSeriesSerializer.POINT_V_INDEX;
+import static de.qaware.chronix.converter.serializer.protobuf.ProtoBufMetricTimeSeriesSerializer.safeLongToUInt;
+
+/**
+ * Writes the points directly in the wire format of the protocol buffers points without a message per point.
+ * The written bytes are the same as the ones of the generated messages, the fields of a point are written in the order of their numbers.
+ * <p>
+ * The writer keeps the timestamp a decoder reconstructs from the written deltas.
+ * Hence the delta of the last point is calculated without walking the written points again.
+ * The buffer is reused by the next writer of the thread unless it is larger than {@link #MAX_KEPT_BUFFER_SIZE}.
+ *
+ * @author f.lautenschlager
+ */
+final class PointsWriter {
+
+    /**
+     * The point has no delta, the decoder uses the last delta
+     */
+    static final int NO_DELTA = 0;
+    /**
+     * The point has a normal delta (tint or tlong)
+     */
+    static final int DELTA = 1;
+    /**
+     * The point has a base point delta (tintBP or tlongBP)
+     */
+    static final int BASE_POINT_DELTA = 2;
+
+    private static final int MAX_KEPT_BUFFER_SIZE = 1 << 20;
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+    //tag and length of the point, a delta and a value
+    private static final int MAX_POINT_SIZE = 2 + 11 + 9;
+    private static final ThreadLocal<byte[]> BUFFERS = new ThreadLocal<>();
+
+    private byte[] buffer;
+    private int position;
+    private int size;
+
+    private final long ddcThreshold;
+    //the sum of the deltas the decoder reconstructs and the last one
+    private long reconstructedOffset;
+    private long lastDelta;
+
+    /**
+     * @param ddcThreshold the ddc threshold, the decoder starts with it as the last delta
+     */
+    PointsWriter(int ddcThreshold) {
+        this.ddcThreshold = ddcThreshold;
+        this.lastDelta = ddcThreshold;
+        byte[] reused = BUFFERS.get();
+        if (reused != null) {
+            BUFFERS.remove();
+            buffer = reused;
+        } else {
+            buffer = new byte[INITIAL_BUFFER_SIZE];
+        }
+    }
+
+    /**
+     * @return the number of written points
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the offset of the last point to the first point, as the decoder reconstructs it from the written deltas
+     */
+    long reconstructedOffset() {
+        return reconstructedOffset;
+    }
+
+    /**
+     * Writes a point
+     *
+     * @param deltaType  the type of the delta, {@link #NO_DELTA}, {@link #DELTA} or {@link #BASE_POINT_DELTA}
+     * @param delta      the delta, ignored for {@link #NO_DELTA}
+     * @param isIndex    true if the point refers to the value of a previous point
+     * @param value      the value, ignored if the point refers to a previous point
+     * @param valueIndex the index of the point holding the value
+     */
+    void point(int deltaType, long delta, boolean isIndex, double value, int valueIndex) {
+        int deltaTag = deltaTag(deltaType, delta);
+        ensureCapacity(MAX_POINT_SIZE);
+
+        int pointSize = 0;
+        if (deltaTag != 0) {
+            pointSize += 1 + varintSize(delta);
+        }
+        pointSize += isIndex ? 1 + varintSize(valueIndex) : 1 + Double.BYTES;
+
+        buffer[position++] = POINTS_P;
+        buffer[position++] = (byte) pointSize;
+        if (deltaTag != 0) {
+            buffer[position++] = (byte) deltaTag;
+            writeVarint(delta);
+        }
+        if (isIndex) {
+            buffer[position++] = POINT_V_INDEX;
+            writeVarint(valueIndex);
+        } else {
+            buffer[position++] = POINT_V;
+            writeFixed64(Double.doubleToRawLongBits(value));
+        }
+
+        reconstruct(deltaTag != 0, delta);
+    }
+
+    /**
+     * Reduces the deltas of the written points as the reconstructed timestamp is after the last timestamp.
+     * Only the points with a delta larger than the average correction are reduced.
+     * The points are rewritten in place as their deltas only get smaller.
+     *
+     * @param deltaToEndTimestamp the negative difference between the last timestamp and the reconstructed one
+     */
+    void rearrange(long deltaToEndTimestamp) {
+        //break the offset down on all points
+        long avgPerDelta = (long) Math.ceil((double) deltaToEndTimestamp * -1 + ddcThreshold / (double) (size - 1));
+        if (deltaToEndTimestamp + avgPerDelta > 0) {
+            avgPerDelta = deltaToEndTimestamp * -1;
+        }
+
+        int count = size;
+        int read = 0;
+        position = 0;
+        size = 0;
+        reconstructedOffset = 0;
+        lastDelta = ddcThreshold;
+
+        for (int i = 0; i < count; i++) {
+            //skip tag and length, a point has less than 128 bytes
+            int end = read + 2 + buffer[read + 1];
+            read += 2;
+            int deltaTag = 0;
+            long delta = 0;
+            boolean isIndex = false;
+            long valueBits = 0;
+            int valueIndex = 0;
+            while (read < end) {
+                int tag = buffer[read++];
+                if (tag == POINT_V) {
+                    valueBits = readFixed64(read);
+                    read += Double.BYTES;
+                } else {
+                    long varint = readVarint(read);
+                    read += varintSize(varint);
+                    if (tag == POINT_V_INDEX) {
+                        isIndex = true;
+                        valueIndex = (int) varint;
+                    } else {
+                        deltaTag = tag;
+                        delta = varint;
+                    }
+                }
+            }
+
+            //the point keeps the type of its delta field, hence a long delta is only reduced if it stays a long
+            if (i > 0 && delta > avgPerDelta) {
+                long newOffset = delta - avgPerDelta;
+                boolean isInt = deltaTag == POINT_TINT || deltaTag == POINT_TINT_BP;
+                if (isInt == safeLongToUInt(newOffset)) {
+                    delta = newOffset;
+                }
+            }
+
+            int deltaType = deltaTag == 0 ? NO_DELTA : (deltaTag == POINT_TINT || deltaTag == POINT_TLONG ? DELTA : BASE_POINT_DELTA);
+            point(deltaType, delta, isIndex, Double.longBitsToDouble(valueBits), valueIndex);
+        }
+    }
+
+    /**
+     * Writes the ddc threshold behind the points
+     *
+     * @return the serialized points
+     */
+    byte[] toByteArray() {
+        ensureCapacity(1 + 5);
+        buffer[position++] = POINTS_DDC;
+        writeVarint(ddcThreshold);
+
+        byte[] bytes = Arrays.copyOf(buffer, position);
+        if (buffer.length <= MAX_KEPT_BUFFER_SIZE) {
+            BUFFERS.set(buffer);
+        }
+        buffer = null;
+        return bytes;
+    }
+
+    private void reconstruct(boolean hasDelta, long delta) {
+        //the decoder ignores the delta of the first point
+        if (size > 0) {
+            if (hasDelta) {
+                lastDelta = delta;
+            }
+            reconstructedOffset += lastDelta;
+        }
+        size++;
+    }
+
+    private static int deltaTag(int deltaType, long delta) {
+        if (deltaType == NO_DELTA) {
+            return 0;
+        }
+        if (safeLongToUInt(delta)) {
+            return deltaType == DELTA ? POINT_TINT : POINT_TINT_BP;
+        }
+        return deltaType == DELTA ? POINT_TLONG : POINT_TLONG_BP;
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (bytes > buffer.length - position) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + bytes));
+        }
+    }
+
+    private void writeVarint(long value) {
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        buffer[position++] = (byte) remaining;
+    }
+
+    private void writeFixed64(long value) {
+        for (int i = 0; i < Long.BYTES; i++) {
+            buffer[position++] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    private long readVarint(int index) {
+        long value = 0;
+        int shift = 0;
+        int read = index;
+        byte b;
+        do {
+            b = buffer[read++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private long readFixed64(int index) {
+        long value = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            value |= (buffer[index + i] & 0xFFL) << (8 * i);
+        }
+        return value;
+    }
+
+    private static int varintSize(long value) {
+        //7 bits per byte, at least one byte
+        return value == 0 ? 1 : (63 - Long.numberOfLeadingZeros(value)) / 7 + 1;
+    }
+}
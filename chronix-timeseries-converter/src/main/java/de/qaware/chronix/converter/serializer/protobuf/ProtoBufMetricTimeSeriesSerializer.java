@@ -16,20 +16,22 @@
 package de.qaware.chronix.converter.serializer.protobuf;
 
 
-import de.qaware.chronix.converter.common.DoubleList;
-import de.qaware.chronix.converter.common.LongList;
-import de.qaware.chronix.converter.serializer.gen.MetricProtocolBuffers;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import de.qaware.chronix.timeseries.MetricAggregate;
+import de.qaware.chronix.timeseries.MetricAggregations;
 import de.qaware.chronix.timeseries.MetricTimeSeries;
 import de.qaware.chronix.timeseries.dts.Point;
+import de.qaware.chronix.timeseries.dts.PointCursor;
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.List;
-import java.util.Map;
+import java.util.NoSuchElementException;
 
 /**
  * Class to easily convert the protocol buffer into Point<Long,Double>
@@ -40,6 +42,18 @@ public final class ProtoBufMetricTimeSeriesSerializer {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ProtoBufMetricTimeSeriesSerializer.class);
 
+    //The tags (field number and wire type) of the messages, see metric.proto
+    static final int POINTS_P = 10;
+    static final int POINTS_DDC = 16;
+    static final int POINT_TLONG = 8;
+    static final int POINT_TINT = 16;
+    static final int POINT_TLONG_BP = 24;
+    static final int POINT_TINT_BP = 32;
+    static final int POINT_V = 41;
+    static final int POINT_V_INDEX = 48;
+
+    private static final int INITIAL_VALUES_CAPACITY = 64;
+
     /**
      * Private constructor
      */
@@ -48,7 +62,8 @@ public final class ProtoBufMetricTimeSeriesSerializer {
     }
 
     /**
-     * Add the points to the given builder
+     * Add the points to the given builder.
+     * The points replace the points the builder already has.
      *
      * @param decompressedBytes the decompressed input stream
      * @param timeSeriesStart   start of the time series
@@ -60,7 +75,10 @@ public final class ProtoBufMetricTimeSeriesSerializer {
     }
 
     /**
-     * Adds the points (compressed byte array) to the given builder
+     * Adds the points (compressed byte array) to the given builder.
+     * The points replace the points the builder already has.
+     * If the time series has no points within the range, the builder is not changed.
+     * If the points could not be decoded, the builder has no points.
      *
      * @param decompressedBytes the compressed bytes holding the data points
      * @param timeSeriesStart   the start of the time series
@@ -70,92 +88,291 @@ public final class ProtoBufMetricTimeSeriesSerializer {
      * @param builder           the time series builder
      */
     public static void from(final InputStream decompressedBytes, long timeSeriesStart, long timeSeriesEnd, long from, long to, MetricTimeSeries.Builder builder) {
+        if (!isInRange(timeSeriesStart, timeSeriesEnd, from, to)) {
+            return;
+        }
+
+        builder.clearPoints();
+        try {
+            byte[] serializedPoints = IOUtils.toByteArray(decompressedBytes);
+            decodePointsOrBlocks(serializedPoints, timeSeriesStart, timeSeriesEnd, from, to, builder);
+        } catch (IOException e) {
+            LOGGER.info("Could not decode protocol buffers points");
+            builder.clearPoints();
+        }
+    }
+
+    /**
+     * Adds the points of the decompressed bytes to the given builder.
+     * In contrast to {@link #from(InputStream, long, long, long, long, MetricTimeSeries.Builder)} the bytes are not copied.
+     * The points replace the points the builder already has.
+     * They are decoded directly into the lists of the builder, e.g. the reused ones of a {@link de.qaware.chronix.timeseries.MetricTimeSeriesPool}.
+     * If the time series has no points within the range, the builder is not changed.
+     * If the points could not be decoded, the builder has no points.
+     *
+     * @param decompressedBytes the decompressed bytes holding the data points
+     * @param timeSeriesStart   the start of the time series
+     * @param timeSeriesEnd     the end of the time series
+     * @param from              including points from
+     * @param to                including points to
+     * @param builder           the time series builder
+     */
+    public static void from(final byte[] decompressedBytes, long timeSeriesStart, long timeSeriesEnd, long from, long to, MetricTimeSeries.Builder builder) {
+        if (!isInRange(timeSeriesStart, timeSeriesEnd, from, to)) {
+            return;
+        }
+
+        builder.clearPoints();
+        if (!append(decompressedBytes, timeSeriesStart, timeSeriesEnd, from, to, builder)) {
+            builder.clearPoints();
+        }
+    }
+
+    /**
+     * Appends the points of the decompressed bytes to the points the builder already has.
+     * In contrast to {@link #from(byte[], long, long, long, long, MetricTimeSeries.Builder)} the points of the builder are kept,
+     * hence the points of several chunks can be added to one builder.
+     *
+     * @param decompressedBytes the decompressed bytes holding the data points
+     * @param timeSeriesStart   the start of the time series
+     * @param timeSeriesEnd     the end of the time series
+     * @param from              including points from
+     * @param to                including points to
+     * @param builder           the time series builder
+     * @return false if the points could not be decoded, the builder may then hold a part of them
+     */
+    static boolean append(final byte[] decompressedBytes, long timeSeriesStart, long timeSeriesEnd, long from, long to, MetricTimeSeries.Builder builder) {
+        if (!isInRange(timeSeriesStart, timeSeriesEnd, from, to)) {
+            return true;
+        }
+
+        try {
+            decodePointsOrBlocks(decompressedBytes, timeSeriesStart, timeSeriesEnd, from, to, builder);
+            return true;
+        } catch (IOException e) {
+            LOGGER.info("Could not decode protocol buffers points");
+            return false;
+        }
+    }
+
+    /**
+     * Aggregates the points of the decompressed bytes within the range.
+     * The stored aggregates of the blocks within the range are used, see {@link #serializeBlocks(PointCursor, int, int, boolean)}.
+     * All other points within the range are decoded.
+     *
+     * @param decompressedBytes the decompressed bytes holding the data points
+     * @param timeSeriesStart   the start of the time series
+     * @param timeSeriesEnd     the end of the time series
+     * @param from              including points from
+     * @param to                including points to
+     * @return the aggregate of the points within the range, {@link MetricAggregate#EMPTY} if the points could not be decoded
+     */
+    public static MetricAggregate aggregate(final byte[] decompressedBytes, long timeSeriesStart, long timeSeriesEnd, long from, long to) {
+        if (!isInRange(timeSeriesStart, timeSeriesEnd, from, to)) {
+            return MetricAggregate.EMPTY;
+        }
+
+        try {
+            if (PointBlocks.isBlocks(decompressedBytes)) {
+                return PointBlocks.aggregate(decompressedBytes, from, to);
+            }
+            MetricTimeSeries.Builder builder = new MetricTimeSeries.Builder("points", "metric");
+            decode(decompressedBytes, 0, decompressedBytes.length, timeSeriesStart, timeSeriesEnd, from, to, builder);
+            return MetricAggregations.aggregate(builder.build());
+        } catch (IOException e) {
+            LOGGER.info("Could not decode protocol buffers points");
+            return MetricAggregate.EMPTY;
+        }
+    }
+
+    /**
+     * Checks the range of the query
+     *
+     * @return false if the time series has no points within the range
+     * @throws IllegalArgumentException if from or to is -1
+     */
+    private static boolean isInRange(long timeSeriesStart, long timeSeriesEnd, long from, long to) {
         if (from == -1 || to == -1) {
             throw new IllegalArgumentException("FROM or TO have to be >= 0");
         }
 
         //if to is left of the time series, we have no points to return
         if (to < timeSeriesStart) {
-            return;
+            return false;
         }
         //if from is greater  to, we have nothing to return
         if (from > to) {
-            return;
+            return false;
         }
 
         //if from is right of the time series we have nothing to return
-        if (from > timeSeriesEnd) {
-            return;
-        }
-
-        try {
-            MetricProtocolBuffers.Points protocolBufferPoints = MetricProtocolBuffers.Points.parseFrom(decompressedBytes);
-
-            List<MetricProtocolBuffers.Point> pList = protocolBufferPoints.getPList();
+        return from <= timeSeriesEnd;
+    }
 
-            int size = pList.size();
-            MetricProtocolBuffers.Point[] points = pList.toArray(new MetricProtocolBuffers.Point[0]);
+    /**
+     * Decodes the blocks of {@link #serializeBlocks(PointCursor, int, int)} or the points without blocks
+     *
+     * @throws IOException if the bytes are neither valid blocks nor valid points
+     */
+    private static void decodePointsOrBlocks(byte[] serializedPoints, long timeSeriesStart, long timeSeriesEnd, long from, long to, MetricTimeSeries.Builder builder) throws IOException {
+        if (PointBlocks.isBlocks(serializedPoints)) {
+            PointBlocks.read(serializedPoints, from, to, builder);
+        } else {
+            decode(serializedPoints, 0, serializedPoints.length, timeSeriesStart, timeSeriesEnd, from, to, builder);
+        }
+    }
 
-            long[] timestamps = new long[pList.size()];
-            double[] values = new double[pList.size()];
+    /**
+     * Decodes the points directly from the wire format into the builder without creating a message per point.
+     * The points are stored as deltas. Unless a delta is negative, the decoding stops at the first point after the range.
+     * A point can refer to the value of a previous point, hence the values of the points before the range are kept.
+     *
+     * @param serializedPoints the bytes holding the points
+     * @param offset           the offset of the points within the bytes
+     * @param length           the number of bytes of the points
+     * @throws IOException if the bytes are not valid points
+     */
+    static void decode(byte[] serializedPoints, int offset, int length, long timeSeriesStart, long timeSeriesEnd, long from, long to, MetricTimeSeries.Builder builder) throws IOException {
+        //the threshold is written after the points but needed to decode them, hence the points are scanned first
+        CodedInputStream input = CodedInputStream.newInstance(serializedPoints, offset, length);
+        long lastDelta = 0;
+        int size = 0;
+        boolean sorted = true;
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            if (tag == POINTS_P) {
+                int limit = input.pushLimit(input.readRawVarint32());
+                sorted &= hasNoNegativeDelta(input);
+                input.popLimit(limit);
+                size++;
+            } else if (tag == POINTS_DDC) {
+                lastDelta = input.readUInt32();
+            } else if (!input.skipField(tag)) {
+                break;
+            }
+        }
 
-            long lastDelta = protocolBufferPoints.getDdc();
-            long calculatedPointDate = timeSeriesStart;
-            int lastPointIndex = 0;
+        //the points are decoded directly into the lists of the time series, e.g. the recycled ones of a pool
+        if (from <= timeSeriesStart && to >= timeSeriesEnd) {
+            builder.capacity(size);
+        }
 
-            double value;
+        //the value of each point, a later point refers to it by its index
+        double[] values = new double[Math.min(size, INITIAL_VALUES_CAPACITY)];
+        long calculatedPointDate = timeSeriesStart;
 
-            for (int i = 0; i < size; i++) {
-                MetricProtocolBuffers.Point p = points[i];
+        input = CodedInputStream.newInstance(serializedPoints, offset, length);
+        int index = 0;
+        while ((tag = input.readTag()) != 0) {
+            if (tag != POINTS_P) {
+                if (!input.skipField(tag)) {
+                    break;
+                }
+                continue;
+            }
 
-                //Decode the time
-                if (i > 0) {
-                    lastDelta = getTimestamp(p, lastDelta);
-                    calculatedPointDate += lastDelta;
+            int limit = input.pushLimit(input.readRawVarint32());
+            long tlong = 0;
+            int tint = 0;
+            long tlongBP = 0;
+            int tintBP = 0;
+            boolean hasT = false;
+            boolean hasBP = false;
+            double value = 0;
+            boolean hasVIndex = false;
+            int vIndex = 0;
+
+            int pointTag;
+            while ((pointTag = input.readTag()) != 0) {
+                switch (pointTag) {
+                    case POINT_TLONG:
+                        tlong = input.readUInt64();
+                        hasT = true;
+                        break;
+                    case POINT_TINT:
+                        tint = input.readUInt32();
+                        hasT = true;
+                        break;
+                    case POINT_TLONG_BP:
+                        tlongBP = input.readUInt64();
+                        hasBP = true;
+                        break;
+                    case POINT_TINT_BP:
+                        tintBP = input.readUInt32();
+                        hasBP = true;
+                        break;
+                    case POINT_V:
+                        value = input.readDouble();
+                        break;
+                    case POINT_V_INDEX:
+                        vIndex = input.readUInt32();
+                        hasVIndex = true;
+                        break;
+                    default:
+                        input.skipField(pointTag);
+                        break;
                 }
+            }
+            input.popLimit(limit);
+
+            //Decode the time, a point without a delta has the last delta
+            if (index > 0) {
+                if (hasT) {
+                    lastDelta = tint + tlong;
+                } else if (hasBP) {
+                    lastDelta = tintBP + tlongBP;
+                }
+                calculatedPointDate += lastDelta;
+            }
 
-                //only add the point if it is within the date
-                if (calculatedPointDate >= from && calculatedPointDate <= to) {
-                    timestamps[lastPointIndex] = calculatedPointDate;
+            //without negative deltas the following points are after the range
+            if (calculatedPointDate > to && sorted) {
+                return;
+            }
 
-                    //Check if the point refers to an index
-                    if (p.hasVIndex()) {
-                        value = pList.get(p.getVIndex()).getV();
-                    } else {
-                        value = p.getV();
+            if (index == values.length) {
+                values = Arrays.copyOf(values, Math.min(Math.max(index * 2, INITIAL_VALUES_CAPACITY), size));
+            }
+            values[index] = value;
+
+            //only add the point if it is within the date
+            if (calculatedPointDate >= from && calculatedPointDate <= to) {
+                //Check if the point refers to an index
+                if (hasVIndex) {
+                    if (vIndex < 0 || vIndex > index) {
+                        throw new InvalidProtocolBufferException("Point " + index + " refers to the value of point " + vIndex);
                     }
-                    values[lastPointIndex] = value;
-                    lastPointIndex++;
+                    value = values[vIndex];
                 }
+                builder.point(calculatedPointDate, value);
             }
-            builder.points(new LongList(timestamps, lastPointIndex), new DoubleList(values, lastPointIndex));
-
-        } catch (IOException e) {
-            LOGGER.info("Could not decode protocol buffers points");
+            index++;
         }
-
     }
 
     /**
-     * Gets the time stamp from the point.
+     * Skips the fields of a point and checks its deltas.
+     * Points that were not sorted when they were serialized have negative deltas.
      *
-     * @param p          the protocol buffers point
-     * @param lastOffset the last stored offset
-     * @return the time stamp of the point or the last offset if the point do not have any information about the time stamp
+     * @param input the input limited to the point
+     * @return true if the deltas of the point are not negative
+     * @throws IOException if the point is not valid
      */
-    private static long getTimestamp(final MetricProtocolBuffers.Point p, final long lastOffset) {
-        //Normal delta
-        if (p.hasTint() || p.hasTlong()) {
-            return p.getTint() + p.getTlong();
-        }
-        //Base point delta
-        if (p.hasTintBP() || p.hasTlongBP()) {
-            return p.getTintBP() + p.getTlongBP();
+    private static boolean hasNoNegativeDelta(CodedInputStream input) throws IOException {
+        boolean noNegativeDelta = true;
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            if (tag == POINT_TLONG || tag == POINT_TLONG_BP) {
+                noNegativeDelta &= input.readUInt64() >= 0;
+            } else if (tag == POINT_TINT || tag == POINT_TINT_BP) {
+                noNegativeDelta &= input.readUInt32() >= 0;
+            } else if (!input.skipField(tag)) {
+                break;
+            }
         }
-        return lastOffset;
+        return noNegativeDelta;
     }
 
-
     /**
      * Converts the given iterator of our point class to protocol buffers and compresses (gzip) it.
      *
@@ -179,7 +396,97 @@ public final class ProtoBufMetricTimeSeriesSerializer {
         if (ddcThreshold < 0) {
             throw new IllegalArgumentException("DDC Threshold must not be lower than 0. Current value is: " + ddcThreshold);
         }
+        return serialize(new IteratorPointCursor(metricDataPoints), ddcThreshold);
+    }
+
+    /**
+     * Converts the points of the given cursor to protocol buffers.
+     * In contrast to {@link #to(Iterator)} no point objects are needed.
+     *
+     * @param points - the cursor over the points
+     * @return the serialized points as byte[]
+     */
+    public static byte[] serialize(PointCursor points) {
+        return serialize(points, 0);
+    }
+
+    /**
+     * Converts the points of the given cursor to protocol buffers.
+     * In contrast to {@link #to(Iterator, int)} no point objects are needed.
+     *
+     * @param points       - the cursor over the points
+     * @param ddcThreshold - the aberration threshold for the deltas
+     * @return the serialized points as byte[]
+     */
+    public static byte[] serialize(final PointCursor points, final int ddcThreshold) {
+        return serialize(points, ddcThreshold, ValueIndex.UNLIMITED);
+    }
+
+    /**
+     * Converts the points of the given cursor to protocol buffers.
+     * A point with the value of a previous point refers to it instead of storing the value.
+     * To find them, the distinct values are indexed up to the given maximum, further distinct values are stored as they are.
+     * A low maximum saves the index for time series with many distinct values, e.g. measurements with a high precision.
+     *
+     * @param points           - the cursor over the points
+     * @param ddcThreshold     - the aberration threshold for the deltas
+     * @param maxIndexedValues - the maximum number of indexed distinct values, Integer.MAX_VALUE for no limit
+     * @return the serialized points as byte[]
+     */
+    public static byte[] serialize(final PointCursor points, final int ddcThreshold, final int maxIndexedValues) {
+
+        if (ddcThreshold < 0) {
+            throw new IllegalArgumentException("DDC Threshold must not be lower than 0. Current value is: " + ddcThreshold);
+        }
+        if (maxIndexedValues < 0) {
+            throw new IllegalArgumentException("Maximum of indexed values must not be lower than 0. Current value is: " + maxIndexedValues);
+        }
+        //write the ddc value
+        return encode(points, ddcThreshold, maxIndexedValues).toByteArray();
+    }
+
+    /**
+     * Converts the points of the given cursor to protocol buffers split into blocks of the given number of points.
+     * Each block is stored like the points of {@link #serialize(PointCursor, int)} with the timestamp of its first point as base.
+     * A header in front of the blocks holds their timestamps and sizes, hence a range query decodes only the blocks within the range.
+     * Blocks are read by {@link #from(byte[], long, long, long, long, MetricTimeSeries.Builder)} like the points without blocks.
+     *
+     * @param points         - the cursor over the points
+     * @param ddcThreshold   - the aberration threshold for the deltas
+     * @param pointsPerBlock - the maximum number of points of a block
+     * @return the serialized blocks as byte[]
+     */
+    public static byte[] serializeBlocks(final PointCursor points, final int ddcThreshold, final int pointsPerBlock) {
+        return serializeBlocks(points, ddcThreshold, pointsPerBlock, false);
+    }
 
+    /**
+     * Converts the points of the given cursor to protocol buffers split into blocks like {@link #serializeBlocks(PointCursor, int, int)}.
+     * With aggregates, the header also holds the minimum, maximum, sum, first and last value of each block.
+     * Then {@link #aggregate(byte[], long, long, long, long)} decodes only the blocks that are partially within the range.
+     *
+     * @param points         - the cursor over the points
+     * @param ddcThreshold   - the aberration threshold for the deltas
+     * @param pointsPerBlock - the maximum number of points of a block
+     * @param aggregates     - true to store the aggregates of each block
+     * @return the serialized blocks as byte[]
+     */
+    public static byte[] serializeBlocks(final PointCursor points, final int ddcThreshold, final int pointsPerBlock, final boolean aggregates) {
+        if (ddcThreshold < 0) {
+            throw new IllegalArgumentException("DDC Threshold must not be lower than 0. Current value is: " + ddcThreshold);
+        }
+        if (pointsPerBlock < 1) {
+            throw new IllegalArgumentException("Points per block must not be lower than 1. Current value is: " + pointsPerBlock);
+        }
+        return PointBlocks.write(points, ddcThreshold, pointsPerBlock, aggregates);
+    }
+
+    /**
+     * Writes the points of the given cursor without the ddc threshold
+     *
+     * @return the writer holding the points
+     */
+    static PointsWriter encode(final PointCursor points, final int ddcThreshold, final int maxIndexedValues) {
         long previousDate = -1;
         long previousDelta = 0;
         long previousDrift = 0;
@@ -191,26 +498,22 @@ public final class ProtoBufMetricTimeSeriesSerializer {
 
         int timesSinceLastDelta = 0;
 
-        Map<Double, Integer> valueIndex = new HashMap<>();
-
-        MetricProtocolBuffers.Point.Builder point = MetricProtocolBuffers.Point.newBuilder();
-        MetricProtocolBuffers.Points.Builder points = MetricProtocolBuffers.Points.newBuilder();
+        ValueIndex valueIndex = ValueIndex.create(maxIndexedValues);
 
+        //the points are written directly in the wire format, the reconstructed timestamp is kept by the writer
+        PointsWriter writer = new PointsWriter(ddcThreshold);
 
         int index = 0;
-        while (metricDataPoints.hasNext()) {
+        while (points.hasNext()) {
 
-            Point p = metricDataPoints.next();
-            if (p == null) {
-                LOGGER.debug("Skipping 'null' point.");
-                continue;
-            }
+            points.next();
 
-            point.clear();
-            long currentTimestamp = p.getTimestamp();
+            long currentTimestamp = points.timestamp();
+            double value = points.value();
 
             //Add value or index, if the value already exists
-            setValueOrRefIndexOnPoint(valueIndex, index, p.getValue(), point);
+            int vIndex = valueIndex.putIfAbsent(value, index);
+            boolean isIndex = vIndex >= 0;
 
             if (previousDate == -1) {
                 // set lastStoredDate to the value of the first timestamp
@@ -222,8 +525,8 @@ public final class ProtoBufMetricTimeSeriesSerializer {
 
 
             //Last point
-            if (!metricDataPoints.hasNext()) {
-                handleLastPoint(ddcThreshold, startDate, point, points, currentTimestamp);
+            if (!points.hasNext()) {
+                handleLastPoint(startDate, writer, currentTimestamp, isIndex, value, vIndex);
                 break;
             }
 
@@ -239,23 +542,21 @@ public final class ProtoBufMetricTimeSeriesSerializer {
             }
 
             if (isAlmostEquals && noDrift(drift, ddcThreshold, timesSinceLastDelta) && drift >= 0) {
-                points.addP(point.build());
+                writer.point(PointsWriter.NO_DELTA, 0, isIndex, value, vIndex);
                 timesSinceLastDelta += 1;
             } else {
                 long timeStamp = delta;
                 //If the previous offset was not stored, correct the following delta using the calculated drift
                 if (timesSinceLastDelta > 0 && delta > previousDrift) {
                     timeStamp = delta - previousDrift;
-                    setBPTimeStamp(point, timeStamp);
+                    writer.point(PointsWriter.BASE_POINT_DELTA, timeStamp, isIndex, value, vIndex);
                 } else {
-                    setTimeStamp(point, timeStamp);
+                    writer.point(PointsWriter.DELTA, timeStamp, isIndex, value, vIndex);
                 }
 
-                //Store offset
-                points.addP(point.build());
                 //reset the offset counter
                 timesSinceLastDelta = 0;
-                lastStoredDate = p.getTimestamp();
+                lastStoredDate = currentTimestamp;
                 lastStoredDelta = timeStamp;
 
             }
@@ -266,123 +567,36 @@ public final class ProtoBufMetricTimeSeriesSerializer {
 
             index++;
         }
-        //set the ddc value
-        points.setDdc(ddcThreshold);
-        return points.build().toByteArray();
+        valueIndex.release();
+        return writer;
     }
 
     /**
      * Handles the last point of a time series.  We always store the first an the last point as supporting points actualPoints[Last] == serializedPoints[Last]
      *
-     * @param ddcThreshold     the ddc threshold
      * @param startDate        the start date
-     * @param point            the current point
-     * @param points           the protocol buffer point
+     * @param writer           the writer of the points
      * @param currentTimestamp the current time stamp
+     * @param isIndex          true if the point refers to the value of a previous point
+     * @param value            the value of the point
+     * @param vIndex           the index of the point holding the value
      */
-    private static void handleLastPoint(int ddcThreshold, long startDate, MetricProtocolBuffers.Point.Builder point, MetricProtocolBuffers.Points.Builder points, long currentTimestamp) {
-        long calcPoint = calculateTimeStamp(startDate, points.getPList(), ddcThreshold);
+    private static void handleLastPoint(long startDate, PointsWriter writer, long currentTimestamp, boolean isIndex, double value, int vIndex) {
+        long calcPoint = startDate + writer.reconstructedOffset();
         //Calc offset
         long deltaToLastTimestamp = currentTimestamp - calcPoint;
 
         //everything okay
         if (deltaToLastTimestamp >= 0) {
-            setTimeStamp(point, deltaToLastTimestamp);
-            points.addP(point);
-        } else {
-            //we have to rearrange the points as we are already behind the actual end timestamp
-            rearrangePoints(startDate, currentTimestamp, deltaToLastTimestamp, ddcThreshold, points, point);
-        }
-    }
-
-    /**
-     * Sets the given value or if the value exists in the index, the index position as value of the point.
-     *
-     * @param currentPointIndex the current index position
-     * @param index             the map holding the values and the indices
-     * @param point             the current point
-     * @param value             the current value
-     */
-    private static void setValueOrRefIndexOnPoint(Map<Double, Integer> index, int currentPointIndex, double value, MetricProtocolBuffers.Point.Builder point) {
-        //build value index
-        if (index.containsKey(value)) {
-            point.setVIndex(index.get(value));
-        } else {
-            index.put(value, currentPointIndex);
-            point.setV(value);
-        }
-    }
-
-    /**
-     * Set value as normal delta timestamp
-     *
-     * @param point          the point
-     * @param timestampDelta the timestamp delta
-     */
-    private static void setTimeStamp(MetricProtocolBuffers.Point.Builder point, long timestampDelta) {
-        if (safeLongToUInt(timestampDelta)) {
-            point.setTint((int) timestampDelta);
-        } else {
-            point.setTlong(timestampDelta);
-        }
-    }
-
-    /**
-     * Set value as a base point delta timestamp
-     * A base point delta timestamp is a corrected timestamp to the actual timestamp.
-     *
-     * @param point          the point
-     * @param timestampDelta the timestamp delta
-     */
-    private static void setBPTimeStamp(MetricProtocolBuffers.Point.Builder point, long timestampDelta) {
-        if (safeLongToUInt(timestampDelta)) {
-            point.setTintBP((int) timestampDelta);
-        } else {
-            point.setTlongBP(timestampDelta);
-        }
-    }
-
-    /**
-     * Rearranges the serialized points in order to fit the points within the start and end date of the actual time series
-     *
-     * @param startDate           the start date
-     * @param currentTimestamp    the current timestamp
-     * @param deltaToEndTimestamp the delta to the end timestamp
-     * @param ddcThreshold        the ddc threshold
-     * @param points              the serialized points
-     * @param point               the serialized point
-     */
-    private static void rearrangePoints(final long startDate, final long currentTimestamp, final long deltaToEndTimestamp, final int ddcThreshold, final MetricProtocolBuffers.Points.Builder points, final MetricProtocolBuffers.Point.Builder point) {
-        //break the offset down on all points
-        long avgPerDelta = (long) Math.ceil((double) deltaToEndTimestamp * -1 + ddcThreshold / (double) (points.getPCount() - 1));
-
-        for (int i = 1; i < points.getPCount(); i++) {
-            MetricProtocolBuffers.Point mod = points.getP(i);
-            long t = getT(mod);
-
-            //check if can correct the deltas
-            if (deltaToEndTimestamp < 0) {
-                long newOffset;
-
-                if (deltaToEndTimestamp + avgPerDelta > 0) {
-                    avgPerDelta = deltaToEndTimestamp * -1;
-                }
-
-                //if we have a t value
-                if (t > avgPerDelta) {
-                    newOffset = t - avgPerDelta;
-                    MetricProtocolBuffers.Point.Builder modPoint = mod.toBuilder();
-                    setT(modPoint, newOffset);
-                    mod = modPoint.build();
-                }
-
-            }
-            points.setP(i, mod);
+            writer.point(PointsWriter.DELTA, deltaToLastTimestamp, isIndex, value, vIndex);
+            return;
         }
 
+        //we have to rearrange the points as we are already behind the actual end timestamp
+        writer.rearrange(deltaToLastTimestamp);
 
         //Done
-        long arrangedPoint = calculateTimeStamp(startDate, points.getPList(), ddcThreshold);
+        long arrangedPoint = startDate + writer.reconstructedOffset();
 
         long storedOffsetToEnd = currentTimestamp - arrangedPoint;
         if (storedOffsetToEnd < 0) {
@@ -390,44 +604,7 @@ public final class ProtoBufMetricTimeSeriesSerializer {
             storedOffsetToEnd = 0;
         }
 
-        setBPTimeStamp(point, storedOffsetToEnd);
-
-        points.addP(point);
-    }
-
-
-    /**
-     * Sets the new t for the point. Checks which t was set.
-     *
-     * @param builder the point builder
-     * @param delta   the new delta to set on the given point
-     */
-    private static void setT(MetricProtocolBuffers.Point.Builder builder, long delta) {
-        if (safeLongToUInt(delta)) {
-            if (builder.hasTintBP()) {
-                builder.setTintBP((int) delta);
-            }
-            if (builder.hasTint()) {
-                builder.setTint((int) delta);
-            }
-        } else {
-            if (builder.hasTlongBP()) {
-                builder.setTlongBP(delta);
-            }
-            if (builder.hasTlong()) {
-                builder.setTlong(delta);
-            }
-        }
-
-    }
-
-    /**
-     * @param point the current point
-     * @return the value of t
-     */
-    private static long getT(MetricProtocolBuffers.Point point) {
-        //only one is set, others are zero
-        return point.getTlongBP() + point.getTlong() + point.getTint() + point.getTintBP();
+        writer.point(PointsWriter.BASE_POINT_DELTA, storedOffsetToEnd, isIndex, value, vIndex);
     }
 
     /**
@@ -436,29 +613,10 @@ public final class ProtoBufMetricTimeSeriesSerializer {
      * @param value the long value
      * @return true if value < INTEGER.MAX_VALUE
      */
-    private static boolean safeLongToUInt(long value) {
+    static boolean safeLongToUInt(long value) {
         return !(value < 0 || value > Integer.MAX_VALUE);
     }
 
-    /**
-     * @param startDate    the first time stamp
-     * @param pList        the list with serialized points
-     * @param ddcThreshold the threshold of the ddc
-     * @return the calculated timestamp using the ddc threshold
-     */
-    private static long calculateTimeStamp(long startDate, List<MetricProtocolBuffers.Point> pList, long ddcThreshold) {
-
-        long lastDelta = ddcThreshold;
-        long calculatedPointDate = startDate;
-
-        for (int i = 1; i < pList.size(); i++) {
-            MetricProtocolBuffers.Point p = pList.get(i);
-            lastDelta = getTimestamp(p, lastDelta);
-            calculatedPointDate += lastDelta;
-        }
-        return calculatedPointDate;
-    }
-
     /**
      * @param drift                    the calculated drift (difference between calculated and actual time stamp)
      * @param ddcThreshold             the ddc threshold
@@ -501,5 +659,54 @@ public final class ProtoBufMetricTimeSeriesSerializer {
         return (diff <= almostEquals);
     }
 
-}
+    /**
+     * Adapts an iterator of points to a point cursor. Points that are 'null' are skipped.
+     */
+    private static final class IteratorPointCursor implements PointCursor {
+
+        private final Iterator<Point> iterator;
+        private Point next;
+        private Point current;
+        private int index = -1;
+
+        private IteratorPointCursor(Iterator<Point> iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && iterator.hasNext()) {
+                next = iterator.next();
+                if (next == null) {
+                    LOGGER.debug("Skipping 'null' point.");
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public void next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            current = next;
+            next = null;
+            index++;
+        }
 
+        @Override
+        public int index() {
+            return index;
+        }
+
+        @Override
+        public long timestamp() {
+            return current.getTimestamp();
+        }
+
+        @Override
+        public double value() {
+            return current.getValue();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.converter.serializer.protobuf;
+
+import java.util.Arrays;
+
+/**
+ * The index of the distinct values of the serialized points.
+ * It maps a value to the index of the first point with the value, a later point with the value refers to this point.
+ * <p>
+ * The values are kept in an open addressing table of primitives, hence neither the values nor the indices are boxed.
+ * Values are equal if their bits are equal like {@link Double#equals(Object)}, e.g. all NaN values are equal.
+ * The index holds at most a maximum number of values, further distinct values are not indexed.
+ * Hence a time series with many distinct values does not pay for an index that is rarely hit.
+ * The table is reused by the next index of the thread unless it is larger than {@link #MAX_KEPT_CAPACITY}
+ * or much larger than the indexed values.
+ *
+ * @author f.lautenschlager
+ */
+final class ValueIndex {
+
+    /**
+     * No limit on the number of indexed values
+     */
+    static final int UNLIMITED = Integer.MAX_VALUE;
+
+    private static final int MAX_KEPT_CAPACITY = 1 << 16;
+    private static final int INITIAL_CAPACITY = 64;
+    //a table with more slots than this factor times the indexed values is replaced instead of emptied
+    private static final int SHRINK_FACTOR = 8;
+    private static final ThreadLocal<ValueIndex> REUSED = new ThreadLocal<>();
+
+    private long[] keys;
+    //the index of the point plus one, zero marks a free slot
+    private int[] positions;
+    private int size;
+    private int maxSize;
+
+    private ValueIndex() {
+        keys = new long[INITIAL_CAPACITY];
+        positions = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Delivers an empty index, the one released last by the thread if there is one
+     *
+     * @param maxSize the maximum number of indexed values, {@link #UNLIMITED} for no limit
+     * @return the index
+     */
+    static ValueIndex create(int maxSize) {
+        ValueIndex index = REUSED.get();
+        if (index != null) {
+            REUSED.remove();
+        } else {
+            index = new ValueIndex();
+        }
+        index.maxSize = maxSize;
+        return index;
+    }
+
+    /**
+     * Empties the index and hands it back for the next serialization of the thread.
+     * A table that is much larger than the indexed values is replaced by a small one,
+     * hence emptying the table costs at most a multiple of the indexed values.
+     */
+    void release() {
+        if (positions.length > MAX_KEPT_CAPACITY) {
+            return;
+        }
+        if (positions.length > INITIAL_CAPACITY && size * SHRINK_FACTOR < positions.length) {
+            keys = new long[INITIAL_CAPACITY];
+            positions = new int[INITIAL_CAPACITY];
+        } else if (size > 0) {
+            Arrays.fill(positions, 0);
+        }
+        size = 0;
+        REUSED.set(this);
+    }
+
+    /**
+     * @return the number of slots of the table
+     */
+    int capacity() {
+        return positions.length;
+    }
+
+    /**
+     * @return the number of indexed values
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Looks up the point of the value or indexes the value with the given point
+     *
+     * @param value the value
+     * @param point the index of the point with the value
+     * @return the index of the first point with the value or -1 if the value was not indexed before
+     */
+    int putIfAbsent(double value, int point) {
+        long key = Double.doubleToLongBits(value);
+        int mask = positions.length - 1;
+        int slot = hash(key) & mask;
+        while (positions[slot] != 0) {
+            if (keys[slot] == key) {
+                return positions[slot] - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size < maxSize) {
+            keys[slot] = key;
+            positions[slot] = point + 1;
+            size++;
+            //keep the table at most half full
+            if (size * 2 > positions.length) {
+                rehash(positions.length * 2);
+            }
+        }
+        return -1;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldPositions = positions;
+        keys = new long[capacity];
+        positions = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldPositions.length; i++) {
+            if (oldPositions[i] != 0) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (positions[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                positions[slot] = oldPositions[i];
+            }
+        }
+    }
+
+    private static int hash(long key) {
+        //doubles often differ only in the high bits, hence they are mixed into the low bits like murmur3
+        long h = key ^ (key >>> 33);
+        h *= 0xff51afd7ed558ccdL;
+        return (int) (h ^ (h >>> 33));
+    }
+}
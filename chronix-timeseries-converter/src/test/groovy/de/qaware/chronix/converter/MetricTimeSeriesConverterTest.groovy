@@ -15,7 +15,11 @@
  */
 package de.qaware.chronix.converter
 
+import de.qaware.chronix.converter.common.Compression
+import de.qaware.chronix.timeseries.MetricAggregate
+import de.qaware.chronix.timeseries.MetricAggregations
 import de.qaware.chronix.timeseries.MetricTimeSeries
+import de.qaware.chronix.timeseries.MetricTimeSeriesPool
 import spock.lang.Specification
 
 import java.time.Instant
@@ -119,4 +123,128 @@ class MetricTimeSeriesConverterTest extends Specification {
         tsReconverted.start == 0
         tsReconverted.end == 0
     }
+
+    def "test to and from unsorted points"() {
+        given:
+        def ts = new MetricTimeSeries.Builder("\\Load\\avg", "metric")
+        [5, 1, 4, 2, 3].each {
+            ts.point(it * 1000 as long, it)
+        }
+        def converter = new MetricTimeSeriesConverter()
+
+        when:
+        def binaryTimeSeries = converter.to(ts.build())
+        def tsReconverted = converter.from(binaryTimeSeries, 0, 10000)
+
+        then:
+        binaryTimeSeries.start == 1000
+        binaryTimeSeries.end == 5000
+        tsReconverted.getTimestampsAsArray() == [1000l, 2000l, 3000l, 4000l, 5000l] as long[]
+        tsReconverted.getValuesAsArray() == [1d, 2d, 3d, 4d, 5d] as double[]
+    }
+
+    def "test from with a pool"() {
+        given:
+        def pool = new MetricTimeSeriesPool()
+        def converter = new MetricTimeSeriesConverter(pool)
+        def ts = new MetricTimeSeries.Builder("\\Load\\avg", "metric")
+        10.times { ts.point(it * 1000 as long, it) }
+        def binaryTimeSeries = converter.to(ts.build())
+
+        when:
+        def first = converter.from(binaryTimeSeries, 0, 10000)
+        pool.recycle(first)
+        def second = converter.from(binaryTimeSeries, 2000, 4000)
+
+        then:
+        second.is(first)
+        second.name == "\\Load\\avg"
+        second.getTimestampsAsArray() == [2000l, 3000l, 4000l] as long[]
+        second.getValuesAsArray() == [2d, 3d, 4d] as double[]
+    }
+
+    def "test to and from with other codecs"() {
+        given:
+        def ts = new MetricTimeSeries.Builder("\\Load\\avg", "metric")
+        100.times { ts.point(it * 1000 as long, it % 10) }
+        def timeSeries = ts.build()
+        def converter = new MetricTimeSeriesConverter(null, codec)
+
+        when:
+        def binaryTimeSeries = converter.to(timeSeries)
+        def tsReconverted = new MetricTimeSeriesConverter().from(binaryTimeSeries, 0, 99000)
+
+        then:
+        Compression.codecOf(binaryTimeSeries.points).id() == codec.id()
+        tsReconverted.size() == 100
+        tsReconverted.getValuesAsArray() == timeSeries.getValuesAsArray()
+
+        where:
+        codec << [Compression.GZIP, Compression.DEFLATE, Compression.deflate(1), Compression.LZ4]
+    }
+
+    def "test to with a codec per write"() {
+        given:
+        def converter = new MetricTimeSeriesConverter()
+        def timeSeries = new MetricTimeSeries.Builder("\\Load\\avg", "metric").point(1000l, 1d).build()
+
+        when:
+        def binaryTimeSeries = converter.to(timeSeries, Compression.LZ4)
+
+        then:
+        Compression.codecOf(binaryTimeSeries.points).is(Compression.LZ4)
+        converter.from(binaryTimeSeries, 0, 1000).getValue(0) == 1d
+
+        when:
+        new MetricTimeSeriesConverter(null, null)
+
+        then:
+        thrown IllegalArgumentException
+    }
+
+    def "test to and from with blocks"() {
+        given:
+        def ts = new MetricTimeSeries.Builder("\\Load\\avg", "metric")
+        1000.times { ts.point(it * 1000 as long, it % 10) }
+        def timeSeries = ts.build()
+        def converter = new MetricTimeSeriesConverter(null, Compression.GZIP, 100)
+
+        when:
+        def binaryTimeSeries = converter.to(timeSeries)
+        def all = new MetricTimeSeriesConverter().from(binaryTimeSeries, 0, 999_000)
+        def range = converter.from(binaryTimeSeries, 250_000, 420_000)
+
+        then:
+        all.getTimestampsAsArray() == timeSeries.getTimestampsAsArray()
+        all.getValuesAsArray() == timeSeries.getValuesAsArray()
+        range.size() == 171
+        range.getTime(0) == 250_000
+        range.getValue(170) == 0d
+
+        when:
+        new MetricTimeSeriesConverter(null, Compression.GZIP, -1)
+
+        then:
+        thrown IllegalArgumentException
+    }
+
+    def "test aggregate"() {
+        given:
+        def ts = new MetricTimeSeries.Builder("\\Load\\avg", "metric")
+        1000.times { ts.point(it * 1000 as long, it % 10) }
+        def timeSeries = ts.build()
+        def withBlocks = new MetricTimeSeriesConverter(null, Compression.GZIP, 100).to(timeSeries)
+        def withoutBlocks = new MetricTimeSeriesConverter().to(timeSeries)
+        def converter = new MetricTimeSeriesConverter()
+
+        when:
+        def aggregate = converter.aggregate(withBlocks, 50_000, 949_000)
+
+        then:
+        aggregate == MetricAggregations.aggregate(timeSeries, 50_000, 949_000)
+        aggregate.count == 900
+        aggregate.mean == 4.5d
+        converter.aggregate(withoutBlocks, 50_000, 949_000) == aggregate
+        converter.aggregate(new BinaryTimeSeries.Builder().name("\\Load\\avg").type("metric").start(0).end(10).build(), 0, 10) == MetricAggregate.EMPTY
+    }
 }
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.converter.serializer.protobuf
+
+import de.qaware.chronix.timeseries.MetricAggregate
+import de.qaware.chronix.timeseries.MetricTimeSeries
+import spock.lang.Specification
+
+/**
+ * Unit test for the points split into blocks
+ * @author f.lautenschlager
+ */
+class PointBlocksTest extends Specification {
+
+    def "test write and read blocks"() {
+        given:
+        def ts = new MetricTimeSeries.Builder("name", "metric")
+        250.times { ts.point(it * 10 + (it % 3), it % 7) }
+        def timeSeries = ts.build()
+
+        when:
+        def blocks = PointBlocks.write(timeSeries.cursor(), 0, 100, false)
+        def builder = new MetricTimeSeries.Builder("name", "metric")
+        PointBlocks.read(blocks, 0, 2490, builder)
+        def read = builder.build()
+
+        then:
+        PointBlocks.isBlocks(blocks)
+        !PointBlocks.isBlocks(ProtoBufMetricTimeSeriesSerializer.serialize(timeSeries.cursor()))
+        !PointBlocks.isBlocks(new byte[0])
+        read.getTimestampsAsArray() == timeSeries.getTimestampsAsArray()
+        read.getValuesAsArray() == timeSeries.getValuesAsArray()
+    }
+
+    def "test read only the blocks within the range"() {
+        given:
+        def ts = new MetricTimeSeries.Builder("name", "metric")
+        300.times { ts.point(it * 10, it) }
+        def timeSeries = ts.build()
+        def blocks = PointBlocks.write(timeSeries.cursor(), 0, 100, false)
+        //a block holds the same bytes as its points without blocks
+        def blockLengths = (0..2).collect {
+            ProtoBufMetricTimeSeriesSerializer.serialize(timeSeries.slice(it * 1000, it * 1000 + 990).cursor()).length
+        }
+        def corrupted = blocks.clone()
+        corrupted[blocks.length - blockLengths.sum()] = 0x0F
+        def builder = new MetricTimeSeries.Builder("name", "metric")
+
+        when:
+        PointBlocks.read(corrupted, 2000, 2050, builder)
+
+        then:
+        builder.build().getValuesAsArray() == [200d, 201d, 202d, 203d, 204d, 205d] as double[]
+
+        when:
+        PointBlocks.read(corrupted, 0, 2050, new MetricTimeSeries.Builder("name", "metric"))
+
+        then:
+        thrown(IOException)
+    }
+
+    def "test aggregate blocks"() {
+        given:
+        def ts = new MetricTimeSeries.Builder("name", "metric")
+        300.times { ts.point(it * 10, it) }
+        def timeSeries = ts.build()
+        def blocks = PointBlocks.write(timeSeries.cursor(), 0, 100, true)
+        def blockLengths = (0..2).collect {
+            ProtoBufMetricTimeSeriesSerializer.serialize(timeSeries.slice(it * 1000, it * 1000 + 990).cursor()).length
+        }
+        //break the second block, it is aggregated from the header
+        def corrupted = blocks.clone()
+        corrupted[blocks.length - blockLengths[1] - blockLengths[2]] = 0x0F
+
+        when:
+        def aggregate = PointBlocks.aggregate(corrupted, 5, 2500)
+
+        then:
+        aggregate == new MetricAggregate(250, 1, 250, 31375, 10, 1, 2500, 250)
+
+        and:
+        PointBlocks.aggregate(PointBlocks.write(timeSeries.cursor(), 0, 100, false), 5, 2500) == aggregate
+        PointBlocks.aggregate(corrupted, 1000, 1990) == new MetricAggregate(100, 100, 199, 14950, 1000, 100, 1990, 199)
+
+        when:
+        //the second block is decoded if it is partially within the range
+        PointBlocks.aggregate(corrupted, 1000, 1500)
+
+        then:
+        thrown(IOException)
+    }
+
+    def "test read unsorted blocks"() {
+        given:
+        def ts = new MetricTimeSeries.Builder("name", "metric")
+        [50, 10, 40, 20, 30, 60].each { ts.point(it, it) }
+        def blocks = PointBlocks.write(ts.build().cursor(), 0, 3, false)
+        def builder = new MetricTimeSeries.Builder("name", "metric")
+
+        when:
+        //the first block starts at 50 but has points before it
+        PointBlocks.read(blocks, 10, 20, builder)
+
+        then:
+        builder.build().getValuesAsArray() == [10d, 20d] as double[]
+    }
+
+    def "test read invalid blocks"() {
+        given:
+        def ts = new MetricTimeSeries.Builder("name", "metric")
+        10.times { ts.point(it, it) }
+        def blocks = PointBlocks.write(ts.build().cursor(), 0, 5, false)
+
+        when:
+        PointBlocks.read(Arrays.copyOf(blocks, blocks.length - 10), 0, 10, new MetricTimeSeries.Builder("name", "metric"))
+
+        then:
+        thrown(IOException)
+
+        when:
+        PointBlocks.read([0, 0x43, 0x58, 2, 100] as byte[], 0, 10, new MetricTimeSeries.Builder("name", "metric"))
+
+        then:
+        thrown(IOException)
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.converter.serializer.protobuf
+
+import de.qaware.chronix.converter.serializer.gen.MetricProtocolBuffers
+import spock.lang.Specification
+
+/**
+ * Unit test for the writer of the protocol buffers points
+ * @author f.lautenschlager
+ */
+class PointsWriterTest extends Specification {
+
+    def "test write points"() {
+        given:
+        def writer = new PointsWriter(5)
+
+        when:
+        writer.point(PointsWriter.NO_DELTA, 0, false, 1.5, 0)
+        writer.point(PointsWriter.NO_DELTA, 0, true, 0, 0)
+        writer.point(PointsWriter.DELTA, 3_000_000_000L, false, 2.5, 0)
+        writer.point(PointsWriter.BASE_POINT_DELTA, 7, true, 0, 1)
+        def points = MetricProtocolBuffers.Points.parseFrom(writer.toByteArray())
+
+        then:
+        writer.size() == 4
+        //the first delta is the ddc threshold
+        writer.reconstructedOffset() == 5 + 3_000_000_000L + 7
+        points.getDdc() == 5
+        points.getP(0).getV() == 1.5d
+        points.getP(1).getVIndex() == 0
+        points.getP(2).getTlong() == 3_000_000_000L
+        points.getP(2).getV() == 2.5d
+        points.getP(3).getTintBP() == 7
+        points.getP(3).getVIndex() == 1
+    }
+
+    def "test rearrange points"() {
+        given:
+        def writer = new PointsWriter(0)
+        writer.point(PointsWriter.NO_DELTA, 0, false, 1, 0)
+        writer.point(PointsWriter.DELTA, 100, false, 2, 0)
+        writer.point(PointsWriter.NO_DELTA, 0, false, 3, 0)
+        writer.point(PointsWriter.DELTA, 2_147_483_660L, false, 4, 0)
+
+        when:
+        writer.rearrange(-30)
+        def points = MetricProtocolBuffers.Points.parseFrom(writer.toByteArray())
+
+        then:
+        //the int delta is reduced, the long delta would become an int and stays
+        points.getP(1).getTint() == 70
+        points.getP(3).getTlong() == 2_147_483_660L
+        writer.reconstructedOffset() == 70 + 70 + 2_147_483_660L
+        points.getP(2).getV() == 3d
+        writer.size() == 4
+    }
+
+    def "test reuse the buffer"() {
+        when:
+        def first = new PointsWriter(0)
+        first.point(PointsWriter.DELTA, 1, false, 1, 0)
+        def firstBytes = first.toByteArray()
+        def second = new PointsWriter(0)
+        def secondBytes = second.toByteArray()
+
+        then:
+        firstBytes.length == 15
+        secondBytes == [16, 0] as byte[]
+    }
+}
@@ -16,6 +16,8 @@
 package de.qaware.chronix.converter.serializer.protobuf
 
 import de.qaware.chronix.converter.common.Compression
+import de.qaware.chronix.converter.serializer.gen.MetricProtocolBuffers
+import de.qaware.chronix.timeseries.MetricAggregate
 import de.qaware.chronix.timeseries.MetricTimeSeries
 import de.qaware.chronix.timeseries.dts.Point
 import spock.lang.Shared
@@ -105,6 +107,110 @@ class ProtoBufMetricGenericTimeSeriesSerializerTest extends Specification {
         builder.build().size() == 100
     }
 
+    def "test serialize from a cursor"() {
+        given:
+        def builder = new MetricTimeSeries.Builder("name", "metric")
+        def points = []
+        100.times {
+            builder.point(it * 10 + (it % 3), it * 100)
+            points.add(new Point(it, it * 10 + (it % 3), it * 100))
+        }
+        def ts = builder.build()
+
+        when:
+        def fromCursor = ProtoBufMetricTimeSeriesSerializer.serialize(ts.cursor(), 2)
+        def fromIterator = ProtoBufMetricTimeSeriesSerializer.to(points.iterator(), 2)
+
+        then:
+        fromCursor == fromIterator
+    }
+
+    def "test serialize with invalid ddc threshold"() {
+        when:
+        ProtoBufMetricTimeSeriesSerializer.serialize(null, -1)
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "test serialize with a maximum of indexed values"() {
+        given:
+        def builder = new MetricTimeSeries.Builder("name", "metric")
+        100.times {
+            builder.point(it * 10, it % 5)
+        }
+        def ts = builder.build()
+
+        when:
+        def serializedPoints = ProtoBufMetricTimeSeriesSerializer.serialize(ts.cursor(), 0, 2)
+        def protoPoints = MetricProtocolBuffers.Points.parseFrom(serializedPoints)
+        def deserialized = new MetricTimeSeries.Builder("name", "metric")
+        ProtoBufMetricTimeSeriesSerializer.from(serializedPoints, 0, 990, 0, 990, deserialized)
+
+        then:
+        //only the first two values are indexed
+        protoPoints.getP(5).getVIndex() == 0
+        protoPoints.getP(6).getVIndex() == 1
+        protoPoints.getP(7).getV() == 2d
+        !protoPoints.getP(7).hasVIndex()
+        deserialized.build().points().collect(Collectors.toList()) == ts.points().collect(Collectors.toList())
+        serializedPoints.length > ProtoBufMetricTimeSeriesSerializer.serialize(ts.cursor(), 0).length
+    }
+
+    def "test serialize with invalid maximum of indexed values"() {
+        when:
+        ProtoBufMetricTimeSeriesSerializer.serialize(null, 0, -1)
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "test serialize blocks"() {
+        given:
+        def builder = new MetricTimeSeries.Builder("name", "metric")
+        1000.times {
+            builder.point(it * 10 + (it % 3), it % 5)
+        }
+        def ts = builder.build()
+
+        when:
+        def serializedBlocks = ProtoBufMetricTimeSeriesSerializer.serializeBlocks(ts.cursor(), 2, 128)
+        def all = new MetricTimeSeries.Builder("name", "metric")
+        ProtoBufMetricTimeSeriesSerializer.from(serializedBlocks, ts.start, ts.end, ts.start, ts.end, all)
+        def range = new MetricTimeSeries.Builder("name", "metric")
+        ProtoBufMetricTimeSeriesSerializer.from(new ByteArrayInputStream(serializedBlocks), ts.start, ts.end, 5000, 5100, range)
+
+        then:
+        all.build().size() == 1000
+        range.build().getValuesAsArray() == [0d, 1d, 2d, 3d, 4d, 0d, 1d, 2d, 3d, 4d, 0d] as double[]
+    }
+
+    def "test aggregate points with and without blocks"() {
+        given:
+        def builder = new MetricTimeSeries.Builder("name", "metric")
+        1000.times {
+            builder.point(it * 10, it % 5)
+        }
+        def ts = builder.build()
+        def points = ProtoBufMetricTimeSeriesSerializer.serialize(ts.cursor())
+        def blocks = ProtoBufMetricTimeSeriesSerializer.serializeBlocks(ts.cursor(), 0, 128, true)
+
+        when:
+        def fromPoints = ProtoBufMetricTimeSeriesSerializer.aggregate(points, ts.start, ts.end, 1005, 8000)
+        def fromBlocks = ProtoBufMetricTimeSeriesSerializer.aggregate(blocks, ts.start, ts.end, 1005, 8000)
+
+        then:
+        fromPoints == new MetricAggregate(700, 0, 4, 1400, 1010, 1, 8000, 0)
+        fromBlocks == fromPoints
+        ProtoBufMetricTimeSeriesSerializer.aggregate(blocks, ts.start, ts.end, 20_000, 30_000) == MetricAggregate.EMPTY
+        ProtoBufMetricTimeSeriesSerializer.aggregate([0, 0x43, 0x58, 2, 100] as byte[], 0, 10, 0, 10) == MetricAggregate.EMPTY
+    }
+
+    def "test serialize blocks with invalid points per block"() {
+        when:
+        ProtoBufMetricTimeSeriesSerializer.serializeBlocks(null, 0, 0)
+        then:
+        thrown(IllegalArgumentException)
+    }
+
     def "test iterator with invalid arguments"() {
         when:
         ProtoBufMetricTimeSeriesSerializer.from(null, 0, 0, from, to, new MetricTimeSeries.Builder("", ""))
@@ -575,6 +681,124 @@ class ProtoBufMetricGenericTimeSeriesSerializerTest extends Specification {
 
     }
 
+    def "test from bytes with range query"() {
+        given:
+        def points = []
+        1000.times {
+            points.add(new Point(it, 1000 + it * 10 + (it % 3), it % 7))
+        }
+        def serializedPoints = ProtoBufMetricTimeSeriesSerializer.to(points.iterator(), 2)
+        def fromBytes = new MetricTimeSeries.Builder("name", "metric")
+        def fromStream = new MetricTimeSeries.Builder("name", "metric")
+
+        when:
+        ProtoBufMetricTimeSeriesSerializer.from(serializedPoints, 1000, 10991, from, to, fromBytes)
+        ProtoBufMetricTimeSeriesSerializer.from(new ByteArrayInputStream(serializedPoints), 1000, 10991, from, to, fromStream)
+        def ts = fromBytes.build()
+
+        then:
+        ts.size() == size
+        ts.points().collect(Collectors.toList()) == fromStream.build().points().collect(Collectors.toList())
+        ts.points().allMatch { it.timestamp >= from && it.timestamp <= to }
+        ts.size() == 0 || ts.getValue(0) == ((ts.getTime(0) - 1000) / 10 as int) % 7
+
+        where:
+        from  | to    || size
+        1000  | 10991 || 1000
+        2000  | 2100  || 10
+        10900 | 20000 || 10
+        5005  | 5008  || 0
+    }
+
+    def "test from replaces the points of the builder"() {
+        given:
+        def first = ProtoBufMetricTimeSeriesSerializer.to([new Point(0, 10, 1), new Point(1, 20, 2)].iterator())
+        def second = ProtoBufMetricTimeSeriesSerializer.to([new Point(0, 30, 3), new Point(1, 40, 4)].iterator())
+        def builder = new MetricTimeSeries.Builder("name", "metric").point(5, 0.5d)
+
+        when:
+        ProtoBufMetricTimeSeriesSerializer.from(first, 10, 20, 10, 20, builder)
+        ProtoBufMetricTimeSeriesSerializer.from(new ByteArrayInputStream(second), 30, 40, 30, 40, builder)
+        ProtoBufMetricTimeSeriesSerializer.from(first, 10, 20, 50, 60, builder)
+        def ts = builder.build()
+
+        then:
+        ts.getTimestampsAsArray() == [30l, 40l] as long[]
+        ts.getValuesAsArray() == [3d, 4d] as double[]
+    }
+
+    def "test append adds the points to the builder"() {
+        given:
+        def first = ProtoBufMetricTimeSeriesSerializer.to([new Point(0, 10, 1), new Point(1, 20, 2)].iterator())
+        def second = ProtoBufMetricTimeSeriesSerializer.to([new Point(0, 30, 3), new Point(1, 40, 4)].iterator())
+        def builder = new MetricTimeSeries.Builder("name", "metric")
+
+        when:
+        def appended = ProtoBufMetricTimeSeriesSerializer.append(first, 10, 20, 10, 20, builder) &&
+                ProtoBufMetricTimeSeriesSerializer.append(second, 30, 40, 30, 40, builder)
+        def ts = builder.build()
+
+        then:
+        appended
+        ts.getTimestampsAsArray() == [10l, 20l, 30l, 40l] as long[]
+        ts.getValuesAsArray() == [1d, 2d, 3d, 4d] as double[]
+    }
+
+    def "test from with range query and unsorted points"() {
+        given:
+        def timestamps = [100, 200, 300, 150, 400, 250, 500]
+        def points = timestamps.withIndex().collect { long timestamp, int i -> new Point(i, timestamp, i) }
+        def serializedPoints = ProtoBufMetricTimeSeriesSerializer.to(points.iterator())
+        def builder = new MetricTimeSeries.Builder("name", "metric")
+
+        when:
+        ProtoBufMetricTimeSeriesSerializer.from(serializedPoints, 100, 500, 140, 260, builder)
+        def ts = builder.build()
+
+        then:
+        ts.size() == 3
+        ts.getTime(0) == 200
+        ts.getTime(1) == 150
+        ts.getTime(2) == 250
+        ts.getValue(2) == 5
+    }
+
+    def "test from bytes that are not points"() {
+        given:
+        def builder = new MetricTimeSeries.Builder("name", "metric")
+
+        when:
+        ProtoBufMetricTimeSeriesSerializer.from([10, 100, 1] as byte[], 0, 10, 0, 10, builder)
+
+        then:
+        noExceptionThrown()
+        builder.build().size() == 0
+    }
+
+    def "test serialized points are protocol buffers messages"() {
+        given:
+        def points = [new Point(0, 100, 1.5), new Point(1, 110, 2.5), new Point(2, 120, 1.5),
+                      new Point(3, 5_000_000_130L, 3.5), new Point(4, 5_000_000_140L, 2.5)]
+
+        when:
+        def serializedPoints = ProtoBufMetricTimeSeriesSerializer.to(points.iterator())
+        def protoPoints = MetricProtocolBuffers.Points.parseFrom(serializedPoints)
+
+        then:
+        protoPoints.getDdc() == 0
+        protoPoints.getPCount() == 5
+        protoPoints.getP(0).getV() == 1.5d
+        !protoPoints.getP(0).hasTint()
+        //the deltas after a point without a delta are base point deltas
+        protoPoints.getP(1).getTintBP() == 10
+        protoPoints.getP(2).getVIndex() == 0
+        !protoPoints.getP(2).hasV()
+        protoPoints.getP(3).getTlongBP() == 5_000_000_010L
+        !protoPoints.getP(3).hasTintBP()
+        protoPoints.getP(4).getVIndex() == 1
+        protoPoints.toByteArray() == serializedPoints
+    }
+
 
     static def readTimeSeriesData() {
         def url = ProtoBufMetricGenericTimeSeriesSerializerTest.getResource("/data-mini")
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.converter.serializer.protobuf
+
+import spock.lang.Specification
+
+/**
+ * Unit test for the index of the distinct values
+ * @author f.lautenschlager
+ */
+class ValueIndexTest extends Specification {
+
+    def "test index values"() {
+        given:
+        def index = ValueIndex.create(ValueIndex.UNLIMITED)
+
+        when:
+        def first = index.putIfAbsent(1.5, 0)
+        def second = index.putIfAbsent(2.5, 1)
+        def repeated = index.putIfAbsent(1.5, 2)
+        def nan = index.putIfAbsent(Double.NaN, 3)
+        def otherNaN = index.putIfAbsent(Double.longBitsToDouble(0x7ff8000000000001L), 4)
+        def zero = index.putIfAbsent(0d, 5)
+        def negativeZero = index.putIfAbsent(-0d, 6)
+        index.release()
+
+        then:
+        first == -1
+        second == -1
+        repeated == 0
+        nan == -1
+        //values are equal like doubles, hence all NaN values are equal and -0.0 is not 0.0
+        otherNaN == 3
+        zero == -1
+        negativeZero == -1
+    }
+
+    def "test index many values"() {
+        given:
+        def index = ValueIndex.create(ValueIndex.UNLIMITED)
+
+        when:
+        //the powers of two differ only in the exponent bits
+        10_000.times { index.putIfAbsent(it < 2000 ? Math.scalb(1d, it - 1000) : it * 0.25d + 0.125d, it) }
+        def repeated = (0..<10_000).collect { index.putIfAbsent(it < 2000 ? Math.scalb(1d, it - 1000) : it * 0.25d + 0.125d, 10_000 + it) }
+        def size = index.size()
+        index.release()
+
+        then:
+        repeated == (0..<10_000).toList()
+        size == 10_000
+    }
+
+    def "test maximum number of values"() {
+        given:
+        def index = ValueIndex.create(2)
+
+        when:
+        index.putIfAbsent(1, 0)
+        index.putIfAbsent(2, 1)
+        def notIndexed = index.putIfAbsent(3, 2)
+        def notIndexedAgain = index.putIfAbsent(3, 3)
+        def indexed = index.putIfAbsent(2, 4)
+        def size = index.size()
+        index.release()
+
+        then:
+        notIndexed == -1
+        notIndexedAgain == -1
+        indexed == 1
+        size == 2
+    }
+
+    def "test reuse the index"() {
+        given:
+        def first = ValueIndex.create(ValueIndex.UNLIMITED)
+        first.putIfAbsent(1, 0)
+        first.release()
+
+        when:
+        def second = ValueIndex.create(ValueIndex.UNLIMITED)
+        def value = second.putIfAbsent(1, 5)
+        second.release()
+
+        then:
+        second.is(first)
+        value == -1
+        second.size() == 0
+    }
+
+    def "test a small index does not keep the large table"() {
+        given:
+        def large = ValueIndex.create(ValueIndex.UNLIMITED)
+        10_000.times { large.putIfAbsent(it, it) }
+        def largeCapacity = large.capacity()
+        large.release()
+        def small = ValueIndex.create(ValueIndex.UNLIMITED)
+        small.putIfAbsent(1, 0)
+
+        when:
+        small.release()
+        def reused = ValueIndex.create(ValueIndex.UNLIMITED)
+        def value = reused.putIfAbsent(1, 3)
+        def capacity = reused.capacity()
+        reused.release()
+
+        then:
+        //the large table is emptied once, the table of the small index is replaced instead of emptied
+        largeCapacity > 10_000
+        capacity < largeCapacity
+        value == -1
+    }
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.timeseries;
+
+import de.qaware.chronix.converter.common.MemoryFootprint;
+
+import java.io.Serializable;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * An immutable and compact map of attributes.
+ * The keys and values are stored in two arrays sorted by key, hence a map needs no entry objects.
+ * <p>
+ * Time series of the same source usually have the same attributes, e.g. the same host and metric.
+ * {@link #of(Map)} therefore delivers one shared instance for equal attributes and the keys are interned.
+ * Millions of time series with the same tag set then hold a reference to one map instead of an own copy.
+ * <p>
+ * The methods that modify the map throw an {@link UnsupportedOperationException}.
+ *
+ * @author f.lautenschlager
+ */
+public final class CompactAttributes extends AbstractMap<String, Object> implements Serializable {
+
+    private static final long serialVersionUID = 2367386284953155390L;
+
+    /**
+     * The maximum number of interned keys.
+     * Further keys are not interned to avoid that arbitrary keys fill the dictionary.
+     */
+    private static final int MAX_INTERNED_KEYS = 1 << 16;
+
+    private static final Comparator<String> KEY_ORDER = Comparator.nullsFirst(Comparator.naturalOrder());
+
+    //The dictionary of the keys
+    private static final Map<String, String> KEYS = new ConcurrentHashMap<>();
+    //The shared instances, an instance is removed when it is not referenced anymore.
+    //The lookup of a shared instance takes no lock, hence parallel decoding threads do not wait for each other.
+    private static final Map<SharedKey, SharedKey> SHARED = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<CompactAttributes> COLLECTED = new ReferenceQueue<>();
+
+    /**
+     * The empty attributes
+     */
+    public static final CompactAttributes EMPTY = new CompactAttributes(new String[0], new Object[0]);
+
+    private final String[] keys;
+    private final Object[] values;
+    private transient int hash;
+
+    private CompactAttributes(String[] keys, Object[] values) {
+        this.keys = keys;
+        this.values = values;
+    }
+
+    /**
+     * Delivers the shared compact attributes that are equal to the given map.
+     * The map is copied, later changes of the map do not affect the attributes.
+     *
+     * @param attributes the attributes
+     * @return the shared compact attributes
+     */
+    public static CompactAttributes of(Map<String, ?> attributes) {
+        if (attributes instanceof CompactAttributes) {
+            return (CompactAttributes) attributes;
+        }
+        if (attributes.isEmpty()) {
+            return EMPTY;
+        }
+
+        int size = attributes.size();
+        String[] keys = new String[size];
+        Object[] values = new Object[size];
+        int index = 0;
+        for (Map.Entry<String, ?> entry : attributes.entrySet()) {
+            //a concurrent map could grow while it is copied
+            if (index == keys.length) {
+                keys = Arrays.copyOf(keys, index << 1);
+                values = Arrays.copyOf(values, index << 1);
+            }
+            keys[index] = intern(entry.getKey());
+            values[index] = entry.getValue();
+            index++;
+        }
+        if (index != keys.length) {
+            keys = Arrays.copyOf(keys, index);
+            values = Arrays.copyOf(values, index);
+        }
+        sort(keys, values);
+
+        return share(new CompactAttributes(keys, values));
+    }
+
+    /**
+     * @return the shared instance that is equal to the given attributes
+     */
+    private static CompactAttributes share(CompactAttributes attributes) {
+        SharedKey lookup = new SharedKey(attributes, null);
+        SharedKey existing = SHARED.get(lookup);
+        CompactAttributes shared = existing != null ? existing.get() : null;
+        if (shared != null) {
+            return shared;
+        }
+
+        removeCollected();
+        SharedKey key = new SharedKey(attributes, COLLECTED);
+        while (true) {
+            existing = SHARED.putIfAbsent(key, key);
+            if (existing == null) {
+                return attributes;
+            }
+            shared = existing.get();
+            if (shared != null) {
+                return shared;
+            }
+            //the instance was collected but its key is not removed yet
+            SHARED.remove(existing, existing);
+        }
+    }
+
+    private static void removeCollected() {
+        Reference<? extends CompactAttributes> collected;
+        while ((collected = COLLECTED.poll()) != null) {
+            SHARED.remove(collected, collected);
+        }
+    }
+
+    private static String intern(String key) {
+        if (key == null) {
+            return null;
+        }
+        String interned = KEYS.get(key);
+        if (interned != null) {
+            return interned;
+        }
+        if (KEYS.size() >= MAX_INTERNED_KEYS) {
+            return key;
+        }
+        interned = KEYS.putIfAbsent(key, key);
+        return interned != null ? interned : key;
+    }
+
+    /**
+     * Sorts the keys with an insertion sort (attributes are small) and moves the values along with the keys.
+     */
+    private static void sort(String[] keys, Object[] values) {
+        for (int i = 1; i < keys.length; i++) {
+            String key = keys[i];
+            Object value = values[i];
+            int j = i - 1;
+            while (j >= 0 && KEY_ORDER.compare(keys[j], key) > 0) {
+                keys[j + 1] = keys[j];
+                values[j + 1] = values[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            values[j + 1] = value;
+        }
+    }
+
+    private int indexOf(Object key) {
+        if (key != null && !(key instanceof String)) {
+            return -1;
+        }
+        String k = (String) key;
+        int low = 0;
+        int high = keys.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = KEY_ORDER.compare(keys[mid], k);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int size() {
+        return keys.length;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return keys.length == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int index = indexOf(key);
+        return index >= 0 ? values[index] : null;
+    }
+
+    /**
+     * Estimates the heap bytes of this map and its values, see {@link MemoryFootprint}.
+     * The interned keys are shared by all maps and are not counted.
+     *
+     * @return the estimated bytes of this map
+     */
+    public long estimatedRetainedBytes() {
+        //the arrays, the hash and the key set and values of the abstract map
+        long bytes = MemoryFootprint.objectBytes(4 * MemoryFootprint.REFERENCE_BYTES + Integer.BYTES)
+                + 2 * MemoryFootprint.arrayBytes(keys.length, MemoryFootprint.REFERENCE_BYTES);
+        for (Object value : values) {
+            bytes += MemoryFootprint.valueBytes(value);
+        }
+        return bytes;
+    }
+
+    /**
+     * Iterates the attributes in the order of the keys without allocations
+     *
+     * @param action the action for each attribute
+     */
+    @Override
+    public void forEach(BiConsumer<? super String, ? super Object> action) {
+        for (int i = 0; i < keys.length; i++) {
+            action.accept(keys[i], values[i]);
+        }
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return keys.length;
+            }
+        };
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0 && keys.length > 0) {
+            for (int i = 0; i < keys.length; i++) {
+                h += Objects.hashCode(keys[i]) ^ Objects.hashCode(values[i]);
+            }
+            hash = h;
+        }
+        return h;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (obj instanceof CompactAttributes) {
+            CompactAttributes other = (CompactAttributes) obj;
+            return hashCode() == other.hashCode()
+                    && Arrays.equals(keys, other.keys)
+                    && Arrays.equals(values, other.values);
+        }
+        return super.equals(obj);
+    }
+
+    /**
+     * Deserialized attributes are shared like the ones of {@link #of(Map)}
+     *
+     * @return the shared instance
+     */
+    private Object readResolve() {
+        if (keys.length == 0) {
+            return EMPTY;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = intern(keys[i]);
+        }
+        return share(this);
+    }
+
+    private final class EntryIterator implements Iterator<Entry<String, Object>> {
+
+        private int index;
+
+        @Override
+        public boolean hasNext() {
+            return index < keys.length;
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            if (index >= keys.length) {
+                throw new NoSuchElementException();
+            }
+            Entry<String, Object> entry = new SimpleImmutableEntry<>(keys[index], values[index]);
+            index++;
+            return entry;
+        }
+    }
+
+    /**
+     * A weak reference to shared attributes that is equal to the references to equal attributes.
+     * A reference whose attributes are collected is only equal to itself.
+     */
+    private static final class SharedKey extends WeakReference<CompactAttributes> {
+
+        private final int hash;
+
+        private SharedKey(CompactAttributes attributes, ReferenceQueue<CompactAttributes> queue) {
+            super(attributes, queue);
+            this.hash = attributes.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof SharedKey)) {
+                return false;
+            }
+            CompactAttributes attributes = get();
+            return attributes != null && attributes.equals(((SharedKey) obj).get());
+        }
+    }
+}
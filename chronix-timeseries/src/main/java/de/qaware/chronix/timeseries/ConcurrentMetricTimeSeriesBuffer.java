@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.timeseries;
+
+import de.qaware.chronix.converter.common.DoubleList;
+import de.qaware.chronix.converter.common.LongList;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects the points of one time series from many threads.
+ * The points are appended to stripes, each with its own lock. A thread always uses the same stripe.
+ * Hence threads only contend if they share a stripe and the throughput scales with the number of stripes.
+ * <p>
+ * {@link #seal()} takes the points of all stripes and merges them into a sorted metric time series.
+ * Points that are added during the seal are part of the next seal.
+ *
+ * @author f.lautenschlager
+ */
+public final class ConcurrentMetricTimeSeriesBuffer {
+
+    private final String name;
+    private final String type;
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    /**
+     * Constructs a buffer with two stripes per available processor.
+     *
+     * @param name the name of the time series
+     * @param type the type of the time series
+     */
+    public ConcurrentMetricTimeSeriesBuffer(String name, String type) {
+        this(name, type, Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * Constructs a buffer with the given number of stripes.
+     *
+     * @param name    the name of the time series
+     * @param type    the type of the time series
+     * @param stripes the minimum number of stripes, rounded up to a power of two
+     * @throws IllegalArgumentException if the number of stripes is lower than one
+     */
+    public ConcurrentMetricTimeSeriesBuffer(String name, String type, int stripes) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("Stripes must not be lower than 1. Current value is: " + stripes);
+        }
+        this.name = name;
+        this.type = type;
+
+        int count = Integer.highestOneBit(stripes);
+        if (count < stripes) {
+            count <<= 1;
+        }
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.stripeMask = count - 1;
+    }
+
+    /**
+     * Adds a point. Safe to be called from many threads.
+     *
+     * @param timestamp the timestamp
+     * @param value     the value
+     */
+    public void add(long timestamp, double value) {
+        Stripe stripe = stripe();
+        synchronized (stripe) {
+            stripe.timestamps.add(timestamp);
+            stripe.values.add(value);
+        }
+    }
+
+    /**
+     * Adds the points. Safe to be called from many threads.
+     * The points are added at once, hence they are not interleaved with points of other threads.
+     *
+     * @param timestamps the timestamps
+     * @param values     the values
+     * @throws IllegalArgumentException if the timestamps and values do not have the same length
+     */
+    public void addAll(long[] timestamps, double[] values) {
+        if (timestamps.length != values.length) {
+            throw new IllegalArgumentException("Length of values " + values.length + " does not match length of timestamps " + timestamps.length);
+        }
+        Stripe stripe = stripe();
+        synchronized (stripe) {
+            stripe.timestamps.addAll(timestamps);
+            stripe.values.addAll(values);
+        }
+    }
+
+    /**
+     * Adds an attribute to the time series. Safe to be called from many threads.
+     *
+     * @param key   the key
+     * @param value the value
+     */
+    public void attribute(String key, Object value) {
+        attributes.put(key, value);
+    }
+
+    /**
+     * @return the number of buffered points, only exact if no points are added concurrently
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.timestamps.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Estimates the heap bytes retained by the buffered points including the unused capacity.
+     * Use it to seal the buffer when it exceeds a byte budget.
+     *
+     * @return the estimated bytes of the buffered points, only exact if no points are added concurrently
+     */
+    public long estimatedRetainedBytes() {
+        long bytes = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                bytes += stripe.timestamps.estimatedRetainedBytes() + stripe.values.estimatedRetainedBytes();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the number of stripes
+     */
+    public int stripes() {
+        return stripes.length;
+    }
+
+    /**
+     * Takes the buffered points and merges them into a sorted time series.
+     * The buffer is empty afterwards and collects the points for the next time series.
+     * Each stripe is locked only to take its points, the merge runs without locks.
+     *
+     * @return a sorted time series with the buffered points and the attributes
+     */
+    public MetricTimeSeries seal() {
+        LongList[] stripeTimestamps = new LongList[stripes.length];
+        DoubleList[] stripeValues = new DoubleList[stripes.length];
+        int size = 0;
+
+        for (int i = 0; i < stripes.length; i++) {
+            Stripe stripe = stripes[i];
+            synchronized (stripe) {
+                stripeTimestamps[i] = stripe.timestamps;
+                stripeValues[i] = stripe.values;
+                stripe.timestamps = new LongList();
+                stripe.values = new DoubleList();
+            }
+            size += stripeTimestamps[i].size();
+        }
+
+        LongList timestamps = new LongList(size);
+        DoubleList values = new DoubleList(size);
+        for (int i = 0; i < stripes.length; i++) {
+            timestamps.addAll(stripeTimestamps[i]);
+            values.addAll(stripeValues[i]);
+        }
+
+        MetricTimeSeries timeSeries = new MetricTimeSeries.Builder(name, type)
+                .attributes(attributes)
+                .points(timestamps, values)
+                .build();
+        //the stripes are mostly sorted runs, hence they are merged
+        timeSeries.sort();
+        return timeSeries;
+    }
+
+    private Stripe stripe() {
+        return stripes[hash(Thread.currentThread().getId()) & stripeMask];
+    }
+
+    /**
+     * Spreads the thread ids, they are often consecutive
+     */
+    private static int hash(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * The points of one stripe, guarded by the stripe itself
+     */
+    private static final class Stripe {
+        private LongList timestamps = new LongList();
+        private DoubleList values = new DoubleList();
+    }
+}
@@ -0,0 +1,443 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.timeseries;
+
+import de.qaware.chronix.converter.common.DoubleList;
+import de.qaware.chronix.converter.common.LongList;
+import de.qaware.chronix.timeseries.dts.LongDoubleConsumer;
+import de.qaware.chronix.timeseries.dts.Point;
+import de.qaware.chronix.timeseries.dts.PointCursor;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.io.Serializable;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * An immutable snapshot of a metric time series, see {@link MetricTimeSeries#freeze()}.
+ * The points are sorted once when the snapshot is taken and never modified afterwards.
+ * The points are published via final fields, hence a snapshot can be shared and read by any number of threads
+ * without synchronization and without defensive copies.
+ * <p>
+ * Slices share the points with the snapshot. A mutable copy shares them until a point is added.
+ *
+ * @author f.lautenschlager
+ */
+public final class ImmutableMetricTimeSeries implements Serializable {
+
+    private static final long serialVersionUID = -3412862195308720647L;
+
+    private final String name;
+    private final String type;
+    private final Map<String, Object> attributes;
+
+    //the points are stored at offset until offset + size, the arrays are shared with the slices
+    private final long[] timestamps;
+    private final double[] values;
+    private final int offset;
+    private final int size;
+
+    private final long start;
+    private final long end;
+
+    //The value bounds are calculated on first access, the volatile flag publishes them
+    private double minValue;
+    private double maxValue;
+    private volatile boolean valueBoundsKnown;
+
+    /**
+     * Constructs a snapshot. The arrays must not be modified afterwards.
+     *
+     * @param name       the name
+     * @param type       the type
+     * @param attributes the unmodifiable attributes
+     * @param timestamps the sorted timestamps
+     * @param values     the values
+     * @param offset     the index of the first point in the arrays
+     * @param size       the number of points
+     * @param start      the start if the snapshot has no points
+     * @param end        the end if the snapshot has no points
+     */
+    ImmutableMetricTimeSeries(String name, String type, Map<String, Object> attributes,
+                              long[] timestamps, double[] values, int offset, int size, long start, long end) {
+        this.name = name;
+        this.type = type;
+        this.attributes = attributes;
+        this.timestamps = timestamps;
+        this.values = values;
+        this.offset = offset;
+        this.size = size;
+
+        if (size == 0) {
+            this.start = start;
+            this.end = end;
+        } else {
+            this.start = timestamps[offset];
+            this.end = timestamps[offset + size - 1];
+        }
+    }
+
+    /**
+     * Takes a snapshot of the given sorted points
+     */
+    static ImmutableMetricTimeSeries of(String name, String type, Map<String, Object> attributes,
+                                        long[] timestamps, double[] values, long start, long end) {
+        Map<String, Object> copy = CompactAttributes.of(attributes);
+        return new ImmutableMetricTimeSeries(name, type, copy, timestamps, values, 0, timestamps.length, start, end);
+    }
+
+    /**
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the type
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Get the attribute for the given key
+     *
+     * @param key the attribute key
+     * @return the value as object
+     */
+    public Object attribute(String key) {
+        return attributes.get(key);
+    }
+
+    /**
+     * @return the unmodifiable attributes of this time series
+     */
+    public Map<String, Object> attributes() {
+        return attributes;
+    }
+
+    /**
+     * @return the size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return empty if the time series contains no points
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Gets the timestamp at the given index
+     *
+     * @param i the index position of the time stamp
+     * @return the timestamp as long
+     * @throws IndexOutOfBoundsException if the index is not within the points
+     */
+    public long getTime(int i) {
+        rangeCheck(i);
+        return timestamps[offset + i];
+    }
+
+    /**
+     * Gets the data point at the index i
+     *
+     * @param i the index position of the value
+     * @return the value
+     * @throws IndexOutOfBoundsException if the index is not within the points
+     */
+    public double getValue(int i) {
+        rangeCheck(i);
+        return values[offset + i];
+    }
+
+    private void rangeCheck(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    /**
+     * @return the lowest timestamp or the start of the frozen time series if there are no points
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * @return the highest timestamp or the end of the frozen time series if there are no points
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * @return the minimum value or NaN if the time series contains no points
+     */
+    public double getMinValue() {
+        ensureValueBounds();
+        return minValue;
+    }
+
+    /**
+     * @return the maximum value or NaN if the time series contains no points
+     */
+    public double getMaxValue() {
+        ensureValueBounds();
+        return maxValue;
+    }
+
+    /**
+     * Calculates the value bounds once. Threads that race calculate the same bounds.
+     */
+    private void ensureValueBounds() {
+        if (valueBoundsKnown) {
+            return;
+        }
+        double min = Double.NaN;
+        double max = Double.NaN;
+        if (size > 0) {
+            min = values[offset];
+            max = values[offset];
+            for (int i = offset + 1; i < offset + size; i++) {
+                min = Math.min(min, values[i]);
+                max = Math.max(max, values[i]);
+            }
+        }
+        minValue = min;
+        maxValue = max;
+        valueBoundsKnown = true;
+    }
+
+    /**
+     * @return a copy of the timestamps as array
+     */
+    public long[] getTimestampsAsArray() {
+        return Arrays.copyOfRange(timestamps, offset, offset + size);
+    }
+
+    /**
+     * @return a copy of the values as array
+     */
+    public double[] getValuesAsArray() {
+        return Arrays.copyOfRange(values, offset, offset + size);
+    }
+
+    /**
+     * @return a read-only buffer over the timestamps without copying them
+     */
+    public LongBuffer getTimestampsAsBuffer() {
+        return LongBuffer.wrap(timestamps, offset, size).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * @return a read-only buffer over the values without copying them
+     */
+    public DoubleBuffer getValuesAsBuffer() {
+        return DoubleBuffer.wrap(values, offset, size).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * @return a sequential stream of the timestamps without boxing or copying them
+     */
+    public LongStream getTimestampsAsStream() {
+        return Arrays.stream(timestamps, offset, offset + size);
+    }
+
+    /**
+     * @return a sequential stream of the values without boxing or copying them
+     */
+    public DoubleStream getValuesAsStream() {
+        return Arrays.stream(values, offset, offset + size);
+    }
+
+    /**
+     * Performs the given action for each point (timestamp, value) in the order of the timestamps.
+     *
+     * @param action the action to be performed for each point
+     */
+    public void forEach(LongDoubleConsumer action) {
+        for (int i = offset; i < offset + size; i++) {
+            action.accept(timestamps[i], values[i]);
+        }
+    }
+
+    /**
+     * A cursor over the points in the order of the timestamps.
+     * Each thread has to use its own cursor.
+     *
+     * @return a cursor positioned before the first point
+     */
+    public PointCursor cursor() {
+        return new ImmutablePointCursor();
+    }
+
+    /**
+     * @return the points as stream
+     */
+    public Stream<Point> points() {
+        return IntStream.range(0, size).mapToObj(i -> new Point(i, timestamps[offset + i], values[offset + i]));
+    }
+
+    /**
+     * Restricts the time series to the points with a timestamp between from and to (both inclusive).
+     * The bounds are found with a binary search, the slice shares the points with this time series.
+     *
+     * @param from the start of the slice (inclusive)
+     * @param to   the end of the slice (inclusive)
+     * @return an immutable time series with the points within the range
+     */
+    public ImmutableMetricTimeSeries slice(long from, long to) {
+        int fromIndex = lowerBound(from);
+        int toIndex = Math.max(fromIndex, upperBound(to));
+        return new ImmutableMetricTimeSeries(name, type, attributes, timestamps, values, fromIndex, toIndex - fromIndex, from, to);
+    }
+
+    /**
+     * @return the index in the arrays of the first timestamp that is greater or equal the given timestamp
+     */
+    private int lowerBound(long timestamp) {
+        int low = offset;
+        int high = offset + size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the index in the arrays of the first timestamp that is greater than the given timestamp
+     */
+    private int upperBound(long timestamp) {
+        int low = offset;
+        int high = offset + size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] <= timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Creates a mutable time series with the points and attributes of this time series.
+     * The points are shared until the first point is added to the mutable time series, then they are copied.
+     *
+     * @return a mutable time series
+     */
+    public MetricTimeSeries toMetricTimeSeries() {
+        MetricTimeSeries.Builder builder = new MetricTimeSeries.Builder(name, type)
+                .attributes(attributes)
+                .start(start)
+                .end(end);
+        if (offset != 0 || size != timestamps.length) {
+            builder.points(new LongList(getTimestampsAsArray(), size), new DoubleList(getValuesAsArray(), size));
+        } else {
+            builder.sharedPoints(new LongList(timestamps, size), new DoubleList(values, size));
+        }
+        return builder.build();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (obj == this) {
+            return true;
+        }
+        if (obj.getClass() != getClass()) {
+            return false;
+        }
+        ImmutableMetricTimeSeries rhs = (ImmutableMetricTimeSeries) obj;
+        return new EqualsBuilder()
+                .append(this.getName(), rhs.getName())
+                .isEquals();
+    }
+
+    @Override
+    public int hashCode() {
+        return new HashCodeBuilder()
+                .append(getName())
+                .toHashCode();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("name", name)
+                .append("attributes", attributes)
+                .append("size", size)
+                .toString();
+    }
+
+    /**
+     * The cursor over the points of this time series
+     */
+    private final class ImmutablePointCursor implements PointCursor {
+
+        private int index = -1;
+
+        @Override
+        public boolean hasNext() {
+            return index + 1 < size;
+        }
+
+        @Override
+        public void next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException("No point after index " + index);
+            }
+            index++;
+        }
+
+        @Override
+        public int index() {
+            return index;
+        }
+
+        @Override
+        public long timestamp() {
+            return timestamps[offset + index];
+        }
+
+        @Override
+        public double value() {
+            return values[offset + index];
+        }
+    }
+}
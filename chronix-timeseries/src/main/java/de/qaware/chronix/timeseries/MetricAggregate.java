@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.timeseries;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+/**
+ * The count, minimum, maximum, sum, first and last value of points.
+ * Aggregates of disjoint points are merged into the aggregate of all points,
+ * e.g. the stored aggregates of blocks of points with the aggregates of the points of a partially queried block.
+ * The minimum and maximum are NaN if the points contain NaN, see {@link MetricAggregations}.
+ *
+ * @author f.lautenschlager
+ */
+public final class MetricAggregate {
+
+    /**
+     * The aggregate without points
+     */
+    public static final MetricAggregate EMPTY = new MetricAggregate(0, Double.NaN, Double.NaN, 0, Long.MAX_VALUE, Double.NaN, Long.MIN_VALUE, Double.NaN);
+
+    private final long count;
+    private final double min;
+    private final double max;
+    private final double sum;
+    private final long firstTimestamp;
+    private final double first;
+    private final long lastTimestamp;
+    private final double last;
+
+    /**
+     * Constructs an aggregate
+     *
+     * @param count          - the number of points
+     * @param min            - the minimum value
+     * @param max            - the maximum value
+     * @param sum            - the sum of the values
+     * @param firstTimestamp - the lowest timestamp
+     * @param first          - the value of the point with the lowest timestamp
+     * @param lastTimestamp  - the highest timestamp
+     * @param last           - the value of the point with the highest timestamp
+     */
+    public MetricAggregate(long count, double min, double max, double sum, long firstTimestamp, double first, long lastTimestamp, double last) {
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.sum = sum;
+        this.firstTimestamp = firstTimestamp;
+        this.first = first;
+        this.lastTimestamp = lastTimestamp;
+        this.last = last;
+    }
+
+    /**
+     * Merges this aggregate with the aggregate of other points.
+     * The first and last value are the ones with the lowest and highest timestamp,
+     * for equal timestamps the first value of this aggregate and the last value of the other aggregate are taken.
+     *
+     * @param other the aggregate of other points
+     * @return the aggregate of the points of both aggregates
+     */
+    public MetricAggregate merge(MetricAggregate other) {
+        if (other.count == 0) {
+            return this;
+        }
+        if (count == 0) {
+            return other;
+        }
+        MetricAggregate firstOf = other.firstTimestamp < firstTimestamp ? other : this;
+        MetricAggregate lastOf = other.lastTimestamp >= lastTimestamp ? other : this;
+        return new MetricAggregate(count + other.count, Math.min(min, other.min), Math.max(max, other.max), sum + other.sum,
+                firstOf.firstTimestamp, firstOf.first, lastOf.lastTimestamp, lastOf.last);
+    }
+
+    /**
+     * @return the number of points
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the minimum value, NaN if there are no points
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * @return the maximum value, NaN if there are no points
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * @return the sum of the values, zero if there are no points
+     */
+    public double getSum() {
+        return sum;
+    }
+
+    /**
+     * @return the arithmetic mean of the values, NaN if there are no points
+     */
+    public double getMean() {
+        return sum / count;
+    }
+
+    /**
+     * @return the lowest timestamp, Long.MAX_VALUE if there are no points
+     */
+    public long getFirstTimestamp() {
+        return firstTimestamp;
+    }
+
+    /**
+     * @return the value of the point with the lowest timestamp, NaN if there are no points
+     */
+    public double getFirst() {
+        return first;
+    }
+
+    /**
+     * @return the highest timestamp, Long.MIN_VALUE if there are no points
+     */
+    public long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    /**
+     * @return the value of the point with the highest timestamp, NaN if there are no points
+     */
+    public double getLast() {
+        return last;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (obj == this) {
+            return true;
+        }
+        if (obj.getClass() != getClass()) {
+            return false;
+        }
+        MetricAggregate rhs = (MetricAggregate) obj;
+        return new EqualsBuilder()
+                .append(this.count, rhs.count)
+                .append(this.min, rhs.min)
+                .append(this.max, rhs.max)
+                .append(this.sum, rhs.sum)
+                .append(this.firstTimestamp, rhs.firstTimestamp)
+                .append(this.first, rhs.first)
+                .append(this.lastTimestamp, rhs.lastTimestamp)
+                .append(this.last, rhs.last)
+                .isEquals();
+    }
+
+    @Override
+    public int hashCode() {
+        return new HashCodeBuilder()
+                .append(count)
+                .append(min)
+                .append(max)
+                .append(sum)
+                .append(firstTimestamp)
+                .append(first)
+                .append(lastTimestamp)
+                .append(last)
+                .toHashCode();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("count", count)
+                .append("min", min)
+                .append("max", max)
+                .append("sum", sum)
+                .append("firstTimestamp", firstTimestamp)
+                .append("first", first)
+                .append("lastTimestamp", lastTimestamp)
+                .append("last", last)
+                .toString();
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.timeseries;
+
+import de.qaware.chronix.converter.common.DoubleList;
+import de.qaware.chronix.converter.common.ListAggregations;
+
+/**
+ * Aggregations over the points of a metric time series.
+ * The aggregations work directly on the values of the time series without copying them, see {@link ListAggregations}.
+ * Large time series are aggregated in parallel.
+ * <p>
+ * Each aggregation is available for the whole time series and for the points between from and to (both inclusive).
+ * The restricted aggregations use a {@link MetricTimeSeries#slice(long, long)} of the time series.
+ * Aggregations that need the points in order (first, last, integral) and the restricted aggregations sort the time series.
+ *
+ * @author f.lautenschlager
+ */
+public final class MetricAggregations {
+
+    private MetricAggregations() {
+        //avoid instances
+    }
+
+    /**
+     * @param timeSeries the time series
+     * @return the number of points
+     */
+    public static int count(MetricTimeSeries timeSeries) {
+        return timeSeries.size();
+    }
+
+    /**
+     * @param timeSeries the time series
+     * @param from       the start of the range (inclusive)
+     * @param to         the end of the range (inclusive)
+     * @return the number of points within the range
+     */
+    public static int count(MetricTimeSeries timeSeries, long from, long to) {
+        return count(timeSeries.slice(from, to));
+    }
+
+    /**
+     * @param timeSeries the time series
+     * @return the minimum value, NaN if the time series is empty
+     */
+    public static double min(MetricTimeSeries timeSeries) {
+        //maintained while adding the points
+        return timeSeries.getMinValue();
+    }
+
+    /**
+     * @param timeSeries the time series
+     * @param from       the start of the range (inclusive)
+     * @param to         the end of the range (inclusive)
+     * @return the minimum value within the range, NaN if the range contains no points
+     */
+    public static double min(MetricTimeSeries timeSeries, long from, long to) {
+        DoubleList values = timeSeries.slice(from, to).valuesReference();
+        return ListAggregations.min(values, 0, values.size());
+    }
+
+    /**
+     * @param timeSeries the time series
+     * @return the maximum value, NaN if the time series is empty
+     */
+    public static double max(MetricTimeSeries timeSeries) {
+        //maintained while adding the points
+        return timeSeries.getMaxValue();
+    }
+
+    /**
+     * @param timeSeries the time series
+     * @param from       the start of the range (inclusive)
+     * @param to         the end of the range (inclusive)
+     * @return the maximum value within the range, NaN if the range contains no points
+     */
+    public static double max(MetricTimeSeries timeSeries, long from, long to) {
+        DoubleList values = timeSeries.slice(from, to).valuesReference();
+        return ListAggregations.max(values, 0, values.size());
+    }
+
+    /**
+     * @param timeSeries the time series
+     * @return the sum of the values, zero if the time series is empty
+     */
+    public static double sum(MetricTimeSeries timeSeries) {
+        DoubleList values = timeSeries.valuesReference();
+        return ListAggregations.sum(values, 0, values.size());
+    }
+
+    /**
+     * @param timeSeries the time series
+     * @param from       the start of the range (inclusive)
+     * @param to         the end of the range (inclusive)
+     * @return the sum of the values within the range, zero if the range contains no points
+     */
+    public static double sum(MetricTimeSeries timeSeries, long from, long to) {
+        return sum(timeSeries.slice(from, to));
+    }
+
+    /**
+     * @param timeSeries the time series
+     * @return the arithmetic mean of the values, NaN if the time series is empty
+     */
+    public static double mean(MetricTimeSeries timeSeries) {
+        DoubleList values = timeSeries.valuesReference();
+        return ListAggregations.mean(values, 0, values.size());
+    }
+
+    /**
+     * @param timeSeries the time series
+     * @param from       the start of the range (inclusive)
+     * @param to         the end of the range (inclusive)
+     * @return the arithmetic mean of the values within the range, NaN if the range contains no points
+     */
+    public static double mean(MetricTimeSeries timeSeries, long from, long to) {
+        return mean(timeSeries.slice(from, to));
+    }
+
+    /**
+     * @param timeSeries the time series
+     * @return the sample standard deviation of the values, NaN if the time series is empty
+     */
+    public static double stdDev(MetricTimeSeries timeSeries) {
+        DoubleList values = timeSeries.valuesReference();
+        return ListAggregations.stdDev(values, 0, values.size());
+    }
+
+    /**
+     * @param timeSeries the time series
+     * @param from       the start of the range (inclusive)
+     * @param to         the end of the range (inclusive)
+     * @return the sample standard deviation of the values within the range, NaN if the range contains no points
+     */
+    public static double stdDev(MetricTimeSeries timeSeries, long from, long to) {
+        return stdDev(timeSeries.slice(from, to));
+    }
+
+    /**
+     * @param timeSeries the time series
+     * @param percentile the percentile between 0 and 1, e.g. 0.5 for the median
+     * @return the percentile of the values, NaN if the time series is empty
+     * @throws IllegalArgumentException if the percentile is not between 0 and 1
+     */
+    public static double percentile(MetricTimeSeries timeSeries, double percentile) {
+        DoubleList values = timeSeries.valuesReference();
+        return ListAggregations.percentile(values, 0, values.size(), percentile);
+    }
+
+    /**
+     * @param timeSeries the time series
+     * @param from       the start of the range (inclusive)
+     * @param to         the end of the range (inclusive)
+     * @param percentile the percentile between 0 and 1, e.g. 0.5 for the median
+     * @return the percentile of the values within the range, NaN if the range contains no points
+     * @throws IllegalArgumentException if the percentile is not between 0 and 1
+     */
+    public static double percentile(MetricTimeSeries timeSeries, long from, long to, double percentile) {
+        return percentile(timeSeries.slice(from, to), percentile);
+    }
+
+    /**
+     * @param timeSeries the time series
+     * @return the value of the point with the lowest timestamp, NaN if the time series is empty
+     */
+    public static double first(MetricTimeSeries timeSeries) {
+        if (timeSeries.isEmpty()) {
+            return Double.NaN;
+        }
+        timeSeries.sort();
+        return timeSeries.getValue(0);
+    }
+
+    /**
+     * @param timeSeries the time series
+     * @param from       the start of the range (inclusive)
+     * @param to         the end of the range (inclusive)
+     * @return the value of the first point within the range, NaN if the range contains no points
+     */
+    public static double first(MetricTimeSeries timeSeries, long from, long to) {
+        return first(timeSeries.slice(from, to));
+    }
+
+    /**
+     * @param timeSeries the time series
+     * @return the value of the point with the highest timestamp, NaN if the time series is empty
+     */
+    public static double last(MetricTimeSeries timeSeries) {
+        if (timeSeries.isEmpty()) {
+            return Double.NaN;
+        }
+        timeSeries.sort();
+        return timeSeries.getValue(timeSeries.size() - 1);
+    }
+
+    /**
+     * @param timeSeries the time series
+     * @param from       the start of the range (inclusive)
+     * @param to         the end of the range (inclusive)
+     * @return the value of the last point within the range, NaN if the range contains no points
+     */
+    public static double last(MetricTimeSeries timeSeries, long from, long to) {
+        return last(timeSeries.slice(from, to));
+    }
+
+    /**
+     * The integral of the values over the time (trapezoidal rule).
+     * The unit is value times the unit of the timestamps, e.g. value * milliseconds.
+     *
+     * @param timeSeries the time series
+     * @return the integral, zero if the time series has less than two points
+     */
+    public static double integral(MetricTimeSeries timeSeries) {
+        timeSeries.sort();
+        DoubleList values = timeSeries.valuesReference();
+        return ListAggregations.integral(timeSeries.timestampsReference(), values, 0, values.size());
+    }
+
+    /**
+     * The integral of the values over the time (trapezoidal rule) between the first and the last point within the range.
+     *
+     * @param timeSeries the time series
+     * @param from       the start of the range (inclusive)
+     * @param to         the end of the range (inclusive)
+     * @return the integral, zero if the range contains less than two points
+     */
+    public static double integral(MetricTimeSeries timeSeries, long from, long to) {
+        return integral(timeSeries.slice(from, to));
+    }
+
+    /**
+     * The aggregations of {@link MetricAggregate} at once, e.g. to merge them with aggregates of other points.
+     * The time series is sorted.
+     *
+     * @param timeSeries the time series
+     * @return the aggregate of the points, {@link MetricAggregate#EMPTY} if the time series is empty
+     */
+    public static MetricAggregate aggregate(MetricTimeSeries timeSeries) {
+        if (timeSeries.isEmpty()) {
+            return MetricAggregate.EMPTY;
+        }
+        timeSeries.sort();
+        DoubleList values = timeSeries.valuesReference();
+        int size = values.size();
+        return new MetricAggregate(size, ListAggregations.min(values, 0, size), ListAggregations.max(values, 0, size),
+                ListAggregations.sum(values, 0, size),
+                timeSeries.getTime(0), values.get(0), timeSeries.getTime(size - 1), values.get(size - 1));
+    }
+
+    /**
+     * @param timeSeries the time series
+     * @param from       the start of the range (inclusive)
+     * @param to         the end of the range (inclusive)
+     * @return the aggregate of the points within the range, {@link MetricAggregate#EMPTY} if the range contains no points
+     */
+    public static MetricAggregate aggregate(MetricTimeSeries timeSeries, long from, long to) {
+        return aggregate(timeSeries.slice(from, to));
+    }
+}
@@ -16,17 +16,36 @@
 package de.qaware.chronix.timeseries;
 
 
+import de.qaware.chronix.converter.common.ChunkedDoubleList;
+import de.qaware.chronix.converter.common.ChunkedLongList;
+import de.qaware.chronix.converter.common.CompressedDoubleList;
+import de.qaware.chronix.converter.common.CompressedLongList;
+import de.qaware.chronix.converter.common.DirectDoubleList;
+import de.qaware.chronix.converter.common.DirectLongList;
 import de.qaware.chronix.converter.common.DoubleList;
 import de.qaware.chronix.converter.common.LongList;
+import de.qaware.chronix.converter.common.MemoryFootprint;
+import de.qaware.chronix.timeseries.dts.LongDoubleConsumer;
 import de.qaware.chronix.timeseries.dts.Point;
+import de.qaware.chronix.timeseries.dts.PointCursor;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
 import java.io.Serializable;
-import java.util.Comparator;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
 /**
@@ -35,6 +54,8 @@ import java.util.stream.Stream;
  * - start and end,
  * - arbitrary attributes
  * and a list of name data points (timestamp, double value)
+ * <p>
+ * A metric time series is not thread-safe. Use {@link #freeze()} to share it between threads.
  *
  * @author f.lautenschlager
  */
@@ -42,40 +63,72 @@ public final class MetricTimeSeries implements Serializable {
 
     private static final long serialVersionUID = 5497398456431471102L;
 
+    /**
+     * The maximum number of tracked runs.
+     * If more runs are appended, the sort detects the runs itself.
+     */
+    private static final int MAX_TRACKED_RUNS = 1024;
+
+    /**
+     * Marks that the runs are not tracked
+     */
+    private static final int UNKNOWN_RUNS = -1;
+
+    /**
+     * The estimated bytes of a time series object: six references, six longs and doubles, the run count and three flags
+     */
+    private static final long SHALLOW_BYTES = MemoryFootprint.objectBytes(6 * MemoryFootprint.REFERENCE_BYTES + 6 * Long.BYTES + Integer.BYTES + 3);
+
     private String name;
     private String type;
 
     private LongList timestamps;
     private DoubleList values;
+    //True if the points are stored in the lists chosen by the builder, e.g. in chunks or off-heap
+    private boolean keepStorage;
+    //True if the points are a read-only view on the points of another time series, see slice
+    private boolean view;
+    //True if the arrays of the points are shared with an immutable time series, they are copied before they are overwritten
+    private boolean sharedPoints;
 
-    private Map<String, Object> attributes = new HashMap<>();
+    //Shared compact attributes, copied into a hash map before they are modified
+    private Map<String, Object> attributes = CompactAttributes.EMPTY;
     private long end;
     private long start;
 
-    //Marks if the time series needs a sort
-    //Used to avoid unnecessary sorts.
-    private boolean needsSort = true;
+    //The bounds of the points. They are maintained when points are added, hence no sort is needed to get them.
+    private long minTimestamp;
+    private long maxTimestamp;
+    private double minValue = Double.NaN;
+    private double maxValue = Double.NaN;
+    //True if the value bounds have to be calculated, e.g. for a slice
+    private boolean valueBoundsUnknown;
+
+    //The start indices of the ascending runs of the timestamps (except the first run that starts at zero).
+    //Used to avoid unnecessary sorts and to merge sorted chunks instead of sorting them.
+    private int[] runStarts;
+    //The number of tracked run starts. Zero means the time series is sorted.
+    private int runCount;
 
     /**
      * Private constructor.
      * To instantiate a time series use the builder class.
      */
     private MetricTimeSeries() {
-        timestamps = new LongList(500);
-        values = new DoubleList(500);
+        //the arrays are allocated with the first point or the capacity hint of the builder
+        timestamps = new LongList();
+        values = new DoubleList();
     }
 
     /**
-     * Sets the start and end end based on the
+     * Private constructor for time series on the given timestamps and values.
+     *
+     * @param timestamps the timestamps
+     * @param values     the values
      */
-    private void setStartAndEnd() {
-        //When the time stamps are empty we do not set the start and end
-        //An aggregation or analysis response does not have a data field per default.
-        if (!timestamps.isEmpty()) {
-            sort();
-            start = timestamps.get(0);
-            end = timestamps.get(size() - 1);
-        }
+    private MetricTimeSeries(LongList timestamps, DoubleList values) {
+        this.timestamps = timestamps;
+        this.values = values;
     }
 
     /**
@@ -95,6 +148,46 @@ public final class MetricTimeSeries implements Serializable {
         return timestamps.toArray();
     }
 
+    /**
+     * Read-only view on the timestamps without copying them.
+     * The view is valid until the time series is modified, e.g. by adding points or sorting.
+     * Use it on hot paths that only read the timestamps, e.g. several times per query.
+     *
+     * @return a read-only buffer over the timestamps
+     */
+    public LongBuffer getTimestampsAsBuffer() {
+        return timestamps.asReadOnlyBuffer();
+    }
+
+    /**
+     * Stream of the timestamps without boxing or copying them.
+     * The stream splits cleanly for parallel processing, see {@link LongList#spliterator()}.
+     * It is valid until the time series is modified, e.g. by adding points or sorting.
+     *
+     * @return a sequential stream of the timestamps
+     */
+    public LongStream getTimestampsAsStream() {
+        return timestamps.stream();
+    }
+
+    /**
+     * This method should be used with care as it delivers the reference.
+     *
+     * @return the timestamps of this time series
+     */
+    LongList timestampsReference() {
+        return timestamps;
+    }
+
+    /**
+     * This method should be used with care as it delivers the reference.
+     *
+     * @return the values of this time series
+     */
+    DoubleList valuesReference() {
+        return values;
+    }
+
     /**
      * @return a copy of the data points
      */
@@ -112,6 +205,28 @@ public final class MetricTimeSeries implements Serializable {
         return values.toArray();
     }
 
+    /**
+     * Read-only view on the values without copying them.
+     * The view is valid until the time series is modified, e.g. by adding points or sorting.
+     * Use it on hot paths that only read the values, e.g. several times per query.
+     *
+     * @return a read-only buffer over the values
+     */
+    public DoubleBuffer getValuesAsBuffer() {
+        return values.asReadOnlyBuffer();
+    }
+
+    /**
+     * Stream of the values without boxing or copying them.
+     * The stream splits cleanly for parallel processing, see {@link DoubleList#spliterator()}.
+     * It is valid until the time series is modified, e.g. by adding points or sorting.
+     *
+     * @return a sequential stream of the values
+     */
+    public DoubleStream getValuesAsStream() {
+        return values.stream();
+    }
+
     /**
      * Gets the data point at the index i
      *
@@ -134,27 +249,243 @@ public final class MetricTimeSeries implements Serializable {
 
     /**
      * Sorts the time series values.
+     * The sort is stable and works in place on the timestamps and values, i.e. the values are moved along with the timestamps.
+     * An already sorted or almost sorted time series is sorted in almost linear time.
      */
     public void sort() {
-        if (needsSort && timestamps.size() > 1) {
+        if (runCount != 0 && timestamps.size() > 1) {
+            if (runCount == UNKNOWN_RUNS) {
+                timestamps.sort(values);
+            } else {
+                //only merge the sorted runs
+                timestamps.mergeRuns(values, runStarts, runCount);
+            }
+        }
+        resetRuns();
+    }
+
+    /**
+     * A time series is sorted if no point was appended before its predecessor (or the series was sorted since then).
+     * Appending sorted points after the last point keeps the time series sorted.
+     *
+     * @return true if the points are sorted by their timestamps, otherwise false
+     */
+    public boolean isSorted() {
+        return runCount == 0;
+    }
+
+    /**
+     * Moves the points into the given lists, e.g. lists that store the points in chunks or off-heap.
+     * Points that are set afterwards are copied into the lists.
+     * A list that is already used by the time series is kept as it is.
+     *
+     * @param storedTimestamps the empty list for the timestamps or the current one
+     * @param storedValues     the empty list for the values or the current one
+     */
+    private void storeIn(LongList storedTimestamps, DoubleList storedValues) {
+        if (storedTimestamps != timestamps) {
+            storedTimestamps.addAll(timestamps);
+            releaseTimestamps();
+            this.timestamps = storedTimestamps;
+        }
+        if (storedValues != values) {
+            storedValues.addAll(values);
+            releaseValues();
+            this.values = storedValues;
+        }
+        this.keepStorage = true;
+    }
+
+    /**
+     * Frees the off-heap memory of the points, see {@link Builder#offHeap()}.
+     * The time series must not be used anymore afterwards.
+     * If the points are stored on the heap, the time series is cleared.
+     */
+    public void release() {
+        releaseStorage();
+        resetRuns();
+        resetBounds();
+    }
+
+    private void releaseStorage() {
+        releaseTimestamps();
+        releaseValues();
+    }
+
+    private void releaseTimestamps() {
+        if (timestamps instanceof DirectLongList) {
+            ((DirectLongList) timestamps).release();
+        } else {
+            timestamps.clear();
+        }
+    }
+
+    private void releaseValues() {
+        if (values instanceof DirectDoubleList) {
+            ((DirectDoubleList) values).release();
+        } else {
+            values.clear();
+        }
+    }
+
+    /**
+     * Resets the time series for the reuse by a {@link MetricTimeSeriesPool}.
+     * The points are removed but the lists keep their arrays.
+     * Arrays shared with an {@link ImmutableMetricTimeSeries} are dropped instead, as the reuse would overwrite them.
+     * Slices and time series with a storage chosen by the builder are not reused.
+     *
+     * @return true if the time series can be reused, otherwise false
+     */
+    boolean reset() {
+        if (view || keepStorage) {
+            return false;
+        }
+        removePoints();
+
+        name = null;
+        type = null;
+        //the map could be passed to the builder, hence it is not cleared
+        attributes = CompactAttributes.EMPTY;
+        start = 0;
+        end = 0;
+        return true;
+    }
+
+    /**
+     * Removes the points but keeps the arrays of the lists.
+     * Arrays shared with an {@link ImmutableMetricTimeSeries} are dropped instead, as the reuse would overwrite them.
+     */
+    private void removePoints() {
+        if (sharedPoints) {
+            timestamps.clear();
+            values.clear();
+            sharedPoints = false;
+        } else {
+            timestamps.removeRange(0, timestamps.size());
+            values.removeRange(0, values.size());
+        }
+        resetRuns();
+        resetBounds();
+    }
 
-            LongList sortedTimes = new LongList(timestamps.size());
-            DoubleList sortedValues = new DoubleList(values.size());
+    /**
+     * @return true if the time series is a read-only view on the points of another time series, see {@link #slice(long, long)}
+     */
+    boolean isView() {
+        return view;
+    }
 
-            points().sorted(Comparator.comparingLong(Point::getTimestamp)).forEachOrdered(p -> {
-                sortedTimes.add(p.getTimestamp());
-                sortedValues.add(p.getValue());
-            });
+    /**
+     * Ensures that the lists can hold the given number of points without growing.
+     *
+     * @param capacity the expected number of points
+     */
+    private void ensureCapacity(int capacity) {
+        timestamps.ensureCapacity(capacity);
+        values.ensureCapacity(capacity);
+    }
 
-            timestamps = sortedTimes;
-            values = sortedValues;
+    /**
+     * Tracks the bounds and the ascending runs of the timestamps starting at the given index.
+     * A point that is lower than its predecessor starts a new run.
+     *
+     * @param fromIndex the index of the first appended timestamp
+     */
+    private void trackTimestamps(int fromIndex) {
+        int size = timestamps.size();
+        for (int i = fromIndex; i < size; i++) {
+            long timestamp = timestamps.get(i);
+            if (i == 0) {
+                minTimestamp = timestamp;
+                maxTimestamp = timestamp;
+                continue;
+            }
+            if (timestamp < timestamps.get(i - 1)) {
+                addRun(i);
+            }
+            minTimestamp = Math.min(minTimestamp, timestamp);
+            maxTimestamp = Math.max(maxTimestamp, timestamp);
+        }
+    }
+
+    /**
+     * Tracks the bounds of the values starting at the given index.
+     *
+     * @param fromIndex the index of the first appended value
+     */
+    private void trackValues(int fromIndex) {
+        int size = values.size();
+        for (int i = fromIndex; i < size; i++) {
+            trackValue(i, values.get(i));
+        }
+    }
+
+    private void trackValue(int index, double value) {
+        if (index == 0) {
+            minValue = value;
+            maxValue = value;
+        } else {
+            minValue = Math.min(minValue, value);
+            maxValue = Math.max(maxValue, value);
+        }
+    }
+
+    /**
+     * Resets the bounds of the points
+     */
+    private void resetBounds() {
+        minTimestamp = 0;
+        maxTimestamp = 0;
+        minValue = Double.NaN;
+        maxValue = Double.NaN;
+        valueBoundsUnknown = false;
+    }
+
+    /**
+     * Calculates the bounds of the values if they are not known
+     */
+    private void ensureValueBounds() {
+        if (valueBoundsUnknown) {
+            valueBoundsUnknown = false;
+            trackValues(0);
+        }
+    }
 
-            needsSort = false;
+    /**
+     * Tracks a new run starting at the given index.
+     *
+     * @param start the start index of the run
+     */
+    private void addRun(int start) {
+        if (runCount == UNKNOWN_RUNS) {
+            return;
+        }
+        if (runCount == MAX_TRACKED_RUNS) {
+            //too many runs, the sort has to find them
+            runStarts = null;
+            runCount = UNKNOWN_RUNS;
+            return;
+        }
+        if (runStarts == null) {
+            runStarts = new int[8];
+        } else if (runCount == runStarts.length) {
+            runStarts = Arrays.copyOf(runStarts, Math.min(runCount << 1, MAX_TRACKED_RUNS));
         }
+        runStarts[runCount++] = start;
+    }
+
+    /**
+     * Marks the time series as sorted
+     */
+    private void resetRuns() {
+        runStarts = null;
+        runCount = 0;
     }
 
     /**
-     * A stream over the points
+     * A stream over the points.
+     * The stream creates a point object per element.
+     * Use {@link #forEach(LongDoubleConsumer)} or {@link #cursor()} to iterate the points without allocations.
      *
      * @return the points as points
      */
@@ -162,13 +493,82 @@ public final class MetricTimeSeries implements Serializable {
         if (timestamps.isEmpty()) {
             return Stream.empty();
         }
-        return Stream.iterate(of(0), pair -> of(pair.getIndex() + 1)).limit(timestamps.size());
+        return IntStream.range(0, timestamps.size()).mapToObj(this::of);
     }
 
     private Point of(int index) {
         return new Point(index, timestamps.get(index), values.get(index));
     }
 
+    /**
+     * Performs the given action for each point (timestamp, value) of the time series in the order of the points.
+     * No objects are created per point.
+     *
+     * @param action the action to be performed for each point
+     */
+    public void forEach(LongDoubleConsumer action) {
+        int size = timestamps.size();
+        for (int i = 0; i < size; i++) {
+            action.accept(timestamps.get(i), values.get(i));
+        }
+    }
+
+    /**
+     * A cursor over the points of the time series in the order of the points.
+     * The cursor reads the timestamps and values directly and creates no objects per point.
+     *
+     * @return a cursor positioned before the first point
+     */
+    public PointCursor cursor() {
+        return new MetricPointCursor();
+    }
+
+
+    /**
+     * Takes an immutable snapshot of this time series, see {@link ImmutableMetricTimeSeries}.
+     * The time series is sorted and its points are copied once.
+     * The snapshot can be read by any number of threads without synchronization.
+     * This time series stays mutable and changes do not affect the snapshot.
+     *
+     * @return an immutable snapshot of this time series
+     */
+    public ImmutableMetricTimeSeries freeze() {
+        sort();
+        return ImmutableMetricTimeSeries.of(name, type, attributes, timestamps.toArray(), values.toArray(), start, end);
+    }
+
+    /**
+     * Restricts the time series to the points with a timestamp between from and to (both inclusive).
+     * The time series is sorted if needed and the bounds are found with a binary search.
+     * The points of the slice are not copied, the slice is a read-only view on the points of this time series.
+     * Hence the slice is only valid until this time series is modified.
+     * Adding points to the slice throws an {@link UnsupportedOperationException}.
+     *
+     * @param from the start of the slice (inclusive)
+     * @param to   the end of the slice (inclusive)
+     * @return a time series with the same name, type and attributes that contains the points within the range
+     */
+    public MetricTimeSeries slice(long from, long to) {
+        sort();
+
+        int fromIndex = timestamps.lowerBound(from);
+        int toIndex = Math.max(fromIndex, timestamps.upperBound(to));
+
+        MetricTimeSeries slice = new MetricTimeSeries(timestamps.subList(fromIndex, toIndex), values.subList(fromIndex, toIndex));
+        slice.name = name;
+        slice.type = type;
+        slice.attributes = CompactAttributes.of(attributes);
+        slice.start = from;
+        slice.end = to;
+        slice.view = true;
+        if (!slice.isEmpty()) {
+            //the slice is sorted
+            slice.minTimestamp = slice.timestamps.get(0);
+            slice.maxTimestamp = slice.timestamps.get(slice.size() - 1);
+            slice.valueBoundsUnknown = true;
+        }
+        return slice;
+    }
 
     /**
      * Sets the timestamps and values as data
@@ -177,33 +577,66 @@ public final class MetricTimeSeries implements Serializable {
      * @param values     - the values
      */
     private void setAll(LongList timestamps, DoubleList values) {
-        this.timestamps = timestamps;
-        this.values = values;
+        if (keepStorage) {
+            //copy the points into the chosen storage
+            this.timestamps.clear();
+            this.values.clear();
+            this.timestamps.addAll(timestamps);
+            this.values.addAll(values);
+        } else {
+            this.timestamps = timestamps;
+            this.values = values;
+            this.sharedPoints = false;
+        }
 
-        needsSort = true;
+        resetRuns();
+        resetBounds();
+        trackTimestamps(0);
+        trackValues(0);
     }
 
     /**
-     * Adds all the given points to the time series
+     * Adds all the given points to the time series.
+     * If the points are sorted and not before the last point, the time series stays sorted.
      *
      * @param timestamps the timestamps
      * @param values     the values
+     * @throws IllegalArgumentException if the number of timestamps and values differ
      */
     public final void addAll(LongList timestamps, DoubleList values) {
-        for (int i = 0; i < timestamps.size(); i++) {
-            add(timestamps.get(i), values.get(i));
-        }
+        checkSameSize(timestamps.size(), values.size());
+        int fromTimestamp = this.timestamps.size();
+        int fromValue = this.values.size();
+        this.timestamps.addAll(timestamps);
+        this.values.addAll(values);
+
+        trackTimestamps(fromTimestamp);
+        trackValues(fromValue);
     }
 
     /**
+     * Adds all the given points to the time series.
+     * If the points are sorted and not before the last point, the time series stays sorted.
+     *
      * @param timestamps the timestamps as long[]
      * @param values     the values as double[]
+     * @throws IllegalArgumentException if the number of timestamps and values differ
      */
     public final void addAll(long[] timestamps, double[] values) {
+        checkSameSize(timestamps.length, values.length);
+        int fromTimestamp = this.timestamps.size();
+        int fromValue = this.values.size();
         this.timestamps.addAll(timestamps);
         this.values.addAll(values);
 
-        needsSort = true;
+        trackTimestamps(fromTimestamp);
+        trackValues(fromValue);
+    }
+
+    private static void checkSameSize(int timestamps, int values) {
+        if (timestamps != values) {
+            throw new IllegalArgumentException("The number of timestamps (" + timestamps + ") and values (" + values + ") differ");
+        }
     }
 
     /**
@@ -213,10 +646,21 @@ public final class MetricTimeSeries implements Serializable {
      * @param value     the value
      */
     public final void add(long timestamp, double value) {
+        int index = timestamps.size();
+        if (index == 0) {
+            minTimestamp = timestamp;
+            maxTimestamp = timestamp;
+        } else {
+            if (timestamp < timestamps.get(index - 1)) {
+                addRun(index);
+            }
+            minTimestamp = Math.min(minTimestamp, timestamp);
+            maxTimestamp = Math.max(maxTimestamp, timestamp);
+        }
+        trackValue(values.size(), value);
+
         this.timestamps.add(timestamp);
         this.values.add(value);
-
-        needsSort = true;
     }
 
     /**
@@ -233,7 +677,26 @@ public final class MetricTimeSeries implements Serializable {
      * @param value the value
      */
     private void addAttribute(String key, Object value) {
-        attributes.put(key, value);
+        modifiableAttributes().put(key, value);
+    }
+
+    /**
+     * Copies the shared compact attributes into a hash map that can be modified
+     *
+     * @return the modifiable attributes
+     */
+    private Map<String, Object> modifiableAttributes() {
+        if (attributes instanceof CompactAttributes) {
+            attributes = new HashMap<>(attributes);
+        }
+        return attributes;
+    }
+
+    /**
+     * Replaces the attributes with the shared compact attributes, see {@link CompactAttributes#of(Map)}
+     */
+    private void compactAttributes() {
+        attributes = CompactAttributes.of(attributes);
     }
 
     /**
@@ -253,14 +716,109 @@ public final class MetricTimeSeries implements Serializable {
         return new HashMap<>(attributes);
     }
 
+    /**
+     * Delivers the attributes to read or iterate them without a copy.
+     * The view reflects later changes of the attributes.
+     *
+     * @return an unmodifiable view of the attributes of this time series
+     */
+    public Map<String, Object> attributesView() {
+        if (attributes instanceof CompactAttributes) {
+            return attributes;
+        }
+        return Collections.unmodifiableMap(attributes);
+    }
+
     /**
      * This method should be used with care as it delivers the reference.
+     * If the attributes are shared with other time series, they are copied first.
      *
      * @return the attributes of this time series
      */
     @SuppressWarnings("all")
     public Map<String, Object> getAttributesReference() {
-        return attributes;
+        return modifiableAttributes();
+    }
+
+    /**
+     * Trims the capacity of the points to their number and compacts the attributes,
+     * e.g. before the time series is kept in a cache.
+     * A slice shares the points of another time series and is not trimmed.
+     */
+    public void trimToSize() {
+        if (view) {
+            return;
+        }
+        timestamps.trimToSize();
+        values.trimToSize();
+        if (runStarts != null && runCount < runStarts.length) {
+            runStarts = (runCount <= 0) ? null : Arrays.copyOf(runStarts, runCount);
+        }
+        compactAttributes();
+    }
+
+    /**
+     * Estimates the heap bytes retained by this time series, see {@link MemoryFootprint}.
+     * It contains the points including their unused capacity, the name, the type and the attributes.
+     * The points of a slice are shared with the sliced time series and are not counted.
+     * The points stored off-heap are accounted for by {@link de.qaware.chronix.converter.common.OffHeapMemory}.
+     * Compact attributes are usually shared with other time series,
+     * use {@link #estimatedRetainedBytes(Iterable)} to count them once for many time series.
+     *
+     * @return the estimated bytes of this time series
+     */
+    public long estimatedRetainedBytes() {
+        return estimatedBytesWithoutAttributes() + estimatedAttributeBytes(attributes);
+    }
+
+    /**
+     * Estimates the heap bytes retained by the given time series, e.g. by the entries of a cache.
+     * Attributes shared between the time series are counted once.
+     *
+     * @param timeSeries the time series
+     * @return the estimated bytes of all time series
+     * @see #estimatedRetainedBytes()
+     */
+    public static long estimatedRetainedBytes(Iterable<MetricTimeSeries> timeSeries) {
+        Set<Map<String, Object>> countedAttributes = Collections.newSetFromMap(new IdentityHashMap<>());
+        long bytes = 0;
+        for (MetricTimeSeries ts : timeSeries) {
+            bytes += ts.estimatedBytesWithoutAttributes();
+            if (countedAttributes.add(ts.attributes)) {
+                bytes += estimatedAttributeBytes(ts.attributes);
+            }
+        }
+        return bytes;
+    }
+
+    private long estimatedBytesWithoutAttributes() {
+        return SHALLOW_BYTES
+                + MemoryFootprint.stringBytes(name)
+                + MemoryFootprint.stringBytes(type)
+                + timestamps.estimatedRetainedBytes()
+                + values.estimatedRetainedBytes()
+                + MemoryFootprint.arrayBytes(runStarts == null ? 0 : runStarts.length, Integer.BYTES);
+    }
+
+    /**
+     * Estimates the bytes of the compact attributes or of a hash map with its entries
+     */
+    private static long estimatedAttributeBytes(Map<String, Object> attributes) {
+        if (attributes instanceof CompactAttributes) {
+            return ((CompactAttributes) attributes).estimatedRetainedBytes();
+        }
+        int size = attributes.size();
+        //the table of a hash map is a power of two with a load factor of 0.75
+        int table = (size == 0) ? 0 : Math.max(16, Integer.highestOneBit(Math.max(1, (size * 4 + 2) / 3 - 1)) << 1);
+        long bytes = MemoryFootprint.objectBytes(4 * MemoryFootprint.REFERENCE_BYTES + 4 * Integer.BYTES)
+                + MemoryFootprint.arrayBytes(table, MemoryFootprint.REFERENCE_BYTES);
+        for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+            //the hash, the key, the value and the next entry
+            bytes += MemoryFootprint.objectBytes(3 * MemoryFootprint.REFERENCE_BYTES + Integer.BYTES)
+                    + MemoryFootprint.stringBytes(entry.getKey())
+                    + MemoryFootprint.valueBytes(entry.getValue());
+        }
+        return bytes;
     }
 
     /**
@@ -269,6 +827,8 @@ public final class MetricTimeSeries implements Serializable {
     public void clear() {
         timestamps.clear();
         values.clear();
+        resetRuns();
+        resetBounds();
     }
 
     @Override
@@ -305,19 +865,50 @@ public final class MetricTimeSeries implements Serializable {
 
 
     /**
+     * The start is the lowest timestamp. It is maintained when points are added, hence the time series is not sorted.
+     * A time series without points returns the start set by the builder,
+     * e.g. an aggregation or analysis response does not have points per default.
+     *
      * @return the start of the time series
      */
     public long getStart() {
-        setStartAndEnd();
-        return start;
+        if (timestamps.isEmpty()) {
+            return start;
+        }
+        return minTimestamp;
     }
 
     /**
+     * The end is the highest timestamp. It is maintained when points are added, hence the time series is not sorted.
+     * A time series without points returns the end set by the builder.
+     *
      * @return the end of the time series
      */
     public long getEnd() {
-        setStartAndEnd();
-        return end;
+        if (timestamps.isEmpty()) {
+            return end;
+        }
+        return maxTimestamp;
+    }
+
+    /**
+     * The lowest value of the time series. If a value is NaN, the minimum is NaN.
+     *
+     * @return the minimum value or NaN if the time series contains no points
+     */
+    public double getMinValue() {
+        ensureValueBounds();
+        return minValue;
+    }
+
+    /**
+     * The highest value of the time series. If a value is NaN, the maximum is NaN.
+     *
+     * @return the maximum value or NaN if the time series contains no points
+     */
+    public double getMaxValue() {
+        ensureValueBounds();
+        return maxValue;
     }
 
     /**
@@ -341,6 +932,42 @@ public final class MetricTimeSeries implements Serializable {
         return type;
     }
 
+    /**
+     * The cursor over the points of this time series
+     */
+    private final class MetricPointCursor implements PointCursor {
+
+        private int index = -1;
+
+        @Override
+        public boolean hasNext() {
+            return index + 1 < timestamps.size();
+        }
+
+        @Override
+        public void next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException("No point after index " + index);
+            }
+            index++;
+        }
+
+        @Override
+        public int index() {
+            return index;
+        }
+
+        @Override
+        public long timestamp() {
+            return timestamps.get(index);
+        }
+
+        @Override
+        public double value() {
+            return values.get(index);
+        }
+    }
+
     /**
      * The Builder class
      */
@@ -358,9 +985,20 @@ public final class MetricTimeSeries implements Serializable {
          * @param type of the time series
          */
         public Builder(String name, String type) {
-            metricTimeSeries = new MetricTimeSeries();
-            metricTimeSeries.name = name;
-            metricTimeSeries.type = type;
+            this(new MetricTimeSeries(), name, type);
+        }
+
+        /**
+         * Constructs a new Builder that fills the given empty time series
+         *
+         * @param metricTimeSeries the (recycled) time series
+         * @param name             of the time series
+         * @param type             of the time series
+         */
+        Builder(MetricTimeSeries metricTimeSeries, String name, String type) {
+            this.metricTimeSeries = metricTimeSeries;
+            this.metricTimeSeries.name = name;
+            this.metricTimeSeries.type = type;
         }
 
 
@@ -368,10 +1006,22 @@ public final class MetricTimeSeries implements Serializable {
          * @return the filled time series
          */
         public MetricTimeSeries build() {
+            metricTimeSeries.compactAttributes();
             return metricTimeSeries;
         }
 
 
+        /**
+         * Removes the points added so far, e.g. to replace them with decoded points.
+         * The lists keep their storage and arrays, e.g. the reused ones of a {@link MetricTimeSeriesPool}.
+         *
+         * @return the builder
+         */
+        public Builder clearPoints() {
+            metricTimeSeries.removePoints();
+            return this;
+        }
+
         /**
          * Sets the time series data
          *
@@ -386,6 +1036,20 @@ public final class MetricTimeSeries implements Serializable {
             return this;
         }
 
+        /**
+         * Sets the time series data on arrays shared with an {@link ImmutableMetricTimeSeries}.
+         * The time series copies the arrays before it overwrites them, e.g. when it is reused by a {@link MetricTimeSeriesPool}.
+         *
+         * @param timestamps the time stamps on the shared array
+         * @param values     the values on the shared array
+         * @return the builder
+         */
+        Builder sharedPoints(LongList timestamps, DoubleList values) {
+            points(timestamps, values);
+            metricTimeSeries.sharedPoints = !metricTimeSeries.keepStorage;
+            return this;
+        }
+
         /**
          * Adds the given single data point to the time series
          *
@@ -394,8 +1058,104 @@ public final class MetricTimeSeries implements Serializable {
          * @return the builder
          */
         public Builder point(long timestamp, double value) {
-            metricTimeSeries.timestamps.add(timestamp);
-            metricTimeSeries.values.add(value);
+            metricTimeSeries.add(timestamp, value);
+            return this;
+        }
+
+        /**
+         * Sets the expected number of points.
+         * The time series then allocates its arrays once instead of growing them point by point.
+         * The hint is not a limit, more points can be added.
+         *
+         * @param capacity the expected number of points
+         * @return the builder
+         * @throws IllegalArgumentException if the capacity is negative
+         */
+        public Builder capacity(int capacity) {
+            if (capacity < 0) {
+                throw new IllegalArgumentException("Illegal Capacity: " + capacity);
+            }
+            metricTimeSeries.ensureCapacity(capacity);
+            return this;
+        }
+
+        /**
+         * Stores the points in chunks of {@link ChunkedLongList#DEFAULT_CHUNK_SIZE} points instead of one array.
+         *
+         * @return the builder
+         * @see #chunked(int)
+         */
+        public Builder chunked() {
+            return chunked(ChunkedLongList.DEFAULT_CHUNK_SIZE);
+        }
+
+        /**
+         * Stores the points in chunks of the given size instead of one array that grows.
+         * Appending points then never copies the existing points and no huge arrays are allocated.
+         * Use it for time series with millions of points.
+         * Points that were already added are moved into the chunks.
+         *
+         * @param chunkSize the number of points per chunk, has to be a power of two
+         * @return the builder
+         * @throws IllegalArgumentException if the chunk size is not a positive power of two
+         */
+        public Builder chunked(int chunkSize) {
+            metricTimeSeries.storeIn(new ChunkedLongList(chunkSize), new ChunkedDoubleList(chunkSize));
+            return this;
+        }
+
+        /**
+         * Stores the timestamps delta-of-delta encoded, see {@link CompressedLongList}.
+         * Regular timestamps, e.g. of a scrape with a fixed interval, need about one bit per point.
+         * Use it for time series that are kept in memory and mostly appended and read.
+         * Timestamps that were already added are encoded.
+         *
+         * @return the builder
+         */
+        public Builder compressedTimestamps() {
+            metricTimeSeries.storeIn(new CompressedLongList(), metricTimeSeries.values);
+            return this;
+        }
+
+        /**
+         * Stores the values XOR encoded, see {@link CompressedDoubleList}.
+         * Slowly changing values, e.g. gauges, need a few bits per point.
+         * Use it for time series that are kept in memory and mostly appended and read.
+         * Values that were already added are encoded.
+         *
+         * @return the builder
+         */
+        public Builder compressedValues() {
+            metricTimeSeries.storeIn(metricTimeSeries.timestamps, new CompressedDoubleList());
+            return this;
+        }
+
+        /**
+         * Stores the points off-heap in direct buffers, see {@link DirectLongList}.
+         * Use it to keep a lot of points in memory without pressure on the garbage collector.
+         * The memory has to be freed with {@link MetricTimeSeries#release()}.
+         * Points that were already added are moved off-heap.
+         *
+         * @return the builder
+         */
+        public Builder offHeap() {
+            metricTimeSeries.storeIn(new DirectLongList(), new DirectDoubleList());
+            return this;
+        }
+
+        /**
+         * Stores the points off-heap in buffers mapped from the given files, see {@link DirectLongList}.
+         * The content of the files is overwritten, they are not deleted on {@link MetricTimeSeries#release()}.
+         * Points that were already added are moved off-heap.
+         *
+         * @param timestampsFile the file for the timestamps
+         * @param valuesFile     the file for the values
+         * @return the builder
+         * @throws java.io.UncheckedIOException if a file can not be mapped
+         */
+        public Builder offHeap(Path timestampsFile, Path valuesFile) {
+            int capacity = metricTimeSeries.size();
+            metricTimeSeries.storeIn(new DirectLongList(timestampsFile, capacity), new DirectDoubleList(valuesFile, capacity));
             return this;
         }
 
@@ -412,7 +1172,8 @@ public final class MetricTimeSeries implements Serializable {
         }
 
         /**
-         * Sets the attributes for this time series
+         * Sets the attributes for this time series.
+         * The attributes are copied into shared compact attributes when the time series is built.
          *
          * @param attributes the time series attributes
          * @return the builder
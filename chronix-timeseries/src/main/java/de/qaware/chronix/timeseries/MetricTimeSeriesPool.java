@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.timeseries;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A pool of metric time series to reuse them and their arrays, e.g. for batch readers that convert
+ * thousands of time series one after another.
+ * {@link #builder(String, String)} delivers a builder for a recycled time series if one is available.
+ * A time series that is not used anymore is handed back with {@link #recycle(MetricTimeSeries)}.
+ * <p>
+ * The pool is thread-safe. A recycled time series must not be used by the caller anymore.
+ *
+ * @author f.lautenschlager
+ */
+public final class MetricTimeSeriesPool {
+
+    /**
+     * The default maximum number of pooled time series
+     */
+    public static final int DEFAULT_MAX_POOLED = 64;
+
+    /**
+     * The default maximum number of points of a time series that is pooled
+     */
+    public static final int DEFAULT_MAX_RETAINED_POINTS = 1 << 20;
+
+    private final Deque<MetricTimeSeries> pooled = new ArrayDeque<>();
+    private final int maxPooled;
+    private final int maxRetainedPoints;
+
+    /**
+     * Constructs a pool with the default limits
+     */
+    public MetricTimeSeriesPool() {
+        this(DEFAULT_MAX_POOLED, DEFAULT_MAX_RETAINED_POINTS);
+    }
+
+    /**
+     * Constructs a pool with the given limits.
+     * Time series with more points are not pooled to avoid that the pool retains huge arrays.
+     *
+     * @param maxPooled         the maximum number of pooled time series
+     * @param maxRetainedPoints the maximum number of points of a time series that is pooled
+     * @throws IllegalArgumentException if a limit is negative
+     */
+    public MetricTimeSeriesPool(int maxPooled, int maxRetainedPoints) {
+        if (maxPooled < 0) {
+            throw new IllegalArgumentException("Max pooled must not be negative. Current value is: " + maxPooled);
+        }
+        if (maxRetainedPoints < 0) {
+            throw new IllegalArgumentException("Max retained points must not be negative. Current value is: " + maxRetainedPoints);
+        }
+        this.maxPooled = maxPooled;
+        this.maxRetainedPoints = maxRetainedPoints;
+    }
+
+    /**
+     * Delivers a builder for a recycled time series or for a new one if the pool is empty.
+     *
+     * @param name the name of the time series
+     * @param type the type of the time series
+     * @return the builder
+     */
+    public MetricTimeSeries.Builder builder(String name, String type) {
+        MetricTimeSeries recycled;
+        synchronized (pooled) {
+            recycled = pooled.pollFirst();
+        }
+        if (recycled == null) {
+            return new MetricTimeSeries.Builder(name, type);
+        }
+        return new MetricTimeSeries.Builder(recycled, name, type);
+    }
+
+    /**
+     * Hands a time series back to the pool. The time series is cleared and must not be used anymore.
+     * Slices, time series stored in chunks or off-heap and time series with too many points are not pooled.
+     * The off-heap memory of a time series is freed.
+     *
+     * @param timeSeries the time series that is not used anymore
+     */
+    public void recycle(MetricTimeSeries timeSeries) {
+        if (timeSeries == null) {
+            return;
+        }
+        //a slice shares the points of another time series
+        if (timeSeries.isView()) {
+            return;
+        }
+        if (timeSeries.size() > maxRetainedPoints || !timeSeries.reset()) {
+            timeSeries.release();
+            return;
+        }
+        synchronized (pooled) {
+            if (pooled.size() < maxPooled && !isPooled(timeSeries)) {
+                pooled.offerFirst(timeSeries);
+            }
+        }
+    }
+
+    /**
+     * @return the number of pooled time series
+     */
+    public int size() {
+        synchronized (pooled) {
+            return pooled.size();
+        }
+    }
+
+    /**
+     * Estimates the heap bytes retained by the pooled time series, e.g. the capacity of their points.
+     *
+     * @return the estimated bytes of the pooled time series
+     * @see MetricTimeSeries#estimatedRetainedBytes(Iterable)
+     */
+    public long estimatedRetainedBytes() {
+        synchronized (pooled) {
+            return MetricTimeSeries.estimatedRetainedBytes(pooled);
+        }
+    }
+
+    /**
+     * Removes all pooled time series
+     */
+    public void clear() {
+        synchronized (pooled) {
+            pooled.clear();
+        }
+    }
+
+    /**
+     * Checks by identity if the time series is already pooled, e.g. if it was recycled twice.
+     * The equals method of a time series compares the names.
+     */
+    private boolean isPooled(MetricTimeSeries timeSeries) {
+        for (MetricTimeSeries other : pooled) {
+            if (other == timeSeries) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.timeseries.dts;
+
+/**
+ * Represents an operation that accepts a pair of timestamp and value.
+ * It is the primitive counterpart of a BiConsumer&lt;Long, Double&gt; and avoids boxing.
+ *
+ * @author f.lautenschlager
+ */
+@FunctionalInterface
+public interface LongDoubleConsumer {
+
+    /**
+     * Performs this operation on the given timestamp and value.
+     *
+     * @param timestamp the timestamp
+     * @param value     the value
+     */
+    void accept(long timestamp, double value);
+}
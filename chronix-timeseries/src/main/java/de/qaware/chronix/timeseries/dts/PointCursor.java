@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.timeseries.dts;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A cursor over the points of a time series.
+ * In contrast to an iterator of {@link Point} the cursor does not create an object per point.
+ * The cursor is positioned before the first point. A call of {@link #next()} moves the cursor to the next point.
+ * <pre>
+ * while (cursor.hasNext()) {
+ *     cursor.next();
+ *     use(cursor.timestamp(), cursor.value());
+ * }
+ * </pre>
+ *
+ * @author f.lautenschlager
+ */
+public interface PointCursor {
+
+    /**
+     * @return true if the cursor has a next point
+     */
+    boolean hasNext();
+
+    /**
+     * Moves the cursor to the next point.
+     *
+     * @throws NoSuchElementException if there is no next point
+     */
+    void next();
+
+    /**
+     * @return the index of the current point
+     */
+    int index();
+
+    /**
+     * @return the timestamp of the current point
+     */
+    long timestamp();
+
+    /**
+     * @return the value of the current point
+     */
+    double value();
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.timeseries
+
+import de.qaware.chronix.converter.common.MemoryFootprint
+import spock.lang.Specification
+
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+
+/**
+ * Unit test for the compact attributes
+ * @author f.lautenschlager
+ */
+class CompactAttributesTest extends Specification {
+
+    def "test equal attributes are shared"() {
+        given:
+        def first = new HashMap<String, Object>()
+        first.put("host", "laptop")
+        first.put("metric", "cpu")
+        def second = new TreeMap<String, Object>()
+        second.put("metric", "cpu")
+        second.put("host", "laptop")
+
+        when:
+        def attributes = CompactAttributes.of(first)
+
+        then:
+        attributes.is(CompactAttributes.of(second))
+        attributes.is(CompactAttributes.of(attributes))
+        attributes == first
+        first == attributes
+        attributes.hashCode() == first.hashCode()
+        !attributes.is(CompactAttributes.of([host: "server", metric: "cpu"]))
+    }
+
+    def "test attributes are shared by parallel threads"() {
+        given:
+        def executor = Executors.newFixedThreadPool(8)
+
+        when:
+        def futures = (0..<32).collect {
+            executor.submit({
+                (0..<1000).collect { CompactAttributes.of([host: "host-" + (it % 10), metric: "cpu"]) }
+            } as Callable<List<CompactAttributes>>)
+        }
+        def shared = futures.collectMany { it.get() }.findAll { it.get("host") == "host-1" }
+        executor.shutdown()
+
+        then:
+        shared.size() == 32 * 100
+        shared.every { it.is(shared[0]) }
+    }
+
+    def "test access the attributes"() {
+        given:
+        def map = new HashMap<String, Object>()
+        map.put("metric", "cpu")
+        map.put("host", "laptop")
+        map.put(null, 1)
+
+        when:
+        def attributes = CompactAttributes.of(map)
+        map.put("host", "server")
+
+        then:
+        attributes.size() == 3
+        attributes.get("host") == "laptop"
+        attributes.get(null) == 1
+        attributes.get("unknown") == null
+        attributes.get(4711) == null
+        attributes.containsKey("metric")
+        !attributes.containsKey("unknown")
+        attributes.keySet() as List == [null, "host", "metric"]
+        attributes.values() as List == [1, "laptop", "cpu"]
+    }
+
+    def "test for each"() {
+        given:
+        def attributes = CompactAttributes.of([host: "laptop", metric: "cpu"])
+        def keys = []
+
+        when:
+        attributes.forEach { key, value -> keys << key }
+
+        then:
+        keys == ["host", "metric"]
+    }
+
+    def "test empty attributes"() {
+        expect:
+        CompactAttributes.of([:]).is(CompactAttributes.EMPTY)
+        CompactAttributes.EMPTY.isEmpty()
+    }
+
+    def "test attributes are read-only"() {
+        given:
+        def attributes = CompactAttributes.of([host: "laptop"])
+
+        when:
+        attributes.put("host", "server")
+
+        then:
+        thrown UnsupportedOperationException
+        attributes.get("host") == "laptop"
+    }
+
+    def "test serialized attributes are shared"() {
+        given:
+        def attributes = CompactAttributes.of([host: "laptop", metric: "cpu"])
+        def out = new ByteArrayOutputStream()
+
+        when:
+        new ObjectOutputStream(out).writeObject(attributes)
+        def deserialized = new ObjectInputStream(new ByteArrayInputStream(out.toByteArray())).readObject()
+
+        then:
+        deserialized.is(attributes)
+    }
+
+    def "test estimated bytes"() {
+        given:
+        def attributes = CompactAttributes.of([host: "laptop", cores: 8])
+
+        expect:
+        CompactAttributes.EMPTY.estimatedRetainedBytes() < attributes.estimatedRetainedBytes()
+        attributes.estimatedRetainedBytes() > MemoryFootprint.stringBytes("laptop")
+    }
+}
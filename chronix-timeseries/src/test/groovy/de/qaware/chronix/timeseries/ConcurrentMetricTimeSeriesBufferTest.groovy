@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.timeseries
+
+import spock.lang.Specification
+
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+
+/**
+ * Unit test for the concurrent metric time series buffer
+ * @author f.lautenschlager
+ */
+class ConcurrentMetricTimeSeriesBufferTest extends Specification {
+
+    def "test seal merges the points into a sorted time series"() {
+        given:
+        def buffer = new ConcurrentMetricTimeSeriesBuffer("//CPU//Load", "metric", 4)
+        buffer.attribute("host", "laptop")
+
+        when:
+        buffer.add(3, 3)
+        buffer.add(1, 1)
+        buffer.addAll([4l, 2l] as long[], [4d, 2d] as double[])
+        def ts = buffer.seal()
+
+        then:
+        ts.name == "//CPU//Load"
+        ts.type == "metric"
+        ts.attribute("host") == "laptop"
+        ts.isSorted()
+        ts.getTimestampsAsArray() == [1l, 2l, 3l, 4l] as long[]
+        ts.getValuesAsArray() == [1d, 2d, 3d, 4d] as double[]
+        buffer.size() == 0
+    }
+
+    def "test points of many threads"() {
+        given:
+        def threads = 8
+        def points = 10000
+        def buffer = new ConcurrentMetricTimeSeriesBuffer("//CPU//Load", "metric")
+        def executor = Executors.newFixedThreadPool(threads)
+
+        when:
+        def tasks = (0..<threads).collect { thread ->
+            { ->
+                for (int i = 0; i < points; i++) {
+                    buffer.add(i * threads + thread as long, thread as double)
+                }
+            } as Callable
+        }
+        executor.invokeAll(tasks)*.get()
+        def ts = buffer.seal()
+        executor.shutdown()
+
+        then:
+        ts.size() == threads * points
+        ts.isSorted()
+        ts.getTimestampsAsArray() == (0..<threads * points).collect { it as long } as long[]
+        ts.getValue(5) == 5d
+    }
+
+    def "test stripes are rounded up to a power of two"() {
+        expect:
+        new ConcurrentMetricTimeSeriesBuffer("//CPU//Load", "metric", 3).stripes() == 4
+        new ConcurrentMetricTimeSeriesBuffer("//CPU//Load", "metric", 1).stripes() == 1
+    }
+
+    def "test illegal arguments"() {
+        when:
+        new ConcurrentMetricTimeSeriesBuffer("//CPU//Load", "metric", 0)
+
+        then:
+        thrown IllegalArgumentException
+
+        when:
+        new ConcurrentMetricTimeSeriesBuffer("//CPU//Load", "metric").addAll([1l] as long[], [] as double[])
+
+        then:
+        thrown IllegalArgumentException
+    }
+
+    def "test estimated bytes of the buffered points"() {
+        given:
+        def buffer = new ConcurrentMetricTimeSeriesBuffer("//CPU//Load", "metric", 1)
+        def empty = buffer.estimatedRetainedBytes()
+
+        when:
+        buffer.addAll((0..999).collect { it as long } as long[], (0..999).collect { it as double } as double[])
+
+        then:
+        buffer.estimatedRetainedBytes() > empty + 16_000
+
+        when:
+        buffer.seal()
+
+        then:
+        buffer.estimatedRetainedBytes() == empty
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.timeseries
+
+import spock.lang.Specification
+
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+
+/**
+ * Unit test for the immutable metric time series
+ * @author f.lautenschlager
+ */
+class ImmutableMetricTimeSeriesTest extends Specification {
+
+    def ts = new MetricTimeSeries.Builder("//CPU//Load", "metric")
+            .attribute("host", "laptop")
+            .point(30, 3)
+            .point(10, 1)
+            .point(20, 2)
+            .point(40, 4)
+            .build()
+
+    def "test freeze"() {
+        when:
+        def frozen = ts.freeze()
+
+        then:
+        frozen.name == "//CPU//Load"
+        frozen.type == "metric"
+        frozen.attribute("host") == "laptop"
+        frozen.size() == 4
+        frozen.getTimestampsAsArray() == [10l, 20l, 30l, 40l] as long[]
+        frozen.getValuesAsArray() == [1d, 2d, 3d, 4d] as double[]
+        frozen.getStart() == 10
+        frozen.getEnd() == 40
+        frozen.getMinValue() == 1d
+        frozen.getMaxValue() == 4d
+        frozen.getTime(1) == 20
+        frozen.getValue(1) == 2d
+    }
+
+    def "test frozen time series is not affected by the mutable one"() {
+        given:
+        def frozen = ts.freeze()
+
+        when:
+        ts.add(5, 0)
+        ts.sort()
+
+        then:
+        frozen.size() == 4
+        frozen.getTime(0) == 10
+        ts.getTime(0) == 5
+    }
+
+    def "test attributes are unmodifiable"() {
+        when:
+        ts.freeze().attributes().put("host", "server")
+
+        then:
+        thrown UnsupportedOperationException
+    }
+
+    def "test slice shares the points"() {
+        given:
+        def frozen = ts.freeze()
+
+        when:
+        def slice = frozen.slice(15, 30)
+
+        then:
+        slice.size() == 2
+        slice.getTimestampsAsArray() == [20l, 30l] as long[]
+        slice.getValuesAsBuffer().get(1) == 3d
+        slice.getStart() == 20
+        slice.getEnd() == 30
+        slice.getMinValue() == 2d
+        slice.slice(30, 100).size() == 1
+        frozen.slice(41, 50).isEmpty()
+    }
+
+    def "test index out of bounds"() {
+        given:
+        def slice = ts.freeze().slice(20, 30)
+
+        when:
+        slice.getValue(index)
+
+        then:
+        thrown IndexOutOfBoundsException
+
+        where:
+        index << [-1, 2]
+    }
+
+    def "test cursor and for each"() {
+        given:
+        def frozen = ts.freeze()
+        def cursor = frozen.cursor()
+        def sum = 0d
+
+        when:
+        while (cursor.hasNext()) {
+            cursor.next()
+            sum += cursor.value()
+        }
+        def timestamps = []
+        frozen.forEach({ t, v -> timestamps << t } as de.qaware.chronix.timeseries.dts.LongDoubleConsumer)
+
+        then:
+        sum == 10d
+        timestamps == [10l, 20l, 30l, 40l]
+        frozen.points().count() == 4
+    }
+
+    def "test to metric time series"() {
+        given:
+        def frozen = ts.freeze()
+
+        when:
+        def mutable = frozen.toMetricTimeSeries()
+        mutable.add(50, 5)
+
+        then:
+        mutable.size() == 5
+        mutable.attribute("host") == "laptop"
+        frozen.size() == 4
+        frozen.slice(10, 30).toMetricTimeSeries().getValuesAsArray() == [1d, 2d, 3d] as double[]
+    }
+
+    def "test recycled mutable time series does not change the frozen one"() {
+        given:
+        def pool = new MetricTimeSeriesPool()
+        def frozen = new MetricTimeSeries.Builder("x", "metric")
+                .point(1, 10)
+                .point(2, 20)
+                .point(3, 30)
+                .build()
+                .freeze()
+
+        when:
+        pool.recycle(frozen.toMetricTimeSeries())
+        def reused = pool.builder("x", "metric").point(100, -1).point(200, -2).build()
+
+        then:
+        reused.getValuesAsArray() == [-1d, -2d] as double[]
+        frozen.getTimestampsAsArray() == [1l, 2l, 3l] as long[]
+        frozen.getValuesAsArray() == [10d, 20d, 30d] as double[]
+    }
+
+    def "test concurrent reads"() {
+        given:
+        def frozen = ts.freeze()
+        def executor = Executors.newFixedThreadPool(4)
+
+        when:
+        def results = executor.invokeAll((0..<16).collect {
+            { -> frozen.slice(10, 40).getEnd() + frozen.getMaxValue() } as Callable
+        })*.get()
+        executor.shutdown()
+
+        then:
+        results.every { it == 44d }
+    }
+}
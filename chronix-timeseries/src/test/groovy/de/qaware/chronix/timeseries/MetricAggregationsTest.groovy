@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.timeseries
+
+import spock.lang.Specification
+
+/**
+ * Unit test for the metric aggregations
+ * @author f.lautenschlager
+ */
+class MetricAggregationsTest extends Specification {
+
+    def ts = new MetricTimeSeries.Builder("//CPU//Load", "metric")
+            .point(40, 6)
+            .point(10, 4)
+            .point(30, 8)
+            .point(20, 2)
+            .point(50, 5)
+            .build()
+
+    def "test aggregations of the whole time series"() {
+        expect:
+        MetricAggregations.count(ts) == 5
+        MetricAggregations.min(ts) == 2d
+        MetricAggregations.max(ts) == 8d
+        MetricAggregations.sum(ts) == 25d
+        MetricAggregations.mean(ts) == 5d
+        MetricAggregations.percentile(ts, 0.5) == 5d
+        MetricAggregations.first(ts) == 4d
+        MetricAggregations.last(ts) == 5d
+        MetricAggregations.integral(ts) == 205d
+        Math.abs(MetricAggregations.stdDev(ts) - Math.sqrt(5d)) < 1e-12
+    }
+
+    def "test aggregations within a range"() {
+        expect:
+        MetricAggregations.count(ts, 15, 40) == 3
+        MetricAggregations.min(ts, 15, 40) == 2d
+        MetricAggregations.max(ts, 15, 40) == 8d
+        MetricAggregations.sum(ts, 15, 40) == 16d
+        MetricAggregations.first(ts, 15, 40) == 2d
+        MetricAggregations.last(ts, 15, 40) == 6d
+        MetricAggregations.integral(ts, 15, 40) == 120d
+        MetricAggregations.percentile(ts, 15, 40, 1) == 8d
+    }
+
+    def "test aggregations of an empty range"() {
+        expect:
+        MetricAggregations.count(ts, 60, 70) == 0
+        MetricAggregations.sum(ts, 60, 70) == 0d
+        MetricAggregations.integral(ts, 60, 70) == 0d
+        Double.isNaN(MetricAggregations.min(ts, 60, 70))
+        Double.isNaN(MetricAggregations.mean(ts, 60, 70))
+        Double.isNaN(MetricAggregations.first(ts, 60, 70))
+        Double.isNaN(MetricAggregations.last(ts, 60, 70))
+    }
+
+    def "test aggregate"() {
+        when:
+        def all = MetricAggregations.aggregate(ts)
+        def range = MetricAggregations.aggregate(ts, 15, 40)
+
+        then:
+        all == new MetricAggregate(5, 2, 8, 25, 10, 4, 50, 5)
+        all.mean == 5d
+        range == new MetricAggregate(3, 2, 8, 16, 20, 2, 40, 6)
+        MetricAggregations.aggregate(ts, 60, 70) == MetricAggregate.EMPTY
+        Double.isNaN(MetricAggregate.EMPTY.mean)
+    }
+
+    def "test merge aggregates"() {
+        given:
+        def first = MetricAggregations.aggregate(ts, 0, 25)
+        def second = MetricAggregations.aggregate(ts, 26, 60)
+
+        expect:
+        first.merge(second) == MetricAggregations.aggregate(ts)
+        second.merge(first) == MetricAggregations.aggregate(ts)
+        first.merge(MetricAggregate.EMPTY).is(first)
+        MetricAggregate.EMPTY.merge(first).is(first)
+    }
+}
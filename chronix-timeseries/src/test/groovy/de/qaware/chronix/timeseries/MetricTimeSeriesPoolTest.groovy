@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2016 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.timeseries
+
+import spock.lang.Specification
+
+/**
+ * Unit test for the metric time series pool
+ * @author f.lautenschlager
+ */
+class MetricTimeSeriesPoolTest extends Specification {
+
+    def "test recycled time series is reused"() {
+        given:
+        def pool = new MetricTimeSeriesPool()
+        def ts = pool.builder("//CPU//Load", "metric")
+                .capacity(3)
+                .attribute("host", "laptop")
+                .point(3, 3).point(1, 1).point(2, 2)
+                .build()
+
+        when:
+        pool.recycle(ts)
+        def reused = pool.builder("//Memory//Used", "metric").point(5, 5).build()
+
+        then:
+        reused.is(ts)
+        pool.size() == 0
+        reused.name == "//Memory//Used"
+        reused.attributes().isEmpty()
+        reused.size() == 1
+        reused.isSorted()
+        reused.getStart() == 5
+        reused.getMinValue() == 5d
+    }
+
+    def "test builder of an empty pool"() {
+        given:
+        def pool = new MetricTimeSeriesPool()
+
+        when:
+        def ts = pool.builder("//CPU//Load", "metric").point(1, 1).build()
+
+        then:
+        ts.size() == 1
+        pool.size() == 0
+    }
+
+    def "test recycle twice"() {
+        given:
+        def pool = new MetricTimeSeriesPool()
+        def ts = pool.builder("//CPU//Load", "metric").point(1, 1).build()
+
+        when:
+        pool.recycle(ts)
+        pool.recycle(ts)
+
+        then:
+        pool.size() == 1
+    }
+
+    def "test time series that are not pooled"() {
+        given:
+        def pool = new MetricTimeSeriesPool(1, 2)
+        def ts = new MetricTimeSeries.Builder("//CPU//Load", "metric").point(1, 1).point(2, 2).point(3, 3).build()
+        def small = new MetricTimeSeries.Builder("//CPU//Load", "metric").point(1, 1).build()
+
+        when:
+        pool.recycle(ts.slice(1, 2))
+        pool.recycle(null)
+
+        then:
+        pool.size() == 0
+        ts.size() == 3
+
+        when:
+        pool.recycle(ts)
+
+        then:
+        pool.size() == 0
+
+        when:
+        pool.recycle(small)
+        pool.recycle(new MetricTimeSeries.Builder("//CPU//Load", "metric").build())
+
+        then:
+        pool.size() == 1
+
+        when:
+        pool.clear()
+
+        then:
+        pool.size() == 0
+    }
+
+    def "test chunked time series is not pooled"() {
+        given:
+        def pool = new MetricTimeSeriesPool()
+        def ts = pool.builder("//CPU//Load", "metric").chunked(4).point(1, 1).build()
+
+        when:
+        pool.recycle(ts)
+
+        then:
+        pool.size() == 0
+    }
+
+    def "test illegal limits"() {
+        when:
+        new MetricTimeSeriesPool(maxPooled, maxRetainedPoints)
+
+        then:
+        thrown IllegalArgumentException
+
+        where:
+        maxPooled << [-1, 1]
+        maxRetainedPoints << [1, -1]
+    }
+
+    def "test estimated bytes of the pooled time series"() {
+        given:
+        def pool = new MetricTimeSeriesPool()
+        def ts = pool.builder("//CPU//Load", "metric").capacity(1000).build()
+
+        expect:
+        pool.estimatedRetainedBytes() == 0
+
+        when:
+        pool.recycle(ts)
+
+        then:
+        pool.estimatedRetainedBytes() > 16_000
+    }
+}
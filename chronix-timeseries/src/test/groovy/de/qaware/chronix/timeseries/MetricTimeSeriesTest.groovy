@@ -15,10 +15,18 @@
  */
 package de.qaware.chronix.timeseries
 
+import de.qaware.chronix.converter.common.ChunkedDoubleList
+import de.qaware.chronix.converter.common.ChunkedLongList
+import de.qaware.chronix.converter.common.CompressedDoubleList
+import de.qaware.chronix.converter.common.CompressedLongList
 import de.qaware.chronix.converter.common.DoubleList
 import de.qaware.chronix.converter.common.LongList
+import de.qaware.chronix.converter.common.OffHeapMemory
+import de.qaware.chronix.timeseries.dts.LongDoubleConsumer
 import spock.lang.Specification
 
+import java.nio.file.Files
+
 /**
  * Unit test for the name time series
  * @author f.lautenschlager
@@ -66,6 +74,26 @@ class MetricTimeSeriesTest extends Specification {
         !ts.isEmpty()
     }
 
+    def "test timestamps and values as read only buffer"() {
+        given:
+        def ts = new MetricTimeSeries.Builder("//CPU//Load", "metric")
+                .point(2, 20)
+                .point(1, 10)
+                .build()
+
+        when:
+        def timestamps = ts.getTimestampsAsBuffer()
+        def values = ts.getValuesAsBuffer()
+        ts.sort()
+
+        then:
+        timestamps.isReadOnly()
+        values.isReadOnly()
+        timestamps.remaining() == 2
+        timestamps.get(0) == 1
+        values.get(0) == 10
+    }
+
     def "test points"() {
         given:
         def times = new LongList()
@@ -84,6 +112,75 @@ class MetricTimeSeriesTest extends Specification {
 
     }
 
+    def "test for each point"() {
+        given:
+        def ts = new MetricTimeSeries.Builder("//CPU//Load", "metric")
+                .point(1, 10)
+                .point(2, 20)
+                .point(3, 30)
+                .build()
+        def timestamps = []
+        def values = []
+
+        when:
+        ts.forEach({ long timestamp, double value ->
+            timestamps << timestamp
+            values << value
+        } as LongDoubleConsumer)
+
+        then:
+        timestamps == [1l, 2l, 3l]
+        values == [10d, 20d, 30d]
+    }
+
+    def "test cursor"() {
+        given:
+        def ts = new MetricTimeSeries.Builder("//CPU//Load", "metric")
+                .point(1, 10)
+                .point(2, 20)
+                .build()
+
+        when:
+        def cursor = ts.cursor()
+
+        then:
+        cursor.hasNext()
+        cursor.next()
+        cursor.index() == 0
+        cursor.timestamp() == 1
+        cursor.value() == 10
+
+        cursor.hasNext()
+        cursor.next()
+        cursor.index() == 1
+        cursor.timestamp() == 2
+        cursor.value() == 20
+
+        !cursor.hasNext()
+    }
+
+    def "test cursor without further points"() {
+        given:
+        def cursor = new MetricTimeSeries.Builder("//CPU//Load", "metric").build().cursor()
+
+        when:
+        cursor.next()
+
+        then:
+        thrown NoSuchElementException
+    }
+
+    def "test parallel points"() {
+        given:
+        def ts = new MetricTimeSeries.Builder("//CPU//Load", "metric").build()
+        10000.times {
+            ts.add(it, it)
+        }
+
+        expect:
+        ts.points().parallel().mapToDouble({ it.value }).sum() == 49995000d
+    }
+
     def "test sort"() {
         given:
         def times = new LongList()
@@ -102,6 +199,105 @@ class MetricTimeSeriesTest extends Specification {
         ts.getValue(0) == 91
     }
 
+    def "test sort keeps values with their timestamps"() {
+        given:
+        def ts = new MetricTimeSeries.Builder("//CPU//Load", "metric")
+                .point(3, 30)
+                .point(1, 10)
+                .point(2, 20)
+                .point(1, 11)
+                .build()
+
+        when:
+        ts.sort()
+
+        then:
+        ts.getTimestampsAsArray() == [1, 1, 2, 3] as long[]
+        ts.getValuesAsArray() == [10, 11, 20, 30] as double[]
+    }
+
+    def "test add all with a different number of timestamps and values"() {
+        given:
+        def ts = new MetricTimeSeries.Builder("//CPU//Load", "metric").point(1, 10).build()
+        def times = new LongList()
+        times.add(2l)
+        times.add(3l)
+        def values = new DoubleList()
+        values.add(20d)
+
+        when:
+        ts.addAll(times, values)
+
+        then:
+        thrown IllegalArgumentException
+
+        when:
+        ts.addAll([2, 3] as long[], [20, 30, 40] as double[])
+
+        then:
+        thrown IllegalArgumentException
+        ts.size() == 1
+        ts.getValuesAsArray() == [10d] as double[]
+    }
+
+    def "test appending sorted chunks keeps the time series sorted"() {
+        given:
+        def ts = new MetricTimeSeries.Builder("//CPU//Load", "metric").point(1, 10).build()
+
+        when:
+        ts.addAll([2, 3, 4] as long[], [20, 30, 40] as double[])
+        ts.add(5, 50)
+        def times = new LongList()
+        def values = new DoubleList()
+        times.add(5l)
+        values.add(51d)
+        ts.addAll(times, values)
+
+        then:
+        ts.isSorted()
+        ts.size() == 6
+    }
+
+    def "test merge of overlapping sorted chunks"() {
+        given:
+        def ts = new MetricTimeSeries.Builder("//CPU//Load", "metric").build()
+        //three sorted chunks that overlap each other
+        3.times { chunk ->
+            def times = (0..<10).collect { it * 3 + chunk } as long[]
+            ts.addAll(times, times.collect { it * 10 } as double[])
+        }
+
+        when:
+        def sortedBefore = ts.isSorted()
+        ts.sort()
+
+        then:
+        !sortedBefore
+        ts.isSorted()
+        ts.getTimestampsAsArray() == (0..<30).collect { it } as long[]
+        ts.getValuesAsArray() == (0..<30).collect { it * 10 } as double[]
+    }
+
+    def "test points added in random order are sorted"() {
+        given:
+        def random = new Random(4711)
+        def ts = new MetricTimeSeries.Builder("//CPU//Load", "metric").build()
+        5000.times {
+            def time = random.nextInt(10000) as long
+            ts.add(time, time * 2)
+        }
+
+        when:
+        ts.sort()
+
+        then:
+        ts.isSorted()
+        for (int i = 1; i < ts.size(); i++) {
+            assert ts.getTime(i - 1) <= ts.getTime(i)
+            assert ts.getValue(i) == ts.getTime(i) * 2
+        }
+    }
+
     def "test sort on empty time series"() {
         given:
         def ts = new MetricTimeSeries.Builder("//CPU//Load","metric").build()
@@ -220,4 +416,346 @@ class MetricTimeSeriesTest extends Specification {
         ts.attributes().size() == 0
     }
 
+    def "test slice"() {
+        given:
+        def builder = new MetricTimeSeries.Builder("//CPU//Load", "metric").attribute("host", "laptop")
+        10.times {
+            builder.point(100 - it * 10 as long, 10 - it as double)
+        }
+        def ts = builder.build()
+
+        when:
+        def slice = ts.slice(15, 60)
+
+        then:
+        slice.size() == 5
+        slice.getTimestampsAsArray() == [20l, 30l, 40l, 50l, 60l] as long[]
+        slice.getValuesAsArray() == [2d, 3d, 4d, 5d, 6d] as double[]
+        slice.getStart() == 20
+        slice.getEnd() == 60
+        slice.getName() == "//CPU//Load"
+        slice.attribute("host") == "laptop"
+        slice.slice(40, 1000).size() == 3
+    }
+
+    def "test empty slice"() {
+        given:
+        def ts = new MetricTimeSeries.Builder("//CPU//Load", "metric").point(1, 1).point(10, 2).build()
+
+        when:
+        def slice = ts.slice(from, to)
+
+        then:
+        slice.isEmpty()
+        slice.getStart() == from
+        slice.getEnd() == to
+
+        where:
+        from << [2, 11, 10]
+        to << [9, 20, 1]
+    }
+
+    def "test slice is a read-only view"() {
+        given:
+        def ts = new MetricTimeSeries.Builder("//CPU//Load", "metric").point(1, 1).point(2, 2).point(3, 3).build()
+        def slice = ts.slice(2, 3)
+
+        when:
+        slice.add(4, 4)
+
+        then:
+        thrown UnsupportedOperationException
+        slice.size() == 2
+        slice.getValuesAsBuffer().get(0) == 2d
+    }
+
+    def "test start and end do not sort the time series"() {
+        given:
+        def ts = new MetricTimeSeries.Builder("//CPU//Load", "metric")
+                .point(50, 2)
+                .point(10, -1)
+                .build()
+        ts.addAll([70l, 5l] as long[], [9d, 3d] as double[])
+
+        when:
+        def start = ts.getStart()
+        def end = ts.getEnd()
+
+        then:
+        start == 5
+        end == 70
+        !ts.isSorted()
+        ts.getTime(0) == 50
+    }
+
+    def "test min and max value"() {
+        given:
+        def ts = new MetricTimeSeries.Builder("//CPU//Load", "metric")
+                .points(new LongList([3l, 1l] as long[], 2), new DoubleList([4d, -2d] as double[], 2))
+                .point(2, 7)
+                .build()
+
+        expect:
+        ts.getMinValue() == -2d
+        ts.getMaxValue() == 7d
+        ts.slice(2, 3).getMinValue() == 4d
+        ts.slice(2, 3).getMaxValue() == 7d
+    }
+
+    def "test bounds of a time series without points"() {
+        given:
+        def ts = new MetricTimeSeries.Builder("//CPU//Load", "metric").start(3).end(4).build()
+
+        expect:
+        ts.getStart() == 3
+        ts.getEnd() == 4
+        Double.isNaN(ts.getMinValue())
+        Double.isNaN(ts.getMaxValue())
+    }
+
+    def "test bounds after clear"() {
+        given:
+        def ts = new MetricTimeSeries.Builder("//CPU//Load", "metric").point(1, 1).point(2, 2).build()
+
+        when:
+        ts.clear()
+        ts.add(10, 5)
+
+        then:
+        ts.getStart() == 10
+        ts.getEnd() == 10
+        ts.getMinValue() == 5d
+        ts.getMaxValue() == 5d
+    }
+
+    def "test chunked time series"() {
+        given:
+        def builder = new MetricTimeSeries.Builder("//CPU//Load", "metric").point(0, 0).chunked(4)
+
+        when:
+        for (int i = 20; i > 0; i--) {
+            builder.point(i, i)
+        }
+        def ts = builder.build()
+        ts.sort()
+
+        then:
+        ts.size() == 21
+        ts.getTimestamps() instanceof ChunkedLongList
+        ts.getTimestampsAsArray() == (0..20).collect { it as long } as long[]
+        ts.getValuesAsArray() == (0..20).collect { it as double } as double[]
+        ts.getStart() == 0
+        ts.getEnd() == 20
+        ts.slice(5, 7).getValuesAsArray() == [5d, 6d, 7d] as double[]
+    }
+
+    def "test chunked time series keeps the chunks for set points"() {
+        when:
+        def ts = new MetricTimeSeries.Builder("//CPU//Load", "metric")
+                .chunked()
+                .points(new LongList([1l, 2l] as long[], 2), new DoubleList([1d, 2d] as double[], 2))
+                .build()
+
+        then:
+        ts.getTimestamps() instanceof ChunkedLongList
+        ts.getValues() instanceof ChunkedDoubleList
+        ts.size() == 2
+    }
+
+    def "test off-heap time series"() {
+        given:
+        def builder = new MetricTimeSeries.Builder("//CPU//Load", "metric").point(3, 3).offHeap()
+
+        when:
+        builder.point(1, 1).point(2, 2)
+        def ts = builder.build()
+        ts.sort()
+
+        then:
+        ts.getTimestampsAsArray() == [1l, 2l, 3l] as long[]
+        ts.getValuesAsArray() == [1d, 2d, 3d] as double[]
+        ts.getTimestampsAsBuffer().isDirect()
+        ts.getStart() == 1
+        ts.getEnd() == 3
+
+        cleanup:
+        ts.release()
+    }
+
+    def "test buffers of an off-heap time series after it grows and is released"() {
+        given:
+        def ts = new MetricTimeSeries.Builder("//CPU//Load", "metric").offHeap().build()
+        10.times { ts.add(it, it) }
+        def timestamps = ts.getTimestampsAsBuffer()
+        def values = ts.getValuesAsBuffer()
+
+        when:
+        100_000.times { ts.add(10 + it, 99) }
+        def afterGrow = [timestamps.get(5), timestamps.get(9)]
+        ts.release()
+
+        then:
+        afterGrow == [5l, 9l]
+        values.get(5) == 5d
+        values.get(9) == 9d
+    }
+
+    def "test release of an off-heap time series"() {
+        given:
+        def before = OffHeapMemory.directBytes()
+        def ts = new MetricTimeSeries.Builder("//CPU//Load", "metric").offHeap().point(1, 1).build()
+
+        when:
+        ts.release()
+
+        then:
+        ts.isEmpty()
+        OffHeapMemory.directBytes() == before
+    }
+
+    def "test mapped time series"() {
+        given:
+        def timestampsFile = Files.createTempFile("timestamps", ".bin")
+        def valuesFile = Files.createTempFile("values", ".bin")
+
+        when:
+        def ts = new MetricTimeSeries.Builder("//CPU//Load", "metric")
+                .offHeap(timestampsFile, valuesFile)
+                .points(new LongList([1l, 2l] as long[], 2), new DoubleList([1d, 2d] as double[], 2))
+                .build()
+
+        then:
+        ts.size() == 2
+        ts.getValue(1) == 2d
+        Files.size(timestampsFile) >= 16
+
+        cleanup:
+        ts.release()
+        Files.deleteIfExists(timestampsFile)
+        Files.deleteIfExists(valuesFile)
+    }
+
+    def "test capacity hint"() {
+        when:
+        def ts = new MetricTimeSeries.Builder("//CPU//Load", "metric").capacity(100)
+        100.times { ts.point(it as long, it) }
+
+        then:
+        ts.build().size() == 100
+
+        when:
+        new MetricTimeSeries.Builder("//CPU//Load", "metric").capacity(-1)
+
+        then:
+        thrown IllegalArgumentException
+    }
+
+    def "test compressed timestamps"() {
+        given:
+        def ts = new MetricTimeSeries.Builder("//CPU//Load", "metric")
+                .compressedTimestamps()
+                .point(1l, 1d)
+                .point(2l, 2d)
+                .build()
+
+        when:
+        300.times { ts.add(1000l - it, it) }
+        ts.sort()
+
+        then:
+        ts.timestampsReference() instanceof CompressedLongList
+        ts.size() == 302
+        ts.getTime(0) == 1l
+        ts.getTime(2) == 701l
+        ts.getValue(301) == 0d
+        ts.getEnd() == 1000l
+        ts.slice(701, 710).size() == 10
+    }
+
+    def "test compressed values"() {
+        given:
+        def ts = new MetricTimeSeries.Builder("//CPU//Load", "metric")
+                .point(1l, 1d)
+                .compressedValues()
+                .build()
+
+        when:
+        300.times { ts.add(1000l - it, it / 2d) }
+        ts.sort()
+
+        then:
+        ts.valuesReference() instanceof CompressedDoubleList
+        ts.size() == 301
+        ts.getValue(0) == 1d
+        ts.getValue(1) == 149.5d
+        ts.getValue(300) == 0d
+        ts.getValuesAsStream().sum() == 1d + (0..299).sum() / 2d
+    }
+
+    def "test time series share equal attributes"() {
+        given:
+        def first = new MetricTimeSeries.Builder("//CPU//Load", "metric").attribute("host", "laptop").build()
+        def second = new MetricTimeSeries.Builder("//CPU//Load", "metric").attribute("host", "laptop").build()
+
+        expect:
+        first.attributesView().is(second.attributesView())
+        first.slice(0, 10).attributesView().is(first.attributesView())
+
+        when:
+        first.attributesView().put("host", "server")
+
+        then:
+        thrown UnsupportedOperationException
+
+        when:
+        first.getAttributesReference().put("host", "server")
+
+        then:
+        first.attribute("host") == "server"
+        second.attribute("host") == "laptop"
+        first.attributesView().get("host") == "server"
+    }
+
+    def "test timestamps and values as stream"() {
+        given:
+        def ts = new MetricTimeSeries.Builder("//CPU//Load", "metric")
+        10.times { ts.point(it as long, it * 2) }
+        def metricTimeSeries = ts.build()
+
+        expect:
+        metricTimeSeries.getTimestampsAsStream().sum() == 45l
+        metricTimeSeries.getValuesAsStream().parallel().sum() == 90d
+        metricTimeSeries.getValuesAsStream().filter { it > 10 }.count() == 4
+        metricTimeSeries.freeze().slice(2, 4).getTimestampsAsStream().toArray() == [2l, 3l, 4l] as long[]
+        metricTimeSeries.freeze().getValuesAsStream().max().asDouble == 18d
+    }
+
+    def "test estimated bytes and trim to size"() {
+        given:
+        def ts = new MetricTimeSeries.Builder("//CPU//Load", "metric").attribute("host", "laptop").build()
+        1000.times { ts.add(it as long, it) }
+        def other = new MetricTimeSeries.Builder("//CPU//Load", "metric").attribute("host", "laptop").build()
+        def untrimmed = ts.estimatedRetainedBytes()
+
+        when:
+        ts.trimToSize()
+
+        then:
+        untrimmed > 16_000
+        ts.estimatedRetainedBytes() < untrimmed
+        ts.estimatedRetainedBytes() > 16_000
+        ts.slice(0, 500).estimatedRetainedBytes() < 1000
+        MetricTimeSeries.estimatedRetainedBytes([ts, other]) ==
+                ts.estimatedRetainedBytes() + other.estimatedRetainedBytes() - ts.attributesView().estimatedRetainedBytes()
+        ts.size() == 1000
+        ts.getValue(999) == 999d
+
+        when:
+        ts.getAttributesReference().put("rack", "a1")
+        ts.trimToSize()
+
+        then:
+        ts.attributesView() instanceof CompactAttributes
+        ts.attribute("rack") == "a1"
+    }
 }